@@ -0,0 +1,171 @@
+package me.izen.glasssensor.app;
+
+import android.content.Context;
+import android.media.AudioManager;
+import android.media.SoundPool;
+import android.util.Log;
+import me.izen.glasssensor.core.AlertEngine;
+import me.izen.glasssensor.core.AlertRule;
+import me.izen.glasssensor.core.DerivedChannel;
+import me.izen.glasssensor.core.DerivedPipeline;
+import me.izen.glasssensor.core.DeviceSink;
+import me.izen.glasssensor.core.SampleSink;
+import me.izen.glasssensor.core.SensorFrame;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Process-wide alert rules, compiled from {@code R.array.alert_rules}, and the bip played when
+ * one of them is raised. Every drone has an engine of its own, so the readings of one never hold
+ * or clear a rule for another.
+ *
+ * While the service runs, the session of each drone it has seen feeds that drone's engine
+ * whatever the transport; {@link SensorReceiver} feeds the sensor-update broadcasts of every other
+ * drone, so alerts fire with no card at all.
+ */
+public class AlertMonitor {
+    private static final String TAG = AlertMonitor.class.getName();
+
+    private static AlertMonitor sInstance;
+
+    private final List<AlertRule> mRules;
+    private final SoundPool mSoundPool = new SoundPool(1, AudioManager.STREAM_MUSIC, 0);
+    private final int mBipId;
+
+    // Guarded by this, created as drones appear.
+    private final AlertEngine[] mEngines = new AlertEngine[SensorFrame.MAX_DEVICES];
+    // Broadcasts carry no derived channels, so they go through pipelines of their own.
+    private final DerivedPipeline[] mBroadcastPipelines =
+            new DerivedPipeline[SensorFrame.MAX_DEVICES];
+    private final boolean[] mSessionFeeding = new boolean[SensorFrame.MAX_DEVICES];
+    private boolean mBipLoaded;
+    private boolean mBipPending;
+
+    /**
+     * Logs and bips the alerts of one drone.
+     */
+    private final class DeviceListener implements AlertEngine.Listener {
+        private final int mDevice;
+
+        DeviceListener(int device) {
+            mDevice = device;
+        }
+
+        @Override
+        public void onAlert(AlertRule rule, long timestampMillis, float value) {
+            Log.w(TAG, "Alert on drone " + mDevice + ": " + rule + " (" + value + ")");
+            playBip();
+        }
+
+        @Override
+        public void onCleared(AlertRule rule, long timestampMillis, float value) {
+            Log.i(TAG, "Cleared on drone " + mDevice + ": " + rule + " (" + value + ")");
+        }
+    }
+
+    /**
+     * Routes decoded broadcasts to the pipeline of their drone, unless its session feeds it.
+     */
+    private final DeviceSink mBroadcastSink = new DeviceSink() {
+        private SampleSink mCurrent;
+
+        @Override
+        public void onDevice(int device) {
+            mCurrent = isSessionFeeding(device) ? null : getBroadcastPipeline(device);
+        }
+
+        @Override
+        public void onSample(int channel, long timestampMillis, float value) {
+            if (mCurrent != null) {
+                mCurrent.onSample(channel, timestampMillis, value);
+            }
+        }
+    };
+
+    private AlertMonitor(Context context) {
+        List<AlertRule> rules = new ArrayList<AlertRule>();
+        for (String text : context.getResources().getStringArray(R.array.alert_rules)) {
+            try {
+                rules.add(AlertRule.parse(text));
+            } catch (IllegalArgumentException e) {
+                Log.e(TAG, "Skipping alert rule", e);
+            }
+        }
+        mRules = rules;
+
+        mSoundPool.setOnLoadCompleteListener(new SoundPool.OnLoadCompleteListener() {
+            @Override
+            public void onLoadComplete(SoundPool soundPool, int sampleId, int status) {
+                boolean play;
+                synchronized (AlertMonitor.this) {
+                    mBipLoaded = status == 0;
+                    play = mBipLoaded && mBipPending;
+                    mBipPending = false;
+                }
+                if (play) {
+                    playBip();
+                }
+            }
+        });
+        mBipId = mSoundPool.load(context, R.raw.countdown_bip, 1);
+        Log.d(TAG, "Loaded " + rules.size() + " alert rules");
+    }
+
+    public static synchronized AlertMonitor get(Context context) {
+        if (sInstance == null) {
+            sInstance = new AlertMonitor(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    /**
+     * Get the engine to feed the readings of {@code device} into, creating it on first use.
+     */
+    public synchronized AlertEngine getEngine(int device) {
+        if (mEngines[device] == null) {
+            mEngines[device] = new AlertEngine(mRules);
+            mEngines[device].setListener(new DeviceListener(device));
+        }
+        return mEngines[device];
+    }
+
+    private synchronized DerivedPipeline getBroadcastPipeline(int device) {
+        if (mBroadcastPipelines[device] == null) {
+            mBroadcastPipelines[device] =
+                    new DerivedPipeline(DerivedChannel.createDefaults(), getEngine(device));
+        }
+        return mBroadcastPipelines[device];
+    }
+
+    /**
+     * Get the sink for readings decoded from broadcasts, deriving channels on the way to the
+     * engine of their drone. Tell it the drone first. Main thread only.
+     */
+    public DeviceSink getBroadcastSink() {
+        return mBroadcastSink;
+    }
+
+    /**
+     * Whether the session currently feeds the engine of {@code device}, so broadcasts must not
+     * feed it again.
+     */
+    public synchronized boolean isSessionFeeding(int device) {
+        return mSessionFeeding[device];
+    }
+
+    public synchronized void setSessionFeeding(int device, boolean feeding) {
+        mSessionFeeding[device] = feeding;
+    }
+
+    private void playBip() {
+        synchronized (this) {
+            if (!mBipLoaded) {
+                // Played once loaded.
+                mBipPending = true;
+                return;
+            }
+        }
+        mSoundPool.play(mBipId, 1, 1, 1, 0, 1);
+    }
+}
@@ -0,0 +1,26 @@
+package me.izen.glasssensor.app;
+
+import android.content.Context;
+import android.content.Intent;
+import me.izen.glasssensor.core.FrameSink;
+import me.izen.glasssensor.core.SensorFrame;
+
+/**
+ * Sends frames as sensor-update broadcasts to this app, the same way the drone bridge does.
+ */
+public class BroadcastFrameSink implements FrameSink {
+
+    private final Context mContext;
+
+    public BroadcastFrameSink(Context context) {
+        mContext = context.getApplicationContext();
+    }
+
+    @Override
+    public void onFrame(byte[] frame) {
+        Intent intent = new Intent(SensorFrame.ACTION_SENSOR_UPDATE);
+        intent.setPackage(mContext.getPackageName());
+        intent.putExtra(SensorFrame.EXTRA_FRAME, frame);
+        mContext.sendBroadcast(intent);
+    }
+}
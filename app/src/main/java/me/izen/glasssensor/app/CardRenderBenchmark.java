@@ -0,0 +1,147 @@
+package me.izen.glasssensor.app;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Rect;
+import android.os.Debug;
+import android.util.Log;
+import android.view.View;
+import me.izen.glasssensor.core.SensorChannels;
+import me.izen.glasssensor.core.ValueFormatter;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Compares the two ways of drawing the card on the device: its views drawing themselves, and a
+ * {@link CardRenderer}. Each draws the same frames, every one changing all the values and the
+ * chronometer, into an offscreen bitmap, on a card of its own so the live one is not disturbed.
+ *
+ * Reports the thread CPU time and the allocations per frame to the log and to the app's files
+ * dir, for {@code adb shell run-as me.izen.glasssensor.app cat files/render_benchmark.txt}.
+ */
+class CardRenderBenchmark implements Runnable {
+    private static final String TAG = CardRenderBenchmark.class.getName();
+    private static final String RESULT_FILE = "render_benchmark.txt";
+
+    private static final int WIDTH = 640;
+    private static final int HEIGHT = 360;
+    private static final int WARMUP_FRAMES = 100;
+    private static final int FRAMES = 600;
+    // Distinct values cycled through per channel, formatted up front so the frames only measure
+    // the drawing.
+    private static final int VALUES = 64;
+
+    private final Context mContext;
+    private final String[][] mTexts = new String[VALUES][SensorChannels.COUNT];
+
+    private Canvas mCanvas;
+    private SensorView mView;
+    private CardRenderer mRenderer;
+
+    CardRenderBenchmark(Context context) {
+        mContext = context.getApplicationContext();
+        ValueFormatter formatter = ValueFormatter.createDefault();
+        char[] chars = new char[ValueFormatter.BUFFER_SIZE];
+        for (int i = 0; i < VALUES; i++) {
+            for (int channel = 0; channel < SensorChannels.COUNT; channel++) {
+                float value = 10 + channel + i * 0.37f;
+                mTexts[i][channel] = new String(chars, 0, formatter.format(channel, value, chars));
+            }
+        }
+    }
+
+    /**
+     * Start the benchmark on a background thread of its own.
+     */
+    static void start(Context context) {
+        new Thread(new CardRenderBenchmark(context), "RenderBenchmark").start();
+    }
+
+    @Override
+    public void run() {
+        Bitmap bitmap = Bitmap.createBitmap(WIDTH, HEIGHT, Bitmap.Config.ARGB_8888);
+        mCanvas = new Canvas(bitmap);
+        mView = new SensorView(mContext);
+        mView.prewarm();
+        mView.setListener(new SensorView.ChangeListener() {
+            @Override
+            public void onChange(Rect dirty) {
+                mCanvas.save();
+                mCanvas.clipRect(dirty);
+                if (mRenderer != null) {
+                    mRenderer.draw(mCanvas);
+                } else {
+                    mView.draw(mCanvas);
+                }
+                mCanvas.restore();
+            }
+
+            @Override
+            public void onUnchanged() {
+            }
+        });
+        mView.measure(View.MeasureSpec.makeMeasureSpec(WIDTH, View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(HEIGHT, View.MeasureSpec.EXACTLY));
+        mView.layout(0, 0, WIDTH, HEIGHT);
+
+        StringBuilder report = new StringBuilder();
+        report.append(measure("views")).append('\n');
+
+        long start = System.nanoTime();
+        mRenderer = new CardRenderer(mView);
+        mView.setDirectRendering(true);
+        long buildMicros = (System.nanoTime() - start) / 1000;
+        report.append(measure("renderer")).append('\n');
+        report.append("renderer build=").append(buildMicros).append("us\n");
+
+        mRenderer.release();
+        bitmap.recycle();
+        Log.i(TAG, report.toString());
+        File file = new File(mContext.getFilesDir(), RESULT_FILE);
+        try {
+            Writer out = new FileWriter(file);
+            try {
+                out.write(report.toString());
+            } finally {
+                out.close();
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Cannot write the render benchmark to " + file, e);
+        }
+    }
+
+    /**
+     * Draws the warmup frames, then the measured ones, with the current drawing path.
+     *
+     * @return e.g. {@code views cpu=1830us/frame allocs=41.0/frame bytes=1690/frame}
+     */
+    private String measure(String name) {
+        drawFrames(WARMUP_FRAMES);
+
+        Debug.resetThreadAllocCount();
+        Debug.startAllocCounting();
+        long cpuStart = Debug.threadCpuTimeNanos();
+        drawFrames(FRAMES);
+        long cpuNanos = Debug.threadCpuTimeNanos() - cpuStart;
+        Debug.stopAllocCounting();
+
+        return name + " cpu=" + cpuNanos / 1000 / FRAMES + "us/frame"
+                + " allocs=" + String.format("%.1f", (double) Debug.getThreadAllocCount() / FRAMES)
+                + "/frame bytes=" + Debug.getThreadAllocSize() / FRAMES + "/frame";
+    }
+
+    private void drawFrames(int frames) {
+        IntentTunnelTransport.TextSink sink = mView.getTextSink();
+        for (int frame = 0; frame < frames; frame++) {
+            String[] texts = mTexts[frame % VALUES];
+            for (int channel = 0; channel < SensorChannels.COUNT; channel++) {
+                sink.onText(channel, texts[channel]);
+            }
+            mView.updateSensorView();
+        }
+    }
+}
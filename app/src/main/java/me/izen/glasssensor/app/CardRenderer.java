@@ -0,0 +1,203 @@
+package me.izen.glasssensor.app;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.view.Gravity;
+import android.view.View;
+import android.widget.TextView;
+import me.izen.glasssensor.core.SensorChannels;
+
+/**
+ * Draws a laid out {@link SensorView} straight onto a canvas, without walking its view tree.
+ *
+ * Everything that never changes, the backgrounds, labels and icons, is drawn once into a bitmap.
+ * A frame copies that bitmap, then draws the text of each slot with the paint, position and
+ * alignment taken from its view when the renderer was built, and the trend lines on top. Text is
+ * measured from a table of glyph advances rather than laid out, so a frame allocates nothing.
+ *
+ * The card must be put in {@link SensorView#setDirectRendering direct rendering}, and the
+ * renderer rebuilt whenever the card is laid out again.
+ */
+public class CardRenderer {
+
+    // Printable ASCII and the degree sign of the formatter's temperature units, which is all the
+    // formatter and chronometer produce.
+    private static final char FIRST_GLYPH = ' ';
+    private static final char LAST_GLYPH = '~';
+    private static final char DEGREE = '\u00b0';
+    private static final int GLYPHS = LAST_GLYPH - FIRST_GLYPH + 2;
+
+    /**
+     * Where and how to draw the text of one slot, in card coordinates.
+     */
+    private static final class TextElement {
+        final int mSlot;
+        final TextView mView;
+        final Paint mPaint;
+        final int mGravity;
+        final float mLeft;
+        final float mRight;
+        final float mBaseline;
+        final Rect mBounds = new Rect();
+        // ASCII advances, then the degree sign's.
+        final float[] mAdvances = new float[GLYPHS];
+
+        TextElement(SensorView card, int slot) {
+            mSlot = slot;
+            mView = card.getSlotView(slot);
+            mPaint = new Paint(mView.getPaint());
+            mPaint.setColor(mView.getCurrentTextColor());
+            mGravity = mView.getGravity() & Gravity.HORIZONTAL_GRAVITY_MASK;
+
+            mBounds.set(0, 0, mView.getWidth(), mView.getHeight());
+            card.offsetDescendantRectToMyCoords(mView, mBounds);
+            mLeft = mBounds.left + mView.getCompoundPaddingLeft();
+            mRight = mBounds.right - mView.getCompoundPaddingRight();
+            mBaseline = mBounds.top + mView.getBaseline();
+
+            char[] glyphs = new char[GLYPHS];
+            for (int i = 0; i < GLYPHS - 1; i++) {
+                glyphs[i] = (char) (FIRST_GLYPH + i);
+            }
+            glyphs[GLYPHS - 1] = DEGREE;
+            mPaint.getTextWidths(glyphs, 0, glyphs.length, mAdvances);
+        }
+
+        float measure(char[] text, int length) {
+            float width = 0;
+            for (int i = 0; i < length; i++) {
+                char c = text[i];
+                if (c >= FIRST_GLYPH && c <= LAST_GLYPH) {
+                    width += mAdvances[c - FIRST_GLYPH];
+                } else if (c == DEGREE) {
+                    width += mAdvances[GLYPHS - 1];
+                } else {
+                    return mPaint.measureText(text, 0, length);
+                }
+            }
+            return width;
+        }
+
+        void draw(Canvas canvas, SensorView card) {
+            int length = card.getSlotLength(mSlot);
+            if (length == 0 || mView.getVisibility() != View.VISIBLE
+                    || canvas.quickReject(mBounds.left, mBounds.top, mBounds.right,
+                    mBounds.bottom, Canvas.EdgeType.AA)) {
+                return;
+            }
+            char[] text = card.getSlotChars(mSlot);
+            float x = mLeft;
+            if (mGravity == Gravity.CENTER_HORIZONTAL) {
+                x = (mLeft + mRight - measure(text, length)) / 2;
+            } else if (mGravity == Gravity.RIGHT) {
+                x = mRight - measure(text, length);
+            }
+            canvas.save();
+            canvas.clipRect(mBounds);
+            canvas.drawText(text, 0, length, x, mBaseline, mPaint);
+            canvas.restore();
+        }
+    }
+
+    private final SensorView mCard;
+    private final Bitmap mStaticLayer;
+    private final TextElement[] mTexts = new TextElement[SensorView.SLOT_COUNT];
+    private final Rect[] mTrendBounds = new Rect[SensorChannels.COUNT];
+
+    /**
+     * Builds the renderer of {@code card}, which must be laid out and not drawn by another thread
+     * meanwhile.
+     *
+     * @throws OutOfMemoryError if there is no room for the static layer
+     */
+    public CardRenderer(SensorView card) {
+        mCard = card;
+        for (int slot = 0; slot < SensorView.SLOT_COUNT; slot++) {
+            mTexts[slot] = new TextElement(card, slot);
+        }
+        for (int channel = 0; channel < SensorChannels.COUNT; channel++) {
+            SparklineView trend = card.getTrendView(channel);
+            mTrendBounds[channel] = new Rect(0, 0, trend.getWidth(), trend.getHeight());
+            card.offsetDescendantRectToMyCoords(trend, mTrendBounds[channel]);
+        }
+        mStaticLayer = Bitmap.createBitmap(Math.max(1, card.getWidth()),
+                Math.max(1, card.getHeight()), Bitmap.Config.ARGB_8888);
+        drawStaticLayer(new Canvas(mStaticLayer));
+    }
+
+    /**
+     * Draws the card with the text of every slot and the trend lines left out, by making them
+     * transparent and invisible for the duration; neither changes the layout.
+     */
+    private void drawStaticLayer(Canvas canvas) {
+        int[] colors = new int[SensorView.SLOT_COUNT];
+        for (int slot = 0; slot < SensorView.SLOT_COUNT; slot++) {
+            TextView view = mCard.getSlotView(slot);
+            colors[slot] = view.getCurrentTextColor();
+            view.setTextColor(Color.TRANSPARENT);
+        }
+        int[] visibilities = new int[SensorChannels.COUNT];
+        for (int channel = 0; channel < SensorChannels.COUNT; channel++) {
+            SparklineView trend = mCard.getTrendView(channel);
+            visibilities[channel] = trend.getVisibility();
+            trend.setVisibility(View.INVISIBLE);
+        }
+        // Separator and centiseconds are drawn as slots, so their visibility is not baked in.
+        int separator = mCard.getSlotView(SensorView.SLOT_SEPARATOR).getVisibility();
+        int centiSeconds = mCard.getSlotView(SensorView.SLOT_CENTI_SECOND).getVisibility();
+        mCard.getSlotView(SensorView.SLOT_SEPARATOR).setVisibility(View.VISIBLE);
+        mCard.getSlotView(SensorView.SLOT_CENTI_SECOND).setVisibility(View.VISIBLE);
+
+        canvas.drawColor(Color.BLACK);
+        mCard.draw(canvas);
+
+        mCard.getSlotView(SensorView.SLOT_SEPARATOR).setVisibility(separator);
+        mCard.getSlotView(SensorView.SLOT_CENTI_SECOND).setVisibility(centiSeconds);
+        for (int channel = 0; channel < SensorChannels.COUNT; channel++) {
+            mCard.getTrendView(channel).setVisibility(visibilities[channel]);
+        }
+        for (int slot = 0; slot < SensorView.SLOT_COUNT; slot++) {
+            mCard.getSlotView(slot).setTextColor(colors[slot]);
+        }
+    }
+
+    /**
+     * Whether this renderer still matches the size of the card.
+     */
+    public boolean matches(SensorView card) {
+        return card == mCard && card.getWidth() == mStaticLayer.getWidth()
+                && card.getHeight() == mStaticLayer.getHeight();
+    }
+
+    /**
+     * Draws the card, as far as the canvas clip reaches. Frame thread only.
+     */
+    public void draw(Canvas canvas) {
+        canvas.drawBitmap(mStaticLayer, 0, 0, null);
+        for (TextElement text : mTexts) {
+            text.draw(canvas, mCard);
+        }
+        for (int channel = 0; channel < SensorChannels.COUNT; channel++) {
+            SparklineView trend = mCard.getTrendView(channel);
+            Rect bounds = mTrendBounds[channel];
+            if (trend.getVisibility() != View.VISIBLE || canvas.quickReject(bounds.left,
+                    bounds.top, bounds.right, bounds.bottom, Canvas.EdgeType.AA)) {
+                continue;
+            }
+            canvas.save();
+            canvas.translate(bounds.left, bounds.top);
+            trend.draw(canvas);
+            canvas.restore();
+        }
+    }
+
+    /**
+     * Frees the static layer; the renderer must not be used afterwards.
+     */
+    public void release() {
+        mStaticLayer.recycle();
+    }
+}
@@ -1,13 +1,13 @@
 package me.izen.glasssensor.app;
 
 import android.content.Context;
-import android.os.Handler;
 import android.os.SystemClock;
 import android.util.AttributeSet;
 import android.util.Log;
 import android.view.LayoutInflater;
 import android.widget.FrameLayout;
 import android.widget.TextView;
+import me.izen.glasssensor.core.DroneLink;
 
 import java.util.concurrent.TimeUnit;
 
@@ -20,35 +20,30 @@ public class ConnectView extends FrameLayout {
     private static final String TAG = "ConnectView";
 
     /**
-     * Interface to listen for changes in the countdown.
+     * Interface to listen for changes in the drone link.
      */
-    public interface CountDownListener {
+    public interface ConnectListener {
         /**
-         * Notified of a tick, indicating a layout change.
+         * Notified when the link changes state, see {@link DroneLink}.
          */
-        public void onTick(long millisUntilFinish);
-
-        /**
-         * Notified when the countdown is finished.
-         */
-        public void onFinish(boolean connected);
+        public void onStateChanged(int state);
     }
 
     /** Time delimiter specifying when the second component is fully shown. */
     public static final float ANIMATION_DURATION_IN_MILLIS = 850.0f;
 
-    // About 24 FPS.
-    private static final long DELAY_MILLIS = 41;
     private static final int MAX_TRANSLATION_Y = 30;
     private static final float ALPHA_DELIMITER = 0.95f;
     private static final long SEC_TO_MILLIS = TimeUnit.SECONDS.toMillis(1);
 
     private final TextView mConnectStatusView;
 
-    private long mTimeSeconds;
-    private long mStopTimeInFuture;
-    private CountDownListener mListener;
+    private ConnectListener mListener;
     private boolean mStarted;
+    private boolean mAnimating;
+    private int mState = DroneLink.IDLE;
+    private String mStateText;
+    private long mStateChangedMillis;
 
     public ConnectView(Context context) {
         this(context, null, 0);
@@ -65,46 +60,40 @@ public class ConnectView extends FrameLayout {
         mConnectStatusView =  (TextView) findViewById(R.id.connect_status_view);
     }
 
-    public void setCountDown(long timeSeconds) {
-        mTimeSeconds = timeSeconds;
+    /**
+     * Set a {@link ConnectListener}.
+     */
+    public void setListener(ConnectListener listener) {
+        mListener = listener;
     }
 
-    public long getCountDown() {
-        return mTimeSeconds;
-    }
+    private final FrameScheduler mScheduler = FrameScheduler.getMain();
 
     /**
-     * Set a {@link CountDownListener}.
+     * Show the drone link in {@code state}, see {@link DroneLink}. Must be called from the main
+     * thread.
      */
-    public void setListener(CountDownListener listener) {
-        mListener = listener;
+    public void showState(int state) {
+        mState = state;
+        mStateText = DroneLink.getStateName(state) + "...";
+        mStateChangedMillis = SystemClock.elapsedRealtime();
+        if (state == DroneLink.STREAMING) {
+            updateStatusView("connected");
+        } else if (state == DroneLink.IDLE) {
+            updateStatusView("no connection");
+        }
+        updateAnimating();
+        if (mListener != null) {
+            mListener.onStateChanged(state);
+        }
     }
 
-    private final Handler mHandler = new Handler();
-
-    private boolean connectionInProgress = false;
-    private final Runnable mUpdateViewRunnable = new Runnable() {
+    private final FrameScheduler.Callback mUpdateViewCallback = new FrameScheduler.Callback() {
         @Override
-        public void run() {
-            final long millisLeft = mStopTimeInFuture - SystemClock.elapsedRealtime();
-
-
-            // Count down is done.
-            if (millisLeft <= 0) {
-                connectionInProgress = false;
-                mStarted = false;
-                updateStatusView("no connection");
-                if (mListener != null) {
-                    mListener.onFinish(false);
-                }
-            } else {
-                // TODO : check if the sensor is connected, if so then show connected and finish up this activity
-                updateView(millisLeft, "searching...");
-                if (mListener != null) {
-                    mListener.onTick(millisLeft);
-                }
-                mHandler.postDelayed(mUpdateViewRunnable, DELAY_MILLIS);
-            }
+        public long doFrame(long frameTimeMillis) {
+            long millis = SystemClock.elapsedRealtime() - mStateChangedMillis;
+            updateView(millis, mStateText);
+            return 0;
         }
     };
 
@@ -112,36 +101,49 @@ public class ConnectView extends FrameLayout {
         Log.d(TAG, "Status = " + connectStatus);
         mConnectStatusView.setText(connectStatus);
         mConnectStatusView.setAlpha(1.0f);
+        mConnectStatusView.setTranslationY(0);
     }
 
     /**
-     * Starts the countdown animation if not yet started.
+     * Starts the status animation if not yet started.
      */
     public void start() {
-        if (!mStarted) {
-            mStopTimeInFuture =
-                    TimeUnit.SECONDS.toMillis(mTimeSeconds) + SystemClock.elapsedRealtime();
-            mStarted = true;
-            mHandler.postDelayed(mUpdateViewRunnable, DELAY_MILLIS);
-        }
+        mStarted = true;
+        updateAnimating();
     }
 
     /**
-     * Stop the counter.
+     * Stop the animation.
      */
     public void stop() {
         mStarted = false;
-        mStopTimeInFuture = SystemClock.elapsedRealtime();
+        updateAnimating();
+    }
+
+    /**
+     * Animate the status while the link is waiting for readings, and hold it still otherwise.
+     */
+    private void updateAnimating() {
+        boolean animating = mStarted
+                && mState != DroneLink.STREAMING && mState != DroneLink.IDLE;
+        if (animating != mAnimating) {
+            if (animating) {
+                mScheduler.addCallback(mUpdateViewCallback);
+            } else {
+                mScheduler.removeCallback(mUpdateViewCallback);
+            }
+            mAnimating = animating;
+        }
     }
 
 
     /**
-     * Updates the views to reflect the current state of animation.
+     * Updates the views to reflect the current state of animation, pulsing once a second.
      *
-     * @params millisUntilFinish milliseconds until the countdown is done
+     * @params millisInState milliseconds since the link entered its current state
      */
-    private void updateView(long millisUntilFinish, String connectStatus) {
-        long frame = SEC_TO_MILLIS - (millisUntilFinish % SEC_TO_MILLIS);
+    private void updateView(long millisInState, String connectStatus) {
+        long frame = millisInState % SEC_TO_MILLIS;
 
         mConnectStatusView.setText(connectStatus);
         if (frame <= ANIMATION_DURATION_IN_MILLIS) {
@@ -0,0 +1,242 @@
+package me.izen.glasssensor.app;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+import me.izen.glasssensor.core.DeviceSink;
+import me.izen.glasssensor.core.DroneLink;
+import me.izen.glasssensor.core.SampleSink;
+import me.izen.glasssensor.core.SamplingPlan;
+import me.izen.glasssensor.core.SensorTransport;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Keeps the drone streaming over a {@link SensorTransport}: connects to the bridge, asks it to
+ * stream, and reconnects when readings stop, as driven by a {@link DroneLink}. Once readings
+ * flow, and whenever they change, it asks for the sampling rates set by {@link #requestRates}.
+ *
+ * Runs on the main thread, where transport callbacks are posted. Readings are watched on their
+ * way from the transport, whichever devices they come from, by a sink that only touches a
+ * volatile timestamp on the ingestion thread, except for the first reading after a gap, which is
+ * handed to the main thread to move the link to streaming.
+ */
+public class DroneConnection {
+    private static final String TAG = DroneConnection.class.getName();
+
+    private final SensorTransport mTransport;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private final DroneLink mLink;
+    private DroneLink.Listener mListener;
+
+    // Rates to ask for, and whether the current stream was already asked for them.
+    private float[] mRates;
+    private boolean mRatesSent;
+
+    private volatile long mLastArrivalMillis;
+    // Set while the link waits for readings, so the next one is reported right away.
+    private final AtomicBoolean mAwaitingSample = new AtomicBoolean();
+
+    private final DroneLink.Driver mDriver = new DroneLink.Driver() {
+        @Override
+        public boolean bind() {
+            return mTransport.connect();
+        }
+
+        @Override
+        public boolean launch() {
+            mAwaitingSample.set(true);
+            return mTransport.requestStream();
+        }
+
+        @Override
+        public void unbind() {
+            mTransport.disconnect();
+        }
+    };
+
+    // Any thread; the link is only touched on the main thread.
+    private final SensorTransport.Callback mTransportCallback = new SensorTransport.Callback() {
+        @Override
+        public void onConnected() {
+            mHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    mLink.onBound(SystemClock.elapsedRealtime());
+                    schedulePoll();
+                }
+            });
+        }
+
+        @Override
+        public void onDisconnected() {
+            mHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    mLink.onUnbound(SystemClock.elapsedRealtime());
+                    schedulePoll();
+                }
+            });
+        }
+    };
+
+    // Ingestion thread.
+    private final SampleSink mArrivals = new SampleSink() {
+        @Override
+        public void onSample(int channel, long timestampMillis, float value) {
+            long now = SystemClock.elapsedRealtime();
+            mLastArrivalMillis = now;
+            if (mAwaitingSample.get() && mAwaitingSample.compareAndSet(true, false)) {
+                mHandler.post(new FirstSample(now));
+            }
+        }
+    };
+
+    private final Runnable mPollRunnable = new Runnable() {
+        @Override
+        public void run() {
+            schedulePoll();
+        }
+    };
+
+    private final DroneLink.Listener mStateListener = new DroneLink.Listener() {
+        @Override
+        public void onStateChanged(int state) {
+            Log.d(TAG, "Link " + DroneLink.getStateName(state));
+            // Any state short of streaming is waiting for readings to (re)appear.
+            mAwaitingSample.set(state != DroneLink.STREAMING && state != DroneLink.IDLE);
+            if (state == DroneLink.STREAMING) {
+                // A relaunched drone app starts over at its own rates.
+                sendRates();
+            } else {
+                mRatesSent = false;
+            }
+            if (mListener != null) {
+                mListener.onStateChanged(state);
+            }
+        }
+    };
+
+    /**
+     * @param transport transport to drive, opened with {@link #getTransportCallback()} and a sink
+     *                  wrapped by {@link #watch}
+     */
+    public DroneConnection(SensorTransport transport) {
+        mTransport = transport;
+        mLink = new DroneLink(mDriver);
+        mLink.setListener(mStateListener);
+    }
+
+    /**
+     * Set a listener for link state changes, called on the main thread.
+     */
+    public void setListener(DroneLink.Listener listener) {
+        mListener = listener;
+    }
+
+    /**
+     * Get the callback the transport must be opened with.
+     */
+    public SensorTransport.Callback getTransportCallback() {
+        return mTransportCallback;
+    }
+
+    public int getState() {
+        return mLink.getState();
+    }
+
+    /**
+     * Get the state machine and its connect and reconnect latencies.
+     */
+    public DroneLink getLink() {
+        return mLink;
+    }
+
+    /**
+     * Wrap the sink the transport feeds, so the connection sees the readings go by.
+     */
+    public DeviceSink watch(final DeviceSink sink) {
+        return new DeviceSink() {
+            @Override
+            public void onDevice(int device) {
+                sink.onDevice(device);
+            }
+
+            @Override
+            public void onSample(int channel, long timestampMillis, float value) {
+                mArrivals.onSample(channel, timestampMillis, value);
+                sink.onSample(channel, timestampMillis, value);
+            }
+        };
+    }
+
+    /**
+     * Set the sampling rate of each raw channel, asked for right away while streaming and
+     * again on every reconnect. Main thread.
+     */
+    public void requestRates(float[] hz) {
+        if (mRates != null && Arrays.equals(mRates, hz)) {
+            return;
+        }
+        mRates = hz.clone();
+        mRatesSent = false;
+        if (mLink.getState() == DroneLink.STREAMING) {
+            sendRates();
+        }
+    }
+
+    private void sendRates() {
+        if (mRates == null || mRatesSent) {
+            return;
+        }
+        mRatesSent = mTransport.requestRates(mRates);
+        Log.d(TAG, (mRatesSent ? "Requested rates " : "Could not request rates ")
+                + SamplingPlan.toString(mRates));
+    }
+
+    public void start() {
+        mLink.start(SystemClock.elapsedRealtime());
+        schedulePoll();
+    }
+
+    public void stop() {
+        // Also drops transport callbacks and first readings still queued.
+        mHandler.removeCallbacksAndMessages(null);
+        mLink.stop();
+        // Also drops a connection still pending.
+        mTransport.disconnect();
+        Log.i(TAG, "Drone link: " + mLink);
+    }
+
+    /**
+     * Feed the newest arrival to the link, poll it and schedule the next poll.
+     */
+    private void schedulePoll() {
+        mHandler.removeCallbacks(mPollRunnable);
+        long now = SystemClock.elapsedRealtime();
+        mLink.onSample(mLastArrivalMillis);
+        long delay = mLink.poll(now);
+        if (delay != Long.MAX_VALUE) {
+            mHandler.postDelayed(mPollRunnable, Math.max(delay, 0));
+        }
+    }
+
+    /**
+     * Reports the first reading after a gap with its actual arrival time.
+     */
+    private class FirstSample implements Runnable {
+        private final long mArrivalMillis;
+
+        FirstSample(long arrivalMillis) {
+            mArrivalMillis = arrivalMillis;
+        }
+
+        @Override
+        public void run() {
+            mLink.onSample(mArrivalMillis);
+            schedulePoll();
+        }
+    }
+}
@@ -0,0 +1,224 @@
+package me.izen.glasssensor.app;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Drives the frames of every animated view from one timer, on a fixed grid so frames do not
+ * drift.
+ *
+ * Each callback says when it next needs a frame. The scheduler runs at full rate while any
+ * callback asks for the next frame, falls back to the idle rate when none does, and stops
+ * waking up entirely once every callback is removed. Readings arriving while idle bring the
+ * next frame forward through {@link #requestFrame()}.
+ */
+public class FrameScheduler {
+
+    /** About 24 FPS. */
+    public static final long FRAME_INTERVAL_MILLIS = 41;
+    public static final long IDLE_INTERVAL_MILLIS = 1000;
+
+    /**
+     * Interface to produce frames.
+     */
+    public interface Callback {
+        /**
+         * Produce a frame.
+         *
+         * @param frameTimeMillis scheduled time of the frame, in {@link SystemClock#uptimeMillis()}
+         * @return milliseconds until the next frame is needed, 0 for the next frame slot; waits
+         * are capped at {@link #IDLE_INTERVAL_MILLIS}
+         */
+        public long doFrame(long frameTimeMillis);
+    }
+
+    private static FrameScheduler sMainInstance;
+
+    private final Handler mHandler;
+    private final ArrayList<Callback> mCallbacks = new ArrayList<Callback>();
+    private final AtomicBoolean mFrameRequested = new AtomicBoolean();
+
+    private long mGridOriginMillis;
+    private long mScheduledMillis;
+    private boolean mScheduled;
+
+    // Statistics, read from any thread.
+    private volatile long mFrames;
+    private volatile long mRequestedFrames;
+    private volatile long mIdleFrames;
+    private volatile long mFrameNanos;
+    private volatile long mMaxFrameNanos;
+
+    public FrameScheduler(Looper looper) {
+        mHandler = new Handler(looper);
+    }
+
+    /**
+     * The scheduler shared by the views drawn on the main thread.
+     */
+    public static synchronized FrameScheduler getMain() {
+        if (sMainInstance == null) {
+            sMainInstance = new FrameScheduler(Looper.getMainLooper());
+        }
+        return sMainInstance;
+    }
+
+    /**
+     * Start producing frames for {@code callback}. When called from another thread the callback
+     * is added on the scheduler thread, in order with other posted work.
+     */
+    public void addCallback(final Callback callback) {
+        if (Looper.myLooper() != mHandler.getLooper()) {
+            mHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    addCallback(callback);
+                }
+            });
+            return;
+        }
+        if (mCallbacks.contains(callback)) {
+            return;
+        }
+        mCallbacks.add(callback);
+        if (mCallbacks.size() == 1) {
+            mGridOriginMillis = SystemClock.uptimeMillis();
+        }
+        scheduleAt(SystemClock.uptimeMillis());
+    }
+
+    /**
+     * Stop producing frames for {@code callback}; with no callbacks left the scheduler stops
+     * waking up. When called from another thread the callback is removed on the scheduler
+     * thread, in order with other posted work.
+     */
+    public void removeCallback(final Callback callback) {
+        if (Looper.myLooper() != mHandler.getLooper()) {
+            mHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    removeCallback(callback);
+                }
+            });
+            return;
+        }
+        mCallbacks.remove(callback);
+        if (mCallbacks.isEmpty()) {
+            mHandler.removeCallbacks(mFrameRunnable);
+            mHandler.removeCallbacks(mRequestRunnable);
+            mScheduled = false;
+        }
+    }
+
+    /**
+     * Ask for a frame at the next slot of the grid. Safe to call from any thread, as often as
+     * needed; requests made before the frame runs are merged.
+     */
+    public void requestFrame() {
+        if (!mFrameRequested.getAndSet(true)) {
+            mHandler.post(mRequestRunnable);
+        }
+    }
+
+    private final Runnable mRequestRunnable = new Runnable() {
+        @Override
+        public void run() {
+            if (!mCallbacks.isEmpty()) {
+                mRequestedFrames++;
+                scheduleAt(SystemClock.uptimeMillis());
+            }
+        }
+    };
+
+    private final Runnable mFrameRunnable = new Runnable() {
+        @Override
+        public void run() {
+            mScheduled = false;
+            mFrameRequested.set(false);
+
+            long frameTime = SystemClock.uptimeMillis();
+            long start = System.nanoTime();
+            long nextDelay = IDLE_INTERVAL_MILLIS;
+            // Callbacks may remove themselves while running.
+            for (int i = mCallbacks.size() - 1; i >= 0; i--) {
+                if (i < mCallbacks.size()) {
+                    nextDelay = Math.min(nextDelay, mCallbacks.get(i).doFrame(frameTime));
+                }
+            }
+            long elapsed = System.nanoTime() - start;
+
+            mFrames++;
+            mFrameNanos += elapsed;
+            if (elapsed > mMaxFrameNanos) {
+                mMaxFrameNanos = elapsed;
+            }
+            if (nextDelay > FRAME_INTERVAL_MILLIS) {
+                mIdleFrames++;
+            }
+            if (!mCallbacks.isEmpty()) {
+                scheduleAt(frameTime + Math.max(nextDelay, 1));
+            }
+        }
+    };
+
+    /**
+     * Schedule the frame at the first grid slot at or after {@code timeMillis}, unless one is
+     * already scheduled sooner.
+     */
+    private void scheduleAt(long timeMillis) {
+        long slots = (timeMillis - mGridOriginMillis + FRAME_INTERVAL_MILLIS - 1)
+                / FRAME_INTERVAL_MILLIS;
+        long slotMillis = mGridOriginMillis + slots * FRAME_INTERVAL_MILLIS;
+        if (mScheduled && mScheduledMillis <= slotMillis) {
+            return;
+        }
+        mHandler.removeCallbacks(mFrameRunnable);
+        mHandler.postAtTime(mFrameRunnable, slotMillis);
+        mScheduledMillis = slotMillis;
+        mScheduled = true;
+    }
+
+    /**
+     * Number of frames produced, which is also the number of timer wakeups.
+     */
+    public long getFrameCount() {
+        return mFrames;
+    }
+
+    /**
+     * Number of frames brought forward by {@link #requestFrame()}.
+     */
+    public long getRequestedFrameCount() {
+        return mRequestedFrames;
+    }
+
+    /**
+     * Number of frames after which the scheduler skipped at least one frame slot, as no callback
+     * needed the next one.
+     */
+    public long getIdleFrameCount() {
+        return mIdleFrames;
+    }
+
+    public double getMeanFrameMillis() {
+        long frames = mFrames;
+        return frames == 0 ? 0 : mFrameNanos / 1e6 / frames;
+    }
+
+    public double getMaxFrameMillis() {
+        return mMaxFrameNanos / 1e6;
+    }
+
+    @Override
+    public String toString() {
+        return "wakeups=" + mFrames
+                + " requested=" + mRequestedFrames
+                + " idle=" + mIdleFrames
+                + " frame mean=" + String.format("%.2f", getMeanFrameMillis()) + "ms"
+                + " max=" + String.format("%.2f", getMaxFrameMillis()) + "ms";
+    }
+}
@@ -0,0 +1,193 @@
+package me.izen.glasssensor.app;
+
+import android.content.BroadcastReceiver;
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.ServiceConnection;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.IBinder;
+import android.os.Message;
+import android.os.Messenger;
+import android.os.RemoteException;
+import android.os.SystemClock;
+import android.util.Log;
+import me.izen.glasssensor.core.SampleSink;
+import me.izen.glasssensor.core.SensorChannels;
+import me.izen.glasssensor.core.SensorFrame;
+import me.izen.glasssensor.core.SensorTransport;
+
+/**
+ * The IntentTunnel path: binds to its {@code RouterService}, has it launch
+ * {@code SensordroneControl}, and receives the readings it relays as sensor-update broadcasts.
+ *
+ * Broadcasts are handled on a dedicated ingestion thread so a burst of readings never delays the
+ * frame. Service callbacks arrive on the main thread.
+ */
+public class IntentTunnelTransport implements SensorTransport {
+    private static final String TAG = IntentTunnelTransport.class.getName();
+
+    /** RouterService message asking it to start the activity in {@link Message#obj}. */
+    private static final int MSG_START_ACTIVITY = 1002;
+    /**
+     * RouterService message relaying sampling rates to the drone control app, in Hz per raw
+     * channel under {@link #KEY_RATES}. Routers and apps that do not know it ignore it.
+     */
+    private static final int MSG_SET_RATES = 1003;
+    private static final String KEY_RATES = "rates";
+
+    /**
+     * Interface to receive readings older senders sent as text that is not a number.
+     */
+    public interface TextSink {
+        /** Called on the ingestion thread. */
+        public void onText(int channel, String text);
+    }
+
+    private final Context mContext;
+    private final HandlerThread mIngestThread = new HandlerThread("SensorIngest");
+    private SampleSink mSink;
+    private Callback mCallback;
+    private TextSink mTextSink;
+    private boolean mReceiverRegistered;
+
+    private Messenger mService;
+    private boolean mBindRequested;
+
+    private final BroadcastReceiver mReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            byte[] frame = intent.getByteArrayExtra(SensorFrame.EXTRA_FRAME);
+            if (frame != null) {
+                if (SensorFrame.decode(frame, mSink) < 0) {
+                    Log.w(TAG, "Dropping malformed sensor frame of " + frame.length + " bytes");
+                }
+                return;
+            }
+
+            // Fall back to the single String reading sent by older senders.
+            int id = intent.getIntExtra("id", -1);
+            String data = intent.getStringExtra("data");
+
+            // Derived channels are computed here, never sent.
+            if (SensorChannels.isRaw(id) && data != null) {
+                try {
+                    mSink.onSample(id, SystemClock.elapsedRealtime(), Float.parseFloat(data));
+                } catch (NumberFormatException e) {
+                    // Not a number, show it as is.
+                    if (mTextSink != null) {
+                        mTextSink.onText(id, data);
+                    }
+                }
+            }
+        }
+    };
+
+    private final ServiceConnection mConnection = new ServiceConnection() {
+        public void onServiceConnected(ComponentName className, IBinder service) {
+            Log.d(TAG, "onServiceConnected()");
+            mService = new Messenger(service);
+            mCallback.onConnected();
+        }
+
+        public void onServiceDisconnected(ComponentName className) {
+            Log.e(TAG, "onServiceDisconnected()");
+            mService = null;
+            mCallback.onDisconnected();
+        }
+    };
+
+    public IntentTunnelTransport(Context context) {
+        mContext = context;
+    }
+
+    /**
+     * Set where non-numeric text readings go. Must be called before {@link #open}.
+     */
+    public void setTextSink(TextSink sink) {
+        mTextSink = sink;
+    }
+
+    @Override
+    public void open(SampleSink sink, Callback callback) {
+        mSink = sink;
+        mCallback = callback;
+        mIngestThread.start();
+        mContext.registerReceiver(mReceiver, new IntentFilter(SensorFrame.ACTION_SENSOR_UPDATE),
+                null, new Handler(mIngestThread.getLooper()));
+        mReceiverRegistered = true;
+    }
+
+    @Override
+    public boolean connect() {
+        disconnect();
+        Intent intent = new Intent();
+        intent.setClassName(mContext.getString(R.string.intenttunnel_package_name),
+                mContext.getString(R.string.intenttunnel_class_name));
+        try {
+            mBindRequested = mContext.bindService(intent, mConnection, Context.BIND_AUTO_CREATE);
+        } catch (SecurityException e) {
+            Log.e(TAG, "Cannot bind to the router service", e);
+            mBindRequested = false;
+        }
+        return mBindRequested;
+    }
+
+    @Override
+    public boolean requestStream() {
+        if (mService == null) {
+            return false;
+        }
+        Intent start = new Intent("android.intent.action.MAIN");
+        start.setClassName(mContext.getString(R.string.sensordrone_package_name),
+                mContext.getString(R.string.sensordrone_class_name));
+        start.setFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
+        try {
+            mService.send(Message.obtain(null, MSG_START_ACTIVITY, start));
+            return true;
+        } catch (RemoteException e) {
+            Log.e(TAG, "Failed to launch the drone app", e);
+            return false;
+        }
+    }
+
+    @Override
+    public boolean requestRates(float[] hz) {
+        if (mService == null) {
+            return false;
+        }
+        Message message = Message.obtain(null, MSG_SET_RATES);
+        Bundle data = new Bundle();
+        data.putFloatArray(KEY_RATES, hz.clone());
+        message.setData(data);
+        try {
+            mService.send(message);
+            return true;
+        } catch (RemoteException e) {
+            Log.e(TAG, "Failed to send the sampling rates", e);
+            return false;
+        }
+    }
+
+    @Override
+    public void disconnect() {
+        if (mBindRequested) {
+            mContext.unbindService(mConnection);
+            mBindRequested = false;
+        }
+        mService = null;
+    }
+
+    @Override
+    public void close() {
+        disconnect();
+        if (mReceiverRegistered) {
+            mContext.unregisterReceiver(mReceiver);
+            mReceiverRegistered = false;
+            mIngestThread.quit();
+        }
+    }
+}
@@ -11,19 +11,35 @@ import android.os.IBinder;
 import android.os.Message;
 import android.os.Messenger;
 import android.os.RemoteException;
+import android.os.SystemClock;
 import android.util.Log;
 import android.view.Menu;
 import android.view.MenuInflater;
 import android.view.MenuItem;
+import android.view.SubMenu;
 import android.widget.TextView;
+import me.izen.glasssensor.core.DisplayLatency;
+import me.izen.glasssensor.core.LatencyHistogram;
+import me.izen.glasssensor.core.MetricsRegistry;
+import me.izen.glasssensor.core.RollingStats;
+import me.izen.glasssensor.core.SensorChannels;
+import me.izen.glasssensor.core.SensorSession;
+import me.izen.glasssensor.core.WindowStats;
 
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
 import java.net.BindException;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Created by joe on 2/20/14.
  */
 public class MenuActivity extends Activity {
     private static String TAG = MenuActivity.class.getName();
+    private static final String LATENCY_FILE = "latency.txt";
+    private static final String METRICS_FILE = "metrics.txt";
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -58,14 +74,144 @@ public class MenuActivity extends Activity {
         return true;
     }
 
+    @Override
+    public boolean onPrepareOptionsMenu(Menu menu) {
+        menu.findItem(R.id.next_device).setVisible(SensorSession.getDevices().length > 1);
+
+        SubMenu statistics = menu.findItem(R.id.statistics).getSubMenu();
+        statistics.clear();
+        RollingStats stats = SensorSession.get().getStats();
+        WindowStats window = new WindowStats();
+        for (int channel = 0; channel < SensorChannels.COUNT; channel++) {
+            if (!stats.isTracked(channel)) {
+                continue;
+            }
+            for (int i = 0; i < stats.getWindowCount(); i++) {
+                if (stats.read(channel, i, window)) {
+                    statistics.add(getString(R.string.statistics_line,
+                            SensorChannels.getName(channel),
+                            formatWindow(stats.getWindowMillis(i)),
+                            window.mean, window.min, window.max, window.stddev,
+                            window.ratePerSecond));
+                }
+            }
+        }
+        if (statistics.size() == 0) {
+            statistics.add(R.string.statistics_empty);
+        }
+
+        SubMenu latency = menu.findItem(R.id.latency).getSubMenu();
+        latency.clear();
+        DisplayLatency display = SensorSession.get().getDisplayLatency();
+        for (int channel = 0; channel < SensorChannels.COUNT; channel++) {
+            LatencyHistogram histogram = display.getHistogram(channel);
+            if (histogram.getCount() == 0) {
+                continue;
+            }
+            latency.add(getString(R.string.latency_line, SensorChannels.getName(channel),
+                    histogram.getValueAtPercentile(50) / 1000f,
+                    histogram.getValueAtPercentile(99) / 1000f,
+                    histogram.getMax() / 1000f,
+                    display.getArrivalRate(channel)));
+        }
+        if (latency.size() == 0) {
+            latency.add(R.string.statistics_empty);
+        } else {
+            latency.add(getString(R.string.latency_frames, display.getFrameCount()));
+        }
+        return super.onPrepareOptionsMenu(menu);
+    }
+
+    /**
+     * Writes the display latency histograms of every drone to the app's files dir, each after a
+     * {@code device=N} line, for
+     * {@code adb shell run-as me.izen.glasssensor.app cat files/latency.txt}.
+     */
+    private void dumpLatency() {
+        File file = new File(getFilesDir(), LATENCY_FILE);
+        try {
+            Writer out = new FileWriter(file);
+            try {
+                int[] devices = SensorSession.getDevices();
+                if (devices.length == 0) {
+                    devices = new int[] {0};
+                }
+                for (int device : devices) {
+                    out.write("device=" + device + "\n");
+                    SensorSession.get(device).getDisplayLatency().dump(out);
+                }
+            } finally {
+                out.close();
+            }
+            Log.i(TAG, "Display latency dumped to " + file);
+        } catch (IOException e) {
+            Log.e(TAG, "Cannot dump the display latency to " + file, e);
+        }
+    }
+
+    /**
+     * Writes every metric in the {@link MetricsRegistry} to the app's files dir, after an
+     * {@code uptime_ms N} line, for
+     * {@code adb shell run-as me.izen.glasssensor.app cat files/metrics.txt}.
+     */
+    private void dumpMetrics() {
+        File file = new File(getFilesDir(), METRICS_FILE);
+        try {
+            Writer out = new FileWriter(file);
+            try {
+                out.write("uptime_ms " + SystemClock.uptimeMillis() + "\n");
+                MetricsRegistry.get().dump(out);
+            } finally {
+                out.close();
+            }
+            Log.i(TAG, "Metrics dumped to " + file);
+        } catch (IOException e) {
+            Log.e(TAG, "Cannot dump the metrics to " + file, e);
+        }
+    }
+
+    private static String formatWindow(long millis) {
+        if (millis >= TimeUnit.HOURS.toMillis(1)) {
+            return TimeUnit.MILLISECONDS.toHours(millis) + " h";
+        }
+        return TimeUnit.MILLISECONDS.toMinutes(millis) + " min";
+    }
+
     @Override
     public boolean onOptionsItemSelected(MenuItem item) {
         Log.d(TAG, "onOptionsItemSelected()");
         // Handle item selection.
         switch (item.getItemId()) {
+            case R.id.next_device:
+                startService(new Intent(this, SensorService.class)
+                        .setAction(SensorService.ACTION_NEXT_DEVICE));
+                return true;
             case R.id.stop:
                 stopService(new Intent(this, SensorService.class));
                 return true;
+            case R.id.dump_latency:
+                dumpLatency();
+                return true;
+            case R.id.hud:
+                startService(new Intent(this, SensorService.class)
+                        .setAction(SensorService.ACTION_TOGGLE_HUD));
+                return true;
+            case R.id.centiseconds:
+                startService(new Intent(this, SensorService.class)
+                        .setAction(SensorService.ACTION_TOGGLE_CENTI_SECONDS));
+                return true;
+            case R.id.dump_metrics:
+                dumpMetrics();
+                return true;
+            case R.id.benchmark_render:
+                CardRenderBenchmark.start(this);
+                return true;
+            case R.id.export_csv:
+                SessionExportService.start(this, SessionExportService.FORMAT_CSV);
+                return true;
+            case R.id.export_binary:
+                SessionExportService.start(this, SessionExportService.FORMAT_BINARY);
+                return true;
             default:
                 return super.onOptionsItemSelected(item);
         }
@@ -0,0 +1,195 @@
+package me.izen.glasssensor.app;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.os.Debug;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.TypedValue;
+import me.izen.glasssensor.core.LatencyHistogram;
+import me.izen.glasssensor.core.MetricsRegistry;
+
+/**
+ * Overlay of how the card keeps up, drawn by {@link SensorDrawer} over its top left corner while
+ * turned on from the menu:
+ * <pre>
+ *   58 fps  p95 4.2 ms
+ *   2000 samples/s
+ *   GC 12 (+0)  alloc 3 KB/s
+ *   main lag 2 ms (max 41)
+ * </pre>
+ * Frame rate, frame time and ingest rate cover the last second. GC runs and allocations are those
+ * since the previous frame, counted with {@link Debug#startAllocCounting()} while the overlay is
+ * on. Main lag is how late a runnable posted to the main thread every
+ * {@link #PROBE_INTERVAL_MILLIS} runs.
+ *
+ * Every value is also published to the {@link MetricsRegistry}, so a dump includes it. Render
+ * thread only, except for the lag probe, which runs on the main thread.
+ */
+class PerformanceHud {
+
+    private static final long WINDOW_MILLIS = 1000;
+    static final long PROBE_INTERVAL_MILLIS = 250;
+    private static final float TEXT_SP = 14;
+    private static final float PADDING_DP = 6;
+    private static final int LINES = 4;
+    private static final int BACKGROUND = Color.argb(0xc0, 0, 0, 0);
+
+    private static final MetricsRegistry sMetrics = MetricsRegistry.get();
+    private static final int METRIC_FPS = sMetrics.register("hud_fps");
+    private static final int METRIC_FRAME_P95_US = sMetrics.register("hud_frame_p95_us");
+    private static final int METRIC_INGEST_RATE = sMetrics.register("hud_samples_per_second");
+    private static final int METRIC_GC_COUNT = sMetrics.register("hud_gc_count");
+    private static final int METRIC_ALLOC_BYTES = sMetrics.register("hud_alloc_bytes");
+    private static final int METRIC_MAIN_LAG_MS = sMetrics.register("main_lag_ms");
+    private static final int METRIC_MAIN_LAG_MAX_MS = sMetrics.register("main_lag_max_ms");
+
+    private final Paint mTextPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint mBackgroundPaint = new Paint();
+    private final Rect mBounds = new Rect();
+    private final float mPadding;
+    private final float mLineHeight;
+    private final float mAscent;
+    private final StringBuilder[] mLines = new StringBuilder[LINES];
+
+    // Frame times of the current window.
+    private final LatencyHistogram mFrameTimes = new LatencyHistogram();
+    private long mWindowStartMillis;
+    private long mWindowFrames;
+    private long mWindowSamples;
+    private long mFps;
+    private long mFrameP95Micros;
+    private long mIngestRate;
+
+    private long mLastFrameMillis;
+    private int mLastGcCount;
+    private int mLastAllocSize;
+
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private volatile long mProbeDueMillis;
+    private final Runnable mProbe = new Runnable() {
+        @Override
+        public void run() {
+            long lag = SystemClock.uptimeMillis() - mProbeDueMillis;
+            sMetrics.set(METRIC_MAIN_LAG_MS, lag);
+            sMetrics.setMax(METRIC_MAIN_LAG_MAX_MS, lag);
+            scheduleProbe();
+        }
+    };
+
+    PerformanceHud(Context context) {
+        float textSize = TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_SP, TEXT_SP,
+                context.getResources().getDisplayMetrics());
+        mPadding = TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP, PADDING_DP,
+                context.getResources().getDisplayMetrics());
+        mTextPaint.setColor(Color.WHITE);
+        mTextPaint.setTextSize(textSize);
+        mBackgroundPaint.setColor(BACKGROUND);
+        Paint.FontMetrics metrics = mTextPaint.getFontMetrics();
+        mLineHeight = metrics.descent - metrics.ascent;
+        mAscent = metrics.ascent;
+        for (int i = 0; i < LINES; i++) {
+            mLines[i] = new StringBuilder(32);
+        }
+        // Wide enough for the longest line with large values.
+        int width = (int) Math.ceil(mTextPaint.measureText("GC 99999 (+99)  alloc 99999 KB/s")
+                + 2 * mPadding);
+        mBounds.set(0, 0, width, (int) Math.ceil(LINES * mLineHeight + 2 * mPadding));
+    }
+
+    /**
+     * Start counting allocations and probing the main thread, from {@code samplesIngested}
+     * readings taken in so far.
+     */
+    void start(long samplesIngested) {
+        Debug.startAllocCounting();
+        mLastFrameMillis = mWindowStartMillis = SystemClock.uptimeMillis();
+        mLastGcCount = Debug.getGlobalGcInvocationCount();
+        mLastAllocSize = Debug.getGlobalAllocSize();
+        mWindowSamples = samplesIngested;
+        scheduleProbe();
+    }
+
+    /**
+     * Stop counting and probing. Any thread.
+     */
+    void stop() {
+        mMainHandler.removeCallbacks(mProbe);
+        Debug.stopAllocCounting();
+    }
+
+    private void scheduleProbe() {
+        mProbeDueMillis = SystemClock.uptimeMillis() + PROBE_INTERVAL_MILLIS;
+        mMainHandler.postAtTime(mProbe, mProbeDueMillis);
+    }
+
+    /**
+     * Region the overlay covers, to add to every frame's dirty region.
+     */
+    Rect getBounds() {
+        return mBounds;
+    }
+
+    /**
+     * Counts a frame that took {@code frameNanos} from locking the canvas to posting it.
+     */
+    void onFramePosted(long frameNanos) {
+        mFrameTimes.record(frameNanos / 1000);
+        mWindowFrames++;
+    }
+
+    /**
+     * Draws the overlay, updating its numbers first from the {@code samplesIngested} readings
+     * taken in so far.
+     */
+    void draw(Canvas canvas, long samplesIngested) {
+        long now = SystemClock.uptimeMillis();
+        long elapsed = now - mWindowStartMillis;
+        if (elapsed >= WINDOW_MILLIS) {
+            mFps = mWindowFrames * 1000 / elapsed;
+            mFrameP95Micros = mFrameTimes.getValueAtPercentile(95);
+            mIngestRate = (samplesIngested - mWindowSamples) * 1000 / elapsed;
+            mWindowSamples = samplesIngested;
+            mWindowFrames = 0;
+            mFrameTimes.reset();
+            mWindowStartMillis = now;
+            sMetrics.set(METRIC_FPS, mFps);
+            sMetrics.set(METRIC_FRAME_P95_US, mFrameP95Micros);
+            sMetrics.set(METRIC_INGEST_RATE, mIngestRate);
+        }
+
+        int gcCount = Debug.getGlobalGcInvocationCount();
+        int allocSize = Debug.getGlobalAllocSize();
+        long interval = Math.max(1, now - mLastFrameMillis);
+        long allocRate = (long) (allocSize - mLastAllocSize) * 1000 / interval;
+        sMetrics.set(METRIC_GC_COUNT, gcCount);
+        sMetrics.set(METRIC_ALLOC_BYTES, allocSize);
+
+        mLines[0].setLength(0);
+        mLines[0].append(mFps).append(" fps  p95 ").append(mFrameP95Micros / 1000).append('.')
+                .append(mFrameP95Micros / 100 % 10).append(" ms");
+        mLines[1].setLength(0);
+        mLines[1].append(mIngestRate).append(" samples/s");
+        mLines[2].setLength(0);
+        mLines[2].append("GC ").append(gcCount).append(" (+").append(gcCount - mLastGcCount)
+                .append(")  alloc ").append(allocRate / 1024).append(" KB/s");
+        mLines[3].setLength(0);
+        mLines[3].append("main lag ").append(sMetrics.get(METRIC_MAIN_LAG_MS))
+                .append(" ms (max ").append(sMetrics.get(METRIC_MAIN_LAG_MAX_MS)).append(')');
+        mLastFrameMillis = now;
+        mLastGcCount = gcCount;
+        mLastAllocSize = allocSize;
+
+        canvas.drawRect(mBounds, mBackgroundPaint);
+        float baseline = mBounds.top + mPadding - mAscent;
+        for (StringBuilder line : mLines) {
+            canvas.drawText(line, 0, line.length(), mBounds.left + mPadding, baseline,
+                    mTextPaint);
+            baseline += mLineHeight;
+        }
+    }
+}
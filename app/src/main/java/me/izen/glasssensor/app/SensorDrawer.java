@@ -1,136 +1,551 @@
 package me.izen.glasssensor.app;
 
 
-import android.content.ComponentName;
 import android.content.Context;
-import android.content.Intent;
-import android.content.ServiceConnection;
 import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Rect;
 import android.media.AudioManager;
 import android.media.SoundPool;
-import android.os.IBinder;
-import android.os.Message;
-import android.os.Messenger;
-import android.os.RemoteException;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
 import android.util.Log;
+import android.util.TypedValue;
 import android.view.SurfaceHolder;
 import android.view.View;
+import me.izen.glasssensor.core.MetricsRegistry;
+import me.izen.glasssensor.core.RenderStats;
+import me.izen.glasssensor.core.SamplingPlan;
+import me.izen.glasssensor.core.SensorChannels;
+import me.izen.glasssensor.core.SensorSession;
+import me.izen.glasssensor.core.SensorTransport;
+import me.izen.glasssensor.core.StartupTrace;
 
-import java.net.BindException;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 
 
 /**
  * Created by joe on 2/20/14.
+ *
+ * Draws the card on the live card's surface from a render thread of its own. The drawer is cheap
+ * to create so the card can be published right away: until the card's views are inflated and
+ * warmed up on a background thread, the surface shows a placeholder, and the transports are only
+ * opened once the views can take readings. Each step is marked in a {@link StartupTrace}.
+ *
+ * The drawer also decides the sampling rates asked of the drones, with a {@link SamplingPlan}
+ * that knows whether the card is on screen.
+ *
+ * Frames are drawn by a {@link CardRenderer} unless direct rendering is turned off, or the
+ * renderer cannot be built, in which case the card's views draw themselves.
  */
 public class SensorDrawer implements SurfaceHolder.Callback {
 
 
     private static String TAG = SensorDrawer.class.getName();
-    private SurfaceHolder mHolder;
-    private final SensorView mSensorView;
-    private Context context;
-    private Messenger mService;
-    private boolean mBound;
-
-    private ServiceConnection mConnection = new ServiceConnection() {
-        public void onServiceConnected(ComponentName className, IBinder service) {
-            Log.d(TAG, "onServiceConnected()");
+    // Bounds how long the main thread blocks on the render thread when the surface goes away.
+    private static final long RENDER_WAIT_MILLIS = 500;
+    // Glass display, to lay the card out before the surface reports its size.
+    private static final int DEFAULT_WIDTH = 640;
+    private static final int DEFAULT_HEIGHT = 360;
+    private static final float PLACEHOLDER_TEXT_SP = 30;
 
-            mService = new Messenger(service);
+    private volatile SurfaceHolder mHolder;
+    // Set on the render thread once inflated and warmed up.
+    private volatile SensorView mSensorView;
+    private boolean mViewStarted;
+    private Context context;
+    private final StartupTrace mStartupTrace;
+    private final HandlerThread mRenderThread =
+            new HandlerThread("SensorRender", Process.THREAD_PRIORITY_DISPLAY);
+    private final Handler mRenderHandler;
+    private final Handler mMainHandler = new Handler();
+    private final FrameScheduler mScheduler;
+    private boolean mDirectRendering = true;
 
-            Intent start = new Intent("android.intent.action.MAIN");
-            start.setClassName(context.getString(R.string.sensordrone_package_name), context.getString(R.string.sensordrone_class_name));
-            start.setFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
-            try {
-                mService.send(Message.obtain(null, 1002, start));
-                mBound = true;
-            } catch (RemoteException e) {
-                Log.e(TAG, "Failed: ", e);
-            }
-        }
+    // Owned by the main thread.
+    private SensorTransport[] mTransports;
+    private DroneConnection[] mDroneConnections;
+    private boolean mStopped;
+    private final SamplingPlan mSamplingPlan = SamplingPlan.createDefault();
+    private final float[] mRates = new float[SensorChannels.RAW_COUNT];
 
-        public void onServiceDisconnected(ComponentName className) {
-            Log.e(TAG, "onServiceDisconnected()");
+    // Owned by the render thread.
+    private int mSurfaceWidth;
+    private int mSurfaceHeight;
+    private final Rect mLockRect = new Rect();
+    private final RenderStats mRenderStats = new RenderStats();
+    private Paint mPlaceholderPaint;
+    private boolean mStartupLogged;
+    private CardRenderer mRenderer;
+    // Set on the render thread, stopped from any.
+    private volatile PerformanceHud mHud;
 
-            mService = null;
-            mBound = false;
-        }
-    };
+    private static final MetricsRegistry sMetrics = MetricsRegistry.get();
+    private static final int METRIC_FRAMES_DRAWN = sMetrics.register("frames_drawn");
+    private static final int METRIC_FRAMES_SKIPPED = sMetrics.register("frames_skipped");
+    private static final int METRIC_FRAME_NANOS = sMetrics.register("frame_nanos_total");
 
-    public SensorDrawer(Context context) {
+    /**
+     * Starts the render thread only; see {@link #open} for the rest. Main thread.
+     */
+    public SensorDrawer(Context context, StartupTrace startupTrace) {
         Log.d(TAG, "SensorDrawer()");
         this.context = context;
-        try {
-            Intent in = new Intent();
-            in.setClassName(context.getString(R.string.intenttunnel_package_name), context.getString(R.string.intenttunnel_class_name));
-            if (!this.context.bindService(in, mConnection, Context.BIND_AUTO_CREATE)) {
-                throw new BindException("failed to bind");
+        mStartupTrace = startupTrace;
+
+        mRenderThread.start();
+        mRenderHandler = new Handler(mRenderThread.getLooper());
+        mScheduler = new FrameScheduler(mRenderThread.getLooper());
+    }
+
+    /**
+     * Set whether frames are drawn by a {@link CardRenderer} rather than by the card's views.
+     * Main thread, before {@link #open}.
+     */
+    public void setDirectRendering(boolean direct) {
+        mDirectRendering = direct;
+    }
+
+    /**
+     * Builds the card on a background thread, then opens {@code transports} into it on the main
+     * thread. Returns right away. Main thread.
+     *
+     * @param transports transports bringing in the readings, one per link to the drones, owned by
+     *                   the drawer from now on
+     */
+    public void open(final SensorTransport... transports) {
+        Thread warmup = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                final SensorView view = createSensorView();
+                final CardRenderer renderer = createRenderer(view);
+                mStartupTrace.mark(StartupTrace.VIEW_READY);
+                mRenderHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        install(view, renderer);
+                    }
+                });
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        openTransports(view, transports);
+                    }
+                });
             }
-        } catch (Exception e) {
-            Log.e(TAG, "onStart error", e);
-        }
+        }, "SensorWarmup");
+        warmup.start();
+    }
+
+    /**
+     * Inflates the card, runs its formatting once and lays it out for the Glass display, off the
+     * main and render threads. The view is not attached to any window, so it is only ever touched
+     * by one thread at a time.
+     */
+    private SensorView createSensorView() {
+        final SensorView view = new SensorView(context);
+        view.prewarm();
+        view.setFrameScheduler(mScheduler);
+        view.setStartupTrace(mStartupTrace);
+        view.setListener(new SensorView.ChangeListener() {
 
-        mSensorView = new SensorView(this.context);
-        mSensorView.setListener(new SensorView.ChangeListener() {
+            @Override
+            public void onChange(Rect dirty) {
+                draw(view, dirty);
+            }
 
             @Override
-            public void onChange() {
-                draw(mSensorView);
+            public void onUnchanged() {
+                mRenderStats.onFrameSkipped(getSurfacePixels());
+                sMetrics.increment(METRIC_FRAMES_SKIPPED);
             }
         });
-        mSensorView.setForceStart(true);
-
+        view.setForceStart(true);
+        layout(view, DEFAULT_WIDTH, DEFAULT_HEIGHT);
+        return view;
     }
 
-    @Override
-    public void surfaceChanged(SurfaceHolder holder, int format, int width, int height) {
-        Log.d(TAG, "surfaceChanged()");
-        // Measure and layout the view with the canvas dimensions.
+    private static void layout(SensorView view, int width, int height) {
         int measuredWidth = View.MeasureSpec.makeMeasureSpec(width, View.MeasureSpec.EXACTLY);
         int measuredHeight = View.MeasureSpec.makeMeasureSpec(height, View.MeasureSpec.EXACTLY);
+        view.measure(measuredWidth, measuredHeight);
+        view.layout(0, 0, view.getMeasuredWidth(), view.getMeasuredHeight());
+    }
+
+    /**
+     * Builds the renderer of the laid out {@code view} and has the view stop laying out its text,
+     * or returns null to leave the drawing to the view. From the thread owning the view.
+     */
+    private CardRenderer createRenderer(SensorView view) {
+        if (!mDirectRendering) {
+            return null;
+        }
+        try {
+            CardRenderer renderer = new CardRenderer(view);
+            view.setDirectRendering(true);
+            return renderer;
+        } catch (OutOfMemoryError e) {
+            Log.w(TAG, "No room for the card renderer, drawing the views instead", e);
+            view.setDirectRendering(false);
+            return null;
+        }
+    }
 
-        mSensorView.measure(measuredWidth, measuredHeight);
-        mSensorView.layout(
-                0, 0, mSensorView.getMeasuredWidth(), mSensorView.getMeasuredHeight());
+    /**
+     * Lays the card out again at {@code width} x {@code height}, rebuilding its renderer for the
+     * new size. Render thread.
+     */
+    private void relayout(SensorView view, int width, int height) {
+        layout(view, width, height);
+        if (mRenderer != null && !mRenderer.matches(view)) {
+            mRenderer.release();
+            mRenderer = createRenderer(view);
+        }
+    }
+
+    /**
+     * Replaces the placeholder with the card. Render thread.
+     */
+    private void install(SensorView view, CardRenderer renderer) {
+        mRenderer = renderer;
+        if (mSurfaceWidth != 0 && (mSurfaceWidth != DEFAULT_WIDTH
+                || mSurfaceHeight != DEFAULT_HEIGHT)) {
+            relayout(view, mSurfaceWidth, mSurfaceHeight);
+        }
+        mSensorView = view;
+        view.invalidateAll();
+        startViewIfReady();
+    }
+
+    /**
+     * Opens the transports into the card and starts keeping the links up. Main thread.
+     */
+    private void openTransports(SensorView view, SensorTransport[] transports) {
+        if (mStopped) {
+            for (SensorTransport transport : transports) {
+                transport.close();
+            }
+            return;
+        }
+        mTransports = transports;
+        mSamplingPlan.getRates(mRates);
+        // Each link has its own connection state and ingestion thread.
+        mDroneConnections = new DroneConnection[transports.length];
+        for (int i = 0; i < transports.length; i++) {
+            SensorTransport transport = transports[i];
+            if (transport instanceof IntentTunnelTransport) {
+                ((IntentTunnelTransport) transport).setTextSink(view.getTextSink());
+            }
+            mDroneConnections[i] = new DroneConnection(transport);
+            mDroneConnections[i].requestRates(mRates);
+            transport.open(mDroneConnections[i].watch(view.createIngestSink()),
+                    mDroneConnections[i].getTransportCallback());
+            mDroneConnections[i].start();
+        }
+        mStartupTrace.mark(StartupTrace.TRANSPORT_OPEN);
+    }
+
+    /**
+     * Starts the card's chronometer once both the card and the surface exist, from whichever
+     * thread completes the pair.
+     */
+    private synchronized void startViewIfReady() {
+        SensorView view = mSensorView;
+        if (view != null && mHolder != null && !mViewStarted) {
+            view.start();
+            mViewStarted = true;
+        }
+    }
+
+    private synchronized void stopView() {
+        SensorView view = mSensorView;
+        if (view != null && mViewStarted) {
+            view.stop();
+            mViewStarted = false;
+        }
+    }
+
+    @Override
+    public void surfaceChanged(SurfaceHolder holder, int format, final int width, final int height) {
+        Log.d(TAG, "surfaceChanged()");
+        mRenderHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                mSurfaceWidth = width;
+                mSurfaceHeight = height;
+                SensorView view = mSensorView;
+                if (view == null) {
+                    drawPlaceholder();
+                    return;
+                }
+                // Measure and layout the view with the canvas dimensions.
+                relayout(view, width, height);
+                view.invalidateAll();
+            }
+        });
     }
 
     @Override
     public void surfaceCreated(SurfaceHolder holder) {
         Log.d(TAG, "Surface created");
         mHolder = holder;
-        mSensorView.start();
+        startViewIfReady();
+        mSamplingPlan.setAllDisplayed(true);
+        updateRates();
     }
 
     @Override
     public void surfaceDestroyed(SurfaceHolder holder) {
         Log.d(TAG, "Surface destroyed");
-        mSensorView.stop();
-        mHolder = null;
+        stopView();
+        mSamplingPlan.setAllDisplayed(false);
+        updateRates();
+        // The surface is gone once we return, so wait for any frame in flight to be posted.
+        runOnRenderThreadAndWait(new Runnable() {
+            @Override
+            public void run() {
+                mHolder = null;
+            }
+        });
+        Log.i(TAG, "Render stats: " + mRenderStats);
+        Log.i(TAG, "Startup: " + mStartupTrace);
+        SensorView view = mSensorView;
+        for (int device : SensorSession.getDevices()) {
+            Log.i(TAG, "Coalesced readings of drone " + device + ": "
+                    + (view == null ? null : view.getSlots(device)));
+        }
+        Log.i(TAG, "Frame scheduler: " + mScheduler);
+        Log.i(TAG, "Render thread mean frame time: "
+                + String.format("%.2f", mScheduler.getMeanFrameMillis()) + "ms");
     }
 
     public void stop() {
         Log.d(TAG, "stop()");
-        mSensorView.stop();
-        if (mBound) {
-            this.context.unbindService(mConnection);
-            mBound = false;
+        mStopped = true;
+        stopView();
+        PerformanceHud hud = mHud;
+        if (hud != null) {
+            hud.stop();
+        }
+        if (mTransports != null) {
+            for (int i = 0; i < mTransports.length; i++) {
+                mDroneConnections[i].stop();
+                mTransports[i].close();
+            }
         }
+        mRenderThread.quit();
     }
 
     /**
-     * Draws the view in the SurfaceHolder's canvas.
+     * Runs {@code runnable} on the render thread after everything already queued there, and
+     * waits for it to finish.
      */
-    private void draw(View view) {
+    private void runOnRenderThreadAndWait(final Runnable runnable) {
+        final CountDownLatch done = new CountDownLatch(1);
+        boolean posted = mRenderHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                runnable.run();
+                done.countDown();
+            }
+        });
+        if (!posted) {
+            // The render thread already quit, nothing can be in flight.
+            runnable.run();
+            return;
+        }
+        try {
+            if (!done.await(RENDER_WAIT_MILLIS, TimeUnit.MILLISECONDS)) {
+                Log.w(TAG, "Render thread did not finish within " + RENDER_WAIT_MILLIS + "ms");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Get the plan deciding the sampling rates; call {@link #updateRates()} after changing it.
+     * Main thread.
+     */
+    public SamplingPlan getSamplingPlan() {
+        return mSamplingPlan;
+    }
+
+    /**
+     * Asks every drone for the rates of the sampling plan, if they changed. Main thread.
+     */
+    public void updateRates() {
+        mSamplingPlan.getRates(mRates);
+        if (mDroneConnections != null) {
+            for (DroneConnection connection : mDroneConnections) {
+                connection.requestRates(mRates);
+            }
+        }
+    }
+
+    /**
+     * Switch the card to the next drone, then to the mean of all of them.
+     */
+    public void showNextDevice() {
+        mRenderHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                SensorView view = mSensorView;
+                if (view != null) {
+                    view.showNextDevice();
+                }
+            }
+        });
+    }
+
+    /**
+     * Show the chronometer's centiseconds, or hide them if shown so the card can idle between
+     * readings.
+     */
+    public void toggleCentiSeconds() {
+        mRenderHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                SensorView view = mSensorView;
+                if (view != null) {
+                    view.setCentiSecondsVisible(!view.isCentiSecondsVisible());
+                }
+            }
+        });
+    }
+
+    /**
+     * Show the {@link PerformanceHud} over the card, or hide it if shown.
+     */
+    public void toggleHud() {
+        mRenderHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                PerformanceHud hud = mHud;
+                SensorView view = mSensorView;
+                if (hud == null) {
+                    hud = new PerformanceHud(context);
+                    hud.start(view != null ? view.getIngestedCount() : 0);
+                    mHud = hud;
+                } else {
+                    mHud = null;
+                    hud.stop();
+                }
+                if (view != null) {
+                    view.invalidateAll();
+                    mScheduler.requestFrame();
+                }
+            }
+        });
+    }
+
+    /**
+     * Get the frame and pixel counters of this drawer.
+     */
+    public RenderStats getRenderStats() {
+        return mRenderStats;
+    }
+
+    private long getSurfacePixels() {
+        return (long) mSurfaceWidth * mSurfaceHeight;
+    }
+
+    /**
+     * Draws the {@code dirty} region of the view in the SurfaceHolder's canvas. Render thread
+     * only.
+     */
+    private void draw(SensorView view, Rect dirty) {
+        if (mHolder == null) {
+            return;
+        }
+        long start = System.nanoTime();
+        PerformanceHud hud = mHud;
+        // lockCanvas() may grow the rectangle to what the surface actually needs repainted.
+        mLockRect.set(dirty);
+        if (hud != null) {
+            mLockRect.union(hud.getBounds());
+        }
         Canvas canvas;
         try {
-            canvas = mHolder.lockCanvas();
+            canvas = mHolder.lockCanvas(mLockRect);
         } catch (Exception e) {
             return;
         }
         if (canvas != null) {
-            view.draw(canvas);
+            if (mRenderer != null) {
+                mRenderer.draw(canvas);
+            } else {
+                view.draw(canvas);
+            }
+            if (hud != null) {
+                hud.draw(canvas, view.getIngestedCount());
+            }
             mHolder.unlockCanvasAndPost(canvas);
+            long frameNanos = System.nanoTime() - start;
+            sMetrics.increment(METRIC_FRAMES_DRAWN);
+            sMetrics.add(METRIC_FRAME_NANOS, frameNanos);
+            if (hud != null) {
+                hud.onFramePosted(frameNanos);
+            }
+            view.onFramePosted();
+            mRenderStats.onFrameDrawn(
+                    (long) mLockRect.width() * mLockRect.height(), getSurfacePixels());
+            onFramePosted(true);
+        }
+    }
+
+    /**
+     * Fills the surface with the placeholder shown until the card is ready. Render thread only.
+     */
+    private void drawPlaceholder() {
+        SurfaceHolder holder = mHolder;
+        if (holder == null) {
+            return;
+        }
+        Canvas canvas;
+        try {
+            canvas = holder.lockCanvas();
+        } catch (Exception e) {
+            return;
+        }
+        if (canvas == null) {
+            return;
+        }
+        if (mPlaceholderPaint == null) {
+            mPlaceholderPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+            mPlaceholderPaint.setColor(Color.WHITE);
+            mPlaceholderPaint.setTextAlign(Paint.Align.CENTER);
+            mPlaceholderPaint.setTextSize(TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_SP,
+                    PLACEHOLDER_TEXT_SP, context.getResources().getDisplayMetrics()));
+        }
+        canvas.drawColor(Color.BLACK);
+        canvas.drawText(context.getString(R.string.starting), canvas.getWidth() / 2,
+                canvas.getHeight() / 2, mPlaceholderPaint);
+        holder.unlockCanvasAndPost(canvas);
+        onFramePosted(false);
+    }
+
+    /**
+     * Marks the startup milestones reached by posting a frame, and logs the trace once the first
+     * reading came in. Render thread only.
+     */
+    private void onFramePosted(boolean card) {
+        mStartupTrace.mark(StartupTrace.FIRST_FRAME);
+        if (card) {
+            mStartupTrace.mark(StartupTrace.CARD_FRAME);
+        }
+        if (!mStartupLogged && mStartupTrace.isReached(StartupTrace.FIRST_SAMPLE)) {
+            mStartupLogged = true;
+            if (mStartupTrace.isOverBudget()) {
+                Log.w(TAG, "Slow start, budget first_frame="
+                        + StartupTrace.FIRST_FRAME_BUDGET_MILLIS + "ms first_sample="
+                        + StartupTrace.FIRST_SAMPLE_BUDGET_MILLIS + "ms: " + mStartupTrace);
+            } else {
+                Log.i(TAG, mStartupTrace.toString());
+            }
         }
     }
 
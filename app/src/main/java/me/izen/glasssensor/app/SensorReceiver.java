@@ -7,13 +7,38 @@ package me.izen.glasssensor.app;
 import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
+import android.os.SystemClock;
+import me.izen.glasssensor.core.DeviceSink;
+import me.izen.glasssensor.core.SensorChannels;
+import me.izen.glasssensor.core.SensorFrame;
 
 /**
  * Created by joe on 2/23/14.
+ *
+ * Feeds the sensor-update broadcasts to the alert rules of every drone the service is not already
+ * evaluating, as registered in the manifest; see {@link AlertMonitor}.
  */
 public class SensorReceiver extends BroadcastReceiver {
     @Override
     public void onReceive(Context context, Intent intent) {
-        // TODO
+        // Skips the drones whose session already evaluates their readings.
+        DeviceSink sink = AlertMonitor.get(context).getBroadcastSink();
+        byte[] frame = intent.getByteArrayExtra(SensorFrame.EXTRA_FRAME);
+        if (frame != null) {
+            SensorFrame.decode(frame, sink);
+            return;
+        }
+
+        // Single String reading sent by older senders.
+        int id = intent.getIntExtra("id", -1);
+        String data = intent.getStringExtra("data");
+        if (SensorChannels.isRaw(id) && data != null) {
+            sink.onDevice(0);
+            try {
+                sink.onSample(id, SystemClock.elapsedRealtime(), Float.parseFloat(data));
+            } catch (NumberFormatException e) {
+                // Not a reading the rules can use.
+            }
+        }
     }
 }
@@ -7,8 +7,28 @@ import com.google.android.glass.timeline.TimelineManager;
 import android.app.PendingIntent;
 import android.app.Service;
 import android.content.Intent;
+import android.os.Handler;
 import android.os.IBinder;
 import android.util.Log;
+import me.izen.glasssensor.core.AlertEngine;
+import me.izen.glasssensor.core.FrameServer;
+import me.izen.glasssensor.core.FrameSink;
+import me.izen.glasssensor.core.LoadGenerator;
+import me.izen.glasssensor.core.SampleSource;
+import me.izen.glasssensor.core.SamplingPlan;
+import me.izen.glasssensor.core.SensorChannels;
+import me.izen.glasssensor.core.SensorFrame;
+import me.izen.glasssensor.core.SensorSession;
+import me.izen.glasssensor.core.SensorTransport;
+import me.izen.glasssensor.core.SessionReplaySource;
+import me.izen.glasssensor.core.SocketTransport;
+import me.izen.glasssensor.core.StartupTrace;
+import me.izen.glasssensor.core.SyntheticSource;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Created by joe on 2/20/14.
@@ -18,7 +38,62 @@ public class SensorService extends Service {
     private static final String TAG = "SensorService";
     private static final String LIVE_CARD_TAG = "sensor";
 
+    /** Directory under the app's files dir holding one sub-directory per recorded session. */
+    public static final String SESSIONS_DIR = "sessions";
+    private static final String SESSION_PREFIX = "session-";
+    /**
+     * Follows the name of a session, then the drone number, in the names of the sessions recorded
+     * at the same time from drones other than the first.
+     */
+    public static final String DEVICE_SUFFIX = "-device";
+
+    /** Samples per second to generate instead of waiting for a drone, see {@link LoadGenerator}. */
+    public static final String EXTRA_LOAD_RATE = "load_rate";
+    /** Samples batched into each generated frame. */
+    public static final String EXTRA_LOAD_BATCH = "load_batch";
+    /** Frames sent back to back in each generated burst. */
+    public static final String EXTRA_LOAD_BURST = "load_burst";
+    /** Simulated drones to generate load for, each at the full rate, 1 by default. */
+    public static final String EXTRA_LOAD_DEVICES = "load_devices";
+    /** Session directory to replay instead of synthetic readings. */
+    public static final String EXTRA_REPLAY_SESSION = "replay_session";
+    /** Transport to read from, {@link #TRANSPORT_SOCKET} or the IntentTunnel by default. */
+    public static final String EXTRA_TRANSPORT = "transport";
+    /** Host of the socket bridge, loopback by default. */
+    public static final String EXTRA_SOCKET_HOST = "socket_host";
+    /** Port of the socket bridge, {@link SocketTransport#DEFAULT_PORT} by default. */
+    public static final String EXTRA_SOCKET_PORT = "socket_port";
+
+    /** How frames are drawn, {@link #RENDERER_VIEWS} or by a {@link CardRenderer} by default. */
+    public static final String EXTRA_RENDERER = "renderer";
+
+    public static final String TRANSPORT_SOCKET = "socket";
+    /** Let the card's views draw themselves, as before the {@link CardRenderer}. */
+    public static final String RENDERER_VIEWS = "views";
+
+    /** Start action switching the card to the next drone. */
+    public static final String ACTION_NEXT_DEVICE = "me.izen.glasssensor.app.action.NEXT_DEVICE";
+    /** Start action showing or hiding the {@link PerformanceHud}. */
+    public static final String ACTION_TOGGLE_HUD = "me.izen.glasssensor.app.action.TOGGLE_HUD";
+    /** Start action showing or hiding the chronometer's centiseconds. */
+    public static final String ACTION_TOGGLE_CENTI_SECONDS =
+            "me.izen.glasssensor.app.action.TOGGLE_CENTI_SECONDS";
+
+    private static final String LOOPBACK_HOST = "127.0.0.1";
+
+    private static final int DEFAULT_LOAD_BATCH = 50;
+    private static final long SYNTHETIC_PERIOD_SAMPLES = 600;
+
     private SensorDrawer mCallback;
+    private StartupTrace mStartupTrace;
+    private final Handler mHandler = new Handler();
+    // Guarded by this. Set while recording, with a recorder per drone seen so far.
+    private File mSessionsDir;
+    private String mSessionName;
+    private final SessionRecorder[] mRecorders = new SessionRecorder[SensorFrame.MAX_DEVICES];
+    private final List<LoadGenerator> mLoadGenerators = new ArrayList<LoadGenerator>();
+    // One per simulated drone when load testing over sockets.
+    private final List<FrameServer> mFrameServers = new ArrayList<FrameServer>();
 
     private TimelineManager mTimelineManager;
     private LiveCard mLiveCard;
@@ -26,6 +101,9 @@ public class SensorService extends Service {
 
     @Override
     public void onCreate() {
+        // The earliest the app hears of the voice trigger.
+        mStartupTrace = new StartupTrace();
+        mStartupTrace.mark(StartupTrace.TRIGGER);
         super.onCreate();
         mTimelineManager = TimelineManager.from(this);
     }
@@ -41,8 +119,9 @@ public class SensorService extends Service {
             Log.d(TAG, "Publishing LiveCard");
             mLiveCard = mTimelineManager.createLiveCard(LIVE_CARD_TAG);
 
-            // Keep track of the callback to remove it before unpublishing.
-            mCallback = new SensorDrawer(this);
+            // Keep track of the callback to remove it before unpublishing. It shows a placeholder
+            // until the card is built off the main thread.
+            mCallback = new SensorDrawer(this, mStartupTrace);
             mLiveCard.setDirectRenderingEnabled(true).getSurfaceHolder().addCallback(mCallback);
 
             Intent menuIntent = new Intent(this, MenuActivity.class);
@@ -50,16 +129,223 @@ public class SensorService extends Service {
             mLiveCard.setAction(PendingIntent.getActivity(this, 0, menuIntent, 0));
 
             mLiveCard.publish(PublishMode.REVEAL);
+            mStartupTrace.mark(StartupTrace.PUBLISHED);
             Log.d(TAG, "Done publishing LiveCard");
+
+            // Everything else waits until the card is up.
+            mCallback.setDirectRendering(intent == null
+                    || !RENDERER_VIEWS.equals(intent.getStringExtra(EXTRA_RENDERER)));
+            mCallback.open(createTransports(intent));
+            mHandler.post(mStartRecording);
+        } else if (intent != null && ACTION_NEXT_DEVICE.equals(intent.getAction())) {
+            mCallback.showNextDevice();
+        } else if (intent != null && ACTION_TOGGLE_HUD.equals(intent.getAction())) {
+            mCallback.toggleHud();
+        } else if (intent != null && ACTION_TOGGLE_CENTI_SECONDS.equals(intent.getAction())) {
+            mCallback.toggleCentiSeconds();
         } else {
             // TODO(alainv): Jump to the LiveCard when API is available.
         }
 
+        if (intent != null && mLoadGenerators.isEmpty()) {
+            startLoadGenerator(intent);
+        }
+
         return START_STICKY;
     }
 
+    // Records the session and evaluates alerts on it, once the card is published.
+    private final Runnable mStartRecording = new Runnable() {
+        @Override
+        public void run() {
+            synchronized (SensorService.this) {
+                mSessionsDir = new File(getFilesDir(), SESSIONS_DIR);
+                mSessionName = SESSION_PREFIX + System.currentTimeMillis();
+            }
+            // Drones that show up later are added on their first reading.
+            SensorSession.setDeviceListener(mDeviceListener);
+            addDevice(0);
+            for (int device : SensorSession.getDevices()) {
+                addDevice(device);
+            }
+
+            // Recorded channels need readings even off screen, alerted ones at full rate.
+            AlertEngine alerts = AlertMonitor.get(SensorService.this).getEngine(0);
+            SamplingPlan plan = mCallback.getSamplingPlan();
+            plan.setRecording(true);
+            for (int channel = 0; channel < SensorChannels.COUNT; channel++) {
+                plan.setAlerted(channel, alerts.getRuleCount(channel) > 0);
+            }
+            mCallback.updateRates();
+        }
+    };
+
+    private final SensorSession.DeviceListener mDeviceListener =
+            new SensorSession.DeviceListener() {
+                @Override
+                public void onDeviceAdded(SensorSession session) {
+                    addDevice(session.getDevice());
+                }
+            };
+
+    /**
+     * Records the readings of {@code device} and evaluates alerts on them, unless already done
+     * or not recording. Recordings have no device column, so each drone gets a session directory
+     * of its own. Any thread.
+     */
+    private synchronized void addDevice(int device) {
+        if (mSessionName == null || mRecorders[device] != null) {
+            return;
+        }
+        SessionRecorder recorder = new SessionRecorder(new File(mSessionsDir,
+                device == 0 ? mSessionName : mSessionName + DEVICE_SUFFIX + device));
+        recorder.start();
+        if (device == 0) {
+            recorder.compactPreviousSessions(mSessionsDir);
+        }
+        mRecorders[device] = recorder;
+        SensorSession session = SensorSession.get(device);
+        session.addSink(recorder);
+
+        AlertMonitor alerts = AlertMonitor.get(this);
+        session.addSink(alerts.getEngine(device));
+        alerts.setSessionFeeding(device, true);
+        Log.d(TAG, "Recording and alerting on drone " + device);
+    }
+
+    /**
+     * Stops recording every drone and hands their alerts back to {@link SensorReceiver}.
+     */
+    private synchronized void removeDevices() {
+        SensorSession.setDeviceListener(null);
+        mSessionName = null;
+        AlertMonitor alerts = AlertMonitor.get(this);
+        for (int device = 0; device < mRecorders.length; device++) {
+            SessionRecorder recorder = mRecorders[device];
+            if (recorder == null) {
+                continue;
+            }
+            SensorSession session = SensorSession.get(device);
+            session.removeSink(alerts.getEngine(device));
+            alerts.setSessionFeeding(device, false);
+            session.removeSink(recorder);
+            recorder.stop();
+            mRecorders[device] = null;
+        }
+    }
+
+    /**
+     * Create the transports the start intent asks for. A load test over the socket transport
+     * without a host gets an in-process {@link FrameServer} per simulated drone to feed, each read
+     * by a transport of its own, so its load report compares with the broadcast path, e.g.
+     * {@code adb shell am startservice -n me.izen.glasssensor.app/.SensorService
+     * --ei load_rate 2000 --es transport socket --ei load_devices 4}.
+     */
+    private SensorTransport[] createTransports(Intent intent) {
+        if (intent == null || !TRANSPORT_SOCKET.equals(intent.getStringExtra(EXTRA_TRANSPORT))) {
+            // Frames carry their device, so one tunnel serves every drone.
+            return new SensorTransport[] {new IntentTunnelTransport(this)};
+        }
+        String host = intent.getStringExtra(EXTRA_SOCKET_HOST);
+        int port = intent.getIntExtra(EXTRA_SOCKET_PORT, SocketTransport.DEFAULT_PORT);
+        if (host != null || intent.getIntExtra(EXTRA_LOAD_RATE, 0) == 0) {
+            if (host == null) {
+                host = LOOPBACK_HOST;
+            }
+            Log.d(TAG, "Reading from " + host + ":" + port);
+            return new SensorTransport[] {new SocketTransport(host, port)};
+        }
+
+        int devices = getLoadDevices(intent);
+        SensorTransport[] transports = new SensorTransport[devices];
+        for (int i = 0; i < devices; i++) {
+            FrameServer server;
+            try {
+                server = new FrameServer(0);
+            } catch (IOException e) {
+                Log.e(TAG, "Cannot start the frame servers, falling back to broadcasts", e);
+                stopFrameServers();
+                return new SensorTransport[] {new IntentTunnelTransport(this)};
+            }
+            server.start();
+            mFrameServers.add(server);
+            transports[i] = new SocketTransport(LOOPBACK_HOST, server.getPort());
+            Log.d(TAG, "Reading drone " + i + " from port " + server.getPort());
+        }
+        return transports;
+    }
+
+    private static int getLoadDevices(Intent intent) {
+        return Math.max(1, Math.min(SensorFrame.MAX_DEVICES,
+                intent.getIntExtra(EXTRA_LOAD_DEVICES, 1)));
+    }
+
+    /**
+     * Start feeding the card from a synthetic source or a recorded session when the start intent
+     * asks for it, e.g.
+     * {@code adb shell am startservice -n me.izen.glasssensor.app/.SensorService --ei load_rate 2000}.
+     */
+    private void startLoadGenerator(Intent intent) {
+        int rate = intent.getIntExtra(EXTRA_LOAD_RATE, 0);
+        if (rate == 0) {
+            return;
+        }
+        if (rate < LoadGenerator.MIN_RATE || rate > LoadGenerator.MAX_RATE) {
+            Log.e(TAG, "Ignoring load rate " + rate + " samples/s, outside "
+                    + LoadGenerator.MIN_RATE + "-" + LoadGenerator.MAX_RATE);
+            return;
+        }
+        int devices = getLoadDevices(intent);
+        FrameSink broadcasts = new BroadcastFrameSink(this);
+        for (int device = 0; device < devices; device++) {
+            SampleSource source;
+            String replay = intent.getStringExtra(EXTRA_REPLAY_SESSION);
+            if (replay != null) {
+                try {
+                    source = new SessionReplaySource(new File(replay), true);
+                } catch (IOException e) {
+                    Log.e(TAG, "Cannot replay " + replay, e);
+                    return;
+                }
+            } else {
+                source = new SyntheticSource(SYNTHETIC_PERIOD_SAMPLES, System.nanoTime());
+            }
+            FrameSink sink = device < mFrameServers.size() ? mFrameServers.get(device) : broadcasts;
+            LoadGenerator generator;
+            try {
+                generator = new LoadGenerator(source, sink, rate,
+                        intent.getIntExtra(EXTRA_LOAD_BATCH, DEFAULT_LOAD_BATCH),
+                        intent.getIntExtra(EXTRA_LOAD_BURST, 1), device);
+            } catch (IllegalArgumentException e) {
+                Log.e(TAG, "Cannot start the load generator", e);
+                return;
+            }
+            SensorSession.get(device).setLoadReport(generator.getReport());
+            generator.start();
+            mLoadGenerators.add(generator);
+        }
+        Log.d(TAG, "Started " + devices + " load generators at " + rate + " samples/s");
+    }
+
+    private void stopFrameServers() {
+        for (FrameServer server : mFrameServers) {
+            server.stop();
+        }
+        mFrameServers.clear();
+    }
+
     @Override
     public void onDestroy() {
+        for (int device = 0; device < mLoadGenerators.size(); device++) {
+            LoadGenerator generator = mLoadGenerators.get(device);
+            generator.stop();
+            Log.i(TAG, "Load report of drone " + device + ": " + generator.getReport());
+            SensorSession.get(device).setLoadReport(null);
+        }
+        mLoadGenerators.clear();
+        stopFrameServers();
+        mHandler.removeCallbacks(mStartRecording);
+        removeDevices();
         if (mLiveCard != null && mLiveCard.isPublished()) {
             Log.d(TAG, "Unpublishing LiveCard");
             if (mCallback != null) {
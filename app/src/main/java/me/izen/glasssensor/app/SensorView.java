@@ -3,19 +3,36 @@ package me.izen.glasssensor.app;
 
 
 
-import android.content.BroadcastReceiver;
 import android.content.Context;
-import android.content.Intent;
-import android.content.IntentFilter;
-import android.os.Handler;
+import android.graphics.Rect;
 import android.os.SystemClock;
 import android.util.AttributeSet;
 import android.util.Log;
 import android.view.LayoutInflater;
+import android.view.View;
 import android.widget.FrameLayout;
 import android.widget.TextView;
-
+import me.izen.glasssensor.core.ChannelFilter;
+import me.izen.glasssensor.core.DerivedChannel;
+import me.izen.glasssensor.core.DerivedPipeline;
+import me.izen.glasssensor.core.DeviceSink;
+import me.izen.glasssensor.core.DisplayLatency;
+import me.izen.glasssensor.core.FilterStage;
+import me.izen.glasssensor.core.LatestValueSlots;
+import me.izen.glasssensor.core.LoadReport;
+import me.izen.glasssensor.core.SampleSink;
+import me.izen.glasssensor.core.SensorChannels;
+import me.izen.glasssensor.core.SensorFrame;
+import me.izen.glasssensor.core.SensorSession;
+import me.izen.glasssensor.core.SensorStore;
+import me.izen.glasssensor.core.StartupTrace;
+import me.izen.glasssensor.core.ValueFormatter;
+
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 
 /**
@@ -25,40 +42,496 @@ public class SensorView extends FrameLayout {
     private static String TAG = SensorView.class.getName();
 
 
-    private Intent sensorUpdateIntent;
+    // Card state of every device that delivered readings, by device and in increasing order,
+    // added by the ingestion threads.
+    private final AtomicReferenceArray<DeviceState> mDevicesById =
+            new AtomicReferenceArray<DeviceState>(SensorFrame.MAX_DEVICES);
+    private volatile DeviceState[] mDevices = new DeviceState[0];
 
+    private final AtomicReferenceArray<String> mFallbackText =
+            new AtomicReferenceArray<String>(SensorChannels.COUNT);
 
-    private final BroadcastReceiver sensorUpdateReceiver = new BroadcastReceiver() {
-        @Override
-        public void onReceive(Context context, Intent intent) {
-            Log.d(TAG, "BroadcastReceiver.onReceive()");
-            int id = intent.getIntExtra("id", -1);
-            String data = intent.getStringExtra("data");
+    // Device shown by the card, or ALL_DEVICES for the mean across devices.
+    private int mShownDevice;
+    private int mLabelDeviceCount = 1;
+
+    // Value currently shown for each channel, to skip redrawing readings that look the same.
+    private final float[] mShownValues = new float[SensorChannels.COUNT];
+
+    // Timestamp of the newest sample shown but not yet drawn, per channel, when load testing.
+    private final long[] mUndrawnTimestamps = new long[SensorChannels.COUNT];
+    private final LoadReport[] mUndrawnReports = new LoadReport[SensorChannels.COUNT];
+    private boolean mValuesChanged;
+
+    private final ValueFormatter mFormatter = ValueFormatter.createDefault();
+
+    /** Text slots after the channels, see {@link #getSlotView(int)}. */
+    static final int SLOT_MINUTE = SensorChannels.COUNT;
+    static final int SLOT_SECOND = SLOT_MINUTE + 1;
+    static final int SLOT_CENTI_SECOND = SLOT_MINUTE + 2;
+    static final int SLOT_SEPARATOR = SLOT_MINUTE + 3;
+    static final int SLOT_DEVICE = SLOT_MINUTE + 4;
+    static final int SLOT_COUNT = SLOT_MINUTE + 5;
+
+    // Text of every view the frames rewrite, by slot. Each TextView keeps a reference to the chars
+    // it was given, so every view owns its buffer; a CardRenderer draws them without the views.
+    private final char[][] mSlotChars = new char[SLOT_COUNT][];
+    private final int[] mSlotLengths = new int[SLOT_COUNT];
+    private final TextView[] mSlotViews = new TextView[SLOT_COUNT];
+    private boolean mDirectRendering;
+
+    /** {@link #showDevice} argument showing the mean of every device. */
+    public static final int ALL_DEVICES = -1;
+
+    // Noise filters of the channels shown smoothed, from R.array.channel_filters.
+    private final List<ChannelFilter> mChannelFilters = new ArrayList<ChannelFilter>();
+
+    /**
+     * What the card knows of one device: the pipeline its ingestion thread feeds readings into,
+     * the slots it publishes them in, and the newest reading per channel drained from them, owned
+     * by the frame scheduler's thread.
+     */
+    private final class DeviceState {
+        final int mDevice;
+        final SensorSession mSession;
+        final DisplayLatency mLatency;
+        final LatestValueSlots mSlots = new LatestValueSlots(SensorChannels.COUNT);
+        final FilterStage mFilters = new FilterStage(mChannelFilters, mSlots);
+
+        // Ingest thread: records each reading, and those derived from it, into the session as is
+        // and publishes them filtered for the next frame.
+        final DerivedPipeline mPipeline = new DerivedPipeline(DerivedChannel.createDefaults(),
+                new SampleSink() {
+                    @Override
+                    public void onSample(int channel, long timestampMillis, float value) {
+                        mLatency.onArrival(channel);
+                        mSession.onSample(channel, timestampMillis, value);
+                        mFilters.onSample(channel, timestampMillis, value);
+                    }
+                });
+
+        final float[] mValues = new float[SensorChannels.COUNT];
+        final long[] mTimestamps = new long[SensorChannels.COUNT];
+        final boolean[] mHasValue = new boolean[SensorChannels.COUNT];
+        final boolean[] mChanged = new boolean[SensorChannels.COUNT];
+
+        // Readings taken in for this device, counted apart from other devices' ingest threads.
+        final AtomicLong mIngested = new AtomicLong();
+
+        DeviceState(int device) {
+            mDevice = device;
+            mSession = SensorSession.get(device);
+            mLatency = mSession.getDisplayLatency();
+        }
+    }
+
+    /**
+     * Ingest thread: records readings into the session of the device they come from and
+     * publishes them for the next frame. One per transport, as a device is fed by one transport.
+     */
+    private class IngestSink implements DeviceSink {
+        private DeviceState mState;
+        private boolean mSampled;
 
-            Log.d(TAG, "BroadcastReceiver.onReceive() - id = " + id);
-            Log.d(TAG, "BroadcastReceiver.onReceive() - data = " + data);
+        @Override
+        public void onDevice(int device) {
+            if (mState == null || device != mState.mDevice) {
+                mState = getDeviceState(device);
+            }
+        }
 
-            if(id != -1) {
-                textViews[id].setText(data);
+        @Override
+        public void onSample(int channel, long timestampMillis, float value) {
+            if (SensorChannels.isValid(channel)) {
+                DeviceState state = mState;
+                if (state == null) {
+                    state = mState = getDeviceState(0);
+                }
+                state.mPipeline.onSample(channel, timestampMillis, value);
+                mScheduler.requestFrame();
+                state.mIngested.incrementAndGet();
+                if (!mSampled) {
+                    mSampled = true;
+                    StartupTrace trace = mStartupTrace;
+                    if (trace != null) {
+                        trace.mark(StartupTrace.FIRST_SAMPLE);
+                    }
+                }
+                LoadReport report = state.mSession.getLoadReport();
+                if (report != null) {
+                    report.onIngested();
+                }
             }
+        }
+    }
+
+    private volatile StartupTrace mStartupTrace;
 
+    // Ingest thread: show a non-numeric reading as is on the next frame.
+    private final IntentTunnelTransport.TextSink mTextSink = new IntentTunnelTransport.TextSink() {
+        @Override
+        public void onText(int channel, String text) {
+            mFallbackText.set(channel, text);
+            mScheduler.requestFrame();
+        }
+    };
+
+    // UI thread: keep the newest reading drained from the slots of mDraining.
+    private DeviceState mDraining;
+    private final SampleSink mDrainSink = new SampleSink() {
+        @Override
+        public void onSample(int channel, long timestampMillis, float value) {
+            DeviceState state = mDraining;
+            state.mValues[channel] = value;
+            state.mTimestamps[channel] = timestampMillis;
+            state.mHasValue[channel] = true;
+            state.mChanged[channel] = true;
         }
     };
 
+    /**
+     * Get the number of readings taken in from every transport, summed over devices. Any thread.
+     */
+    long getIngestedCount() {
+        long count = 0;
+        for (DeviceState state : mDevices) {
+            count += state.mIngested.get();
+        }
+        return count;
+    }
+
+    /**
+     * Get the card state of {@code device}, creating it on its first reading. Ingest thread.
+     */
+    private DeviceState getDeviceState(int device) {
+        DeviceState state = mDevicesById.get(device);
+        if (state != null) {
+            return state;
+        }
+        synchronized (mDevicesById) {
+            state = mDevicesById.get(device);
+            if (state == null) {
+                state = new DeviceState(device);
+                DeviceState[] devices = new DeviceState[mDevices.length + 1];
+                int i = 0;
+                for (DeviceState existing : mDevices) {
+                    if (existing.mDevice < device) {
+                        devices[i++] = existing;
+                    }
+                }
+                devices[i++] = state;
+                for (DeviceState existing : mDevices) {
+                    if (existing.mDevice > device) {
+                        devices[i++] = existing;
+                    }
+                }
+                mDevicesById.set(device, state);
+                mDevices = devices;
+            }
+            return state;
+        }
+    }
+
+    /**
+     * Create a sink for a {@link me.izen.glasssensor.core.SensorTransport} to feed readings into,
+     * from a single ingestion thread. Readings go to device 0 until told otherwise.
+     */
+    public DeviceSink createIngestSink() {
+        return new IngestSink();
+    }
+
+    /**
+     * Set the trace to mark the first reading in.
+     */
+    public void setStartupTrace(StartupTrace trace) {
+        mStartupTrace = trace;
+    }
+
+    /**
+     * Runs the formatting path once for every channel, so the first readings shown do not pay for
+     * loading and compiling it on the render thread. Call from any thread before starting.
+     */
+    public void prewarm() {
+        char[] scratch = new char[ValueFormatter.BUFFER_SIZE];
+        for (int channel = 0; channel < SensorChannels.COUNT; channel++) {
+            mFormatter.format(channel, 0f, scratch);
+            mFormatter.format(channel, Float.NaN, scratch);
+        }
+    }
+
+    /**
+     * Get the sink for readings older senders sent as text.
+     */
+    public IntentTunnelTransport.TextSink getTextSink() {
+        return mTextSink;
+    }
+
+    /**
+     * Pushes the newest reading of every channel updated since the last frame to its view, from
+     * the shown device or averaged over all of them.
+     *
+     * @return true if any shown value changed
+     */
+    private boolean applyPendingValues() {
+        mValuesChanged = false;
+        DeviceState[] devices = mDevices;
+        for (DeviceState state : devices) {
+            mDraining = state;
+            state.mSlots.drain(mDrainSink);
+        }
+        if (mShownDevice != ALL_DEVICES && mDevicesById.get(mShownDevice) == null
+                && devices.length > 0) {
+            // Follow the first device to deliver readings.
+            showDevice(devices[0].mDevice);
+        } else if (devices.length != mLabelDeviceCount) {
+            updateDeviceLabel(devices.length);
+        }
+
+        if (mShownDevice == ALL_DEVICES) {
+            showMean(devices);
+        } else {
+            DeviceState state = mDevicesById.get(mShownDevice);
+            if (state != null) {
+                for (int channel = 0; channel < SensorChannels.COUNT; channel++) {
+                    if (state.mChanged[channel]) {
+                        showValue(state, channel, state.mTimestamps[channel],
+                                state.mValues[channel]);
+                    }
+                }
+            }
+        }
+        for (DeviceState state : devices) {
+            for (int channel = 0; channel < SensorChannels.COUNT; channel++) {
+                state.mChanged[channel] = false;
+            }
+        }
+
+        for (int i = 0; i < SensorChannels.COUNT; i++) {
+            String text = mFallbackText.getAndSet(i, null);
+            if (text != null) {
+                mShownValues[i] = Float.NaN;
+                setSlotText(i, text);
+                mValuesChanged = true;
+            }
+        }
+        return mValuesChanged;
+    }
+
+    /**
+     * Shows the mean of the newest reading of every device, for each channel one of them
+     * updated.
+     */
+    private void showMean(DeviceState[] devices) {
+        for (int channel = 0; channel < SensorChannels.COUNT; channel++) {
+            DeviceState newest = null;
+            float sum = 0;
+            int count = 0;
+            for (DeviceState state : devices) {
+                if (state.mHasValue[channel]) {
+                    sum += state.mValues[channel];
+                    count++;
+                    if (state.mChanged[channel] && (newest == null
+                            || state.mTimestamps[channel] > newest.mTimestamps[channel])) {
+                        newest = state;
+                    }
+                }
+            }
+            if (newest != null && showValue(newest, channel, newest.mTimestamps[channel],
+                    sum / count)) {
+                for (DeviceState state : devices) {
+                    if (state.mChanged[channel] && state != newest) {
+                        state.mLatency.onShown(channel);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Pushes a value to the channel's view if it changed what is shown, crediting it to
+     * {@code source}, and extends the channel's trend line.
+     *
+     * @return true if the shown value changed
+     */
+    private boolean showValue(DeviceState source, int channel, long timestampMillis, float value) {
+        if (mTrendViews[channel].update()) {
+            invalidateChild(mTrendViews[channel]);
+        }
+        if (looksShown(channel, value)) {
+            return false;
+        }
+        mShownValues[channel] = value;
+        setSlotText(channel, mFormatter.format(channel, value, mSlotChars[channel]));
+        source.mLatency.onShown(channel);
+        mUndrawnTimestamps[channel] = timestampMillis;
+        mUndrawnReports[channel] = source.mSession.getLoadReport();
+        mValuesChanged = true;
+        return true;
+    }
+
+    /**
+     * Whether {@code value} would show the same as the channel's current value, being equal at
+     * the displayed precision or both placeholders.
+     */
+    private boolean looksShown(int channel, float value) {
+        float shown = mShownValues[channel];
+        if (Float.isNaN(value) || Float.isNaN(shown)) {
+            return Float.isNaN(value) && Float.isNaN(shown);
+        }
+        return mFormatter.toDisplayUnits(channel, value)
+                == mFormatter.toDisplayUnits(channel, shown);
+    }
+
+    /**
+     * Show {@code device}, or {@link #ALL_DEVICES} for the mean of every device. Must be called
+     * from the frame scheduler's thread.
+     */
+    public void showDevice(int device) {
+        mShownDevice = device;
+        boolean single = device != ALL_DEVICES;
+        for (int i = 0; i < SensorChannels.COUNT; i++) {
+            // The mean has no trend line of its own.
+            mTrendViews[i].setVisibility(single ? VISIBLE : INVISIBLE);
+            mTrendViews[i].setSparkline(SensorSession.get(single ? device : 0).getSparkline(i));
+            mShownValues[i] = Float.NaN;
+            setSlotText(i, "--");
+        }
+        // Show the newest values right away instead of waiting for new readings.
+        for (DeviceState state : mDevices) {
+            if (!single || state.mDevice == device) {
+                System.arraycopy(state.mHasValue, 0, state.mChanged, 0, SensorChannels.COUNT);
+            }
+        }
+        updateDeviceLabel(mDevices.length);
+        invalidateAll();
+        mScheduler.requestFrame();
+    }
+
+    /**
+     * Cycle the card through the devices that delivered readings, then their mean. Must be called
+     * from the frame scheduler's thread.
+     */
+    public void showNextDevice() {
+        DeviceState[] devices = mDevices;
+        if (devices.length < 2) {
+            return;
+        }
+        int next = ALL_DEVICES;
+        if (mShownDevice == ALL_DEVICES) {
+            next = devices[0].mDevice;
+        } else {
+            for (DeviceState state : devices) {
+                if (state.mDevice > mShownDevice) {
+                    next = state.mDevice;
+                    break;
+                }
+            }
+        }
+        showDevice(next);
+    }
+
+    /**
+     * Get the device shown by the card, or {@link #ALL_DEVICES}.
+     */
+    public int getShownDevice() {
+        return mShownDevice;
+    }
+
+    private void updateDeviceLabel(int deviceCount) {
+        mLabelDeviceCount = deviceCount;
+        if (deviceCount < 2 && mShownDevice != ALL_DEVICES) {
+            setSlotText(SLOT_DEVICE, "");
+        } else if (mShownDevice == ALL_DEVICES) {
+            setSlotText(SLOT_DEVICE, getContext().getString(R.string.device_all, deviceCount));
+        } else {
+            setSlotText(SLOT_DEVICE, getContext().getString(R.string.device_one, mShownDevice));
+        }
+    }
+
+    /**
+     * Show the first {@code length} chars of the slot's buffer, in its view unless the card is
+     * rendered directly.
+     */
+    private void setSlotText(int slot, int length) {
+        mSlotLengths[slot] = length;
+        if (!mDirectRendering) {
+            mSlotViews[slot].setText(mSlotChars[slot], 0, length);
+        }
+        invalidateChild(mSlotViews[slot]);
+    }
+
+    /**
+     * Show {@code text} in the slot, cut to the length of its buffer.
+     */
+    private void setSlotText(int slot, String text) {
+        int length = Math.min(text.length(), mSlotChars[slot].length);
+        text.getChars(0, length, mSlotChars[slot], 0);
+        setSlotText(slot, length);
+    }
+
+    /**
+     * Set whether the card is drawn by a {@link CardRenderer} from the slots instead of by its
+     * views, which then no longer lay out text on every change. Must be called from the frame
+     * scheduler's thread or while stopped.
+     */
+    void setDirectRendering(boolean direct) {
+        mDirectRendering = direct;
+        if (!direct) {
+            for (int slot = 0; slot < SLOT_COUNT; slot++) {
+                mSlotViews[slot].setText(mSlotChars[slot], 0, mSlotLengths[slot]);
+            }
+            invalidateAll();
+        }
+    }
+
+    boolean isDirectRendering() {
+        return mDirectRendering;
+    }
+
+    /** View laid out for the text of {@code slot}, and drawing it unless rendered directly. */
+    TextView getSlotView(int slot) {
+        return mSlotViews[slot];
+    }
+
+    /** Buffer holding the text of {@code slot}, valid up to {@link #getSlotLength(int)}. */
+    char[] getSlotChars(int slot) {
+        return mSlotChars[slot];
+    }
+
+    int getSlotLength(int slot) {
+        return mSlotLengths[slot];
+    }
+
+    SparklineView getTrendView(int channel) {
+        return mTrendViews[channel];
+    }
+
+    /**
+     * Get the per-channel coalescing slots between ingestion and the frame for {@code device},
+     * or null if it delivered no readings.
+     */
+    public LatestValueSlots getSlots(int device) {
+        DeviceState state = mDevicesById.get(device);
+        return state == null ? null : state.mSlots;
+    }
+
     /**
      * Interface to listen for changes on the view layout.
      */
     public interface ChangeListener {
-        /** Notified of a change in the view. */
-        public void onChange();
+        /** Notified of a change in the view, limited to the {@code dirty} region. */
+        public void onChange(Rect dirty);
+
+        /** Notified of a tick in which nothing visible changed. */
+        public void onUnchanged();
     }
 
-    // About 24 FPS.
-    private static final long DELAY_MILLIS = 41;
 
     private final TextView mMinuteView;
     private final TextView mSecondView;
     private final TextView mCentiSecondView;
+    private final TextView mCentiSecondSeparator;
+    private final TextView mDeviceLabel;
 
     private final TextView mTemperature;
     private final TextView mHumidity;
@@ -70,16 +543,30 @@ public class SensorView extends FrameLayout {
     private final TextView mVoltage;
     private final TextView mAltitude;
     private final TextView mBattery;
+    private final TextView mDewPoint;
+    private final TextView mHeatIndex;
+    private final TextView mPressureAltitude;
 
     private TextView textViews[];
+    private final SparklineView[] mTrendViews = new SparklineView[SensorChannels.COUNT];
 
     private boolean mStarted;
     private boolean mForceStart;
     private boolean mVisible;
     private boolean mRunning;
+    private boolean mCentiSecondsVisible = true;
 
     private long mBaseMillis;
 
+    // Chronometer digits currently shown, -1 when not yet drawn.
+    private long mShownMinutes = -1;
+    private long mShownSeconds = -1;
+    private long mShownCentiSeconds = -1;
+
+    // Region of the view changed since the last frame, in this view's coordinates.
+    private final Rect mDirty = new Rect();
+    private final Rect mChildRect = new Rect();
+
     private ChangeListener mChangeListener;
 
     public SensorView(Context context) {
@@ -92,14 +579,26 @@ public class SensorView extends FrameLayout {
 
     public SensorView(Context context, AttributeSet attrs, int style) {
         super(context, attrs, style);
+        for (String text : getResources().getStringArray(R.array.channel_filters)) {
+            try {
+                ChannelFilter filter = ChannelFilter.parse(text);
+                for (ChannelFilter existing : mChannelFilters) {
+                    if (existing.getChannel() == filter.getChannel()) {
+                        throw new IllegalArgumentException("Second filter on the channel: " + text);
+                    }
+                }
+                mChannelFilters.add(filter);
+            } catch (IllegalArgumentException e) {
+                Log.e(TAG, "Skipping channel filter", e);
+            }
+        }
         LayoutInflater.from(context).inflate(R.layout.card_sensor, this);
 
-
-        sensorUpdateIntent = context.registerReceiver(sensorUpdateReceiver, new IntentFilter("me.izen.glasssensor.msg.sensor-update"));
-
         mMinuteView = (TextView) findViewById(R.id.minute);
         mSecondView = (TextView) findViewById(R.id.second);
         mCentiSecondView = (TextView) findViewById(R.id.centi_second);
+        mCentiSecondSeparator = (TextView) findViewById(R.id.textView2);
+        mDeviceLabel = (TextView) findViewById(R.id.device);
 
         mTemperature = (TextView) findViewById(R.id.temperature);
         mHumidity = (TextView) findViewById(R.id.humidity);
@@ -111,6 +610,9 @@ public class SensorView extends FrameLayout {
         mVoltage = (TextView) findViewById(R.id.voltage);
         mAltitude = (TextView) findViewById(R.id.altitude);
         mBattery = (TextView) findViewById(R.id.battery);
+        mDewPoint = (TextView) findViewById(R.id.dewPoint);
+        mHeatIndex = (TextView) findViewById(R.id.heatIndex);
+        mPressureAltitude = (TextView) findViewById(R.id.pressureAltitude);
 
         textViews = new TextView[]{
                 mTemperature,
@@ -122,8 +624,46 @@ public class SensorView extends FrameLayout {
                 mProximity,
                 mVoltage,
                 mAltitude,
-                mBattery
+                mBattery,
+                mDewPoint,
+                mHeatIndex,
+                mPressureAltitude
         };
+        int[] trendIds = {
+                R.id.temperatureTrend,
+                R.id.humidityTrend,
+                R.id.pressureTrend,
+                R.id.irTemperatureTrend,
+                R.id.illuminanceTrend,
+                R.id.gasTrend,
+                R.id.proximityTrend,
+                R.id.voltageTrend,
+                R.id.altitudeTrend,
+                R.id.batteryTrend,
+                R.id.dewPointTrend,
+                R.id.heatIndexTrend,
+                R.id.pressureAltitudeTrend
+        };
+        for (int i = 0; i < trendIds.length; i++) {
+            mTrendViews[i] = (SparklineView) findViewById(trendIds[i]);
+            mTrendViews[i].setSparkline(SensorSession.get().getSparkline(i));
+        }
+
+        System.arraycopy(textViews, 0, mSlotViews, 0, SensorChannels.COUNT);
+        mSlotViews[SLOT_MINUTE] = mMinuteView;
+        mSlotViews[SLOT_SECOND] = mSecondView;
+        mSlotViews[SLOT_CENTI_SECOND] = mCentiSecondView;
+        mSlotViews[SLOT_SEPARATOR] = mCentiSecondSeparator;
+        mSlotViews[SLOT_DEVICE] = mDeviceLabel;
+        for (int i = 0; i < SensorChannels.COUNT; i++) {
+            mSlotChars[i] = new char[ValueFormatter.BUFFER_SIZE];
+        }
+        mSlotChars[SLOT_MINUTE] = new char[2];
+        mSlotChars[SLOT_SECOND] = new char[2];
+        mSlotChars[SLOT_CENTI_SECOND] = new char[2];
+        mSlotChars[SLOT_SEPARATOR] = mCentiSecondSeparator.getText().toString().toCharArray();
+        mSlotLengths[SLOT_SEPARATOR] = mSlotChars[SLOT_SEPARATOR].length;
+        mSlotChars[SLOT_DEVICE] = new char[ValueFormatter.BUFFER_SIZE];
 
         initSensorView(SystemClock.elapsedRealtime());
     }
@@ -133,16 +673,14 @@ public class SensorView extends FrameLayout {
      */
     public void initSensorView(long baseMillis) {
         mBaseMillis = baseMillis;
-        mTemperature.setText("--");
-        mHumidity.setText("--");
-        mPressure.setText("--");
-        mIRTemperature.setText("--");
-        mIlluminance.setText("--");
-        mGas.setText("--");
-        mProximity.setText("--");
-        mVoltage.setText("--");
-        mAltitude.setText("--");
-        mBattery.setText("--");
+        for (int i = 0; i < mShownValues.length; i++) {
+            setSlotText(i, "--");
+            mShownValues[i] = Float.NaN;
+        }
+        mShownMinutes = -1;
+        mShownSeconds = -1;
+        mShownCentiSeconds = -1;
+        invalidateAll();
         updateSensorView();
     }
 
@@ -153,6 +691,35 @@ public class SensorView extends FrameLayout {
         return mBaseMillis;
     }
 
+    /**
+     * Get the history of every channel received from the shown device, or device 0 when showing
+     * all of them.
+     */
+    public SensorStore getStore() {
+        return SensorSession.get(mShownDevice == ALL_DEVICES ? 0 : mShownDevice).getStore();
+    }
+
+    /**
+     * Mark the whole view as changed so the next frame repaints everything, e.g. after the
+     * surface was recreated or resized.
+     */
+    public void invalidateAll() {
+        for (int i = 0; i < mTrendViews.length; i++) {
+            // Rescale the trend lines to their new size.
+            mTrendViews[i].update();
+        }
+        mDirty.set(0, 0, getWidth(), getHeight());
+    }
+
+    /**
+     * Add the bounds of {@code child} to the region redrawn by the next frame.
+     */
+    private void invalidateChild(View child) {
+        mChildRect.set(0, 0, child.getWidth(), child.getHeight());
+        offsetDescendantRectToMyCoords(child, mChildRect);
+        mDirty.union(mChildRect);
+    }
+
     /**
      * Set a {@link ChangeListener}.
      */
@@ -169,6 +736,36 @@ public class SensorView extends FrameLayout {
         updateRunning();
     }
 
+    /**
+     * Set the scheduler producing this view's frames; the view is then only touched from that
+     * scheduler's thread while running. Must be called while the chronometer is stopped.
+     */
+    public void setFrameScheduler(FrameScheduler scheduler) {
+        if (mRunning) {
+            throw new IllegalStateException("cannot change the scheduler while running");
+        }
+        mScheduler = scheduler;
+    }
+
+    /**
+     * Set whether the chronometer shows centiseconds. Without them the card only needs a frame
+     * per second while readings are steady, so the frame scheduler can idle. Must be called from
+     * the frame scheduler's thread or while stopped.
+     */
+    public void setCentiSecondsVisible(boolean visible) {
+        mCentiSecondsVisible = visible;
+        int visibility = visible ? VISIBLE : INVISIBLE;
+        mCentiSecondView.setVisibility(visibility);
+        mCentiSecondSeparator.setVisibility(visibility);
+        invalidateChild(mCentiSecondView);
+        invalidateChild(mCentiSecondSeparator);
+        mScheduler.requestFrame();
+    }
+
+    public boolean isCentiSecondsVisible() {
+        return mCentiSecondsVisible;
+    }
+
     /**
      * Start the chronometer.
      */
@@ -178,12 +775,11 @@ public class SensorView extends FrameLayout {
     }
 
     /**
-     * Stop the chronometer.
+     * Stop the chronometer. Readings keep being ingested while the transport is open.
      */
     public void stop() {
         mStarted = false;
         updateRunning();
-        getContext().unregisterReceiver(sensorUpdateReceiver);
     }
 
     @Override
@@ -201,15 +797,18 @@ public class SensorView extends FrameLayout {
     }
 
 
-    private final Handler mHandler = new Handler();
+    private FrameScheduler mScheduler = FrameScheduler.getMain();
 
-    private final Runnable mUpdateTextRunnable = new Runnable() {
+    private final FrameScheduler.Callback mFrameCallback = new FrameScheduler.Callback() {
         @Override
-        public void run() {
-            if (mRunning) {
-                updateSensorView();
-                mHandler.postDelayed(mUpdateTextRunnable, DELAY_MILLIS);
+        public long doFrame(long frameTimeMillis) {
+            boolean valuesChanged = updateSensorView();
+            if (valuesChanged || mCentiSecondsVisible) {
+                return 0;
             }
+            // Nothing moves until the seconds digit rolls over or a reading arrives.
+            long millis = SystemClock.elapsedRealtime() - mBaseMillis;
+            return TimeUnit.SECONDS.toMillis(1) - millis % TimeUnit.SECONDS.toMillis(1);
         }
     };
 
@@ -220,30 +819,73 @@ public class SensorView extends FrameLayout {
         boolean running = (mVisible || mForceStart) && mStarted;
         if (running != mRunning) {
             if (running) {
-                mHandler.post(mUpdateTextRunnable);
+                mScheduler.addCallback(mFrameCallback);
             } else {
-                mHandler.removeCallbacks(mUpdateTextRunnable);
+                mScheduler.removeCallback(mFrameCallback);
             }
             mRunning = running;
         }
     }
 
     /**
-     * Update the value of the chronometer.
+     * Reports the samples shown since the previous frame as having reached the screen, once the
+     * frame holding them was posted. Must be called from the frame scheduler's thread.
+     */
+    public void onFramePosted() {
+        for (DeviceState state : mDevices) {
+            state.mLatency.onPosted();
+        }
+        for (int i = 0; i < mUndrawnReports.length; i++) {
+            LoadReport report = mUndrawnReports[i];
+            if (report != null) {
+                mUndrawnReports[i] = null;
+                report.onDisplayed(mUndrawnTimestamps[i]);
+            }
+        }
+    }
+
+    /**
+     * Update the value of the chronometer and the channels. Called for each frame, or directly by
+     * {@link CardRenderBenchmark}.
+     *
+     * @return true if any channel value changed
      */
-    private void updateSensorView() {
+    boolean updateSensorView() {
+        boolean valuesChanged = applyPendingValues();
+
         long millis = SystemClock.elapsedRealtime() - mBaseMillis;
         // Cap chronometer to one hour.
         millis %= TimeUnit.HOURS.toMillis(1);
 
-        mMinuteView.setText(String.format("%02d", TimeUnit.MILLISECONDS.toMinutes(millis)));
+        long minutes = TimeUnit.MILLISECONDS.toMinutes(millis);
         millis %= TimeUnit.MINUTES.toMillis(1);
-        mSecondView.setText(String.format("%02d", TimeUnit.MILLISECONDS.toSeconds(millis)));
-        millis = (millis % TimeUnit.SECONDS.toMillis(1)) / 10;
-        mCentiSecondView.setText(String.format("%02d", millis));
-        if (mChangeListener != null) {
-            mChangeListener.onChange();
+        long seconds = TimeUnit.MILLISECONDS.toSeconds(millis);
+        long centiSeconds = (millis % TimeUnit.SECONDS.toMillis(1)) / 10;
+
+        if (minutes != mShownMinutes) {
+            mShownMinutes = minutes;
+            ValueFormatter.formatTwoDigits(minutes, mSlotChars[SLOT_MINUTE]);
+            setSlotText(SLOT_MINUTE, 2);
+        }
+        if (seconds != mShownSeconds) {
+            mShownSeconds = seconds;
+            ValueFormatter.formatTwoDigits(seconds, mSlotChars[SLOT_SECOND]);
+            setSlotText(SLOT_SECOND, 2);
+        }
+        if (centiSeconds != mShownCentiSeconds) {
+            mShownCentiSeconds = centiSeconds;
+            ValueFormatter.formatTwoDigits(centiSeconds, mSlotChars[SLOT_CENTI_SECOND]);
+            setSlotText(SLOT_CENTI_SECOND, 2);
         }
 
+        if (mChangeListener != null) {
+            if (mDirty.isEmpty()) {
+                mChangeListener.onUnchanged();
+            } else {
+                mChangeListener.onChange(mDirty);
+            }
+        }
+        mDirty.setEmpty();
+        return valuesChanged;
     }
 }
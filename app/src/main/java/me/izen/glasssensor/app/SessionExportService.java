@@ -0,0 +1,136 @@
+package me.izen.glasssensor.app;
+
+import android.app.IntentService;
+import android.content.Context;
+import android.content.Intent;
+import android.os.SystemClock;
+import android.util.Log;
+import me.izen.glasssensor.core.SessionExporter;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Exports a recorded session, the first drone's newest by default, to the app's external files
+ * dir on a background thread, logging progress and throughput. Started from the menu, then e.g.
+ * {@code adb pull /sdcard/Android/data/me.izen.glasssensor.app/files/exports}. Not exported, as
+ * the export lands where any app can read it.
+ */
+public class SessionExportService extends IntentService {
+    private static final String TAG = SessionExportService.class.getName();
+
+    /** {@link #FORMAT_CSV} or {@link #FORMAT_BINARY}, the default. */
+    public static final String EXTRA_FORMAT = "format";
+    /** Name of the session under the sessions dir to export instead of the newest one. */
+    public static final String EXTRA_SESSION = "session";
+
+    public static final String FORMAT_CSV = "csv";
+    public static final String FORMAT_BINARY = "binary";
+
+    private static final String EXPORTS_DIR = "exports";
+    private static final long PROGRESS_INTERVAL_MILLIS = 1000;
+
+    public SessionExportService() {
+        super("SessionExport");
+    }
+
+    /**
+     * Start exporting the newest session in {@code format}.
+     */
+    public static void start(Context context, String format) {
+        context.startService(new Intent(context, SessionExportService.class)
+                .putExtra(EXTRA_FORMAT, format));
+    }
+
+    @Override
+    protected void onHandleIntent(Intent intent) {
+        String name = intent.getStringExtra(EXTRA_SESSION);
+        File session = name != null ? findSession(name) : findNewestSession();
+        if (session == null) {
+            Log.w(TAG, "No session to export");
+            return;
+        }
+        File exports = getExternalFilesDir(EXPORTS_DIR);
+        if (exports == null) {
+            // No external storage mounted.
+            exports = new File(getFilesDir(), EXPORTS_DIR);
+        }
+        if (!exports.isDirectory() && !exports.mkdirs()) {
+            Log.e(TAG, "Cannot create " + exports);
+            return;
+        }
+
+        SessionExporter exporter = new SessionExporter(session);
+        exporter.setProgress(new SessionExporter.Progress() {
+            private long mLastReportMillis = SystemClock.elapsedRealtime();
+
+            @Override
+            public void onProgress(long bytesWritten, long bytesTotal) {
+                long now = SystemClock.elapsedRealtime();
+                if (now - mLastReportMillis < PROGRESS_INTERVAL_MILLIS) {
+                    return;
+                }
+                mLastReportMillis = now;
+                Log.i(TAG, "Exported " + bytesWritten
+                        + (bytesTotal < 0 ? "" : " of " + bytesTotal) + " bytes");
+            }
+        });
+        boolean csv = FORMAT_CSV.equals(intent.getStringExtra(EXTRA_FORMAT));
+        File output = new File(exports, session.getName()
+                + (csv ? ".csv" : exporter.getBinarySuffix()));
+        try {
+            if (csv) {
+                exporter.exportCsv(output);
+            } else {
+                exporter.exportBinary(output);
+            }
+            Log.i(TAG, "Exported " + session + " to " + output + ": "
+                    + exporter.getBytesWritten() + " bytes, "
+                    + exporter.getSampleCount() + " readings in "
+                    + exporter.getElapsedNanos() / 1000000 + " ms, "
+                    + String.format("%.1f", exporter.getThroughput() / (1024 * 1024)) + " MiB/s");
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to export " + session + " to " + output, e);
+            if (output.exists() && !output.delete()) {
+                Log.w(TAG, "Cannot delete partial export " + output);
+            }
+        }
+    }
+
+    /**
+     * Resolves a session name under the sessions dir, or null if it names anything else, so only
+     * recorded sessions ever leave the app's private storage.
+     */
+    private File findSession(String name) {
+        File sessions = new File(getFilesDir(), SensorService.SESSIONS_DIR);
+        try {
+            File session = new File(sessions, name).getCanonicalFile();
+            if (!sessions.getCanonicalFile().equals(session.getParentFile())
+                    || !session.isDirectory()) {
+                Log.e(TAG, "Not a session: " + name);
+                return null;
+            }
+            return session;
+        } catch (IOException e) {
+            Log.e(TAG, "Cannot resolve session " + name, e);
+            return null;
+        }
+    }
+
+    private File findNewestSession() {
+        File[] sessions = new File(getFilesDir(), SensorService.SESSIONS_DIR).listFiles();
+        File newest = null;
+        if (sessions != null) {
+            for (File session : sessions) {
+                // Named after their start time, so the newest sorts last. Other drones' sessions
+                // recorded alongside carry a suffix.
+                if (session.isDirectory()
+                        && !session.getName().contains(SensorService.DEVICE_SUFFIX)
+                        && (newest == null || session.getName().compareTo(newest.getName()) > 0)) {
+                    newest = session;
+                }
+            }
+        }
+        return newest;
+    }
+}
@@ -0,0 +1,326 @@
+package me.izen.glasssensor.app;
+
+import android.util.Log;
+import me.izen.glasssensor.core.HistoryFormat;
+import me.izen.glasssensor.core.HistoryReader;
+import me.izen.glasssensor.core.HistoryWriter;
+import me.izen.glasssensor.core.SampleQueue;
+import me.izen.glasssensor.core.SampleSink;
+import me.izen.glasssensor.core.SessionFormat;
+import me.izen.glasssensor.core.SessionReplaySource;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Appends every reading of a session to memory-mapped segment files, see {@link SessionFormat}.
+ *
+ * {@link #onSample} only enqueues; a background thread moves queued readings into the mapped
+ * segment, rolls over to a new segment at a size threshold and forces the mapping to disk on a
+ * schedule rather than per record. When the background thread falls behind, readings are dropped
+ * and counted instead of blocking ingestion.
+ *
+ * The same thread also streams every reading into the session's compressed {@link HistoryFormat}
+ * file, several times smaller than the segments. The segments stay the crash-safe record of the
+ * running session; once a later session starts, {@link #compactPreviousSessions} deletes the
+ * segments of every earlier session whose history was closed cleanly.
+ */
+public class SessionRecorder implements SampleSink {
+    private static final String TAG = SessionRecorder.class.getName();
+
+    public static final long DEFAULT_SEGMENT_SIZE = 8 * 1024 * 1024;
+    public static final long DEFAULT_SYNC_INTERVAL_MILLIS = TimeUnit.SECONDS.toMillis(5);
+
+    private static final long DRAIN_INTERVAL_MILLIS = 100;
+    private static final int QUEUE_CAPACITY = 16 * 1024;
+
+    private final File mDirectory;
+    private final long mSegmentSize;
+    private final long mSyncIntervalMillis;
+    private final SampleQueue mQueue = new SampleQueue(QUEUE_CAPACITY);
+
+    private ScheduledExecutorService mExecutor;
+    private volatile boolean mRecording;
+    private volatile long mDropped;
+    private volatile long mRecorded;
+
+    // Owned by the background thread.
+    private RandomAccessFile mFile;
+    private MappedByteBuffer mBuffer;
+    private int mSegmentIndex;
+    private long mSegmentRecords;
+    private long mLastSyncMillis;
+    private FileOutputStream mHistoryStream;
+    private HistoryWriter mHistory;
+
+    public SessionRecorder(File directory) {
+        this(directory, DEFAULT_SEGMENT_SIZE, DEFAULT_SYNC_INTERVAL_MILLIS);
+    }
+
+    public SessionRecorder(File directory, long segmentSize, long syncIntervalMillis) {
+        if (segmentSize < SessionFormat.HEADER_SIZE + SessionFormat.RECORD_SIZE) {
+            throw new IllegalArgumentException("segment size too small: " + segmentSize);
+        }
+        mDirectory = directory;
+        mSegmentSize = segmentSize;
+        mSyncIntervalMillis = syncIntervalMillis;
+    }
+
+    public File getDirectory() {
+        return mDirectory;
+    }
+
+    /**
+     * Start recording. The first segment is created on the background thread.
+     */
+    public synchronized void start() {
+        if (mExecutor != null) {
+            return;
+        }
+        mExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "SessionRecorder");
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            }
+        });
+        mRecording = true;
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    if (!mDirectory.isDirectory() && !mDirectory.mkdirs()) {
+                        throw new IOException("cannot create " + mDirectory);
+                    }
+                    openSegment();
+                    openHistory();
+                    Log.d(TAG, "Recording to " + mDirectory);
+                } catch (IOException e) {
+                    Log.e(TAG, "Failed to start recording", e);
+                    mRecording = false;
+                }
+            }
+        });
+        mExecutor.scheduleWithFixedDelay(mDrainRunnable,
+                DRAIN_INTERVAL_MILLIS, DRAIN_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stop recording. Queued readings are flushed and the last segment closed on the background
+     * thread; this call does not wait for the disk.
+     */
+    public synchronized void stop() {
+        if (mExecutor == null) {
+            return;
+        }
+        mRecording = false;
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                mDrainRunnable.run();
+                closeSegment();
+                closeHistory(true);
+                Log.d(TAG, "Stopped recording: " + mRecorded + " recorded, " + mDropped + " dropped");
+            }
+        });
+        mExecutor.shutdown();
+        mExecutor = null;
+    }
+
+    /**
+     * Queue a reading for the background thread. Must be called from a single ingestion thread.
+     */
+    @Override
+    public void onSample(int channel, long timestampMillis, float value) {
+        if (mRecording && !mQueue.offer(channel, timestampMillis, value)) {
+            mDropped++;
+        }
+    }
+
+    /**
+     * Number of readings written to the mapped segments.
+     */
+    public long getRecordedCount() {
+        return mRecorded;
+    }
+
+    /**
+     * Number of readings dropped because the background thread fell behind.
+     */
+    public long getDroppedCount() {
+        return mDropped;
+    }
+
+    private final SampleSink mWriter = new SampleSink() {
+        @Override
+        public void onSample(int channel, long timestampMillis, float value) {
+            if (mBuffer == null) {
+                return;
+            }
+            if (mBuffer.remaining() < SessionFormat.RECORD_SIZE) {
+                try {
+                    closeSegment();
+                    mSegmentIndex++;
+                    openSegment();
+                } catch (IOException e) {
+                    Log.e(TAG, "Failed to roll over segment", e);
+                    mRecording = false;
+                    return;
+                }
+            }
+            mBuffer.put((byte) channel);
+            mBuffer.putLong(timestampMillis);
+            mBuffer.putFloat(value);
+            mSegmentRecords++;
+            mRecorded++;
+            if (mHistory != null) {
+                try {
+                    mHistory.append(channel, timestampMillis, value);
+                } catch (IOException e) {
+                    // Left without its end marker so the segments are never compacted away.
+                    Log.e(TAG, "Failed to append to history, keeping segments only", e);
+                    closeHistory(false);
+                }
+            }
+        }
+    };
+
+    private final Runnable mDrainRunnable = new Runnable() {
+        @Override
+        public void run() {
+            while (mQueue.drain(mWriter, QUEUE_CAPACITY) > 0) {
+                // Keep going until the queue is empty.
+            }
+            if (mBuffer == null) {
+                return;
+            }
+            SessionFormat.writeHeader(mBuffer, mSegmentRecords);
+            long now = System.currentTimeMillis();
+            if (now - mLastSyncMillis >= mSyncIntervalMillis) {
+                mBuffer.force();
+                mLastSyncMillis = now;
+            }
+        }
+    };
+
+    private void openSegment() throws IOException {
+        File segment = new File(mDirectory, SessionFormat.segmentName(mSegmentIndex));
+        mFile = new RandomAccessFile(segment, "rw");
+        mBuffer = mFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, mSegmentSize);
+        mSegmentRecords = 0;
+        SessionFormat.writeHeader(mBuffer, 0);
+        mBuffer.position(SessionFormat.HEADER_SIZE);
+        mLastSyncMillis = System.currentTimeMillis();
+    }
+
+    private void closeSegment() {
+        if (mBuffer == null) {
+            return;
+        }
+        SessionFormat.writeHeader(mBuffer, mSegmentRecords);
+        mBuffer.force();
+        mBuffer = null;
+        try {
+            // Drop the unused tail of the preallocated mapping.
+            mFile.setLength(SessionFormat.HEADER_SIZE + mSegmentRecords * SessionFormat.RECORD_SIZE);
+            mFile.close();
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to close segment " + mSegmentIndex, e);
+        }
+        mFile = null;
+    }
+
+    private void openHistory() throws IOException {
+        mHistoryStream = new FileOutputStream(new File(mDirectory, HistoryFormat.FILE_NAME));
+        mHistory = new HistoryWriter(mHistoryStream.getChannel());
+    }
+
+    /**
+     * @param complete whether to write the end marker that lets the segments be compacted away
+     */
+    private void closeHistory(boolean complete) {
+        if (mHistory == null) {
+            return;
+        }
+        try {
+            if (complete) {
+                mHistory.close();
+                long raw = mHistory.getSampleCount() * SessionFormat.RECORD_SIZE;
+                Log.d(TAG, "History: " + mHistory.getSampleCount() + " samples in "
+                        + mHistory.getBytesWritten() + " bytes, "
+                        + String.format("%.1f", raw / (double) mHistory.getBytesWritten())
+                        + "x smaller than segments");
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to finish history", e);
+        }
+        try {
+            mHistoryStream.close();
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to close history", e);
+        }
+        mHistory = null;
+        mHistoryStream = null;
+    }
+
+    /**
+     * Deletes the segments of every other session in {@code sessionsDirectory} whose history was
+     * closed cleanly, on the background thread. Sessions cut short keep their segments.
+     */
+    public synchronized void compactPreviousSessions(final File sessionsDirectory) {
+        if (mExecutor == null) {
+            return;
+        }
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                File[] sessions = sessionsDirectory.listFiles();
+                if (sessions == null) {
+                    return;
+                }
+                for (File session : sessions) {
+                    if (!session.isDirectory() || session.equals(mDirectory)) {
+                        continue;
+                    }
+                    File[] segments = SessionReplaySource.listSegments(session);
+                    if (segments.length > 0 && isHistoryComplete(session)) {
+                        long freed = 0;
+                        for (File segment : segments) {
+                            long length = segment.length();
+                            if (segment.delete()) {
+                                freed += length;
+                            }
+                        }
+                        Log.d(TAG, "Compacted " + session + ", freed " + freed + " bytes");
+                    }
+                }
+            }
+        });
+    }
+
+    private static boolean isHistoryComplete(File session) {
+        File history = new File(session, HistoryFormat.FILE_NAME);
+        if (!history.isFile()) {
+            return false;
+        }
+        try {
+            HistoryReader reader = new HistoryReader(history);
+            try {
+                return reader.isComplete();
+            } finally {
+                reader.close();
+            }
+        } catch (IOException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package me.izen.glasssensor.app;
+
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.util.AttributeSet;
+import android.view.View;
+import me.izen.glasssensor.core.Sparkline;
+
+
+/**
+ * Trend line of one channel, drawn from the points chosen by a {@link Sparkline}.
+ *
+ * The path is kept in data coordinates and only extended with the points chosen since the last
+ * frame; it is rebuilt from scratch only when the sparkline decimates its points again. Each
+ * frame then just scales it to the view, so the cost of a frame depends on the width of the line
+ * and not on the length of the session.
+ */
+public class SparklineView extends View {
+
+    private static final float STROKE_WIDTH_DP = 1.5f;
+
+    private Sparkline mSparkline;
+    private long[] mTimestamps;
+    private float[] mValues;
+
+    // Points read so far, with x in milliseconds since the first point and y the raw value.
+    private final Path mPath = new Path();
+    private int mGeneration = -1;
+    private int mPointCount;
+    private long mOrigin;
+    private float mMin;
+    private float mMax;
+
+    private long mShownTailTimestamp;
+    private boolean mSizeChanged;
+
+    private final Path mScreenPath = new Path();
+    private final Matrix mMatrix = new Matrix();
+    private final Paint mPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+
+    public SparklineView(Context context) {
+        this(context, null, 0);
+    }
+
+    public SparklineView(Context context, AttributeSet attrs) {
+        this(context, attrs, 0);
+    }
+
+    public SparklineView(Context context, AttributeSet attrs, int style) {
+        super(context, attrs, style);
+        mPaint.setStyle(Paint.Style.STROKE);
+        mPaint.setStrokeWidth(STROKE_WIDTH_DP * getResources().getDisplayMetrics().density);
+        mPaint.setColor(getResources().getColor(R.color.white));
+    }
+
+    /**
+     * Set the sparkline this view draws. Must be called from the thread calling {@link #update()}.
+     */
+    public void setSparkline(Sparkline sparkline) {
+        mSparkline = sparkline;
+        mTimestamps = new long[sparkline.getMaxPoints() * 2];
+        mValues = new float[sparkline.getMaxPoints() * 2];
+        mGeneration = -1;
+        mShownTailTimestamp = 0;
+    }
+
+    @Override
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+        mSizeChanged = true;
+    }
+
+    /**
+     * Pull the points chosen since the last frame and rescale the line. Frame thread only.
+     *
+     * @return true if the line changed and the view must be redrawn
+     */
+    public boolean update() {
+        if (mSparkline == null) {
+            return false;
+        }
+        int count = mSparkline.readPoints(mGeneration, mPointCount, mTimestamps, mValues);
+        if (count < 0) {
+            // The points were decimated again, start over.
+            mGeneration = mSparkline.getGeneration();
+            mPath.rewind();
+            mPointCount = 0;
+            count = Math.max(mSparkline.readPoints(mGeneration, 0, mTimestamps, mValues), 0);
+        }
+        for (int i = 0; i < count; i++) {
+            if (mPointCount == 0) {
+                mOrigin = mTimestamps[i];
+                mMin = mValues[i];
+                mMax = mValues[i];
+                mPath.moveTo(0, mValues[i]);
+            } else {
+                mMin = Math.min(mMin, mValues[i]);
+                mMax = Math.max(mMax, mValues[i]);
+                mPath.lineTo(mTimestamps[i] - mOrigin, mValues[i]);
+            }
+            mPointCount++;
+        }
+
+        long tailTimestamp = mSparkline.getLastTimestamp();
+        if (count == 0 && tailTimestamp == mShownTailTimestamp && !mSizeChanged) {
+            return false;
+        }
+        mShownTailTimestamp = tailTimestamp;
+        mSizeChanged = false;
+        layoutPath(tailTimestamp, mSparkline.getLastValue());
+        return true;
+    }
+
+    /**
+     * Scale the line so it spans the view from the first point to the newest sample.
+     */
+    private void layoutPath(long tailTimestamp, float tailValue) {
+        mScreenPath.rewind();
+        if (mPointCount == 0) {
+            return;
+        }
+        float inset = mPaint.getStrokeWidth();
+        float width = getWidth() - 2 * inset;
+        float height = getHeight() - 2 * inset;
+        float min = Math.min(mMin, tailValue);
+        float max = Math.max(mMax, tailValue);
+
+        long span = tailTimestamp - mOrigin;
+        float scaleX = span > 0 ? width / span : 0;
+        float scaleY = max > min ? height / (max - min) : 0;
+        // A flat line sits in the middle.
+        float translateY = max > min ? inset + height + min * scaleY : getHeight() / 2f;
+        mMatrix.setScale(scaleX, -scaleY);
+        mMatrix.postTranslate(inset, translateY);
+        mPath.transform(mMatrix, mScreenPath);
+        mScreenPath.lineTo(inset + span * scaleX, translateY - tailValue * scaleY);
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        canvas.drawPath(mScreenPath, mPaint);
+    }
+}
@@ -0,0 +1,64 @@
+package me.izen.glasssensor.core;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Cost per reading of evaluating the alert rules of a channel with four rules, while the number
+ * of rules watching the other channels grows. It should stay flat.
+ */
+@State(Scope.Thread)
+public class AlertEngineBenchmark {
+
+    private static final int SAMPLES = 1000;
+
+    @Param({"0", "100", "10000"})
+    public int otherRules;
+
+    private AlertEngine mEngine;
+    private long mTimestamp;
+
+    @Setup
+    public void setUp() {
+        List<AlertRule> rules = new ArrayList<AlertRule>();
+        rules.add(AlertRule.parse("Gas > 300 for 5s hysteresis 20"));
+        rules.add(AlertRule.parse("Gas < 10"));
+        rules.add(AlertRule.parse("Gas rate > 50/s for 1s"));
+        rules.add(AlertRule.parse("Gas rate < -50/s"));
+        for (int i = 0; i < otherRules; i++) {
+            int channel = i % (SensorChannels.COUNT - 1);
+            if (channel >= SensorChannels.GAS) {
+                channel++;
+            }
+            rules.add(new AlertRule(channel, i % 2 == 0, true, i, 1000, 1));
+        }
+        mEngine = new AlertEngine(rules);
+        mEngine.setListener(new AlertEngine.Listener() {
+            @Override
+            public void onAlert(AlertRule rule, long timestampMillis, float value) {
+            }
+
+            @Override
+            public void onCleared(AlertRule rule, long timestampMillis, float value) {
+            }
+        });
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SAMPLES)
+    public long evaluate() {
+        for (int i = 0; i < SAMPLES; i++) {
+            mTimestamp += 100;
+            // Swings across the thresholds every few seconds.
+            mEngine.onSample(SensorChannels.GAS, mTimestamp, (i * 7) % 400);
+        }
+        return mEngine.getAlertCount();
+    }
+}
@@ -0,0 +1,47 @@
+package me.izen.glasssensor.core;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Cost of appending to a channel history and of the render path snapshotting its tail.
+ */
+@State(Scope.Thread)
+public class ChannelRingBufferBenchmark {
+
+    @Param({"1024", "65536"})
+    public int capacity;
+
+    @Param({"64", "1024"})
+    public int snapshotSize;
+
+    private ChannelRingBuffer mBuffer;
+    private long[] mTimestamps;
+    private float[] mValues;
+    private long mNow;
+
+    @Setup
+    public void setUp() {
+        mBuffer = new ChannelRingBuffer(capacity);
+        for (int i = 0; i < capacity; i++) {
+            mBuffer.append(i, i);
+        }
+        mTimestamps = new long[snapshotSize];
+        mValues = new float[snapshotSize];
+        mNow = capacity;
+    }
+
+    @Benchmark
+    public long append() {
+        mBuffer.append(mNow, mNow);
+        return ++mNow;
+    }
+
+    @Benchmark
+    public int snapshotLatest() {
+        return mBuffer.snapshotLatest(snapshotSize, mTimestamps, mValues);
+    }
+}
@@ -0,0 +1,45 @@
+package me.izen.glasssensor.core;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Cost per raw reading of deriving dew point, heat index and pressure altitude from a synthetic
+ * stream, including delivering the derived values.
+ */
+@State(Scope.Thread)
+public class DerivedPipelineBenchmark {
+
+    private static final int SAMPLES = 1000;
+
+    private SyntheticSource mSource;
+    private DerivedPipeline mPipeline;
+    private Blackhole mBlackhole;
+
+    private final SampleSink mSink = new SampleSink() {
+        @Override
+        public void onSample(int channel, long timestampMillis, float value) {
+            mBlackhole.consume(value);
+        }
+    };
+
+    @Setup
+    public void setUp(Blackhole blackhole) {
+        mBlackhole = blackhole;
+        mSource = new SyntheticSource(600, 42);
+        mPipeline = new DerivedPipeline(DerivedChannel.createDefaults(), mSink);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SAMPLES)
+    public long derive() {
+        for (int i = 0; i < SAMPLES; i++) {
+            mSource.next(mPipeline);
+        }
+        return mPipeline.getComputationCount();
+    }
+}
@@ -0,0 +1,102 @@
+package me.izen.glasssensor.core;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Ingestion throughput with 1 to 8 simulated drones, each decoded on a thread of its own into
+ * its own session, as when each drone has its own transport. Scores are samples summed over the
+ * threads, so with the sessions sharing no state they grow linearly with the devices up to the
+ * number of cores, and stay flat rather than drop past it.
+ */
+@State(Scope.Thread)
+public class DeviceScalingBenchmark {
+
+    private static final int SAMPLES = 500;
+    private static final AtomicInteger sNextDevice = new AtomicInteger();
+
+    private byte[] mFrame;
+    private long mSpanMillis;
+
+    private final DeviceRouter mRouter = new DeviceRouter();
+
+    /**
+     * Routes readings into the session of the frame's device, shifted so replayed frames keep
+     * the history in order.
+     */
+    private static final class DeviceRouter implements DeviceSink {
+        SensorSession mSession;
+        long mOffsetMillis;
+
+        @Override
+        public void onDevice(int device) {
+            mSession = SensorSession.get(device);
+        }
+
+        @Override
+        public void onSample(int channel, long timestampMillis, float value) {
+            mSession.onSample(channel, timestampMillis + mOffsetMillis, value);
+        }
+    }
+
+    @Setup
+    public void setUp() {
+        int device = sNextDevice.getAndIncrement() % SensorFrame.MAX_DEVICES;
+        final SensorFrame.Encoder encoder = new SensorFrame.Encoder(SAMPLES);
+        encoder.setDevice(device);
+        final long[] last = new long[1];
+        SampleSink fill = new SampleSink() {
+            @Override
+            public void onSample(int channel, long timestampMillis, float value) {
+                encoder.add(channel, timestampMillis * 10, value);
+                last[0] = timestampMillis * 10;
+            }
+        };
+        SyntheticSource source = new SyntheticSource(600, 42 + device);
+        while (!encoder.isFull()) {
+            source.next(fill);
+        }
+        mFrame = encoder.toByteArray();
+        mSpanMillis = last[0] + 10;
+    }
+
+    private int ingest() {
+        int count = SensorFrame.decode(mFrame, mRouter);
+        mRouter.mOffsetMillis += mSpanMillis;
+        return count;
+    }
+
+    @Benchmark
+    @Threads(1)
+    @OperationsPerInvocation(SAMPLES)
+    public int devices1() {
+        return ingest();
+    }
+
+    @Benchmark
+    @Threads(2)
+    @OperationsPerInvocation(SAMPLES)
+    public int devices2() {
+        return ingest();
+    }
+
+    @Benchmark
+    @Threads(4)
+    @OperationsPerInvocation(SAMPLES)
+    public int devices4() {
+        return ingest();
+    }
+
+    @Benchmark
+    @Threads(8)
+    @OperationsPerInvocation(SAMPLES)
+    public int devices8() {
+        return ingest();
+    }
+}
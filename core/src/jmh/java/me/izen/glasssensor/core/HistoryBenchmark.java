@@ -0,0 +1,146 @@
+package me.izen.glasssensor.core;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Encode and decode throughput of the compressed history, in samples per second, and its
+ * compression ratio against the raw session segments, printed once per fork.
+ *
+ * Runs on synthetic readings quantized like drone frames by default; pass
+ * {@code -p session=/path/to/session-NNN} to measure a session pulled from the device instead.
+ */
+@State(Scope.Thread)
+public class HistoryBenchmark {
+
+    private static final int SAMPLES = 100000;
+
+    @Param({""})
+    public String session;
+
+    private final int[] mChannels = new int[SAMPLES];
+    private final long[] mTimestamps = new long[SAMPLES];
+    private final float[] mValues = new float[SAMPLES];
+    private int mCount;
+
+    private File mFile;
+    private long mChecksum;
+
+    private final WritableByteChannel mDiscard = new WritableByteChannel() {
+        @Override
+        public int write(ByteBuffer src) {
+            int written = src.remaining();
+            src.position(src.limit());
+            return written;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+    };
+
+    private final SampleSink mLoader = new SampleSink() {
+        @Override
+        public void onSample(int channel, long timestampMillis, float value) {
+            mChannels[mCount] = channel;
+            mTimestamps[mCount] = timestampMillis;
+            mValues[mCount] = value;
+            mCount++;
+        }
+    };
+
+    private final SampleSink mQuantizedLoader = new SampleSink() {
+        @Override
+        public void onSample(int channel, long timestampMillis, float value) {
+            // Ten channels round robin at 10 Hz each, in thousandths as a SensorFrame carries them.
+            mLoader.onSample(channel, timestampMillis * 100,
+                    Math.round(value * SensorFrame.VALUE_SCALE) / (float) SensorFrame.VALUE_SCALE);
+        }
+    };
+
+    private final SampleSink mSum = new SampleSink() {
+        @Override
+        public void onSample(int channel, long timestampMillis, float value) {
+            mChecksum += timestampMillis;
+        }
+    };
+
+    @Setup
+    public void setUp() throws IOException {
+        SampleSource source;
+        SampleSink loader;
+        if (session.length() > 0) {
+            source = new SessionReplaySource(new File(session), false);
+            loader = mLoader;
+        } else {
+            source = new SyntheticSource(600, 42);
+            loader = mQuantizedLoader;
+        }
+        while (mCount < SAMPLES && source.next(loader)) {
+            // Load up to SAMPLES readings.
+        }
+
+        mFile = File.createTempFile("history", ".gsh");
+        FileOutputStream out = new FileOutputStream(mFile);
+        try {
+            HistoryWriter writer = new HistoryWriter(out.getChannel());
+            for (int i = 0; i < mCount; i++) {
+                writer.append(mChannels[i], mTimestamps[i], mValues[i]);
+            }
+            writer.close();
+        } finally {
+            out.close();
+        }
+        long raw = (long) mCount * SessionFormat.RECORD_SIZE;
+        System.out.println(String.format(
+                "history: %d samples, %d bytes, %.2f bytes/sample, %.1fx smaller than segments",
+                mCount, mFile.length(), mFile.length() / (double) mCount,
+                raw / (double) mFile.length()));
+    }
+
+    @TearDown
+    public void tearDown() {
+        mFile.delete();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SAMPLES)
+    public long encode() throws IOException {
+        HistoryWriter writer = new HistoryWriter(mDiscard);
+        for (int i = 0; i < mCount; i++) {
+            writer.append(mChannels[i], mTimestamps[i], mValues[i]);
+        }
+        writer.close();
+        return writer.getBytesWritten();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SAMPLES)
+    public long decode() throws IOException {
+        HistoryReader reader = new HistoryReader(mFile);
+        try {
+            while (reader.next(mSum)) {
+                // Drain the whole history.
+            }
+        } finally {
+            reader.close();
+        }
+        return mChecksum;
+    }
+}
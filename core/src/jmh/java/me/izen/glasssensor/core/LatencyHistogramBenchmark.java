@@ -0,0 +1,46 @@
+package me.izen.glasssensor.core;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+
+/**
+ * Cost of recording a latency, which the render thread pays for every channel shown in a frame,
+ * and of reading a percentile for the menu.
+ */
+@State(Scope.Thread)
+public class LatencyHistogramBenchmark {
+
+    private static final int VALUES = 1024;
+
+    private final long[] mValues = new long[VALUES];
+    private final LatencyHistogram mHistogram = new LatencyHistogram();
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        for (int i = 0; i < VALUES; i++) {
+            // Log-normal around 10ms, as frame latencies tend to be.
+            mValues[i] = (long) (Math.exp(random.nextGaussian()) * 10000);
+            mHistogram.record(mValues[i]);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(VALUES)
+    public long record() {
+        for (int i = 0; i < VALUES; i++) {
+            mHistogram.record(mValues[i]);
+        }
+        return mHistogram.getCount();
+    }
+
+    @Benchmark
+    public long percentile() {
+        return mHistogram.getValueAtPercentile(99);
+    }
+}
@@ -0,0 +1,45 @@
+package me.izen.glasssensor.core;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+
+/**
+ * Cost per reading of each noise filter on a noisy stream, the median for a small and a large
+ * window to show its logarithmic growth.
+ */
+@State(Scope.Thread)
+public class NoiseFilterBenchmark {
+
+    private static final int SAMPLES = 1024;
+
+    @Param({"Gas ema 0.3", "Gas kalman 0.05 4", "Gas median 5", "Gas median 101"})
+    public String filter;
+
+    private final float[] mReadings = new float[SAMPLES];
+    private NoiseFilter mFilter;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        for (int i = 0; i < SAMPLES; i++) {
+            mReadings[i] = 120 + (float) random.nextGaussian() * 2;
+        }
+        mFilter = ChannelFilter.parse(filter).createFilter();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SAMPLES)
+    public float filter() {
+        float sum = 0;
+        for (float reading : mReadings) {
+            sum += mFilter.filter(reading);
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,50 @@
+package me.izen.glasssensor.core;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Per-sample cost of updating the 1 min / 10 min / 1 h aggregates of a channel with a full
+ * history, and the cost of reading one window back.
+ */
+@State(Scope.Thread)
+public class RollingStatsBenchmark {
+
+    private RollingStats mStats;
+    private SyntheticSource mSource;
+    private final WindowStats mWindow = new WindowStats();
+    private long mNow;
+
+    private final SampleSink mTimed = new SampleSink() {
+        @Override
+        public void onSample(int channel, long timestampMillis, float value) {
+            // Pretend every channel reading is a gas reading 100 ms after the previous one.
+            mNow += 100;
+            mStats.onSample(SensorChannels.GAS, mNow, value);
+        }
+    };
+
+    @Setup
+    public void setUp() {
+        mStats = RollingStats.createDefault();
+        mSource = new SyntheticSource(600, 42);
+        // Fill the longest window so every sample also evicts one.
+        for (int i = 0; i < RollingStats.DEFAULT_CAPACITY * 2; i++) {
+            mSource.next(mTimed);
+        }
+    }
+
+    @Benchmark
+    public long add() {
+        mSource.next(mTimed);
+        return mNow;
+    }
+
+    @Benchmark
+    public double read() {
+        mStats.read(SensorChannels.GAS, 2, mWindow);
+        return mWindow.mean;
+    }
+}
@@ -0,0 +1,52 @@
+package me.izen.glasssensor.core;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Decode throughput of a full broadcast frame, reported per sample.
+ */
+@State(Scope.Thread)
+public class SensorFrameBenchmark {
+
+    private static final int SAMPLES = 500;
+
+    private byte[] mFrame;
+    private Blackhole mBlackhole;
+
+    private final SampleSink mSink = new SampleSink() {
+        @Override
+        public void onSample(int channel, long timestampMillis, float value) {
+            mBlackhole.consume(channel);
+            mBlackhole.consume(timestampMillis);
+            mBlackhole.consume(value);
+        }
+    };
+
+    @Setup
+    public void setUp(Blackhole blackhole) {
+        mBlackhole = blackhole;
+        final SensorFrame.Encoder encoder = new SensorFrame.Encoder(SAMPLES);
+        SampleSink fill = new SampleSink() {
+            @Override
+            public void onSample(int channel, long timestampMillis, float value) {
+                encoder.add(channel, timestampMillis * 10, value);
+            }
+        };
+        SyntheticSource source = new SyntheticSource(600, 42);
+        while (!encoder.isFull()) {
+            source.next(fill);
+        }
+        mFrame = encoder.toByteArray();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SAMPLES)
+    public int decode() {
+        return SensorFrame.decode(mFrame, mSink);
+    }
+}
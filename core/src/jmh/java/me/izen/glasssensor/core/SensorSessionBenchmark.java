@@ -0,0 +1,47 @@
+package me.izen.glasssensor.core;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Per-sample cost of ingestion into the session: history append plus fan-out to a queued sink,
+ * as done for the session recorder.
+ */
+@State(Scope.Thread)
+public class SensorSessionBenchmark {
+
+    private SensorSession mSession;
+    private SampleQueue mQueue;
+    private long mNow;
+
+    private final SampleSink mQueueSink = new SampleSink() {
+        @Override
+        public void onSample(int channel, long timestampMillis, float value) {
+            if (!mQueue.offer(channel, timestampMillis, value)) {
+                mQueue.drain(NULL_SINK, Integer.MAX_VALUE);
+            }
+        }
+    };
+
+    private static final SampleSink NULL_SINK = new SampleSink() {
+        @Override
+        public void onSample(int channel, long timestampMillis, float value) {
+        }
+    };
+
+    @Setup
+    public void setUp() {
+        mSession = SensorSession.get();
+        mQueue = new SampleQueue(4096);
+        mSession.addSink(mQueueSink);
+    }
+
+    @Benchmark
+    public long ingest() {
+        long now = mNow++;
+        mSession.onSample((int) (now % SensorChannels.COUNT), now, now);
+        return now;
+    }
+}
@@ -0,0 +1,127 @@
+package me.izen.glasssensor.core;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Frames per second through a {@link FrameServer} and a {@link SocketTransport} over loopback,
+ * until every reading reached the sink, against decoding the same frame in place.
+ *
+ * The broadcast path needs Android; compare on device with the {@code load_rate} and
+ * {@code transport} extras of the service instead.
+ */
+@State(Scope.Thread)
+public class SocketTransportBenchmark {
+
+    private static final int FRAMES = 100;
+
+    /** Readings per frame. */
+    @Param({"1", "50", "500"})
+    public int batch;
+
+    private byte[] mFrame;
+    private FrameServer mServer;
+    private SocketTransport mTransport;
+    private long mExpected;
+
+    private final AtomicLong mReceived = new AtomicLong();
+    private Blackhole mBlackhole;
+
+    private final SampleSink mReceiver = new SampleSink() {
+        @Override
+        public void onSample(int channel, long timestampMillis, float value) {
+            mReceived.incrementAndGet();
+        }
+    };
+
+    private final SampleSink mConsumer = new SampleSink() {
+        @Override
+        public void onSample(int channel, long timestampMillis, float value) {
+            mBlackhole.consume(channel);
+            mBlackhole.consume(timestampMillis);
+            mBlackhole.consume(value);
+        }
+    };
+
+    @Setup
+    public void setUp(Blackhole blackhole) throws IOException, InterruptedException {
+        mBlackhole = blackhole;
+        final SensorFrame.Encoder encoder = new SensorFrame.Encoder(batch);
+        SampleSink fill = new SampleSink() {
+            @Override
+            public void onSample(int channel, long timestampMillis, float value) {
+                encoder.add(channel, timestampMillis * 10, value);
+            }
+        };
+        SyntheticSource source = new SyntheticSource(600, 42);
+        while (!encoder.isFull()) {
+            source.next(fill);
+        }
+        mFrame = encoder.toByteArray();
+
+        mServer = new FrameServer(0);
+        mServer.start();
+        mTransport = new SocketTransport("127.0.0.1", mServer.getPort());
+        final CountDownLatch connected = new CountDownLatch(1);
+        mTransport.open(mReceiver, new SensorTransport.Callback() {
+            @Override
+            public void onConnected() {
+                connected.countDown();
+            }
+
+            @Override
+            public void onDisconnected() {
+            }
+        });
+        mTransport.connect();
+        if (!connected.await(5, TimeUnit.SECONDS) || !mTransport.requestStream()) {
+            throw new IOException("Cannot connect to the frame server");
+        }
+        // Frames are dropped until the server has read the start command.
+        while (mServer.getSentFrameCount() == 0) {
+            mServer.onFrame(mFrame);
+            Thread.sleep(1);
+        }
+        mExpected = mServer.getSentFrameCount() * batch;
+        awaitReceived();
+    }
+
+    @TearDown
+    public void tearDown() {
+        mTransport.close();
+        mServer.stop();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(FRAMES)
+    public long socket() {
+        for (int i = 0; i < FRAMES; i++) {
+            mServer.onFrame(mFrame);
+        }
+        mExpected += (long) FRAMES * batch;
+        awaitReceived();
+        return mReceived.get();
+    }
+
+    @Benchmark
+    public int decode() {
+        return SensorFrame.decode(mFrame, mConsumer);
+    }
+
+    private void awaitReceived() {
+        while (mReceived.get() < mExpected) {
+            Thread.yield();
+        }
+    }
+}
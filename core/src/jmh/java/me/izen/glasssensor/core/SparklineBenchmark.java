@@ -0,0 +1,102 @@
+package me.izen.glasssensor.core;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Per-frame cost of a sparkline as the session grows from 1k to 1M samples. {@code frame} reads
+ * every chosen point and scales it to the view, as the card does after the points were decimated
+ * again; it should stay flat. {@code recompute} is the naive alternative of running LTTB over the
+ * whole history every frame, for comparison. {@code append} is the ingestion cost of one sample,
+ * including generating it.
+ */
+@State(Scope.Thread)
+public class SparklineBenchmark {
+
+    private static final int WIDTH = Sparkline.DEFAULT_MAX_POINTS;
+
+    @Param({"1000", "10000", "100000", "1000000"})
+    public int history;
+
+    private Sparkline mSparkline;
+    private long[] mHistoryTimestamps;
+    private float[] mHistoryValues;
+
+    private final long[] mTimestamps = new long[WIDTH * 2];
+    private final float[] mValues = new float[WIDTH * 2];
+    private final float[] mScreen = new float[WIDTH * 4];
+
+    private long mNow;
+    private int mFilled;
+    private final SyntheticSource mSource = new SyntheticSource(600, 42);
+    private final SampleSink mGas = new SampleSink() {
+        @Override
+        public void onSample(int channel, long timestampMillis, float value) {
+            if (channel != SensorChannels.GAS) {
+                return;
+            }
+            mNow += 100;
+            mSparkline.append(mNow, value);
+            if (mFilled < history) {
+                mHistoryTimestamps[mFilled] = mNow;
+                mHistoryValues[mFilled] = value;
+                mFilled++;
+            }
+        }
+    };
+
+    @Setup
+    public void setUp() {
+        mSparkline = new Sparkline(WIDTH);
+        mHistoryTimestamps = new long[history];
+        mHistoryValues = new float[history];
+        while (mFilled < history) {
+            mSource.next(mGas);
+        }
+    }
+
+    @Benchmark
+    public float frame() {
+        int count = mSparkline.readPoints(mSparkline.getGeneration(), 0, mTimestamps, mValues);
+        return scale(mTimestamps, mValues, count);
+    }
+
+    @Benchmark
+    public long append() {
+        // One gas sample along with the other channels' readings.
+        for (int i = 0; i < SensorChannels.COUNT; i++) {
+            mSource.next(mGas);
+        }
+        return mNow;
+    }
+
+    @Benchmark
+    public float recompute() {
+        int count = Sparkline.decimate(mHistoryTimestamps, mHistoryValues, history, WIDTH,
+                mTimestamps, mValues);
+        return scale(mTimestamps, mValues, count);
+    }
+
+    /**
+     * Maps the points to a 40x18 box, like the matrix applied to the card's path.
+     */
+    private float scale(long[] timestamps, float[] values, int count) {
+        float min = Float.MAX_VALUE;
+        float max = -Float.MAX_VALUE;
+        for (int i = 0; i < count; i++) {
+            min = Math.min(min, values[i]);
+            max = Math.max(max, values[i]);
+        }
+        long origin = timestamps[0];
+        float scaleX = 40f / Math.max(timestamps[count - 1] - origin, 1);
+        float scaleY = 18f / Math.max(max - min, Float.MIN_VALUE);
+        for (int i = 0; i < count; i++) {
+            mScreen[2 * i] = (timestamps[i] - origin) * scaleX;
+            mScreen[2 * i + 1] = (values[i] - min) * scaleY;
+        }
+        return mScreen[2 * count - 1];
+    }
+}
@@ -0,0 +1,45 @@
+package me.izen.glasssensor.core;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Cost of formatting a channel value and a chronometer field, compared with the String based
+ * formatting the card used before. The gc profiler should show zero bytes per operation for the
+ * char[] variants.
+ */
+@State(Scope.Thread)
+public class ValueFormatterBenchmark {
+
+    private ValueFormatter mFormatter;
+    private final char[] mBuffer = new char[ValueFormatter.BUFFER_SIZE];
+    private int mTick;
+
+    @Setup
+    public void setUp() {
+        mFormatter = ValueFormatter.createDefault();
+    }
+
+    @Benchmark
+    public int formatValue() {
+        int tick = mTick++;
+        return mFormatter.format(tick % SensorChannels.COUNT, tick * 0.37f, mBuffer);
+    }
+
+    @Benchmark
+    public int formatTwoDigits() {
+        return ValueFormatter.formatTwoDigits(mTick++ % 100, mBuffer);
+    }
+
+    @Benchmark
+    public String formatValueWithString() {
+        return Float.toString(mTick++ * 0.37f);
+    }
+
+    @Benchmark
+    public String formatTwoDigitsWithString() {
+        return String.format("%02d", mTick++ % 100);
+    }
+}
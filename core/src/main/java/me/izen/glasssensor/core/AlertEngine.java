@@ -0,0 +1,183 @@
+package me.izen.glasssensor.core;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Evaluates {@link AlertRule}s incrementally as readings arrive.
+ *
+ * Each rule is compiled into a chain of stages: the value or its rate of change, a hold that
+ * restarts whenever the metric is not past the level, and a latch that keeps a firing rule up
+ * until the metric comes back past the level by the rule's hysteresis. Chains are grouped by
+ * channel, so a reading costs one pass over the rules of its own channel, however many rules
+ * watch other channels. The listener hears of a rule when it starts to hold and when it clears.
+ *
+ * Readings may come from different threads over time, but not at once; evaluation is
+ * synchronized to keep that safe.
+ */
+public final class AlertEngine implements SampleSink {
+
+    /**
+     * Interface to listen for alerts.
+     */
+    public interface Listener {
+        /** {@code rule} started to hold with the reading at {@code timestampMillis}. */
+        public void onAlert(AlertRule rule, long timestampMillis, float value);
+
+        /** {@code rule} stopped holding. */
+        public void onCleared(AlertRule rule, long timestampMillis, float value);
+    }
+
+    private static final Chain[] NO_CHAINS = new Chain[0];
+
+    private final Chain[][] mChains = new Chain[SensorChannels.COUNT][];
+    private final int mRuleCount;
+    private Listener mListener;
+    private long mAlerts;
+
+    public AlertEngine(List<AlertRule> rules) {
+        List<List<Chain>> byChannel = new ArrayList<List<Chain>>();
+        for (int i = 0; i < SensorChannels.COUNT; i++) {
+            byChannel.add(new ArrayList<Chain>());
+        }
+        for (AlertRule rule : rules) {
+            byChannel.get(rule.getChannel()).add(new Chain(rule));
+        }
+        for (int i = 0; i < SensorChannels.COUNT; i++) {
+            List<Chain> chains = byChannel.get(i);
+            mChains[i] = chains.isEmpty() ? NO_CHAINS : chains.toArray(new Chain[chains.size()]);
+        }
+        mRuleCount = rules.size();
+    }
+
+    public synchronized void setListener(Listener listener) {
+        mListener = listener;
+    }
+
+    @Override
+    public synchronized void onSample(int channel, long timestampMillis, float value) {
+        if (!SensorChannels.isValid(channel)) {
+            return;
+        }
+        Chain[] chains = mChains[channel];
+        for (int i = 0; i < chains.length; i++) {
+            Chain chain = chains[i];
+            int change = chain.evaluate(timestampMillis, value);
+            if (change != 0 && mListener != null) {
+                if (change > 0) {
+                    mAlerts++;
+                    mListener.onAlert(chain.mRule, timestampMillis, value);
+                } else {
+                    mListener.onCleared(chain.mRule, timestampMillis, value);
+                }
+            }
+        }
+    }
+
+    public int getRuleCount() {
+        return mRuleCount;
+    }
+
+    /**
+     * Number of rules watching {@code channel}.
+     */
+    public int getRuleCount(int channel) {
+        return mChains[channel].length;
+    }
+
+    /**
+     * Number of alerts raised so far.
+     */
+    public synchronized long getAlertCount() {
+        return mAlerts;
+    }
+
+    /**
+     * Rules currently holding, in no particular order.
+     */
+    public synchronized List<AlertRule> getActiveRules() {
+        List<AlertRule> active = new ArrayList<AlertRule>();
+        for (Chain[] chains : mChains) {
+            for (Chain chain : chains) {
+                if (chain.mFiring) {
+                    active.add(chain.mRule);
+                }
+            }
+        }
+        return active;
+    }
+
+    /**
+     * One compiled rule and its evaluation state.
+     */
+    private static final class Chain {
+        final AlertRule mRule;
+        private final boolean mRate;
+        private final boolean mAbove;
+        private final float mLevel;
+        // Level the metric must come back past to clear a firing rule.
+        private final float mReleaseLevel;
+        private final long mDurationMillis;
+
+        // Rate stage.
+        private boolean mHasPrevious;
+        private long mPreviousMillis;
+        private float mPreviousValue;
+
+        // Hold stage: since when the metric has been past the level without a break.
+        private boolean mPast;
+        private long mPastMillis;
+
+        // Latch stage.
+        boolean mFiring;
+
+        Chain(AlertRule rule) {
+            mRule = rule;
+            mRate = rule.isRate();
+            mAbove = rule.isAbove();
+            mLevel = rule.getLevel();
+            mReleaseLevel = mAbove ? mLevel - rule.getHysteresis() : mLevel + rule.getHysteresis();
+            mDurationMillis = rule.getDurationMillis();
+        }
+
+        /**
+         * @return 1 if the rule started to hold, -1 if it cleared, 0 otherwise
+         */
+        int evaluate(long timestampMillis, float value) {
+            float metric;
+            if (mRate) {
+                if (!mHasPrevious || timestampMillis <= mPreviousMillis) {
+                    // No rate without an earlier reading; out of order readings restart it.
+                    mHasPrevious = true;
+                    mPreviousMillis = timestampMillis;
+                    mPreviousValue = value;
+                    return 0;
+                }
+                metric = (value - mPreviousValue) * 1000f / (timestampMillis - mPreviousMillis);
+                mPreviousMillis = timestampMillis;
+                mPreviousValue = value;
+            } else {
+                metric = value;
+            }
+
+            if (!(mAbove ? metric > mLevel : metric < mLevel)) {
+                mPast = false;
+            } else if (!mPast) {
+                mPast = true;
+                mPastMillis = timestampMillis;
+            }
+
+            if (mFiring) {
+                // Hysteresis only decides when a firing rule clears.
+                if (mAbove ? metric <= mReleaseLevel : metric >= mReleaseLevel) {
+                    mFiring = false;
+                    return -1;
+                }
+            } else if (mPast && timestampMillis - mPastMillis >= mDurationMillis) {
+                mFiring = true;
+                return 1;
+            }
+            return 0;
+        }
+    }
+}
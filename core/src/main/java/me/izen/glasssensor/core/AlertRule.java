@@ -0,0 +1,162 @@
+package me.izen.glasssensor.core;
+
+import java.util.Locale;
+
+/**
+ * A condition on one channel that should raise an alert, written as
+ * <pre>
+ *   &lt;channel&gt; [rate] (&gt;|&lt;) &lt;level&gt;[/s] [for &lt;n&gt;(s|ms)] [hysteresis &lt;band&gt;]
+ * </pre>
+ * e.g. {@code Gas > 300 for 5s hysteresis 20}, {@code Battery < 15} or
+ * {@code Temperature rate > 0.5/s}. A rule holds once its value, or its rate of change per second,
+ * is past the level for the whole duration, and stays held until it comes back past the level by
+ * more than the hysteresis band, so readings hovering at the level do not raise it repeatedly.
+ */
+public final class AlertRule {
+
+    private final String mText;
+    private final int mChannel;
+    private final boolean mRate;
+    private final boolean mAbove;
+    private final float mLevel;
+    private final long mDurationMillis;
+    private final float mHysteresis;
+
+    public AlertRule(int channel, boolean rate, boolean above, float level, long durationMillis,
+                     float hysteresis) {
+        this(channel, rate, above, level, durationMillis, hysteresis, null);
+    }
+
+    private AlertRule(int channel, boolean rate, boolean above, float level, long durationMillis,
+                      float hysteresis, String text) {
+        if (!SensorChannels.isValid(channel)) {
+            throw new IllegalArgumentException("Invalid channel " + channel);
+        }
+        if (durationMillis < 0 || hysteresis < 0) {
+            throw new IllegalArgumentException("Negative duration or hysteresis");
+        }
+        mChannel = channel;
+        mRate = rate;
+        mAbove = above;
+        mLevel = level;
+        mDurationMillis = durationMillis;
+        mHysteresis = hysteresis;
+        if (text == null) {
+            text = SensorChannels.getName(channel) + (rate ? " rate " : " ")
+                    + (above ? "> " : "< ") + level + (rate ? "/s" : "")
+                    + (durationMillis > 0 ? " for " + durationMillis + "ms" : "")
+                    + (hysteresis > 0 ? " hysteresis " + hysteresis : "");
+        }
+        mText = text;
+    }
+
+    /**
+     * Parses a rule in the syntax above. Channel names and keywords are case insensitive.
+     *
+     * @throws IllegalArgumentException if the rule is malformed
+     */
+    public static AlertRule parse(String text) {
+        int op = indexOfOperator(text);
+        if (op < 0) {
+            throw new IllegalArgumentException("No > or < in rule: " + text);
+        }
+        String subject = text.substring(0, op).trim();
+        boolean rate = false;
+        if (subject.toLowerCase(Locale.US).endsWith(" rate")) {
+            rate = true;
+            subject = subject.substring(0, subject.length() - " rate".length()).trim();
+        }
+        int channel = -1;
+        for (int i = 0; i < SensorChannels.COUNT; i++) {
+            if (SensorChannels.getName(i).equalsIgnoreCase(subject)) {
+                channel = i;
+            }
+        }
+        if (channel < 0) {
+            throw new IllegalArgumentException("Unknown channel '" + subject + "' in rule: " + text);
+        }
+
+        String[] tokens = text.substring(op + 1).trim().split("\\s+");
+        try {
+            String level = tokens[0];
+            if (rate && level.endsWith("/s")) {
+                level = level.substring(0, level.length() - 2);
+            }
+            long durationMillis = 0;
+            float hysteresis = 0;
+            for (int i = 1; i < tokens.length; i += 2) {
+                if (i + 1 >= tokens.length) {
+                    throw new IllegalArgumentException("Missing value after '" + tokens[i]
+                            + "' in rule: " + text);
+                }
+                if ("for".equalsIgnoreCase(tokens[i])) {
+                    durationMillis = parseDuration(tokens[i + 1]);
+                } else if ("hysteresis".equalsIgnoreCase(tokens[i])) {
+                    hysteresis = Float.parseFloat(tokens[i + 1]);
+                } else {
+                    throw new IllegalArgumentException("Unexpected '" + tokens[i]
+                            + "' in rule: " + text);
+                }
+            }
+            return new AlertRule(channel, rate, text.charAt(op) == '>', Float.parseFloat(level),
+                    durationMillis, hysteresis, text.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Bad number in rule: " + text, e);
+        }
+    }
+
+    private static int indexOfOperator(String text) {
+        int above = text.indexOf('>');
+        int below = text.indexOf('<');
+        if (above < 0) {
+            return below;
+        }
+        return below < 0 ? above : Math.min(above, below);
+    }
+
+    private static long parseDuration(String token) {
+        String lower = token.toLowerCase(Locale.US);
+        if (lower.endsWith("ms")) {
+            return Long.parseLong(lower.substring(0, lower.length() - 2));
+        }
+        if (lower.endsWith("s")) {
+            return Math.round(Double.parseDouble(lower.substring(0, lower.length() - 1)) * 1000);
+        }
+        throw new NumberFormatException("Duration without s or ms: " + token);
+    }
+
+    public int getChannel() {
+        return mChannel;
+    }
+
+    /**
+     * Whether the rule watches the rate of change per second rather than the value.
+     */
+    public boolean isRate() {
+        return mRate;
+    }
+
+    /**
+     * Whether the rule holds above its level rather than below.
+     */
+    public boolean isAbove() {
+        return mAbove;
+    }
+
+    public float getLevel() {
+        return mLevel;
+    }
+
+    public long getDurationMillis() {
+        return mDurationMillis;
+    }
+
+    public float getHysteresis() {
+        return mHysteresis;
+    }
+
+    @Override
+    public String toString() {
+        return mText;
+    }
+}
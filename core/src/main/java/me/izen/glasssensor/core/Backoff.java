@@ -0,0 +1,60 @@
+package me.izen.glasssensor.core;
+
+import java.util.Random;
+
+/**
+ * Exponential backoff with jitter for connection retries.
+ *
+ * The ceiling doubles with every failed attempt up to a maximum, and each delay is drawn
+ * uniformly from the upper half of the current ceiling, so retries never bunch up at zero and
+ * several clients never fall into lockstep. The first retry after {@link #reset()} waits at most
+ * the base delay.
+ */
+public final class Backoff {
+
+    private final long mBaseMillis;
+    private final long mMaxMillis;
+    private final Random mRandom;
+    private int mAttempt;
+
+    public Backoff(long baseMillis, long maxMillis) {
+        this(baseMillis, maxMillis, new Random());
+    }
+
+    public Backoff(long baseMillis, long maxMillis, Random random) {
+        if (baseMillis <= 0 || maxMillis < baseMillis) {
+            throw new IllegalArgumentException("bad backoff range " + baseMillis + ".." + maxMillis);
+        }
+        mBaseMillis = baseMillis;
+        mMaxMillis = maxMillis;
+        mRandom = random;
+    }
+
+    /**
+     * Delay before the next attempt, growing the ceiling for the one after.
+     */
+    public long nextDelayMillis() {
+        // Shift bounded so the ceiling cannot overflow.
+        long ceiling = mBaseMillis << Math.min(mAttempt, 30);
+        if (ceiling > mMaxMillis || ceiling <= 0) {
+            ceiling = mMaxMillis;
+        }
+        mAttempt++;
+        long half = ceiling / 2;
+        return half + (long) (mRandom.nextDouble() * (ceiling - half));
+    }
+
+    /**
+     * Number of delays handed out since the last reset.
+     */
+    public int getAttempt() {
+        return mAttempt;
+    }
+
+    /**
+     * Start over from the base delay, after a successful attempt.
+     */
+    public void reset() {
+        mAttempt = 0;
+    }
+}
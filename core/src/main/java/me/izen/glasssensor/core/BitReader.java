@@ -0,0 +1,43 @@
+package me.izen.glasssensor.core;
+
+/**
+ * Reads values written by {@link BitWriter}. Reading past the end yields zero bits.
+ */
+final class BitReader {
+
+    private byte[] mBytes;
+    private int mLength;
+    private int mPosition;
+    private long mAccumulator;
+    private int mBits;
+
+    void reset(byte[] bytes, int offset, int length) {
+        mBytes = bytes;
+        mLength = offset + length;
+        mPosition = offset;
+        mAccumulator = 0;
+        mBits = 0;
+    }
+
+    boolean readBit() {
+        return read(1) != 0;
+    }
+
+    /**
+     * Reads {@code bits} bits, 1 to 64, as an unsigned value.
+     */
+    long read(int bits) {
+        if (bits > 32) {
+            long high = read(bits - 32);
+            return (high << 32) | read(32);
+        }
+        while (mBits < bits) {
+            int next = mPosition < mLength ? mBytes[mPosition] & 0xff : 0;
+            mPosition++;
+            mAccumulator = (mAccumulator << 8) | next;
+            mBits += 8;
+        }
+        mBits -= bits;
+        return (mAccumulator >>> mBits) & ((1L << bits) - 1);
+    }
+}
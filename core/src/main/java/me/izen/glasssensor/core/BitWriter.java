@@ -0,0 +1,67 @@
+package me.izen.glasssensor.core;
+
+/**
+ * Writes values of arbitrary bit width, most significant bit first, into a fixed byte array.
+ */
+final class BitWriter {
+
+    private final byte[] mBytes;
+    private int mLength;
+    // Bits not yet written out, in the low mBits bits.
+    private long mAccumulator;
+    private int mBits;
+
+    BitWriter(int capacity) {
+        mBytes = new byte[capacity];
+    }
+
+    void writeBit(boolean bit) {
+        write(bit ? 1 : 0, 1);
+    }
+
+    /**
+     * Writes the low {@code bits} bits of {@code value}, 1 to 64.
+     */
+    void write(long value, int bits) {
+        if (bits > 32) {
+            write(value >>> 32, bits - 32);
+            bits = 32;
+        }
+        mAccumulator = (mAccumulator << bits) | (value & ((1L << bits) - 1));
+        mBits += bits;
+        while (mBits >= 8) {
+            mBits -= 8;
+            mBytes[mLength++] = (byte) (mAccumulator >>> mBits);
+        }
+    }
+
+    /**
+     * Pads the last byte with zeros.
+     *
+     * @return number of bytes written
+     */
+    int finish() {
+        if (mBits > 0) {
+            mBytes[mLength++] = (byte) (mAccumulator << (8 - mBits));
+            mBits = 0;
+        }
+        return mLength;
+    }
+
+    byte[] getBytes() {
+        return mBytes;
+    }
+
+    /**
+     * Number of bits written so far.
+     */
+    long getBitCount() {
+        return mLength * 8L + mBits;
+    }
+
+    void reset() {
+        mLength = 0;
+        mAccumulator = 0;
+        mBits = 0;
+    }
+}
@@ -0,0 +1,125 @@
+package me.izen.glasssensor.core;
+
+/**
+ * The noise filter to run on one channel before its readings are shown, written as
+ * <pre>
+ *   &lt;channel&gt; ema &lt;alpha&gt;
+ *   &lt;channel&gt; kalman &lt;process noise&gt; &lt;measurement noise&gt;
+ *   &lt;channel&gt; median &lt;window&gt;
+ * </pre>
+ * e.g. {@code Gas kalman 0.05 4} or {@code Proximity median 5}; see {@link EmaFilter},
+ * {@link KalmanFilter} and {@link MedianFilter}. Each stream of readings gets its own filter from
+ * {@link #createFilter()}.
+ */
+public final class ChannelFilter {
+
+    public static final int EMA = 0;
+    public static final int KALMAN = 1;
+    public static final int MEDIAN = 2;
+
+    private static final String[] KIND_NAMES = {"ema", "kalman", "median"};
+    private static final int[] PARAMETER_COUNTS = {1, 2, 1};
+
+    private final int mChannel;
+    private final int mKind;
+    private final float[] mParameters;
+
+    public ChannelFilter(int channel, int kind, float... parameters) {
+        if (!SensorChannels.isValid(channel)) {
+            throw new IllegalArgumentException("Invalid channel " + channel);
+        }
+        if (kind < EMA || kind > MEDIAN || parameters.length != PARAMETER_COUNTS[kind]) {
+            throw new IllegalArgumentException("Invalid filter " + kind + " with "
+                    + parameters.length + " parameters");
+        }
+        mChannel = channel;
+        mKind = kind;
+        mParameters = parameters.clone();
+        // Fails now on parameters out of range rather than on the first reading.
+        createFilter();
+    }
+
+    /**
+     * Parses a filter in the syntax above. Channel names and kinds are case insensitive.
+     *
+     * @throws IllegalArgumentException if the filter is malformed
+     */
+    public static ChannelFilter parse(String text) {
+        String[] tokens = text.trim().split("\\s+");
+        for (int i = 1; i < tokens.length; i++) {
+            int kind = -1;
+            for (int k = 0; k < KIND_NAMES.length; k++) {
+                if (KIND_NAMES[k].equalsIgnoreCase(tokens[i])) {
+                    kind = k;
+                }
+            }
+            if (kind < 0) {
+                continue;
+            }
+            StringBuilder subject = new StringBuilder(tokens[0]);
+            for (int j = 1; j < i; j++) {
+                subject.append(' ').append(tokens[j]);
+            }
+            int channel = -1;
+            for (int c = 0; c < SensorChannels.COUNT; c++) {
+                if (SensorChannels.getName(c).equalsIgnoreCase(subject.toString())) {
+                    channel = c;
+                }
+            }
+            if (channel < 0) {
+                throw new IllegalArgumentException("Unknown channel '" + subject
+                        + "' in filter: " + text);
+            }
+            if (tokens.length - i - 1 != PARAMETER_COUNTS[kind]) {
+                throw new IllegalArgumentException(KIND_NAMES[kind] + " takes "
+                        + PARAMETER_COUNTS[kind] + " parameters in filter: " + text);
+            }
+            float[] parameters = new float[PARAMETER_COUNTS[kind]];
+            try {
+                for (int p = 0; p < parameters.length; p++) {
+                    parameters[p] = Float.parseFloat(tokens[i + 1 + p]);
+                }
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Bad number in filter: " + text, e);
+            }
+            return new ChannelFilter(channel, kind, parameters);
+        }
+        throw new IllegalArgumentException("No ema, kalman or median in filter: " + text);
+    }
+
+    /**
+     * A new filter with no readings yet.
+     */
+    public NoiseFilter createFilter() {
+        switch (mKind) {
+            case EMA:
+                return new EmaFilter(mParameters[0]);
+            case KALMAN:
+                return new KalmanFilter(mParameters[0], mParameters[1]);
+            default:
+                if (mParameters[0] != (int) mParameters[0]) {
+                    throw new IllegalArgumentException("Fractional median window "
+                            + mParameters[0]);
+                }
+                return new MedianFilter((int) mParameters[0]);
+        }
+    }
+
+    public int getChannel() {
+        return mChannel;
+    }
+
+    public int getKind() {
+        return mKind;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder(SensorChannels.getName(mChannel))
+                .append(' ').append(KIND_NAMES[mKind]);
+        for (float parameter : mParameters) {
+            text.append(' ').append(parameter);
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,131 @@
+package me.izen.glasssensor.core;
+
+/**
+ * Fixed-capacity history of a single channel, kept in parallel primitive arrays.
+ *
+ * There must be a single writer. Any number of readers may take snapshots concurrently without
+ * locking; a reader that races with the writer wrapping around simply gets fewer samples.
+ */
+public final class ChannelRingBuffer {
+
+    private final long[] mTimestamps;
+    private final float[] mValues;
+    private final int mMask;
+
+    // Total number of samples ever appended. Written after the slot is filled so readers that
+    // observe a count also observe the samples below it.
+    private volatile long mWritten;
+
+    /**
+     * @param capacity number of samples retained, rounded up to a power of two
+     */
+    public ChannelRingBuffer(int capacity) {
+        if (capacity <= 0 || capacity > (1 << 30)) {
+            throw new IllegalArgumentException("capacity out of range: " + capacity);
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+        mTimestamps = new long[size];
+        mValues = new float[size];
+        mMask = size - 1;
+    }
+
+    public int getCapacity() {
+        return mMask + 1;
+    }
+
+    /**
+     * Appends a sample, overwriting the oldest one when full. Writer thread only.
+     */
+    public void append(long timestampMillis, float value) {
+        long written = mWritten;
+        int slot = (int) written & mMask;
+        mTimestamps[slot] = timestampMillis;
+        mValues[slot] = value;
+        mWritten = written + 1;
+    }
+
+    /**
+     * Total number of samples appended since creation, including overwritten ones.
+     */
+    public long getWrittenCount() {
+        return mWritten;
+    }
+
+    /**
+     * Number of samples currently retained.
+     */
+    public int size() {
+        return (int) Math.min(mWritten, mMask + 1);
+    }
+
+    public boolean isEmpty() {
+        return mWritten == 0;
+    }
+
+    /**
+     * Value of the newest sample, or {@link Float#NaN} when empty.
+     */
+    public float getLatestValue() {
+        long written = mWritten;
+        return written == 0 ? Float.NaN : mValues[(int) (written - 1) & mMask];
+    }
+
+    /**
+     * Timestamp of the newest sample, or 0 when empty.
+     */
+    public long getLatestTimestamp() {
+        long written = mWritten;
+        return written == 0 ? 0 : mTimestamps[(int) (written - 1) & mMask];
+    }
+
+    /**
+     * Copies the newest samples, oldest first, into the given arrays.
+     *
+     * @param max upper bound on the number of samples copied; the arrays must hold at least this
+     * @return number of samples copied to the start of the arrays
+     */
+    public int snapshotLatest(int max, long[] timestamps, float[] values) {
+        long end = mWritten;
+        return copy(end - max, end, timestamps, values);
+    }
+
+    /**
+     * Copies the samples with a sequence number in {@code [from, to)}, oldest first. Sequence
+     * numbers are the values of {@link #getWrittenCount()} at the time each sample was appended,
+     * so a reader can poll for new samples incrementally.
+     *
+     * @return number of samples copied to the start of the arrays
+     */
+    public int snapshotRange(long from, long to, long[] timestamps, float[] values) {
+        return copy(from, Math.min(to, mWritten), timestamps, values);
+    }
+
+    private int copy(long from, long end, long[] timestamps, float[] values) {
+        int capacity = mMask + 1;
+        long start = Math.max(Math.max(from, 0), end - capacity);
+        if (start >= end) {
+            return 0;
+        }
+        int count = (int) (end - start);
+        for (int i = 0; i < count; i++) {
+            int slot = (int) (start + i) & mMask;
+            timestamps[i] = mTimestamps[slot];
+            values[i] = mValues[slot];
+        }
+
+        // Anything the writer lapped while we were copying is unreliable; keep only the tail
+        // that was still retained once the copy finished. append() overwrites the slot of sample
+        // mWritten - capacity before publishing, so that one may already be torn as well.
+        long oldestValid = mWritten - capacity + 1;
+        if (oldestValid > start) {
+            int skip = (int) Math.min(oldestValid - start, count);
+            count -= skip;
+            System.arraycopy(timestamps, skip, timestamps, 0, count);
+            System.arraycopy(values, skip, values, 0, count);
+        }
+        return count;
+    }
+}
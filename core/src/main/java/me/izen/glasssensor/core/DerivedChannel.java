@@ -0,0 +1,121 @@
+package me.izen.glasssensor.core;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A channel computed on the glass from the newest readings of other channels, evaluated by a
+ * {@link DerivedPipeline}. Inputs may themselves be derived.
+ */
+public final class DerivedChannel {
+
+    /**
+     * Computes the derived value from its inputs.
+     */
+    public interface Formula {
+        /**
+         * @param inputs newest value of each input, in the order they were declared
+         * @return the derived value, or NaN if the inputs have none
+         */
+        public float compute(float[] inputs);
+    }
+
+    private static final double STANDARD_PRESSURE_HPA = 1013.25;
+
+    /** Magnus approximation over water, good to 0.4 C from -45 to 60 C. */
+    public static final Formula DEW_POINT = new Formula() {
+        @Override
+        public float compute(float[] inputs) {
+            float celsius = inputs[0];
+            float humidity = inputs[1];
+            if (humidity <= 0) {
+                return Float.NaN;
+            }
+            double gamma = Math.log(Math.min(humidity, 100f) / 100.0)
+                    + 17.62 * celsius / (243.12 + celsius);
+            return (float) (243.12 * gamma / (17.62 - gamma));
+        }
+    };
+
+    /** NOAA heat index, Steadman's simple formula below 80 F and Rothfusz' regression above. */
+    public static final Formula HEAT_INDEX = new Formula() {
+        @Override
+        public float compute(float[] inputs) {
+            double t = inputs[0] * 1.8 + 32;
+            double rh = inputs[1];
+            double hi = 0.5 * (t + 61.0 + (t - 68.0) * 1.2 + rh * 0.094);
+            if ((hi + t) / 2 >= 80) {
+                hi = -42.379 + 2.04901523 * t + 10.14333127 * rh - 0.22475541 * t * rh
+                        - 0.00683783 * t * t - 0.05481717 * rh * rh + 0.00122874 * t * t * rh
+                        + 0.00085282 * t * rh * rh - 0.00000199 * t * t * rh * rh;
+                if (rh < 13 && t >= 80 && t <= 112) {
+                    hi -= (13 - rh) / 4 * Math.sqrt((17 - Math.abs(t - 95)) / 17);
+                } else if (rh > 85 && t >= 80 && t <= 87) {
+                    hi += (rh - 85) / 10 * (87 - t) / 5;
+                }
+            }
+            return (float) ((hi - 32) / 1.8);
+        }
+    };
+
+    /** Altitude of the pressure in the ICAO standard atmosphere, in meters. */
+    public static final Formula PRESSURE_ALTITUDE = new Formula() {
+        @Override
+        public float compute(float[] inputs) {
+            float hectopascals = inputs[0];
+            if (hectopascals <= 0) {
+                return Float.NaN;
+            }
+            return (float) (44307.694
+                    * (1 - Math.pow(hectopascals / STANDARD_PRESSURE_HPA, 0.190284)));
+        }
+    };
+
+    private final int mChannel;
+    private final int[] mInputs;
+    private final Formula mFormula;
+
+    /**
+     * @param channel channel the derived values are delivered on
+     * @param inputs channels the formula reads
+     */
+    public DerivedChannel(int channel, int[] inputs, Formula formula) {
+        if (!SensorChannels.isValid(channel) || SensorChannels.isRaw(channel)) {
+            throw new IllegalArgumentException("Not a derived channel: " + channel);
+        }
+        for (int input : inputs) {
+            if (!SensorChannels.isValid(input) || input == channel) {
+                throw new IllegalArgumentException("Invalid input " + input + " of " + channel);
+            }
+        }
+        mChannel = channel;
+        mInputs = inputs.clone();
+        mFormula = formula;
+    }
+
+    /**
+     * Dew point, heat index and pressure altitude.
+     */
+    public static List<DerivedChannel> createDefaults() {
+        List<DerivedChannel> channels = new ArrayList<DerivedChannel>();
+        channels.add(new DerivedChannel(SensorChannels.DEW_POINT,
+                new int[]{SensorChannels.TEMPERATURE, SensorChannels.HUMIDITY}, DEW_POINT));
+        channels.add(new DerivedChannel(SensorChannels.HEAT_INDEX,
+                new int[]{SensorChannels.TEMPERATURE, SensorChannels.HUMIDITY}, HEAT_INDEX));
+        channels.add(new DerivedChannel(SensorChannels.PRESSURE_ALTITUDE,
+                new int[]{SensorChannels.PRESSURE}, PRESSURE_ALTITUDE));
+        return channels;
+    }
+
+    public int getChannel() {
+        return mChannel;
+    }
+
+    public int[] getInputs() {
+        return mInputs.clone();
+    }
+
+    public Formula getFormula() {
+        return mFormula;
+    }
+}
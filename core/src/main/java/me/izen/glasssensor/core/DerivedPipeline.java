@@ -0,0 +1,195 @@
+package me.izen.glasssensor.core;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Computes {@link DerivedChannel}s incrementally as readings arrive. Each derived value goes to
+ * the next sink right after the reading it was computed from, with its timestamp, so it reaches
+ * the store and the card like any other channel.
+ *
+ * Derived channels form a graph evaluated in dependency order. A reading that repeats the
+ * previous value of its channel recomputes nothing; otherwise each derived channel reading it,
+ * directly or through other derived channels, is computed once, and only if it has a value for
+ * every input. Readings sent for a channel computed here are dropped.
+ *
+ * Readings must be delivered from a single thread.
+ */
+public final class DerivedPipeline implements SampleSink {
+
+    private static final int[] NO_NODES = new int[0];
+
+    private final SampleSink mSink;
+
+    // Derived channels in dependency order.
+    private final int[] mChannels;
+    private final int[][] mInputs;
+    private final DerivedChannel.Formula[] mFormulas;
+    private final float[][] mArguments;
+    private final boolean[] mDirty;
+
+    // Node computing each channel, or -1 for channels received as is.
+    private final int[] mNodeOf = new int[SensorChannels.COUNT];
+    // Nodes reading each channel, in dependency order.
+    private final int[][] mDependents = new int[SensorChannels.COUNT][];
+
+    private final float[] mValues = new float[SensorChannels.COUNT];
+    private final boolean[] mHasValue = new boolean[SensorChannels.COUNT];
+    private long mComputations;
+
+    /**
+     * @throws IllegalArgumentException if a channel is derived twice or the channels depend on
+     *                                  each other in a cycle
+     */
+    public DerivedPipeline(List<DerivedChannel> channels, SampleSink sink) {
+        mSink = sink;
+        List<DerivedChannel> ordered = sort(channels);
+        int count = ordered.size();
+        mChannels = new int[count];
+        mInputs = new int[count][];
+        mFormulas = new DerivedChannel.Formula[count];
+        mArguments = new float[count][];
+        mDirty = new boolean[count];
+        for (int i = 0; i < SensorChannels.COUNT; i++) {
+            mNodeOf[i] = -1;
+        }
+        for (int node = 0; node < count; node++) {
+            DerivedChannel channel = ordered.get(node);
+            mChannels[node] = channel.getChannel();
+            mInputs[node] = channel.getInputs();
+            mFormulas[node] = channel.getFormula();
+            mArguments[node] = new float[mInputs[node].length];
+            mNodeOf[mChannels[node]] = node;
+        }
+        for (int channel = 0; channel < SensorChannels.COUNT; channel++) {
+            List<Integer> dependents = new ArrayList<Integer>();
+            for (int node = 0; node < count; node++) {
+                for (int input : mInputs[node]) {
+                    if (input == channel) {
+                        dependents.add(node);
+                        break;
+                    }
+                }
+            }
+            mDependents[channel] = dependents.isEmpty() ? NO_NODES : new int[dependents.size()];
+            for (int i = 0; i < dependents.size(); i++) {
+                mDependents[channel][i] = dependents.get(i);
+            }
+        }
+    }
+
+    /**
+     * Orders {@code channels} so each comes after the derived channels it reads.
+     */
+    private static List<DerivedChannel> sort(List<DerivedChannel> channels) {
+        boolean[] derived = new boolean[SensorChannels.COUNT];
+        for (DerivedChannel channel : channels) {
+            if (derived[channel.getChannel()]) {
+                throw new IllegalArgumentException("Channel derived twice: "
+                        + SensorChannels.getName(channel.getChannel()));
+            }
+            derived[channel.getChannel()] = true;
+        }
+        List<DerivedChannel> ordered = new ArrayList<DerivedChannel>();
+        List<DerivedChannel> remaining = new ArrayList<DerivedChannel>(channels);
+        boolean[] placed = new boolean[SensorChannels.COUNT];
+        while (!remaining.isEmpty()) {
+            boolean progress = false;
+            for (int i = 0; i < remaining.size(); i++) {
+                DerivedChannel channel = remaining.get(i);
+                boolean ready = true;
+                for (int input : channel.getInputs()) {
+                    if (derived[input] && !placed[input]) {
+                        ready = false;
+                        break;
+                    }
+                }
+                if (ready) {
+                    ordered.add(channel);
+                    placed[channel.getChannel()] = true;
+                    remaining.remove(i--);
+                    progress = true;
+                }
+            }
+            if (!progress) {
+                throw new IllegalArgumentException("Derived channels depend on each other: "
+                        + SensorChannels.getName(remaining.get(0).getChannel()));
+            }
+        }
+        return ordered;
+    }
+
+    @Override
+    public void onSample(int channel, long timestampMillis, float value) {
+        if (!SensorChannels.isValid(channel) || mNodeOf[channel] >= 0) {
+            return;
+        }
+        mSink.onSample(channel, timestampMillis, value);
+        if (!update(channel, value)) {
+            return;
+        }
+        int[] dependents = mDependents[channel];
+        if (dependents.length == 0) {
+            return;
+        }
+        for (int node : dependents) {
+            mDirty[node] = true;
+        }
+        for (int node = dependents[0]; node < mChannels.length; node++) {
+            if (!mDirty[node]) {
+                continue;
+            }
+            mDirty[node] = false;
+            if (!gatherArguments(node)) {
+                continue;
+            }
+            mComputations++;
+            int derived = mChannels[node];
+            float result = mFormulas[node].compute(mArguments[node]);
+            mSink.onSample(derived, timestampMillis, result);
+            if (update(derived, result)) {
+                for (int dependent : mDependents[derived]) {
+                    mDirty[dependent] = true;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return true if {@code value} changed the channel
+     */
+    private boolean update(int channel, float value) {
+        if (mHasValue[channel] && Float.compare(mValues[channel], value) == 0) {
+            return false;
+        }
+        mValues[channel] = value;
+        mHasValue[channel] = true;
+        return true;
+    }
+
+    private boolean gatherArguments(int node) {
+        int[] inputs = mInputs[node];
+        float[] arguments = mArguments[node];
+        for (int i = 0; i < inputs.length; i++) {
+            if (!mHasValue[inputs[i]]) {
+                return false;
+            }
+            arguments[i] = mValues[inputs[i]];
+        }
+        return true;
+    }
+
+    /**
+     * Whether {@code channel} is computed here rather than received.
+     */
+    public boolean isDerived(int channel) {
+        return SensorChannels.isValid(channel) && mNodeOf[channel] >= 0;
+    }
+
+    /**
+     * Number of derived values computed so far.
+     */
+    public long getComputationCount() {
+        return mComputations;
+    }
+}
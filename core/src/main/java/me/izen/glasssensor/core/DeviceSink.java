@@ -0,0 +1,14 @@
+package me.izen.glasssensor.core;
+
+/**
+ * A {@link SampleSink} told which device the readings that follow come from.
+ *
+ * {@link SensorFrame#decode} calls {@link #onDevice} once per frame, before its readings.
+ */
+public interface DeviceSink extends SampleSink {
+    /**
+     * Notified that the next readings come from {@code device}, 0 to
+     * {@link SensorFrame#MAX_DEVICES} - 1.
+     */
+    public void onDevice(int device);
+}
@@ -0,0 +1,149 @@
+package me.izen.glasssensor.core;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * End-to-end latency of the card, per channel: from a reading crossing the transport boundary to
+ * the frame showing it being posted, in a {@link LatencyHistogram} each.
+ *
+ * The ingestion thread stamps each reading with {@link #onArrival}. The render thread marks the
+ * channels whose shown value changed with {@link #onShown} and records them all once the frame is
+ * posted with {@link #onPosted}. Only the newest reading of a channel reaches the screen, so the
+ * histograms describe how stale the shown numbers are, not how long superseded ones waited.
+ */
+public final class DisplayLatency {
+
+    private final long mStartNanos = System.nanoTime();
+    private final LatencyHistogram[] mHistograms;
+
+    // Written by the ingestion thread.
+    private final AtomicLongArray mArrivalNanos;
+    private final AtomicLongArray mArrivals;
+
+    // Owned by the render thread.
+    private final long[] mShownArrivalNanos;
+    private final boolean[] mShown;
+    private volatile long mFrames;
+
+    public DisplayLatency(int channels) {
+        mHistograms = new LatencyHistogram[channels];
+        for (int i = 0; i < channels; i++) {
+            mHistograms[i] = new LatencyHistogram();
+        }
+        mArrivalNanos = new AtomicLongArray(channels);
+        mArrivals = new AtomicLongArray(channels);
+        mShownArrivalNanos = new long[channels];
+        mShown = new boolean[channels];
+    }
+
+    /**
+     * Stamps a reading of {@code channel} as it arrives. Ingestion thread only.
+     */
+    public void onArrival(int channel) {
+        mArrivalNanos.lazySet(channel, System.nanoTime());
+        mArrivals.lazySet(channel, mArrivals.get(channel) + 1);
+    }
+
+    /**
+     * The newest reading of {@code channel} was handed to its view for the next frame. Render
+     * thread only.
+     */
+    public void onShown(int channel) {
+        // May pick up a reading newer than the one drained, which only makes it look fresher by
+        // the time between two readings.
+        mShownArrivalNanos[channel] = mArrivalNanos.get(channel);
+        mShown[channel] = true;
+    }
+
+    /**
+     * The frame holding every reading shown since the previous one was posted. Render thread
+     * only.
+     */
+    public void onPosted() {
+        long now = System.nanoTime();
+        for (int i = 0; i < mShown.length; i++) {
+            if (mShown[i]) {
+                mShown[i] = false;
+                mHistograms[i].record((now - mShownArrivalNanos[i]) / 1000);
+            }
+        }
+        mFrames++;
+    }
+
+    public LatencyHistogram getHistogram(int channel) {
+        return mHistograms[channel];
+    }
+
+    /**
+     * Readings of {@code channel} received so far.
+     */
+    public long getArrivalCount(int channel) {
+        return mArrivals.get(channel);
+    }
+
+    /**
+     * Readings of {@code channel} per second since the tracker was created.
+     */
+    public double getArrivalRate(int channel) {
+        long elapsed = System.nanoTime() - mStartNanos;
+        return elapsed == 0 ? 0 : mArrivals.get(channel) * 1e9 / elapsed;
+    }
+
+    /**
+     * {@link System#nanoTime()} of the newest reading of any channel, or 0 if none arrived.
+     */
+    public long getLastArrivalNanos() {
+        long last = 0;
+        for (int i = 0; i < mArrivalNanos.length(); i++) {
+            if (mArrivals.get(i) != 0 && (last == 0 || mArrivalNanos.get(i) - last > 0)) {
+                last = mArrivalNanos.get(i);
+            }
+        }
+        return last;
+    }
+
+    public long getFrameCount() {
+        return mFrames;
+    }
+
+    /**
+     * Writes every channel that received readings as text: a summary line, then one
+     * {@code lowest highest count} line per non-empty bucket, in microseconds.
+     *
+     * <pre>
+     * display-latency frames=1204 elapsed_ms=60210
+     * channel=0 name="Temperature" arrived=602 rate=10.00/s shown=598 p50_us=15871 p99_us=33791
+     *     max_us=34012 (on one line)
+     *   15360 15871 212
+     *   ...
+     * </pre>
+     */
+    public void dump(Writer out) throws IOException {
+        out.write("display-latency frames=" + mFrames
+                + " elapsed_ms=" + (System.nanoTime() - mStartNanos) / 1000000 + "\n");
+        for (int channel = 0; channel < mHistograms.length; channel++) {
+            if (getArrivalCount(channel) == 0) {
+                continue;
+            }
+            LatencyHistogram histogram = mHistograms[channel];
+            out.write("channel=" + channel
+                    + " name=\"" + SensorChannels.getName(channel) + "\""
+                    + " arrived=" + getArrivalCount(channel)
+                    + " rate=" + String.format("%.2f", getArrivalRate(channel)) + "/s"
+                    + " shown=" + histogram.getCount()
+                    + " p50_us=" + histogram.getValueAtPercentile(50)
+                    + " p99_us=" + histogram.getValueAtPercentile(99)
+                    + " max_us=" + histogram.getMax() + "\n");
+            for (int i = 0; i < LatencyHistogram.getBuckets(); i++) {
+                long count = histogram.getBucketCount(i);
+                if (count != 0) {
+                    out.write("  " + LatencyHistogram.lowestOf(i)
+                            + " " + LatencyHistogram.highestOf(i) + " " + count + "\n");
+                }
+            }
+        }
+        out.flush();
+    }
+}
@@ -0,0 +1,331 @@
+package me.izen.glasssensor.core;
+
+/**
+ * Connection state machine for the drone link: bind to the tunnel's router service, launch the
+ * drone control app through it, then watch the readings until they stop and start over.
+ *
+ * <pre>
+ *   SEARCHING --bind--> BINDING --bound, launch--> LAUNCHING --first sample--> STREAMING
+ *       ^                  |                           |                          |
+ *       +---- failure -----+---------------------------+       readings stall     |
+ *                                                                                  v
+ *   RECONNECTING (same retries as SEARCHING, after having streamed) <--------------+
+ * </pre>
+ * Failed attempts are retried after a jittered exponential {@link Backoff}, which starts over
+ * once readings flow again; the first retry after a dropout is near immediate, and reuses the
+ * binding when it is still up. The link records the time from {@link #start} to the first
+ * reading and the gap in readings around each reconnect.
+ *
+ * The link does no I/O and keeps no clock of its own: the {@link Driver} performs the actions and
+ * reports their outcome, and calls {@link #poll} when the delay it last returned has elapsed. All
+ * calls must come from one thread.
+ */
+public final class DroneLink {
+
+    public static final int IDLE = 0;
+    public static final int SEARCHING = 1;
+    public static final int BINDING = 2;
+    public static final int LAUNCHING = 3;
+    public static final int STREAMING = 4;
+    public static final int RECONNECTING = 5;
+
+    private static final String[] STATE_NAMES = {
+            "idle", "searching", "binding", "launching", "streaming", "reconnecting"
+    };
+
+    public static final long DEFAULT_BIND_TIMEOUT_MILLIS = 5000;
+    /** Launching the drone app includes its Bluetooth connection. */
+    public static final long DEFAULT_FIRST_SAMPLE_TIMEOUT_MILLIS = 15000;
+    /** Several times the slowest drone sampling interval. */
+    public static final long DEFAULT_STALL_TIMEOUT_MILLIS = 3000;
+
+    /**
+     * Performs the link's actions. Each returns false if the action could not even be started.
+     */
+    public interface Driver {
+        /** Bind to the router service, dropping any earlier binding. */
+        public boolean bind();
+
+        /** Ask the router service to launch the drone control app. */
+        public boolean launch();
+
+        /** Drop the binding. */
+        public void unbind();
+    }
+
+    /**
+     * Interface to listen for state changes.
+     */
+    public interface Listener {
+        public void onStateChanged(int state);
+    }
+
+    private final Driver mDriver;
+    private final Backoff mBackoff;
+    private final long mBindTimeoutMillis;
+    private final long mFirstSampleTimeoutMillis;
+    private final long mStallTimeoutMillis;
+    private Listener mListener;
+
+    private int mState = IDLE;
+    private boolean mBound;
+    private boolean mStreamedOnce;
+    private long mStateMillis;
+    private long mRetryMillis;
+    private long mLastSampleMillis;
+
+    private long mStartMillis;
+    private long mFirstSampleLatencyMillis = -1;
+    private long mAttempts;
+    private long mFailures;
+    private long mDropouts;
+    private long mReconnects;
+    private long mReconnectSumMillis;
+    private long mReconnectMaxMillis;
+    private long mLastReconnectMillis = -1;
+
+    public DroneLink(Driver driver) {
+        this(driver, new Backoff(250, 30000), DEFAULT_BIND_TIMEOUT_MILLIS,
+                DEFAULT_FIRST_SAMPLE_TIMEOUT_MILLIS, DEFAULT_STALL_TIMEOUT_MILLIS);
+    }
+
+    public DroneLink(Driver driver, Backoff backoff, long bindTimeoutMillis,
+                     long firstSampleTimeoutMillis, long stallTimeoutMillis) {
+        mDriver = driver;
+        mBackoff = backoff;
+        mBindTimeoutMillis = bindTimeoutMillis;
+        mFirstSampleTimeoutMillis = firstSampleTimeoutMillis;
+        mStallTimeoutMillis = stallTimeoutMillis;
+    }
+
+    public void setListener(Listener listener) {
+        mListener = listener;
+    }
+
+    public int getState() {
+        return mState;
+    }
+
+    public static String getStateName(int state) {
+        return STATE_NAMES[state];
+    }
+
+    /**
+     * Start connecting.
+     *
+     * @return milliseconds until {@link #poll} is needed
+     */
+    public long start(long nowMillis) {
+        if (mState != IDLE) {
+            return poll(nowMillis);
+        }
+        mStartMillis = nowMillis;
+        mFirstSampleLatencyMillis = -1;
+        mStreamedOnce = false;
+        mBackoff.reset();
+        attempt(nowMillis);
+        return poll(nowMillis);
+    }
+
+    /**
+     * Drop the binding and stop retrying.
+     */
+    public void stop() {
+        if (mBound) {
+            mDriver.unbind();
+            mBound = false;
+        }
+        setState(IDLE, 0);
+    }
+
+    /**
+     * The router service is bound.
+     */
+    public void onBound(long nowMillis) {
+        mBound = true;
+        if (mState == BINDING) {
+            launch(nowMillis);
+        }
+    }
+
+    /**
+     * The router service went away, or could not be bound.
+     */
+    public void onUnbound(long nowMillis) {
+        mBound = false;
+        if (mState == BINDING || mState == LAUNCHING) {
+            fail(nowMillis);
+        } else if (mState == STREAMING) {
+            dropout(nowMillis);
+        }
+    }
+
+    /**
+     * A reading arrived. Only the arrival time matters; arrivals no newer than one already
+     * reported are ignored, so the driver may report the same one twice.
+     */
+    public void onSample(long arrivalMillis) {
+        long previous = mLastSampleMillis;
+        if (arrivalMillis <= previous) {
+            return;
+        }
+        mLastSampleMillis = arrivalMillis;
+        if (mState == IDLE || mState == STREAMING) {
+            return;
+        }
+        if (mFirstSampleLatencyMillis < 0) {
+            mFirstSampleLatencyMillis = arrivalMillis - mStartMillis;
+        } else if (mStreamedOnce) {
+            long gap = arrivalMillis - previous;
+            mReconnects++;
+            mReconnectSumMillis += gap;
+            mReconnectMaxMillis = Math.max(mReconnectMaxMillis, gap);
+            mLastReconnectMillis = gap;
+        }
+        mStreamedOnce = true;
+        mBackoff.reset();
+        setState(STREAMING, arrivalMillis);
+    }
+
+    /**
+     * Applies timeouts and due retries.
+     *
+     * @return milliseconds until the next call is needed, or {@link Long#MAX_VALUE} when idle
+     */
+    public long poll(long nowMillis) {
+        switch (mState) {
+            case BINDING:
+                if (nowMillis - mStateMillis >= mBindTimeoutMillis) {
+                    fail(nowMillis);
+                }
+                break;
+            case LAUNCHING:
+                if (nowMillis - mStateMillis >= mFirstSampleTimeoutMillis) {
+                    fail(nowMillis);
+                }
+                break;
+            case STREAMING:
+                if (nowMillis - mLastSampleMillis >= mStallTimeoutMillis) {
+                    dropout(nowMillis);
+                }
+                break;
+            case SEARCHING:
+            case RECONNECTING:
+                if (nowMillis >= mRetryMillis) {
+                    attempt(nowMillis);
+                }
+                break;
+            default:
+                break;
+        }
+
+        switch (mState) {
+            case BINDING:
+                return mStateMillis + mBindTimeoutMillis - nowMillis;
+            case LAUNCHING:
+                return mStateMillis + mFirstSampleTimeoutMillis - nowMillis;
+            case STREAMING:
+                return mLastSampleMillis + mStallTimeoutMillis - nowMillis;
+            case SEARCHING:
+            case RECONNECTING:
+                return mRetryMillis - nowMillis;
+            default:
+                return Long.MAX_VALUE;
+        }
+    }
+
+    private void attempt(long nowMillis) {
+        mAttempts++;
+        if (mBound) {
+            // The tunnel survived, only the drone app needs launching again.
+            launch(nowMillis);
+            return;
+        }
+        setState(BINDING, nowMillis);
+        if (!mDriver.bind()) {
+            fail(nowMillis);
+        }
+    }
+
+    private void launch(long nowMillis) {
+        setState(LAUNCHING, nowMillis);
+        if (!mDriver.launch()) {
+            fail(nowMillis);
+        }
+    }
+
+    private void dropout(long nowMillis) {
+        mDropouts++;
+        // Retry right away; the backoff only grows if that fails too.
+        mRetryMillis = nowMillis;
+        setState(RECONNECTING, nowMillis);
+    }
+
+    private void fail(long nowMillis) {
+        mFailures++;
+        mRetryMillis = nowMillis + mBackoff.nextDelayMillis();
+        setState(mStreamedOnce ? RECONNECTING : SEARCHING, nowMillis);
+    }
+
+    private void setState(int state, long nowMillis) {
+        mStateMillis = nowMillis;
+        if (state != mState) {
+            mState = state;
+            if (mListener != null) {
+                mListener.onStateChanged(state);
+            }
+        }
+    }
+
+    /**
+     * Milliseconds from {@link #start} to the first reading, or -1 if none arrived yet.
+     */
+    public long getFirstSampleLatencyMillis() {
+        return mFirstSampleLatencyMillis;
+    }
+
+    /**
+     * Number of times readings stalled or the binding went away while streaming.
+     */
+    public long getDropoutCount() {
+        return mDropouts;
+    }
+
+    /**
+     * Number of times readings resumed after a dropout or failure while streaming.
+     */
+    public long getReconnectCount() {
+        return mReconnects;
+    }
+
+    /**
+     * Mean gap in readings around a reconnect, from the last reading before it to the first one
+     * after it, or 0 if there were none.
+     */
+    public double getMeanReconnectMillis() {
+        return mReconnects == 0 ? 0 : mReconnectSumMillis / (double) mReconnects;
+    }
+
+    public long getMaxReconnectMillis() {
+        return mReconnectMaxMillis;
+    }
+
+    /**
+     * Gap in readings around the latest reconnect, or -1 if there was none.
+     */
+    public long getLastReconnectMillis() {
+        return mLastReconnectMillis;
+    }
+
+    @Override
+    public String toString() {
+        return getStateName(mState)
+                + ", first sample " + mFirstSampleLatencyMillis + "ms"
+                + ", " + mAttempts + " attempts"
+                + ", " + mFailures + " failures"
+                + ", " + mDropouts + " dropouts"
+                + ", " + mReconnects + " reconnects"
+                + " (mean " + String.format("%.0f", getMeanReconnectMillis()) + "ms"
+                + ", max " + mReconnectMaxMillis + "ms)";
+    }
+}
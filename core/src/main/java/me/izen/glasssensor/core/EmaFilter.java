@@ -0,0 +1,39 @@
+package me.izen.glasssensor.core;
+
+/**
+ * Exponential moving average: each reading moves the output by {@code alpha} of its distance to
+ * it. Constant time.
+ */
+public final class EmaFilter implements NoiseFilter {
+
+    private final float mAlpha;
+    private float mValue = Float.NaN;
+
+    /**
+     * @param alpha weight of the newest reading, in (0, 1]; 1 passes readings through
+     */
+    public EmaFilter(float alpha) {
+        if (!(alpha > 0 && alpha <= 1)) {
+            throw new IllegalArgumentException("EMA weight out of (0, 1]: " + alpha);
+        }
+        mAlpha = alpha;
+    }
+
+    @Override
+    public float filter(float value) {
+        if (Float.isNaN(value)) {
+            return value;
+        }
+        if (Float.isNaN(mValue)) {
+            mValue = value;
+        } else {
+            mValue += mAlpha * (value - mValue);
+        }
+        return mValue;
+    }
+
+    @Override
+    public void reset() {
+        mValue = Float.NaN;
+    }
+}
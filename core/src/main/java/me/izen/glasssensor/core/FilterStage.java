@@ -0,0 +1,37 @@
+package me.izen.glasssensor.core;
+
+import java.util.List;
+
+/**
+ * Runs the {@link ChannelFilter} of each channel that has one on the readings going to the next
+ * sink, passing the other channels through. Meant to sit between the session, which records raw
+ * readings, and the card, which shows smoothed ones.
+ *
+ * Readings must be delivered from a single thread.
+ */
+public final class FilterStage implements SampleSink {
+
+    private final SampleSink mSink;
+    private final NoiseFilter[] mFilters = new NoiseFilter[SensorChannels.COUNT];
+
+    /**
+     * @throws IllegalArgumentException if a channel has two filters
+     */
+    public FilterStage(List<ChannelFilter> filters, SampleSink sink) {
+        mSink = sink;
+        for (ChannelFilter filter : filters) {
+            int channel = filter.getChannel();
+            if (mFilters[channel] != null) {
+                throw new IllegalArgumentException("Channel " + SensorChannels.getName(channel)
+                        + " filtered twice");
+            }
+            mFilters[channel] = filter.createFilter();
+        }
+    }
+
+    @Override
+    public void onSample(int channel, long timestampMillis, float value) {
+        NoiseFilter filter = mFilters[channel];
+        mSink.onSample(channel, timestampMillis, filter == null ? value : filter.filter(value));
+    }
+}
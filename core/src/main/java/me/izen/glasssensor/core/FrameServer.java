@@ -0,0 +1,281 @@
+package me.izen.glasssensor.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+/**
+ * Stand-in for the drone bridge on the far side of a {@link SocketTransport}: serves the frames
+ * handed to {@link #onFrame} to one client at a time, once it asked for them.
+ *
+ * Also stands in for the drone control side of rate negotiation: checks every
+ * {@link SocketTransport#CMD_RATES} request it receives, keeps the newest valid one and reports
+ * it to a {@link RateListener}. A malformed request drops the client, as the real bridge would.
+ *
+ * Listens on the loopback interface only. Run it on a dev machine with
+ * {@code java -cp core.jar me.izen.glasssensor.core.FrameServer [port] [rate] [session-dir]} and
+ * {@code adb reverse tcp:48120 tcp:48120}, or in process for load tests.
+ */
+public final class FrameServer implements FrameSink {
+
+    /**
+     * Interface to follow the sampling rates clients ask for.
+     */
+    public interface RateListener {
+        /**
+         * Called on the server's thread with a valid request.
+         *
+         * @param hz rate of each raw channel, only valid during the call
+         */
+        public void onRates(float[] hz);
+    }
+
+    private final ServerSocketChannel mServer;
+    private Thread mAcceptThread;
+
+    private volatile SocketChannel mClient;
+    private volatile boolean mStreaming;
+    private volatile long mSentFrames;
+    private volatile long mDroppedFrames;
+
+    private volatile RateListener mRateListener;
+    private final float[] mRates = new float[SensorChannels.RAW_COUNT];
+    private final float[] mReceivedRates = new float[SensorChannels.RAW_COUNT];
+    private volatile long mRateRequests;
+    private volatile long mInvalidRateRequests;
+
+    // Written by the thread calling onFrame().
+    private final ByteBuffer mLength = ByteBuffer.allocate(SocketTransport.LENGTH_SIZE);
+    private final ByteBuffer[] mWrite = new ByteBuffer[2];
+
+    /**
+     * @param port port to listen on, 0 for any free port
+     */
+    public FrameServer(int port) throws IOException {
+        mServer = ServerSocketChannel.open();
+        mServer.socket().setReuseAddress(true);
+        mServer.socket().bind(new InetSocketAddress(InetAddress.getByName("127.0.0.1"), port));
+    }
+
+    public int getPort() {
+        return mServer.socket().getLocalPort();
+    }
+
+    /**
+     * Start accepting clients.
+     */
+    public synchronized void start() {
+        if (mAcceptThread != null) {
+            return;
+        }
+        mAcceptThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                serve();
+            }
+        }, "FrameServer");
+        mAcceptThread.start();
+    }
+
+    /**
+     * Stop serving and drop the client.
+     */
+    public synchronized void stop() {
+        try {
+            mServer.close();
+        } catch (IOException e) {
+            // Already closed.
+        }
+        dropClient(mClient);
+        mAcceptThread = null;
+    }
+
+    /**
+     * Number of frames written to clients.
+     */
+    public long getSentFrameCount() {
+        return mSentFrames;
+    }
+
+    /**
+     * Number of frames dropped because no client was streaming.
+     */
+    public long getDroppedFrameCount() {
+        return mDroppedFrames;
+    }
+
+    public void setRateListener(RateListener listener) {
+        mRateListener = listener;
+    }
+
+    /**
+     * Get the rates of the newest valid request, each {@link SamplingPlan#OFF} until one came.
+     */
+    public float[] getRequestedRates() {
+        synchronized (mRates) {
+            return mRates.clone();
+        }
+    }
+
+    /**
+     * Number of valid rate requests received.
+     */
+    public long getRateRequestCount() {
+        return mRateRequests;
+    }
+
+    /**
+     * Number of malformed rate requests, each of which dropped its client.
+     */
+    public long getInvalidRateRequestCount() {
+        return mInvalidRateRequests;
+    }
+
+    /**
+     * Sends a frame to the streaming client, blocking while its socket is full so a slow client
+     * slows down the producer instead of losing frames. Must be called from a single thread.
+     */
+    @Override
+    public void onFrame(byte[] frame) {
+        SocketChannel client = mClient;
+        if (client == null || !mStreaming) {
+            mDroppedFrames++;
+            return;
+        }
+        mLength.clear();
+        mLength.putInt(frame.length);
+        mLength.flip();
+        mWrite[0] = mLength;
+        mWrite[1] = ByteBuffer.wrap(frame);
+        try {
+            while (mWrite[1].hasRemaining()) {
+                client.write(mWrite);
+            }
+            mSentFrames++;
+        } catch (IOException e) {
+            dropClient(client);
+            mDroppedFrames++;
+        }
+    }
+
+    /**
+     * Accepts clients one at a time and reads their commands until they go away.
+     */
+    private void serve() {
+        ByteBuffer command = ByteBuffer.allocate(SocketTransport.RATES_SIZE * 4);
+        while (mServer.isOpen()) {
+            SocketChannel client;
+            try {
+                client = mServer.accept();
+                client.socket().setTcpNoDelay(true);
+            } catch (IOException e) {
+                return;
+            }
+            mStreaming = false;
+            mClient = client;
+            try {
+                command.clear();
+                while (client.read(command) >= 0) {
+                    command.flip();
+                    if (!readCommands(command)) {
+                        break;
+                    }
+                    command.compact();
+                }
+            } catch (IOException e) {
+                // The client went away.
+            }
+            dropClient(client);
+        }
+    }
+
+    /**
+     * Handles every complete command in {@code command}, leaving a partial one in place.
+     * Unknown command bytes are skipped.
+     *
+     * @return false if a rate request is malformed
+     */
+    private boolean readCommands(ByteBuffer command) {
+        while (command.hasRemaining()) {
+            int position = command.position();
+            byte type = command.get(position);
+            if (type == SocketTransport.CMD_START) {
+                mStreaming = true;
+            } else if (type == SocketTransport.CMD_RATES) {
+                if (command.remaining() < 2) {
+                    return true;
+                }
+                int count = command.get(position + 1) & 0xff;
+                if (count != SensorChannels.RAW_COUNT) {
+                    mInvalidRateRequests++;
+                    return false;
+                }
+                if (command.remaining() < SocketTransport.RATES_SIZE) {
+                    return true;
+                }
+                for (int i = 0; i < count; i++) {
+                    float hz = command.getInt(position + 2 + i * 4) / 1000f;
+                    if (!(hz >= SamplingPlan.OFF && hz <= SamplingPlan.MAX_HZ)) {
+                        mInvalidRateRequests++;
+                        return false;
+                    }
+                    mReceivedRates[i] = hz;
+                }
+                synchronized (mRates) {
+                    System.arraycopy(mReceivedRates, 0, mRates, 0, count);
+                }
+                mRateRequests++;
+                RateListener listener = mRateListener;
+                if (listener != null) {
+                    listener.onRates(mReceivedRates);
+                }
+                command.position(position + SocketTransport.RATES_SIZE);
+                continue;
+            }
+            command.position(position + 1);
+        }
+        return true;
+    }
+
+    private void dropClient(SocketChannel client) {
+        if (client == null) {
+            return;
+        }
+        if (mClient == client) {
+            mStreaming = false;
+            mClient = null;
+        }
+        try {
+            client.close();
+        } catch (IOException e) {
+            // Already closed.
+        }
+    }
+
+    /**
+     * Serves synthetic readings, or a recorded session, at a fixed rate until killed.
+     */
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : SocketTransport.DEFAULT_PORT;
+        int rate = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+        SampleSource source = args.length > 2
+                ? new SessionReplaySource(new File(args[2]), true)
+                : new SyntheticSource(600, System.nanoTime());
+
+        FrameServer server = new FrameServer(port);
+        server.setRateListener(new RateListener() {
+            @Override
+            public void onRates(float[] hz) {
+                System.out.println("Requested rates: " + SamplingPlan.toString(hz));
+            }
+        });
+        server.start();
+        LoadGenerator generator = new LoadGenerator(source, server, rate, 50, 1);
+        generator.start();
+        System.out.println("Serving " + rate + " samples/s on 127.0.0.1:" + server.getPort());
+    }
+}
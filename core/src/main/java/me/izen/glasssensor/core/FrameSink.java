@@ -0,0 +1,9 @@
+package me.izen.glasssensor.core;
+
+/**
+ * Accepts encoded {@link SensorFrame}s, e.g. to broadcast them or feed them to the card directly.
+ */
+public interface FrameSink {
+    /** Notified of a frame; the array is not reused by the caller. */
+    public void onFrame(byte[] frame);
+}
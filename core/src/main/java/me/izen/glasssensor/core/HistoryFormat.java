@@ -0,0 +1,80 @@
+package me.izen.glasssensor.core;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * On-disk layout of the compressed long-term history of a session.
+ *
+ * The history is one file of blocks, each holding up to a fixed number of consecutive readings of
+ * a single channel, stored as two columns compressed in the style of Gorilla:
+ * <pre>
+ *   header  magic:s32  version:u16  maxBlockSamples:u16
+ *   block   channel:u8  count:u16  minMillis:s64  maxMillis:s64  timeBytes:s32  valueBytes:s32
+ *           time column (timeBytes)  value column (valueBytes)
+ *   end     channel:u8 = END_CHANNEL, rest of a block header zeroed
+ * </pre>
+ * Headers are big endian. The time column holds the first timestamp in 64 bits followed by the
+ * delta of each delta: {@code 0} when the interval repeats, then {@code 10}, {@code 110} and
+ * {@code 1110} with 7, 9 and 12 bit offsets, {@code 11110} with 32 bits and {@code 11111} with 64.
+ * The value column holds the first float in 32 bits followed by the XOR of each value with the
+ * previous one: {@code 0} when equal, {@code 10} and the meaningful bits when they fit the
+ * previous leading and trailing zero counts, otherwise {@code 11}, 5 bits of leading zeros, 5 bits
+ * of length minus one and the meaningful bits. Each column is padded to a byte.
+ *
+ * Readers skip blocks whose time range misses the scan without decoding them. A file without the
+ * end marker was cut short and reads back up to its last complete block.
+ */
+public final class HistoryFormat {
+
+    public static final String FILE_NAME = "history.gsh";
+
+    public static final int MAGIC = 0x47534831; // "GSH1"
+    public static final int VERSION = 1;
+    public static final int HEADER_SIZE = 8;
+    public static final int BLOCK_HEADER_SIZE = 27;
+    public static final int END_CHANNEL = 0xff;
+
+    /** Samples per block: about 100 s of one channel at 10 Hz. */
+    public static final int DEFAULT_BLOCK_SAMPLES = 1024;
+    public static final int MAX_BLOCK_SAMPLES = 0xffff;
+
+    private HistoryFormat() {
+    }
+
+    public static void writeHeader(ByteBuffer buffer, int maxBlockSamples) {
+        buffer.order(ByteOrder.BIG_ENDIAN);
+        buffer.putInt(MAGIC);
+        buffer.putShort((short) VERSION);
+        buffer.putShort((short) maxBlockSamples);
+    }
+
+    /**
+     * Validates the header at the buffer's position.
+     *
+     * @return the maximum number of samples per block, or -1 if the header is not recognized
+     */
+    public static int readHeader(ByteBuffer buffer) {
+        buffer.order(ByteOrder.BIG_ENDIAN);
+        if (buffer.remaining() < HEADER_SIZE
+                || buffer.getInt() != MAGIC
+                || buffer.getShort() != VERSION) {
+            return -1;
+        }
+        return buffer.getShort() & 0xffff;
+    }
+
+    /**
+     * Bytes needed by the time column of a block in the worst case.
+     */
+    static int maxTimeBytes(int samples) {
+        return (64 + (samples - 1) * (5 + 64)) / 8 + 1;
+    }
+
+    /**
+     * Bytes needed by the value column of a block in the worst case.
+     */
+    static int maxValueBytes(int samples) {
+        return (32 + (samples - 1) * (2 + 5 + 5 + 32)) / 8 + 1;
+    }
+}
@@ -0,0 +1,280 @@
+package me.izen.glasssensor.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * Range scan over a {@link HistoryFormat} file.
+ *
+ * Opening the reader walks the block headers once and keeps the blocks overlapping the requested
+ * time range; blocks outside it are never read. Each channel then decodes one block at a time as
+ * it is consumed, and {@link #next} merges the channels so readings come out in timestamp order
+ * as long as each channel was recorded in order.
+ */
+public final class HistoryReader implements SampleSource {
+
+    private final RandomAccessFile mFile;
+    private final FileChannel mChannel;
+    private final long mFromMillis;
+    private final long mToMillis;
+    private final Cursor[] mCursors = new Cursor[SensorChannels.COUNT];
+    private final boolean mComplete;
+
+    /**
+     * Reads the whole history.
+     */
+    public HistoryReader(File file) throws IOException {
+        this(file, Long.MIN_VALUE, Long.MAX_VALUE);
+    }
+
+    /**
+     * Reads the readings with a timestamp in {@code [fromMillis, toMillis)}.
+     */
+    public HistoryReader(File file, long fromMillis, long toMillis) throws IOException {
+        mFromMillis = fromMillis;
+        mToMillis = toMillis;
+        mFile = new RandomAccessFile(file, "r");
+        mChannel = mFile.getChannel();
+        try {
+            ByteBuffer header = ByteBuffer.allocate(HistoryFormat.HEADER_SIZE);
+            readFully(header, 0);
+            header.flip();
+            int maxBlockSamples = HistoryFormat.readHeader(header);
+            if (maxBlockSamples < 0) {
+                throw new IOException("not a history file: " + file);
+            }
+            for (int i = 0; i < mCursors.length; i++) {
+                mCursors[i] = new Cursor(maxBlockSamples);
+            }
+            mComplete = indexBlocks();
+            for (Cursor cursor : mCursors) {
+                cursor.advance();
+            }
+        } catch (IOException e) {
+            mFile.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Walks the block headers, keeping the positions of the blocks that overlap the range.
+     *
+     * @return true if the end marker was found
+     */
+    private boolean indexBlocks() throws IOException {
+        ByteBuffer header =
+                ByteBuffer.allocate(HistoryFormat.BLOCK_HEADER_SIZE).order(ByteOrder.BIG_ENDIAN);
+        long size = mChannel.size();
+        long position = HistoryFormat.HEADER_SIZE;
+        while (position + HistoryFormat.BLOCK_HEADER_SIZE <= size) {
+            header.clear();
+            readFully(header, position);
+            header.flip();
+            int channel = header.get() & 0xff;
+            if (channel == HistoryFormat.END_CHANNEL) {
+                return true;
+            }
+            header.getShort();
+            long minMillis = header.getLong();
+            long maxMillis = header.getLong();
+            long end = position + HistoryFormat.BLOCK_HEADER_SIZE
+                    + header.getInt() + (long) header.getInt();
+            if (end > size || !SensorChannels.isValid(channel)) {
+                // Cut short by a crash.
+                return false;
+            }
+            if (maxMillis >= mFromMillis && minMillis < mToMillis) {
+                mCursors[channel].addBlock(position);
+            }
+            position = end;
+        }
+        return false;
+    }
+
+    /**
+     * Whether the writer was closed cleanly. Otherwise readings buffered in open blocks when it
+     * stopped are missing.
+     */
+    public boolean isComplete() {
+        return mComplete;
+    }
+
+    /**
+     * Delivers the oldest reading not yet delivered, across all channels.
+     */
+    @Override
+    public boolean next(SampleSink sink) {
+        int oldest = -1;
+        for (int i = 0; i < mCursors.length; i++) {
+            if (mCursors[i].mHasNext && (oldest < 0
+                    || mCursors[i].mNextMillis < mCursors[oldest].mNextMillis)) {
+                oldest = i;
+            }
+        }
+        if (oldest < 0) {
+            return false;
+        }
+        Cursor cursor = mCursors[oldest];
+        sink.onSample(oldest, cursor.mNextMillis, cursor.mNextValue);
+        cursor.advance();
+        return true;
+    }
+
+    public void close() throws IOException {
+        mFile.close();
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (mChannel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("unexpected end of history");
+            }
+        }
+    }
+
+    /**
+     * Decoding state of one channel: its blocks in the range and the next reading.
+     */
+    private final class Cursor {
+        private long[] mBlockPositions = new long[16];
+        private int mBlockCount;
+        private int mBlockIndex;
+
+        private final ByteBuffer mHeader =
+                ByteBuffer.allocate(HistoryFormat.BLOCK_HEADER_SIZE).order(ByteOrder.BIG_ENDIAN);
+        private final ByteBuffer mBody;
+        private final BitReader mTimes = new BitReader();
+        private final BitReader mValues = new BitReader();
+        private int mRemaining;
+        private boolean mFirst;
+
+        private long mPreviousMillis;
+        private long mPreviousDelta;
+        private int mPreviousBits;
+        private int mLeadingZeros;
+        private int mTrailingZeros;
+
+        boolean mHasNext;
+        long mNextMillis;
+        float mNextValue;
+
+        Cursor(int maxBlockSamples) {
+            mBody = ByteBuffer.allocate(HistoryFormat.maxTimeBytes(maxBlockSamples)
+                    + HistoryFormat.maxValueBytes(maxBlockSamples));
+        }
+
+        void addBlock(long position) {
+            if (mBlockCount == mBlockPositions.length) {
+                long[] positions = new long[mBlockCount * 2];
+                System.arraycopy(mBlockPositions, 0, positions, 0, mBlockCount);
+                mBlockPositions = positions;
+            }
+            mBlockPositions[mBlockCount++] = position;
+        }
+
+        /**
+         * Decodes the next reading in the range, loading blocks as needed. A block that cannot be
+         * read ends the channel.
+         */
+        void advance() {
+            mHasNext = false;
+            try {
+                while (true) {
+                    if (mRemaining == 0) {
+                        if (mBlockIndex == mBlockCount) {
+                            return;
+                        }
+                        loadBlock(mBlockPositions[mBlockIndex++]);
+                        continue;
+                    }
+                    decode();
+                    if (mNextMillis >= mFromMillis && mNextMillis < mToMillis) {
+                        mHasNext = true;
+                        return;
+                    }
+                }
+            } catch (IOException e) {
+                mBlockIndex = mBlockCount;
+                mRemaining = 0;
+            }
+        }
+
+        private void loadBlock(long position) throws IOException {
+            mHeader.clear();
+            readFully(mHeader, position);
+            mHeader.flip();
+            mHeader.get();
+            int count = mHeader.getShort() & 0xffff;
+            mHeader.getLong();
+            mHeader.getLong();
+            int timeBytes = mHeader.getInt();
+            int valueBytes = mHeader.getInt();
+            if (timeBytes + valueBytes > mBody.capacity()) {
+                throw new IOException("corrupt block at " + position);
+            }
+            mBody.clear();
+            mBody.limit(timeBytes + valueBytes);
+            readFully(mBody, position + HistoryFormat.BLOCK_HEADER_SIZE);
+
+            // The value column follows the time column.
+            mTimes.reset(mBody.array(), 0, timeBytes);
+            mValues.reset(mBody.array(), timeBytes, valueBytes);
+            mRemaining = count;
+            mFirst = true;
+        }
+
+        private void decode() {
+            if (mFirst) {
+                mFirst = false;
+                mPreviousMillis = mTimes.read(64);
+                mPreviousDelta = 0;
+                mPreviousBits = (int) mValues.read(32);
+                mLeadingZeros = -1;
+            } else {
+                mPreviousDelta += readDeltaOfDelta();
+                mPreviousMillis += mPreviousDelta;
+                mPreviousBits ^= readXor();
+            }
+            mRemaining--;
+            mNextMillis = mPreviousMillis;
+            mNextValue = Float.intBitsToFloat(mPreviousBits);
+        }
+
+        private long readDeltaOfDelta() {
+            if (!mTimes.readBit()) {
+                return 0;
+            }
+            if (!mTimes.readBit()) {
+                return mTimes.read(7) - 63;
+            }
+            if (!mTimes.readBit()) {
+                return mTimes.read(9) - 255;
+            }
+            if (!mTimes.readBit()) {
+                return mTimes.read(12) - 2047;
+            }
+            if (!mTimes.readBit()) {
+                return (int) mTimes.read(32);
+            }
+            return mTimes.read(64);
+        }
+
+        private int readXor() {
+            if (!mValues.readBit()) {
+                return 0;
+            }
+            if (!mValues.readBit()) {
+                int length = 32 - mLeadingZeros - mTrailingZeros;
+                return (int) mValues.read(length) << mTrailingZeros;
+            }
+            mLeadingZeros = (int) mValues.read(5);
+            int length = (int) mValues.read(5) + 1;
+            mTrailingZeros = 32 - mLeadingZeros - length;
+            return (int) mValues.read(length) << mTrailingZeros;
+        }
+    }
+}
@@ -0,0 +1,233 @@
+package me.izen.glasssensor.core;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Streams readings into the {@link HistoryFormat} layout.
+ *
+ * Each channel encodes into its own open block as readings arrive, so appending is a handful of
+ * bit operations; a block is written out when it is full, on {@link #flush()} and on
+ * {@link #close()}. Only one block per channel is ever buffered and nothing is allocated after
+ * construction. Not thread safe; meant to be owned by one background thread.
+ */
+public final class HistoryWriter {
+
+    private final WritableByteChannel mChannel;
+    private final int mBlockSamples;
+    private final Block[] mBlocks = new Block[SensorChannels.COUNT];
+    private final ByteBuffer mHeader =
+            ByteBuffer.allocate(HistoryFormat.BLOCK_HEADER_SIZE).order(ByteOrder.BIG_ENDIAN);
+
+    private long mSampleCount;
+    private long mBytesWritten;
+    private boolean mClosed;
+
+    public HistoryWriter(WritableByteChannel channel) throws IOException {
+        this(channel, HistoryFormat.DEFAULT_BLOCK_SAMPLES);
+    }
+
+    /**
+     * Writes the file header right away.
+     *
+     * @param blockSamples readings per block, 2 to {@link HistoryFormat#MAX_BLOCK_SAMPLES}
+     */
+    public HistoryWriter(WritableByteChannel channel, int blockSamples) throws IOException {
+        if (blockSamples < 2 || blockSamples > HistoryFormat.MAX_BLOCK_SAMPLES) {
+            throw new IllegalArgumentException("block size out of range: " + blockSamples);
+        }
+        mChannel = channel;
+        mBlockSamples = blockSamples;
+        for (int i = 0; i < mBlocks.length; i++) {
+            mBlocks[i] = new Block(i, blockSamples);
+        }
+        ByteBuffer header = ByteBuffer.allocate(HistoryFormat.HEADER_SIZE);
+        HistoryFormat.writeHeader(header, blockSamples);
+        header.flip();
+        write(header);
+    }
+
+    /**
+     * Encodes a reading, writing out its channel's block if that fills it.
+     */
+    public void append(int channel, long timestampMillis, float value) throws IOException {
+        if (mClosed) {
+            throw new IOException("history closed");
+        }
+        if (!SensorChannels.isValid(channel)) {
+            return;
+        }
+        Block block = mBlocks[channel];
+        block.append(timestampMillis, value);
+        mSampleCount++;
+        if (block.mCount == mBlockSamples) {
+            writeBlock(block);
+        }
+    }
+
+    /**
+     * Writes out every partially filled block. Frequent flushes make smaller blocks that compress
+     * less, so this is meant for checkpoints rather than every batch.
+     */
+    public void flush() throws IOException {
+        for (Block block : mBlocks) {
+            if (block.mCount > 0) {
+                writeBlock(block);
+            }
+        }
+    }
+
+    /**
+     * Flushes and writes the end marker. The channel is left open.
+     */
+    public void close() throws IOException {
+        if (mClosed) {
+            return;
+        }
+        flush();
+        mHeader.clear();
+        mHeader.put((byte) HistoryFormat.END_CHANNEL);
+        while (mHeader.hasRemaining()) {
+            mHeader.put((byte) 0);
+        }
+        mHeader.flip();
+        write(mHeader);
+        mClosed = true;
+    }
+
+    /**
+     * Number of readings appended, including those still buffered in open blocks.
+     */
+    public long getSampleCount() {
+        return mSampleCount;
+    }
+
+    /**
+     * Number of bytes written to the channel so far.
+     */
+    public long getBytesWritten() {
+        return mBytesWritten;
+    }
+
+    private void writeBlock(Block block) throws IOException {
+        int timeBytes = block.mTimes.finish();
+        int valueBytes = block.mValues.finish();
+        mHeader.clear();
+        mHeader.put((byte) block.mChannel);
+        mHeader.putShort((short) block.mCount);
+        mHeader.putLong(block.mMinMillis);
+        mHeader.putLong(block.mMaxMillis);
+        mHeader.putInt(timeBytes);
+        mHeader.putInt(valueBytes);
+        mHeader.flip();
+        write(mHeader);
+        write(ByteBuffer.wrap(block.mTimes.getBytes(), 0, timeBytes));
+        write(ByteBuffer.wrap(block.mValues.getBytes(), 0, valueBytes));
+        block.reset();
+    }
+
+    private void write(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            mBytesWritten += mChannel.write(buffer);
+        }
+    }
+
+    /**
+     * Open block of one channel with its two columns.
+     */
+    private static final class Block {
+        final int mChannel;
+        final BitWriter mTimes;
+        final BitWriter mValues;
+        int mCount;
+        long mMinMillis;
+        long mMaxMillis;
+
+        private long mPreviousMillis;
+        private long mPreviousDelta;
+        private int mPreviousBits;
+        private int mLeadingZeros;
+        private int mTrailingZeros;
+
+        Block(int channel, int samples) {
+            mChannel = channel;
+            mTimes = new BitWriter(HistoryFormat.maxTimeBytes(samples));
+            mValues = new BitWriter(HistoryFormat.maxValueBytes(samples));
+        }
+
+        void append(long timestampMillis, float value) {
+            int bits = Float.floatToRawIntBits(value);
+            if (mCount == 0) {
+                mTimes.write(timestampMillis, 64);
+                mValues.write(bits, 32);
+                mMinMillis = timestampMillis;
+                mMaxMillis = timestampMillis;
+                mPreviousDelta = 0;
+                mLeadingZeros = -1;
+            } else {
+                appendTime(timestampMillis);
+                appendValue(bits);
+                mMinMillis = Math.min(mMinMillis, timestampMillis);
+                mMaxMillis = Math.max(mMaxMillis, timestampMillis);
+            }
+            mPreviousMillis = timestampMillis;
+            mPreviousBits = bits;
+            mCount++;
+        }
+
+        private void appendTime(long timestampMillis) {
+            long delta = timestampMillis - mPreviousMillis;
+            long deltaOfDelta = delta - mPreviousDelta;
+            mPreviousDelta = delta;
+            if (deltaOfDelta == 0) {
+                mTimes.write(0, 1);
+            } else if (deltaOfDelta >= -63 && deltaOfDelta <= 64) {
+                mTimes.write(0x2, 2);
+                mTimes.write(deltaOfDelta + 63, 7);
+            } else if (deltaOfDelta >= -255 && deltaOfDelta <= 256) {
+                mTimes.write(0x6, 3);
+                mTimes.write(deltaOfDelta + 255, 9);
+            } else if (deltaOfDelta >= -2047 && deltaOfDelta <= 2048) {
+                mTimes.write(0xe, 4);
+                mTimes.write(deltaOfDelta + 2047, 12);
+            } else if (deltaOfDelta == (int) deltaOfDelta) {
+                mTimes.write(0x1e, 5);
+                mTimes.write(deltaOfDelta, 32);
+            } else {
+                mTimes.write(0x1f, 5);
+                mTimes.write(deltaOfDelta, 64);
+            }
+        }
+
+        private void appendValue(int bits) {
+            int xor = bits ^ mPreviousBits;
+            if (xor == 0) {
+                mValues.write(0, 1);
+                return;
+            }
+            int leading = Math.min(Integer.numberOfLeadingZeros(xor), 31);
+            int trailing = Integer.numberOfTrailingZeros(xor);
+            if (mLeadingZeros >= 0 && leading >= mLeadingZeros && trailing >= mTrailingZeros) {
+                // Fits the previous window, only the meaningful bits are needed.
+                mValues.write(0x2, 2);
+                mValues.write(xor >>> mTrailingZeros, 32 - mLeadingZeros - mTrailingZeros);
+            } else {
+                int length = 32 - leading - trailing;
+                mValues.write(0x3, 2);
+                mValues.write(leading, 5);
+                mValues.write(length - 1, 5);
+                mValues.write(xor >>> trailing, length);
+                mLeadingZeros = leading;
+                mTrailingZeros = trailing;
+            }
+        }
+
+        void reset() {
+            mTimes.reset();
+            mValues.reset();
+            mCount = 0;
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package me.izen.glasssensor.core;
+
+/**
+ * Scalar Kalman filter for a value that drifts as a random walk under noisy readings. Unlike an
+ * {@link EmaFilter}, its gain settles from the two noise levels, and starts high so the first
+ * readings are followed quickly. Constant time.
+ */
+public final class KalmanFilter implements NoiseFilter {
+
+    private final float mProcessNoise;
+    private final float mMeasurementNoise;
+    private float mEstimate = Float.NaN;
+    private float mVariance;
+
+    /**
+     * @param processNoise variance the true value drifts by between readings
+     * @param measurementNoise variance of a reading around the true value
+     */
+    public KalmanFilter(float processNoise, float measurementNoise) {
+        if (!(processNoise >= 0) || !(measurementNoise > 0)) {
+            throw new IllegalArgumentException("Invalid Kalman noise " + processNoise + ", "
+                    + measurementNoise);
+        }
+        mProcessNoise = processNoise;
+        mMeasurementNoise = measurementNoise;
+    }
+
+    @Override
+    public float filter(float value) {
+        if (Float.isNaN(value)) {
+            return value;
+        }
+        if (Float.isNaN(mEstimate)) {
+            mEstimate = value;
+            mVariance = mMeasurementNoise;
+            return mEstimate;
+        }
+        float predicted = mVariance + mProcessNoise;
+        float gain = predicted / (predicted + mMeasurementNoise);
+        mEstimate += gain * (value - mEstimate);
+        mVariance = (1 - gain) * predicted;
+        return mEstimate;
+    }
+
+    /**
+     * Current weight of a new reading, settling to a constant for fixed noise levels.
+     */
+    public float getGain() {
+        float predicted = mVariance + mProcessNoise;
+        return predicted / (predicted + mMeasurementNoise);
+    }
+
+    @Override
+    public void reset() {
+        mEstimate = Float.NaN;
+        mVariance = 0;
+    }
+}
@@ -0,0 +1,145 @@
+package me.izen.glasssensor.core;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed-size histogram of latencies in microseconds, bucketed like an HdrHistogram: exact below
+ * {@link #SUB_BUCKETS}, then {@link #SUB_BUCKETS}/2 linear buckets per power of two, so a bucket
+ * is never wider than 1/32, about 3%, of the values in it up to {@link #MAX_MICROS}. Larger values land in the top
+ * bucket but still count towards {@link #getMax()}.
+ *
+ * A single thread records without allocating or locking; any thread may read, seeing counts that
+ * may trail the newest recordings.
+ */
+public final class LatencyHistogram {
+
+    public static final int SUB_BUCKETS = 64;
+    /** About 67 seconds. */
+    public static final long MAX_MICROS = (1L << 26) - 1;
+
+    private static final int SUB_BUCKET_BITS = 6;
+    private static final int HALF_BUCKETS = SUB_BUCKETS / 2;
+    private static final int BUCKETS = indexOf(MAX_MICROS) + 1;
+
+    private final AtomicLongArray mCounts = new AtomicLongArray(BUCKETS);
+    private volatile long mCount;
+    private volatile long mSumMicros;
+    private volatile long mMaxMicros;
+
+    /**
+     * Records one latency. Recording thread only.
+     */
+    public void record(long micros) {
+        if (micros < 0) {
+            micros = 0;
+        }
+        int index = indexOf(Math.min(micros, MAX_MICROS));
+        mCounts.lazySet(index, mCounts.get(index) + 1);
+        mSumMicros += micros;
+        if (micros > mMaxMicros) {
+            mMaxMicros = micros;
+        }
+        mCount++;
+    }
+
+    /**
+     * Forgets every recorded latency, e.g. to start a new window. Recording thread only.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            mCounts.lazySet(i, 0);
+        }
+        mSumMicros = 0;
+        mMaxMicros = 0;
+        mCount = 0;
+    }
+
+    public long getCount() {
+        return mCount;
+    }
+
+    public long getMax() {
+        return mMaxMicros;
+    }
+
+    public double getMean() {
+        long count = mCount;
+        return count == 0 ? 0 : (double) mSumMicros / count;
+    }
+
+    /**
+     * Value at or below which {@code percentile} percent of the recorded latencies fall, reported
+     * as the top of its bucket and capped at the maximum, or 0 if nothing was recorded.
+     */
+    public long getValueAtPercentile(double percentile) {
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            total += mCounts.get(i);
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long target = Math.max(1, (long) Math.ceil(total * percentile / 100));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += mCounts.get(i);
+            if (seen >= target) {
+                return Math.min(highestOf(i), mMaxMicros);
+            }
+        }
+        return mMaxMicros;
+    }
+
+    /**
+     * Number of buckets, for iterating with {@link #getBucketCount(int)}.
+     */
+    public static int getBuckets() {
+        return BUCKETS;
+    }
+
+    public long getBucketCount(int bucket) {
+        return mCounts.get(bucket);
+    }
+
+    /**
+     * Smallest value counted in {@code bucket}.
+     */
+    public static long lowestOf(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int k = bucket - SUB_BUCKETS;
+        int shift = k / HALF_BUCKETS + 1;
+        return (long) (k % HALF_BUCKETS + HALF_BUCKETS) << shift;
+    }
+
+    /**
+     * Largest value counted in {@code bucket}.
+     */
+    public static long highestOf(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int k = bucket - SUB_BUCKETS;
+        int shift = k / HALF_BUCKETS + 1;
+        return ((long) (k % HALF_BUCKETS + HALF_BUCKETS + 1) << shift) - 1;
+    }
+
+    private static int indexOf(long micros) {
+        if (micros < SUB_BUCKETS) {
+            return (int) micros;
+        }
+        // Keep the top SUB_BUCKET_BITS bits; the highest one is always set.
+        int shift = 63 - Long.numberOfLeadingZeros(micros) - (SUB_BUCKET_BITS - 1);
+        int top = (int) (micros >> shift);
+        return SUB_BUCKETS + (shift - 1) * HALF_BUCKETS + (top - HALF_BUCKETS);
+    }
+
+    @Override
+    public String toString() {
+        return "n=" + mCount
+                + " p50=" + getValueAtPercentile(50) + "us"
+                + " p99=" + getValueAtPercentile(99) + "us"
+                + " max=" + mMaxMicros + "us";
+    }
+}
@@ -0,0 +1,100 @@
+package me.izen.glasssensor.core;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Coalesces readings between ingestion and the display: one slot per channel where the newest
+ * reading overwrites any older one that was not drawn yet.
+ *
+ * A single ingestion thread writes with {@link #onSample}; a single display thread calls
+ * {@link #drain} once per frame, so its work is bounded by the number of channels no matter how
+ * fast readings arrive. Readings overwritten before a drain are counted as superseded.
+ */
+public final class LatestValueSlots implements SampleSink {
+
+    // Timestamp offset from mBaseMillis in the high word, float bits in the low word, so a slot
+    // is always read consistently without locking.
+    private final AtomicLongArray mSlots;
+    // Readings written per channel, updated after the slot.
+    private final AtomicLongArray mWrites;
+    private volatile long mBaseMillis;
+    private boolean mHasBase;
+
+    // Owned by the display thread.
+    private final long[] mDrained;
+    private final long[] mSuperseded;
+
+    public LatestValueSlots(int channels) {
+        mSlots = new AtomicLongArray(channels);
+        mWrites = new AtomicLongArray(channels);
+        mDrained = new long[channels];
+        mSuperseded = new long[channels];
+    }
+
+    /**
+     * Publish a reading, replacing any reading of the same channel not drained yet. Ingestion
+     * thread only.
+     */
+    @Override
+    public void onSample(int channel, long timestampMillis, float value) {
+        if (!mHasBase) {
+            mBaseMillis = timestampMillis;
+            mHasBase = true;
+        }
+        long offset = timestampMillis - mBaseMillis;
+        if (offset > Integer.MAX_VALUE) {
+            offset = Integer.MAX_VALUE;
+        } else if (offset < Integer.MIN_VALUE) {
+            offset = Integer.MIN_VALUE;
+        }
+        mSlots.set(channel, (offset << 32) | (Float.floatToRawIntBits(value) & 0xffffffffL));
+        mWrites.lazySet(channel, mWrites.get(channel) + 1);
+    }
+
+    /**
+     * Deliver the newest reading of every channel written since the previous drain. Display
+     * thread only.
+     *
+     * @return number of channels delivered
+     */
+    public int drain(SampleSink sink) {
+        int delivered = 0;
+        for (int channel = 0; channel < mDrained.length; channel++) {
+            long writes = mWrites.get(channel);
+            long pending = writes - mDrained[channel];
+            if (pending == 0) {
+                continue;
+            }
+            long packed = mSlots.get(channel);
+            mDrained[channel] = writes;
+            mSuperseded[channel] += pending - 1;
+            sink.onSample(channel, mBaseMillis + (packed >> 32), Float.intBitsToFloat((int) packed));
+            delivered++;
+        }
+        return delivered;
+    }
+
+    /**
+     * Readings of {@code channel} written so far.
+     */
+    public long getWriteCount(int channel) {
+        return mWrites.get(channel);
+    }
+
+    /**
+     * Readings of {@code channel} overwritten before they could be drained. Display thread only.
+     */
+    public long getSupersededCount(int channel) {
+        return mSuperseded[channel];
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("superseded/written");
+        for (int channel = 0; channel < mDrained.length; channel++) {
+            builder.append(channel == 0 ? " " : ", ")
+                    .append(mSuperseded[channel]).append('/').append(mWrites.get(channel));
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,125 @@
+package me.izen.glasssensor.core;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Drives a {@link SampleSource} into a {@link FrameSink} at a fixed average rate, batching
+ * samples into {@link SensorFrame}s and optionally sending several frames back to back to
+ * simulate bursts. Used to stress the ingestion path without a drone.
+ *
+ * Samples are re-stamped with {@link LoadReport#nowMillis()} as they are emitted so the card can
+ * measure how long they take to reach the screen.
+ */
+public class LoadGenerator {
+
+    public static final int MIN_RATE = 100;
+    public static final int MAX_RATE = 10000;
+
+    private final SampleSource mSource;
+    private final FrameSink mSink;
+    private final int mSamplesPerSecond;
+    private final int mFramesPerBurst;
+    private final SensorFrame.Encoder mEncoder;
+    private final LoadReport mReport = new LoadReport();
+
+    private Thread mThread;
+    private volatile boolean mRunning;
+
+    private final SampleSink mStamper = new SampleSink() {
+        @Override
+        public void onSample(int channel, long timestampMillis, float value) {
+            mEncoder.add(channel, LoadReport.nowMillis(), value);
+        }
+    };
+
+    /**
+     * @param samplesPerSecond average emission rate, between {@link #MIN_RATE} and
+     *                         {@link #MAX_RATE}
+     * @param samplesPerFrame number of samples batched into each frame
+     * @param framesPerBurst number of frames sent back to back before pausing to hold the rate
+     */
+    public LoadGenerator(SampleSource source, FrameSink sink,
+                         int samplesPerSecond, int samplesPerFrame, int framesPerBurst) {
+        this(source, sink, samplesPerSecond, samplesPerFrame, framesPerBurst, 0);
+    }
+
+    /**
+     * @param device device the generated frames claim to come from
+     */
+    public LoadGenerator(SampleSource source, FrameSink sink, int samplesPerSecond,
+                         int samplesPerFrame, int framesPerBurst, int device) {
+        if (samplesPerSecond < MIN_RATE || samplesPerSecond > MAX_RATE) {
+            throw new IllegalArgumentException("rate out of range: " + samplesPerSecond);
+        }
+        if (framesPerBurst <= 0) {
+            throw new IllegalArgumentException("frames per burst must be positive");
+        }
+        mSource = source;
+        mSink = sink;
+        mSamplesPerSecond = samplesPerSecond;
+        mFramesPerBurst = framesPerBurst;
+        mEncoder = new SensorFrame.Encoder(samplesPerFrame);
+        mEncoder.setDevice(device);
+    }
+
+    public LoadReport getReport() {
+        return mReport;
+    }
+
+    public synchronized void start() {
+        if (mThread != null) {
+            return;
+        }
+        mRunning = true;
+        mThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                generate();
+            }
+        }, "LoadGenerator");
+        mThread.start();
+    }
+
+    public synchronized void stop() {
+        mRunning = false;
+        if (mThread != null) {
+            mThread.interrupt();
+            mThread = null;
+        }
+    }
+
+    public boolean isRunning() {
+        return mRunning;
+    }
+
+    private void generate() {
+        long startNanos = System.nanoTime();
+        long emitted = 0;
+        while (mRunning) {
+            for (int i = 0; i < mFramesPerBurst && mRunning; i++) {
+                mEncoder.reset();
+                while (!mEncoder.isFull() && mSource.next(mStamper)) {
+                    // Fill the frame.
+                }
+                int count = mEncoder.getCount();
+                if (count == 0) {
+                    mRunning = false;
+                    return;
+                }
+                mSink.onFrame(mEncoder.toByteArray());
+                mReport.onEmitted(count);
+                emitted += count;
+            }
+
+            long dueNanos = startNanos + emitted * TimeUnit.SECONDS.toNanos(1) / mSamplesPerSecond;
+            long waitNanos = dueNanos - System.nanoTime();
+            if (waitNanos > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(waitNanos);
+                } catch (InterruptedException e) {
+                    mRunning = false;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package me.izen.glasssensor.core;
+
+/**
+ * Outcome of a {@link LoadGenerator} run: how many samples were emitted, how many reached the
+ * ingestion path and the screen, and how long they took to get there.
+ *
+ * Samples are stamped with {@link #nowMillis()} when emitted, and the card measures latency
+ * against the same clock once the frame showing them is posted.
+ */
+public class LoadReport {
+
+    private final long mStartNanos = System.nanoTime();
+
+    // Written by the generator thread.
+    private volatile long mEmitted;
+    private volatile long mFrames;
+
+    // Written by the ingestion and render thread.
+    private volatile long mIngested;
+    private volatile long mDisplayed;
+    private volatile long mLatencySumMillis;
+    private volatile long mLatencyMaxMillis;
+
+    /**
+     * Clock the generator stamps samples with.
+     */
+    public static long nowMillis() {
+        return System.nanoTime() / 1000000;
+    }
+
+    void onEmitted(int samples) {
+        mEmitted += samples;
+        mFrames++;
+    }
+
+    /**
+     * Records a sample handed to the ingestion path.
+     */
+    public void onIngested() {
+        mIngested++;
+    }
+
+    /**
+     * Records the newest sample of a channel reaching the screen.
+     */
+    public void onDisplayed(long sampleTimestampMillis) {
+        long latency = Math.max(0, nowMillis() - sampleTimestampMillis);
+        mDisplayed++;
+        mLatencySumMillis += latency;
+        if (latency > mLatencyMaxMillis) {
+            mLatencyMaxMillis = latency;
+        }
+    }
+
+    public long getEmitted() {
+        return mEmitted;
+    }
+
+    public long getIngested() {
+        return mIngested;
+    }
+
+    public long getDisplayed() {
+        return mDisplayed;
+    }
+
+    /**
+     * Samples emitted that never made it to the screen, either lost before ingestion or
+     * superseded by a newer value of their channel before a frame was drawn.
+     */
+    public long getDropped() {
+        return Math.max(0, mEmitted - mDisplayed);
+    }
+
+    /**
+     * Samples per second emitted since the report was created.
+     */
+    public double getThroughput() {
+        long elapsed = System.nanoTime() - mStartNanos;
+        return elapsed == 0 ? 0 : mEmitted * 1e9 / elapsed;
+    }
+
+    public double getMeanLatencyMillis() {
+        long displayed = mDisplayed;
+        return displayed == 0 ? 0 : (double) mLatencySumMillis / displayed;
+    }
+
+    public long getMaxLatencyMillis() {
+        return mLatencyMaxMillis;
+    }
+
+    @Override
+    public String toString() {
+        return "emitted=" + mEmitted + " in " + mFrames + " frames"
+                + " (" + Math.round(getThroughput()) + "/s)"
+                + " ingested=" + mIngested
+                + " displayed=" + mDisplayed
+                + " dropped=" + getDropped()
+                + " latency mean=" + Math.round(getMeanLatencyMillis()) + "ms"
+                + " max=" + mLatencyMaxMillis + "ms";
+    }
+}
@@ -0,0 +1,183 @@
+package me.izen.glasssensor.core;
+
+/**
+ * Median of the last {@code window} readings, which drops isolated spikes entirely instead of
+ * smearing them like an average.
+ *
+ * The window is kept split around its median in two heaps, a max-heap of the lower half and a
+ * min-heap of the upper half, holding slots of a ring buffer of readings. Each slot knows its heap
+ * and position, so the reading leaving the window is overwritten in place by the one entering it
+ * and sifted to its new rank. Logarithmic time in the window, with every array preallocated.
+ */
+public final class MedianFilter implements NoiseFilter {
+
+    private final float[] mValues;
+    // Heap and position of each slot.
+    private final boolean[] mInLower;
+    private final int[] mPositions;
+    private final int[] mLower;
+    private final int[] mUpper;
+    private int mLowerSize;
+    private int mUpperSize;
+
+    private int mCount;
+    private int mOldest;
+
+    /**
+     * @param window number of readings the median is taken over
+     */
+    public MedianFilter(int window) {
+        if (window < 1) {
+            throw new IllegalArgumentException("Median window below 1: " + window);
+        }
+        mValues = new float[window];
+        mInLower = new boolean[window];
+        mPositions = new int[window];
+        mLower = new int[window];
+        mUpper = new int[window];
+    }
+
+    public int getWindow() {
+        return mValues.length;
+    }
+
+    @Override
+    public float filter(float value) {
+        if (Float.isNaN(value)) {
+            return value;
+        }
+        if (mCount < mValues.length) {
+            add(mCount++, value);
+        } else {
+            replace(mOldest, value);
+            mOldest = (mOldest + 1) % mValues.length;
+        }
+        return getMedian();
+    }
+
+    /**
+     * Median of the readings in the window, or NaN if there are none.
+     */
+    public float getMedian() {
+        if (mCount == 0) {
+            return Float.NaN;
+        }
+        float lower = mValues[mLower[0]];
+        if (mLowerSize > mUpperSize) {
+            return lower;
+        }
+        return (lower + mValues[mUpper[0]]) / 2;
+    }
+
+    @Override
+    public void reset() {
+        mCount = 0;
+        mOldest = 0;
+        mLowerSize = 0;
+        mUpperSize = 0;
+    }
+
+    /**
+     * Puts a new slot in the heap of its half, keeping the lower half as large as the upper one
+     * or one larger.
+     */
+    private void add(int slot, float value) {
+        mValues[slot] = value;
+        mInLower[slot] = mLowerSize == 0 || value <= mValues[mLower[0]];
+        place(slot, mInLower[slot] ? mLowerSize++ : mUpperSize++);
+        siftUp(slot);
+        if (mLowerSize > mUpperSize + 1) {
+            move(mLower[0]);
+        } else if (mUpperSize > mLowerSize) {
+            move(mUpper[0]);
+        }
+    }
+
+    /**
+     * Overwrites the reading of a slot, which stays in its heap unless it crossed the median.
+     */
+    private void replace(int slot, float value) {
+        mValues[slot] = value;
+        siftUp(slot);
+        siftDown(slot);
+        if (mUpperSize > 0 && mValues[mLower[0]] > mValues[mUpper[0]]) {
+            // Only the changed reading can be on the wrong side; trading the tops fixes it.
+            int lower = mLower[0];
+            int upper = mUpper[0];
+            mInLower[lower] = false;
+            mInLower[upper] = true;
+            place(upper, 0);
+            place(lower, 0);
+            siftDown(upper);
+            siftDown(lower);
+        }
+    }
+
+    /**
+     * Moves the top slot of one heap to the other.
+     */
+    private void move(int slot) {
+        boolean fromLower = mInLower[slot];
+        int last = fromLower ? mLower[--mLowerSize] : mUpper[--mUpperSize];
+        if (last != slot) {
+            place(last, 0);
+            siftDown(last);
+        }
+        mInLower[slot] = !fromLower;
+        place(slot, fromLower ? mUpperSize++ : mLowerSize++);
+        siftUp(slot);
+    }
+
+    private void place(int slot, int position) {
+        if (mInLower[slot]) {
+            mLower[position] = slot;
+        } else {
+            mUpper[position] = slot;
+        }
+        mPositions[slot] = position;
+    }
+
+    /**
+     * Whether slot {@code a} belongs above slot {@code b} in the heap of {@code lower}.
+     */
+    private boolean before(int a, int b, boolean lower) {
+        return lower ? mValues[a] > mValues[b] : mValues[a] < mValues[b];
+    }
+
+    private void siftUp(int slot) {
+        boolean lower = mInLower[slot];
+        int[] heap = lower ? mLower : mUpper;
+        int position = mPositions[slot];
+        while (position > 0) {
+            int parent = (position - 1) / 2;
+            if (!before(slot, heap[parent], lower)) {
+                break;
+            }
+            place(heap[parent], position);
+            position = parent;
+        }
+        place(slot, position);
+    }
+
+    private void siftDown(int slot) {
+        boolean lower = mInLower[slot];
+        int[] heap = lower ? mLower : mUpper;
+        int size = lower ? mLowerSize : mUpperSize;
+        int position = mPositions[slot];
+        while (true) {
+            int child = 2 * position + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && before(heap[child + 1], heap[child], lower)) {
+                child++;
+            }
+            if (!before(heap[child], slot, lower)) {
+                break;
+            }
+            place(heap[child], position);
+            position = child;
+        }
+        place(slot, position);
+    }
+}
@@ -0,0 +1,104 @@
+package me.izen.glasssensor.core;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Process-wide named counters and gauges, updated from any thread without locking and read the
+ * same way by the performance overlay or a dump to a file.
+ *
+ * A metric is registered once by name, typically into a static field, and then updated by its
+ * index. Each metric sits on a cache line of its own, so threads updating different metrics never
+ * contend; an update is a single atomic operation and never allocates.
+ */
+public final class MetricsRegistry {
+
+    public static final int MAX_METRICS = 64;
+
+    // Longs per metric, a 64 byte cache line.
+    private static final int STRIDE = 8;
+
+    private static final MetricsRegistry sInstance = new MetricsRegistry();
+
+    private final AtomicReferenceArray<String> mNames =
+            new AtomicReferenceArray<String>(MAX_METRICS);
+    private final AtomicLongArray mValues = new AtomicLongArray(MAX_METRICS * STRIDE);
+
+    public static MetricsRegistry get() {
+        return sInstance;
+    }
+
+    /**
+     * Get the index of the metric called {@code name}, registering it if needed. Concurrent
+     * registrations of one name get the same index.
+     *
+     * @throws IllegalStateException if {@link #MAX_METRICS} other metrics are registered
+     */
+    public int register(String name) {
+        for (int i = 0; i < MAX_METRICS; i++) {
+            String existing = mNames.get(i);
+            if (existing == null && mNames.compareAndSet(i, null, name)) {
+                return i;
+            }
+            // Either set before, or just set by another thread.
+            if (name.equals(mNames.get(i))) {
+                return i;
+            }
+        }
+        throw new IllegalStateException("No room for metric " + name);
+    }
+
+    /**
+     * Number of metrics registered, which have the indices below it.
+     */
+    public int size() {
+        int size = 0;
+        while (size < MAX_METRICS && mNames.get(size) != null) {
+            size++;
+        }
+        return size;
+    }
+
+    public String getName(int metric) {
+        return mNames.get(metric);
+    }
+
+    public void increment(int metric) {
+        mValues.incrementAndGet(metric * STRIDE);
+    }
+
+    public void add(int metric, long delta) {
+        mValues.addAndGet(metric * STRIDE, delta);
+    }
+
+    public void set(int metric, long value) {
+        mValues.set(metric * STRIDE, value);
+    }
+
+    /**
+     * Raise the metric to {@code value} if it is below, e.g. for a high water mark.
+     */
+    public void setMax(int metric, long value) {
+        int index = metric * STRIDE;
+        long current;
+        do {
+            current = mValues.get(index);
+        } while (value > current && !mValues.compareAndSet(index, current, value));
+    }
+
+    public long get(int metric) {
+        return mValues.get(metric * STRIDE);
+    }
+
+    /**
+     * Writes one {@code name value} line per metric, in registration order.
+     */
+    public void dump(Writer out) throws IOException {
+        int size = size();
+        for (int i = 0; i < size; i++) {
+            out.write(getName(i) + " " + get(i) + "\n");
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package me.izen.glasssensor.core;
+
+/**
+ * Smooths the readings of one channel, one at a time, in constant or logarithmic time and without
+ * allocating. Not a number passes through without touching the filter's state.
+ *
+ * Instances hold the state of one stream of readings and must be fed from a single thread.
+ */
+public interface NoiseFilter {
+    /**
+     * @return the filtered value after {@code value}
+     */
+    public float filter(float value);
+
+    /**
+     * Forget every reading seen so far.
+     */
+    public void reset();
+}
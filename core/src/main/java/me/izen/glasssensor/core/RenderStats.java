@@ -0,0 +1,63 @@
+package me.izen.glasssensor.core;
+
+/**
+ * Counts frames drawn and skipped by the card renderer, and the pixels not redrawn compared to
+ * repainting the full surface on every tick.
+ */
+public class RenderStats {
+
+    private long mFramesDrawn;
+    private long mFramesSkipped;
+    private long mPixelsDrawn;
+    private long mPixelsSaved;
+
+    /**
+     * Records a frame that repainted {@code drawnPixels} out of a surface of {@code fullPixels}.
+     */
+    public synchronized void onFrameDrawn(long drawnPixels, long fullPixels) {
+        mFramesDrawn++;
+        mPixelsDrawn += drawnPixels;
+        mPixelsSaved += Math.max(0, fullPixels - drawnPixels);
+    }
+
+    /**
+     * Records a tick where nothing visible changed so no frame was produced.
+     */
+    public synchronized void onFrameSkipped(long fullPixels) {
+        mFramesSkipped++;
+        mPixelsSaved += fullPixels;
+    }
+
+    public synchronized long getFramesDrawn() {
+        return mFramesDrawn;
+    }
+
+    public synchronized long getFramesSkipped() {
+        return mFramesSkipped;
+    }
+
+    public synchronized long getPixelsDrawn() {
+        return mPixelsDrawn;
+    }
+
+    public synchronized long getPixelsSaved() {
+        return mPixelsSaved;
+    }
+
+    public synchronized void reset() {
+        mFramesDrawn = 0;
+        mFramesSkipped = 0;
+        mPixelsDrawn = 0;
+        mPixelsSaved = 0;
+    }
+
+    @Override
+    public synchronized String toString() {
+        long total = mPixelsDrawn + mPixelsSaved;
+        return "frames drawn=" + mFramesDrawn
+                + " skipped=" + mFramesSkipped
+                + " pixels drawn=" + mPixelsDrawn
+                + " saved=" + mPixelsSaved
+                + " (" + (total == 0 ? 0 : mPixelsSaved * 100 / total) + "%)";
+    }
+}
@@ -0,0 +1,263 @@
+package me.izen.glasssensor.core;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Streaming min, max, mean, standard deviation and rate of change of selected channels over
+ * several trailing time windows.
+ *
+ * Every tracked channel keeps one ring of recent samples shared by all of its windows. Each
+ * window keeps monotonic deques of ring positions for min and max and a running Welford mean and
+ * variance that samples enter and leave, so a sample costs amortized constant time per window and
+ * nothing is allocated after construction. When samples arrive faster than the ring can hold for
+ * the longest window, the oldest are evicted early and that window covers less time.
+ *
+ * Samples must come from a single ingestion thread; {@link #read} may be called from any thread.
+ */
+public final class RollingStats implements SampleSink {
+
+    public static final long[] DEFAULT_WINDOWS_MILLIS = {
+            TimeUnit.MINUTES.toMillis(1),
+            TimeUnit.MINUTES.toMillis(10),
+            TimeUnit.HOURS.toMillis(1)
+    };
+
+    /** One hour at 10 Hz. */
+    public static final int DEFAULT_CAPACITY = 36000;
+
+    private final long[] mWindowsMillis;
+    // Indexed by channel, null for channels that are not tracked.
+    private final ChannelStats[] mChannels = new ChannelStats[SensorChannels.COUNT];
+
+    /**
+     * @param channels channels to track
+     * @param windowsMillis trailing window lengths, shortest first
+     * @param capacity samples retained per channel, bounding the longest window
+     */
+    public RollingStats(int[] channels, long[] windowsMillis, int capacity) {
+        for (int i = 1; i < windowsMillis.length; i++) {
+            if (windowsMillis[i] < windowsMillis[i - 1]) {
+                throw new IllegalArgumentException("windows must be sorted shortest first");
+            }
+        }
+        mWindowsMillis = windowsMillis.clone();
+        for (int channel : channels) {
+            mChannels[channel] = new ChannelStats(mWindowsMillis, capacity);
+        }
+    }
+
+    /**
+     * Gas, temperature and pressure over the last minute, ten minutes and hour.
+     */
+    public static RollingStats createDefault() {
+        return new RollingStats(
+                new int[]{SensorChannels.GAS, SensorChannels.TEMPERATURE, SensorChannels.PRESSURE},
+                DEFAULT_WINDOWS_MILLIS, DEFAULT_CAPACITY);
+    }
+
+    public int getWindowCount() {
+        return mWindowsMillis.length;
+    }
+
+    public long getWindowMillis(int window) {
+        return mWindowsMillis[window];
+    }
+
+    public boolean isTracked(int channel) {
+        return SensorChannels.isValid(channel) && mChannels[channel] != null;
+    }
+
+    @Override
+    public void onSample(int channel, long timestampMillis, float value) {
+        if (isTracked(channel) && !Float.isNaN(value)) {
+            mChannels[channel].add(timestampMillis, value);
+        }
+    }
+
+    /**
+     * Copies the aggregates of {@code channel} over window {@code window} into {@code out}.
+     *
+     * @return false if the channel is not tracked or has no samples in the window
+     */
+    public boolean read(int channel, int window, WindowStats out) {
+        out.clear();
+        if (!isTracked(channel)) {
+            return false;
+        }
+        return mChannels[channel].read(window, out);
+    }
+
+    private static final class ChannelStats {
+        private final long[] mTimestamps;
+        private final float[] mValues;
+        private final int mMask;
+        private final Window[] mWindows;
+        // Sequence number of the next sample.
+        private long mNext;
+
+        ChannelStats(long[] windowsMillis, int capacity) {
+            int size = Integer.highestOneBit(Math.max(capacity, 2));
+            if (size < capacity) {
+                size <<= 1;
+            }
+            mTimestamps = new long[size];
+            mValues = new float[size];
+            mMask = size - 1;
+            mWindows = new Window[windowsMillis.length];
+            for (int i = 0; i < mWindows.length; i++) {
+                mWindows[i] = new Window(windowsMillis[i], size);
+            }
+        }
+
+        synchronized void add(long timestampMillis, float value) {
+            long seq = mNext;
+            // Make room in the ring before overwriting the oldest slot.
+            long oldestKept = seq + 1 - mTimestamps.length;
+            for (Window window : mWindows) {
+                window.expire(this, timestampMillis, oldestKept);
+            }
+            int slot = (int) seq & mMask;
+            mTimestamps[slot] = timestampMillis;
+            mValues[slot] = value;
+            mNext = seq + 1;
+            for (Window window : mWindows) {
+                window.push(this, seq, value);
+            }
+        }
+
+        synchronized boolean read(int index, WindowStats out) {
+            Window window = mWindows[index];
+            int count = (int) (mNext - window.mStart);
+            if (count == 0) {
+                return false;
+            }
+            long newest = mNext - 1;
+            long oldest = window.mStart;
+            out.count = count;
+            out.min = value(window.mMin.peekFirst());
+            out.max = value(window.mMax.peekFirst());
+            out.mean = window.mMean;
+            out.stddev = count > 1 ? Math.sqrt(Math.max(0, window.mM2 / (count - 1))) : 0;
+            out.spanMillis = timestamp(newest) - timestamp(oldest);
+            out.ratePerSecond = out.spanMillis > 0
+                    ? (value(newest) - value(oldest)) * 1000.0 / out.spanMillis : 0;
+            return true;
+        }
+
+        float value(long seq) {
+            return mValues[(int) seq & mMask];
+        }
+
+        long timestamp(long seq) {
+            return mTimestamps[(int) seq & mMask];
+        }
+    }
+
+    private static final class Window {
+        private final long mLengthMillis;
+        private final SequenceDeque mMin;
+        private final SequenceDeque mMax;
+        // Sequence number of the oldest sample in the window.
+        private long mStart;
+        private double mMean;
+        private double mM2;
+
+        Window(long lengthMillis, int capacity) {
+            mLengthMillis = lengthMillis;
+            mMin = new SequenceDeque(capacity);
+            mMax = new SequenceDeque(capacity);
+        }
+
+        /**
+         * Drops samples older than the window relative to {@code now}, and any sample below
+         * {@code oldestKept} about to be overwritten in the ring.
+         */
+        void expire(ChannelStats channel, long now, long oldestKept) {
+            long end = channel.mNext;
+            while (mStart < end
+                    && (mStart < oldestKept || now - channel.timestamp(mStart) > mLengthMillis)) {
+                remove(channel.value(mStart), end - mStart - 1);
+                if (mMin.peekFirst() == mStart) {
+                    mMin.pollFirst();
+                }
+                if (mMax.peekFirst() == mStart) {
+                    mMax.pollFirst();
+                }
+                mStart++;
+            }
+        }
+
+        void push(ChannelStats channel, long seq, float value) {
+            while (!mMin.isEmpty() && channel.value(mMin.peekLast()) >= value) {
+                mMin.pollLast();
+            }
+            mMin.addLast(seq);
+            while (!mMax.isEmpty() && channel.value(mMax.peekLast()) <= value) {
+                mMax.pollLast();
+            }
+            mMax.addLast(seq);
+
+            long count = seq + 1 - mStart;
+            double delta = value - mMean;
+            mMean += delta / count;
+            mM2 += delta * (value - mMean);
+        }
+
+        /**
+         * Welford update for a sample leaving the window.
+         *
+         * @param remaining number of samples left in the window afterwards
+         */
+        private void remove(float value, long remaining) {
+            if (remaining == 0) {
+                mMean = 0;
+                mM2 = 0;
+                return;
+            }
+            double delta = value - mMean;
+            mMean -= delta / remaining;
+            mM2 -= delta * (value - mMean);
+        }
+    }
+
+    /**
+     * Fixed-capacity deque of sequence numbers.
+     */
+    private static final class SequenceDeque {
+        private final long[] mItems;
+        private final int mMask;
+        private int mHead;
+        private int mSize;
+
+        SequenceDeque(int capacity) {
+            mItems = new long[capacity];
+            mMask = capacity - 1;
+        }
+
+        boolean isEmpty() {
+            return mSize == 0;
+        }
+
+        long peekFirst() {
+            return mSize == 0 ? -1 : mItems[mHead];
+        }
+
+        long peekLast() {
+            return mItems[(mHead + mSize - 1) & mMask];
+        }
+
+        void pollFirst() {
+            mHead = (mHead + 1) & mMask;
+            mSize--;
+        }
+
+        void pollLast() {
+            mSize--;
+        }
+
+        void addLast(long seq) {
+            mItems[(mHead + mSize) & mMask] = seq;
+            mSize++;
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package me.izen.glasssensor.core;
+
+/**
+ * Bounded single-producer single-consumer queue of readings, kept in primitive arrays so handing
+ * samples to a background thread neither allocates nor locks.
+ */
+public final class SampleQueue {
+
+    private final int[] mChannels;
+    private final long[] mTimestamps;
+    private final float[] mValues;
+    private final int mMask;
+
+    // Next slot to write, owned by the producer.
+    private volatile long mHead;
+    // Next slot to read, owned by the consumer.
+    private volatile long mTail;
+
+    /**
+     * @param capacity number of queued samples, rounded up to a power of two
+     */
+    public SampleQueue(int capacity) {
+        if (capacity <= 0 || capacity > (1 << 30)) {
+            throw new IllegalArgumentException("capacity out of range: " + capacity);
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+        mChannels = new int[size];
+        mTimestamps = new long[size];
+        mValues = new float[size];
+        mMask = size - 1;
+    }
+
+    /**
+     * Enqueues a sample. Producer thread only.
+     *
+     * @return false if the queue is full and the sample was not added
+     */
+    public boolean offer(int channel, long timestampMillis, float value) {
+        long head = mHead;
+        if (head - mTail > mMask) {
+            return false;
+        }
+        int slot = (int) head & mMask;
+        mChannels[slot] = channel;
+        mTimestamps[slot] = timestampMillis;
+        mValues[slot] = value;
+        mHead = head + 1;
+        return true;
+    }
+
+    /**
+     * Delivers up to {@code max} queued samples to {@code sink}, oldest first. Consumer thread
+     * only.
+     *
+     * @return number of samples delivered
+     */
+    public int drain(SampleSink sink, int max) {
+        long tail = mTail;
+        int count = (int) Math.min(mHead - tail, max);
+        for (int i = 0; i < count; i++) {
+            int slot = (int) (tail + i) & mMask;
+            sink.onSample(mChannels[slot], mTimestamps[slot], mValues[slot]);
+        }
+        mTail = tail + count;
+        return count;
+    }
+
+    public int size() {
+        return (int) (mHead - mTail);
+    }
+
+    public boolean isEmpty() {
+        return mHead == mTail;
+    }
+}
@@ -0,0 +1,17 @@
+package me.izen.glasssensor.core;
+
+/**
+ * Receives decoded sensor readings one at a time.
+ *
+ * Implementations are called on the ingestion hot path and must not allocate per sample.
+ */
+public interface SampleSink {
+    /**
+     * Notified of a single reading.
+     *
+     * @param channel index of the channel, in card order (temperature through battery)
+     * @param timestampMillis time the reading was taken, in the sender's elapsed realtime
+     * @param value reading in the channel's natural unit
+     */
+    public void onSample(int channel, long timestampMillis, float value);
+}
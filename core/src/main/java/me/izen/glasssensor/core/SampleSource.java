@@ -0,0 +1,13 @@
+package me.izen.glasssensor.core;
+
+/**
+ * Pull-based supplier of readings, e.g. a recorded session or a synthetic waveform.
+ */
+public interface SampleSource {
+    /**
+     * Delivers the next reading to {@code sink}.
+     *
+     * @return false once the source is exhausted, in which case nothing was delivered
+     */
+    public boolean next(SampleSink sink);
+}
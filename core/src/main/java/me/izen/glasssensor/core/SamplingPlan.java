@@ -0,0 +1,186 @@
+package me.izen.glasssensor.core;
+
+import java.util.List;
+
+/**
+ * Decides the sampling rate to ask the drone for on each of its channels, from what the readings
+ * are used for: a channel shown on the card or watched by an alert rule gets its display rate,
+ * one only recorded gets its background rate, and one nothing uses is turned off. Demand on a
+ * derived channel is demand on its inputs.
+ *
+ * So readings stay frequent enough for {@link DroneLink} to tell a stalled drone from a quiet
+ * one, the rates always add up to at least {@link #KEEPALIVE_HZ}.
+ *
+ * Not thread safe.
+ */
+public final class SamplingPlan {
+
+    /** Rate of a channel nothing uses. */
+    public static final float OFF = 0f;
+    /** Fastest rate ever asked for. */
+    public static final float MAX_HZ = 100f;
+    /** Least readings per second across all channels, well within the link's stall timeout. */
+    public static final float KEEPALIVE_HZ = 1f;
+
+    // Per raw channel, as often as it is worth redrawing: the gas and proximity readings move
+    // fast, the battery barely moves.
+    private static final float[] DEFAULT_DISPLAY_HZ = {
+            2f,    // temperature
+            1f,    // humidity
+            2f,    // pressure
+            5f,    // IR temperature
+            5f,    // illuminance
+            10f,   // gas
+            10f,   // proximity
+            1f,    // voltage
+            2f,    // altitude
+            0.1f   // battery
+    };
+    private static final float[] DEFAULT_BACKGROUND_HZ = {
+            0.5f,  // temperature
+            0.2f,  // humidity
+            0.5f,  // pressure
+            0.5f,  // IR temperature
+            0.5f,  // illuminance
+            1f,    // gas
+            0.5f,  // proximity
+            0.2f,  // voltage
+            0.5f,  // altitude
+            0.1f   // battery
+    };
+
+    private final float[] mDisplayHz;
+    private final float[] mBackgroundHz;
+    private final List<DerivedChannel> mDerived;
+
+    private final boolean[] mDisplayed = new boolean[SensorChannels.COUNT];
+    private final boolean[] mAlerted = new boolean[SensorChannels.COUNT];
+    private boolean mRecording;
+
+    // Scratch for getRates().
+    private final boolean[] mWanted = new boolean[SensorChannels.COUNT];
+    private final boolean[] mRecorded = new boolean[SensorChannels.COUNT];
+
+    /**
+     * @param displayHz rate of each raw channel while shown or alerted on
+     * @param backgroundHz rate of each raw channel while only recorded
+     * @param derived channels derived on the glass, whose demand goes to their inputs
+     */
+    public SamplingPlan(float[] displayHz, float[] backgroundHz, List<DerivedChannel> derived) {
+        if (displayHz.length != SensorChannels.RAW_COUNT
+                || backgroundHz.length != SensorChannels.RAW_COUNT) {
+            throw new IllegalArgumentException("Need one rate per raw channel");
+        }
+        for (int channel = 0; channel < SensorChannels.RAW_COUNT; channel++) {
+            checkRate(displayHz[channel]);
+            checkRate(backgroundHz[channel]);
+        }
+        mDisplayHz = displayHz.clone();
+        mBackgroundHz = backgroundHz.clone();
+        mDerived = derived;
+    }
+
+    private static void checkRate(float hz) {
+        if (!(hz >= OFF && hz <= MAX_HZ)) {
+            throw new IllegalArgumentException("Invalid rate " + hz + " Hz");
+        }
+    }
+
+    /**
+     * The default rates, with the {@link DerivedChannel#createDefaults() default} derived
+     * channels.
+     */
+    public static SamplingPlan createDefault() {
+        return new SamplingPlan(DEFAULT_DISPLAY_HZ, DEFAULT_BACKGROUND_HZ,
+                DerivedChannel.createDefaults());
+    }
+
+    public void setDisplayed(int channel, boolean displayed) {
+        mDisplayed[channel] = displayed;
+    }
+
+    /**
+     * Set whether every channel is shown, as the card shows them all whenever it is on screen.
+     */
+    public void setAllDisplayed(boolean displayed) {
+        for (int channel = 0; channel < SensorChannels.COUNT; channel++) {
+            mDisplayed[channel] = displayed;
+        }
+    }
+
+    public void setAlerted(int channel, boolean alerted) {
+        mAlerted[channel] = alerted;
+    }
+
+    /**
+     * Set whether every reading is recorded.
+     */
+    public void setRecording(boolean recording) {
+        mRecording = recording;
+    }
+
+    /**
+     * Computes the rate of every raw channel.
+     *
+     * @param out receives {@link SensorChannels#RAW_COUNT} rates in Hz, {@link #OFF} for none
+     */
+    public void getRates(float[] out) {
+        for (int channel = 0; channel < SensorChannels.COUNT; channel++) {
+            mWanted[channel] = mDisplayed[channel] || mAlerted[channel];
+            mRecorded[channel] = mRecording;
+        }
+        // Each pass settles one more level of derived inputs.
+        for (int pass = 0; pass < mDerived.size(); pass++) {
+            boolean changed = false;
+            for (DerivedChannel derived : mDerived) {
+                int channel = derived.getChannel();
+                for (int input : derived.getInputs()) {
+                    if (mWanted[channel] && !mWanted[input]) {
+                        mWanted[input] = changed = true;
+                    }
+                    if (mRecorded[channel] && !mRecorded[input]) {
+                        mRecorded[input] = changed = true;
+                    }
+                }
+            }
+            if (!changed) {
+                break;
+            }
+        }
+
+        float total = 0;
+        int fastest = 0;
+        for (int channel = 0; channel < SensorChannels.RAW_COUNT; channel++) {
+            float hz = OFF;
+            if (mWanted[channel]) {
+                hz = mDisplayHz[channel];
+            }
+            if (mRecorded[channel]) {
+                hz = Math.max(hz, mBackgroundHz[channel]);
+            }
+            out[channel] = hz;
+            total += hz;
+            if (mDisplayHz[channel] > mDisplayHz[fastest]) {
+                fastest = channel;
+            }
+        }
+        if (total < KEEPALIVE_HZ) {
+            // Top up the channel that is read fastest when shown.
+            out[fastest] += KEEPALIVE_HZ - total;
+        }
+    }
+
+    /**
+     * Rates as {@code name=Hz} pairs, for logs.
+     */
+    public static String toString(float[] rates) {
+        StringBuilder text = new StringBuilder();
+        for (int channel = 0; channel < rates.length; channel++) {
+            if (channel > 0) {
+                text.append(' ');
+            }
+            text.append(SensorChannels.getName(channel)).append('=').append(rates[channel]);
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,61 @@
+package me.izen.glasssensor.core;
+
+/**
+ * Channel indices of the Sensordrone readings, in the order they appear on the card, followed by
+ * the channels derived from them on the glass, see {@link DerivedChannel}.
+ */
+public final class SensorChannels {
+
+    public static final int TEMPERATURE = 0;
+    public static final int HUMIDITY = 1;
+    public static final int PRESSURE = 2;
+    public static final int IR_TEMPERATURE = 3;
+    public static final int ILLUMINANCE = 4;
+    public static final int GAS = 5;
+    public static final int PROXIMITY = 6;
+    public static final int VOLTAGE = 7;
+    public static final int ALTITUDE = 8;
+    public static final int BATTERY = 9;
+    public static final int DEW_POINT = 10;
+    public static final int HEAT_INDEX = 11;
+    public static final int PRESSURE_ALTITUDE = 12;
+
+    /** Number of channels sent by the drone. */
+    public static final int RAW_COUNT = 10;
+    /** Number of channels, sent or derived. */
+    public static final int COUNT = 13;
+
+    private static final String[] NAMES = {
+            "Temperature",
+            "Humidity",
+            "Pressure",
+            "IR Temperature",
+            "Illuminance",
+            "Gas",
+            "Proximity",
+            "Voltage",
+            "Altitude",
+            "Battery",
+            "Dew Point",
+            "Heat Index",
+            "Pressure Altitude"
+    };
+
+    private SensorChannels() {
+    }
+
+    public static boolean isValid(int channel) {
+        return channel >= 0 && channel < COUNT;
+    }
+
+    /**
+     * Whether {@code channel} is sent by the drone rather than derived from other channels.
+     */
+    public static boolean isRaw(int channel) {
+        return channel >= 0 && channel < RAW_COUNT;
+    }
+
+    public static String getName(int channel) {
+        return NAMES[channel];
+    }
+}
@@ -0,0 +1,197 @@
+package me.izen.glasssensor.core;
+
+/**
+ * Compact binary batch of sensor readings, carried as a single byte[] extra of the
+ * sensor-update broadcast.
+ *
+ * Layout, big endian:
+ * <pre>
+ *   header  version:u8  device:u8  count:u16  baseMillis:s64
+ *   record  channel:u8  deltaMillis:s32  value:s32   (repeated count times)
+ * </pre>
+ * Values are fixed point in thousandths of the channel's unit and timestamps are deltas from
+ * {@code baseMillis}. Version 1 frames, without the device byte, are still accepted as coming from
+ * device 0.
+ */
+public final class SensorFrame {
+
+    public static final String ACTION_SENSOR_UPDATE = "me.izen.glasssensor.msg.sensor-update";
+    public static final String EXTRA_FRAME = "frame";
+
+    public static final int VERSION = 2;
+    public static final int HEADER_SIZE = 12;
+    public static final int RECORD_SIZE = 9;
+    public static final int MAX_RECORDS = 0xffff;
+    public static final int MAX_DEVICES = 0x100;
+
+    private static final int VERSION_1 = 1;
+    private static final int HEADER_SIZE_1 = 11;
+
+    /** Fixed point scale of the encoded values. */
+    public static final int VALUE_SCALE = 1000;
+
+    private SensorFrame() {
+    }
+
+    /**
+     * Decodes every record of {@code frame} into {@code sink}, first telling it the frame's
+     * device if it is a {@link DeviceSink}. No objects are allocated.
+     *
+     * @return the number of records delivered, or -1 if the frame is malformed
+     */
+    public static int decode(byte[] frame, SampleSink sink) {
+        if (frame == null) {
+            return -1;
+        }
+        return decode(frame, 0, frame.length, sink);
+    }
+
+    /**
+     * Decodes the frame stored in {@code length} bytes of {@code buffer} from {@code offset}, for
+     * readers that reuse one buffer across frames.
+     *
+     * @return the number of records delivered, or -1 if the frame is malformed
+     */
+    public static int decode(byte[] buffer, int offset, int length, SampleSink sink) {
+        if (length < 1) {
+            return -1;
+        }
+        int version = buffer[offset] & 0xff;
+        int device;
+        int header;
+        if (version == VERSION && length >= HEADER_SIZE) {
+            device = buffer[offset + 1] & 0xff;
+            header = offset + 2;
+        } else if (version == VERSION_1 && length >= HEADER_SIZE_1) {
+            device = 0;
+            header = offset + 1;
+        } else {
+            return -1;
+        }
+        // Both versions end their header with count:u16 and baseMillis:s64.
+        int count = readShort(buffer, header);
+        int records = header + 10;
+        if (offset + length < records + count * RECORD_SIZE) {
+            return -1;
+        }
+        long baseMillis = readLong(buffer, header + 2);
+        if (sink instanceof DeviceSink) {
+            ((DeviceSink) sink).onDevice(device);
+        }
+
+        int record = records;
+        for (int i = 0; i < count; i++) {
+            int channel = buffer[record] & 0xff;
+            int delta = readInt(buffer, record + 1);
+            int value = readInt(buffer, record + 5);
+            sink.onSample(channel, baseMillis + delta, value / (float) VALUE_SCALE);
+            record += RECORD_SIZE;
+        }
+        return count;
+    }
+
+    private static int readShort(byte[] b, int off) {
+        return ((b[off] & 0xff) << 8) | (b[off + 1] & 0xff);
+    }
+
+    private static int readInt(byte[] b, int off) {
+        return (b[off] << 24)
+                | ((b[off + 1] & 0xff) << 16)
+                | ((b[off + 2] & 0xff) << 8)
+                | (b[off + 3] & 0xff);
+    }
+
+    private static long readLong(byte[] b, int off) {
+        return ((long) readInt(b, off) << 32) | (readInt(b, off + 4) & 0xffffffffL);
+    }
+
+    /**
+     * Accumulates readings into a reusable buffer for the sending side.
+     */
+    public static final class Encoder {
+        private final byte[] mBuffer;
+        private final int mCapacity;
+        private int mCount;
+        private long mBaseMillis;
+        private int mDevice;
+
+        public Encoder(int capacity) {
+            if (capacity <= 0 || capacity > MAX_RECORDS) {
+                throw new IllegalArgumentException("capacity out of range: " + capacity);
+            }
+            mCapacity = capacity;
+            mBuffer = new byte[HEADER_SIZE + capacity * RECORD_SIZE];
+            reset();
+        }
+
+        /**
+         * Appends a reading.
+         *
+         * @return false if the frame is full and should be sent first
+         */
+        public boolean add(int channel, long timestampMillis, float value) {
+            if (mCount == mCapacity) {
+                return false;
+            }
+            if (mCount == 0) {
+                mBaseMillis = timestampMillis;
+                writeLong(mBuffer, 4, timestampMillis);
+            }
+            int offset = HEADER_SIZE + mCount * RECORD_SIZE;
+            mBuffer[offset] = (byte) channel;
+            writeInt(mBuffer, offset + 1, (int) (timestampMillis - mBaseMillis));
+            writeInt(mBuffer, offset + 5, Math.round(value * VALUE_SCALE));
+            mCount++;
+            return true;
+        }
+
+        public int getCount() {
+            return mCount;
+        }
+
+        /**
+         * Set the device the frames come from, 0 unless several drones share a transport.
+         */
+        public void setDevice(int device) {
+            if (device < 0 || device >= MAX_DEVICES) {
+                throw new IllegalArgumentException("device out of range: " + device);
+            }
+            mDevice = device;
+        }
+
+        public boolean isFull() {
+            return mCount == mCapacity;
+        }
+
+        /**
+         * Copies the encoded frame out, ready to be put into an Intent extra.
+         */
+        public byte[] toByteArray() {
+            int length = HEADER_SIZE + mCount * RECORD_SIZE;
+            byte[] frame = new byte[length];
+            mBuffer[1] = (byte) mDevice;
+            mBuffer[2] = (byte) (mCount >>> 8);
+            mBuffer[3] = (byte) mCount;
+            System.arraycopy(mBuffer, 0, frame, 0, length);
+            return frame;
+        }
+
+        public void reset() {
+            mCount = 0;
+            mBaseMillis = 0;
+            mBuffer[0] = (byte) VERSION;
+        }
+
+        private static void writeInt(byte[] b, int off, int v) {
+            b[off] = (byte) (v >>> 24);
+            b[off + 1] = (byte) (v >>> 16);
+            b[off + 2] = (byte) (v >>> 8);
+            b[off + 3] = (byte) v;
+        }
+
+        private static void writeLong(byte[] b, int off, long v) {
+            writeInt(b, off, (int) (v >>> 32));
+            writeInt(b, off + 4, (int) v);
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package me.izen.glasssensor.core;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Process-wide ingestion point for the readings of one device.
+ *
+ * Every reading is kept in the {@link SensorStore}, aggregated by {@link RollingStats},
+ * decimated into a {@link Sparkline} per channel and fanned out to the registered sinks, such as
+ * the app's session recorder. Each device has a session of its own sharing no state with the
+ * others, so devices fed from different threads never contend; the readings of one device must
+ * be delivered from a single ingestion thread.
+ */
+public final class SensorSession implements SampleSink {
+
+    /**
+     * Interface to hear of each device as it delivers its first reading.
+     */
+    public interface DeviceListener {
+        /**
+         * Called on the device's ingestion thread before its first reading reaches the sinks, so
+         * sinks added here see every reading.
+         */
+        public void onDeviceAdded(SensorSession session);
+    }
+
+    private static final AtomicReferenceArray<SensorSession> sDevices =
+            new AtomicReferenceArray<SensorSession>(SensorFrame.MAX_DEVICES);
+    private static volatile DeviceListener sDeviceListener;
+
+    private final int mDevice;
+    private volatile boolean mHasReadings;
+
+    private final SensorStore mStore = new SensorStore();
+    private final RollingStats mStats = RollingStats.createDefault();
+    private final Sparkline[] mSparklines = new Sparkline[SensorChannels.COUNT];
+    private final DisplayLatency mDisplayLatency = new DisplayLatency(SensorChannels.COUNT);
+
+    private volatile LoadReport mLoadReport;
+
+    // Copied on write so ingestion iterates without locking.
+    private volatile SampleSink[] mSinks = new SampleSink[0];
+
+    private SensorSession(int device) {
+        mDevice = device;
+        for (int i = 0; i < mSparklines.length; i++) {
+            mSparklines[i] = new Sparkline();
+        }
+    }
+
+    /**
+     * Get the session of device 0, the only one unless several drones are connected.
+     */
+    public static SensorSession get() {
+        return get(0);
+    }
+
+    /**
+     * Get the session of {@code device}, creating it on first use.
+     */
+    public static SensorSession get(int device) {
+        SensorSession session = sDevices.get(device);
+        if (session == null) {
+            sDevices.compareAndSet(device, null, new SensorSession(device));
+            session = sDevices.get(device);
+        }
+        return session;
+    }
+
+    /**
+     * Get the devices that delivered readings so far, in increasing order.
+     */
+    public static int[] getDevices() {
+        int count = 0;
+        int[] devices = new int[SensorFrame.MAX_DEVICES];
+        for (int i = 0; i < devices.length; i++) {
+            SensorSession session = sDevices.get(i);
+            if (session != null && session.mHasReadings) {
+                devices[count++] = i;
+            }
+        }
+        int[] result = new int[count];
+        System.arraycopy(devices, 0, result, 0, count);
+        return result;
+    }
+
+    /**
+     * Set the listener told of devices delivering their first reading from now on, or null.
+     * Devices that already did are in {@link #getDevices()}.
+     */
+    public static void setDeviceListener(DeviceListener listener) {
+        sDeviceListener = listener;
+    }
+
+    public int getDevice() {
+        return mDevice;
+    }
+
+    public SensorStore getStore() {
+        return mStore;
+    }
+
+    /**
+     * Rolling aggregates of the tracked channels, for the card and the menu.
+     */
+    public RollingStats getStats() {
+        return mStats;
+    }
+
+    /**
+     * Trend line of the whole session for {@code channel}, for the card.
+     */
+    public Sparkline getSparkline(int channel) {
+        return mSparklines[channel];
+    }
+
+    /**
+     * Latency from the transport to the card per channel, fed by the card. Also tells when the
+     * device last delivered a reading.
+     */
+    public DisplayLatency getDisplayLatency() {
+        return mDisplayLatency;
+    }
+
+    /**
+     * Report of the load test currently feeding this device, or null when the readings come
+     * from a real drone.
+     */
+    public LoadReport getLoadReport() {
+        return mLoadReport;
+    }
+
+    public void setLoadReport(LoadReport report) {
+        mLoadReport = report;
+    }
+
+    public synchronized void addSink(SampleSink sink) {
+        SampleSink[] sinks = new SampleSink[mSinks.length + 1];
+        System.arraycopy(mSinks, 0, sinks, 0, mSinks.length);
+        sinks[mSinks.length] = sink;
+        mSinks = sinks;
+    }
+
+    public synchronized void removeSink(SampleSink sink) {
+        SampleSink[] current = mSinks;
+        for (int i = 0; i < current.length; i++) {
+            if (current[i] == sink) {
+                SampleSink[] sinks = new SampleSink[current.length - 1];
+                System.arraycopy(current, 0, sinks, 0, i);
+                System.arraycopy(current, i + 1, sinks, i, current.length - i - 1);
+                mSinks = sinks;
+                return;
+            }
+        }
+    }
+
+    @Override
+    public void onSample(int channel, long timestampMillis, float value) {
+        if (!SensorChannels.isValid(channel)) {
+            return;
+        }
+        if (!mHasReadings) {
+            mHasReadings = true;
+            DeviceListener listener = sDeviceListener;
+            if (listener != null) {
+                listener.onDeviceAdded(this);
+            }
+        }
+        mStore.onSample(channel, timestampMillis, value);
+        mStats.onSample(channel, timestampMillis, value);
+        mSparklines[channel].append(timestampMillis, value);
+        SampleSink[] sinks = mSinks;
+        for (int i = 0; i < sinks.length; i++) {
+            sinks[i].onSample(channel, timestampMillis, value);
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package me.izen.glasssensor.core;
+
+/**
+ * In-memory history of every channel, one {@link ChannelRingBuffer} per channel.
+ *
+ * Samples must be delivered from a single ingestion thread; snapshots may be taken from any
+ * thread.
+ */
+public class SensorStore implements SampleSink {
+
+    /** About ten minutes at 10 Hz. */
+    public static final int DEFAULT_CAPACITY = 8192;
+
+    private final ChannelRingBuffer[] mChannels;
+
+    public SensorStore() {
+        this(defaultCapacities());
+    }
+
+    /**
+     * @param capacities number of samples retained for each channel, indexed like
+     *                   {@link SensorChannels}
+     */
+    public SensorStore(int[] capacities) {
+        if (capacities.length != SensorChannels.COUNT) {
+            throw new IllegalArgumentException("expected " + SensorChannels.COUNT
+                    + " capacities, got " + capacities.length);
+        }
+        mChannels = new ChannelRingBuffer[capacities.length];
+        for (int i = 0; i < capacities.length; i++) {
+            mChannels[i] = new ChannelRingBuffer(capacities[i]);
+        }
+    }
+
+    public static int[] defaultCapacities() {
+        int[] capacities = new int[SensorChannels.COUNT];
+        for (int i = 0; i < capacities.length; i++) {
+            capacities[i] = DEFAULT_CAPACITY;
+        }
+        return capacities;
+    }
+
+    @Override
+    public void onSample(int channel, long timestampMillis, float value) {
+        if (SensorChannels.isValid(channel)) {
+            mChannels[channel].append(timestampMillis, value);
+        }
+    }
+
+    public ChannelRingBuffer getChannel(int channel) {
+        return mChannels[channel];
+    }
+}
@@ -0,0 +1,59 @@
+package me.izen.glasssensor.core;
+
+/**
+ * Carries readings from the drone bridge to the app, and the requests that start them.
+ *
+ * The control methods mirror {@link DroneLink.Driver} and are called from one control thread;
+ * their outcome is reported asynchronously through the {@link Callback}. Readings go to the sink
+ * given to {@link #open}, always from a single ingestion thread owned by the transport.
+ */
+public interface SensorTransport {
+
+    /**
+     * Interface to listen for the link to the bridge coming and going.
+     */
+    public interface Callback {
+        /** The bridge is reachable and can be asked to stream. */
+        public void onConnected();
+
+        /** The bridge went away; no readings arrive until the next connection. */
+        public void onDisconnected();
+    }
+
+    /**
+     * Start accepting readings into {@code sink}, without connecting yet.
+     */
+    public void open(SampleSink sink, Callback callback);
+
+    /**
+     * Connect to the bridge, dropping any earlier connection.
+     *
+     * @return false if the connection could not even be started
+     */
+    public boolean connect();
+
+    /**
+     * Ask the connected bridge to start streaming readings.
+     *
+     * @return false if the request could not be sent
+     */
+    public boolean requestStream();
+
+    /**
+     * Ask the connected bridge to sample each raw channel at the given rate from now on.
+     *
+     * @param hz {@link SensorChannels#RAW_COUNT} rates, see {@link SamplingPlan}
+     * @return false if the request could not be sent
+     */
+    public boolean requestRates(float[] hz);
+
+    /**
+     * Drop the connection. No callback is made for it.
+     */
+    public void disconnect();
+
+    /**
+     * Disconnect and stop accepting readings for good.
+     */
+    public void close();
+}
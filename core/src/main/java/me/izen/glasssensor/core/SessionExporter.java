@@ -0,0 +1,264 @@
+package me.izen.glasssensor.core;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Streams a recorded session out of the app, as CSV or in its own binary format, in a fixed
+ * amount of memory however long the session.
+ *
+ * The binary export is a single {@link SessionFormat} segment holding the records of every
+ * segment, moved with {@link FileChannel#transferTo} so they never enter the heap. A session
+ * whose segments were compacted away is exported as its {@link HistoryFormat} file, the same way.
+ * The CSV export decodes the session through {@link SessionReplaySource}, which maps one segment
+ * at a time, into a fixed size write buffer.
+ *
+ * A session still being recorded exports the readings flushed when its segments were opened.
+ */
+public final class SessionExporter {
+
+    /**
+     * Interface to follow an export.
+     */
+    public interface Progress {
+        /**
+         * @param bytesWritten bytes of the export written so far
+         * @param bytesTotal final size of the export, or -1 if only known at the end
+         */
+        public void onProgress(long bytesWritten, long bytesTotal);
+    }
+
+    public static final String CSV_HEADER = "timestamp_ms,channel,name,value\n";
+
+    /** Bytes moved per {@link FileChannel#transferTo} call, and between progress reports. */
+    public static final int CHUNK_SIZE = 1024 * 1024;
+    private static final int CSV_BUFFER_SIZE = 64 * 1024;
+    // Readings written to CSV between progress reports.
+    private static final int CSV_CHUNK_SAMPLES = 64 * 1024;
+
+    private final File mDirectory;
+    private Progress mProgress;
+
+    private long mBytesWritten;
+    private long mSamples;
+    private long mElapsedNanos;
+
+    public SessionExporter(File sessionDirectory) {
+        mDirectory = sessionDirectory;
+    }
+
+    public void setProgress(Progress progress) {
+        mProgress = progress;
+    }
+
+    /**
+     * Extension of the binary export of this session, {@link SessionFormat#SEGMENT_SUFFIX} or
+     * that of the history file once the segments were compacted away.
+     */
+    public String getBinarySuffix() {
+        if (SessionReplaySource.listSegments(mDirectory).length > 0) {
+            return SessionFormat.SEGMENT_SUFFIX;
+        }
+        String name = HistoryFormat.FILE_NAME;
+        return name.substring(name.lastIndexOf('.'));
+    }
+
+    /**
+     * Writes the session to {@code output} in the binary format of {@link #getBinarySuffix()}.
+     *
+     * @return the number of bytes written
+     */
+    public long exportBinary(File output) throws IOException {
+        long start = System.nanoTime();
+        mBytesWritten = 0;
+        mSamples = 0;
+        File[] segments = SessionReplaySource.listSegments(mDirectory);
+        FileOutputStream stream = new FileOutputStream(output);
+        try {
+            FileChannel out = stream.getChannel();
+            if (segments.length == 0) {
+                exportHistory(out);
+            } else {
+                exportSegments(segments, out);
+            }
+            out.force(false);
+        } finally {
+            stream.close();
+        }
+        mElapsedNanos = System.nanoTime() - start;
+        return mBytesWritten;
+    }
+
+    private void exportSegments(File[] segments, FileChannel out) throws IOException {
+        // Counts first, so the header is written once and the records follow in one pass. Only
+        // one segment is open at a time, however many the session rolled over to.
+        long[] counts = new long[segments.length];
+        ByteBuffer header = ByteBuffer.allocate(SessionFormat.HEADER_SIZE);
+        for (int i = 0; i < segments.length; i++) {
+            RandomAccessFile file = new RandomAccessFile(segments[i], "r");
+            try {
+                header.clear();
+                readFully(file.getChannel(), header);
+                header.flip();
+                long stored = (file.length() - SessionFormat.HEADER_SIZE)
+                        / SessionFormat.RECORD_SIZE;
+                // An unreadable segment is treated as empty, as in a replay.
+                counts[i] = Math.max(0, Math.min(SessionFormat.readHeader(header), stored));
+            } finally {
+                file.close();
+            }
+            mSamples += counts[i];
+        }
+        long total = SessionFormat.HEADER_SIZE + mSamples * SessionFormat.RECORD_SIZE;
+        header.clear();
+        SessionFormat.writeHeader(header, mSamples);
+        while (header.hasRemaining()) {
+            mBytesWritten += out.write(header);
+        }
+        for (int i = 0; i < segments.length; i++) {
+            if (counts[i] == 0) {
+                continue;
+            }
+            RandomAccessFile file = new RandomAccessFile(segments[i], "r");
+            try {
+                transfer(file.getChannel(), SessionFormat.HEADER_SIZE,
+                        counts[i] * SessionFormat.RECORD_SIZE, out, total);
+            } finally {
+                file.close();
+            }
+        }
+    }
+
+    private void exportHistory(FileChannel out) throws IOException {
+        File history = new File(mDirectory, HistoryFormat.FILE_NAME);
+        if (!history.isFile()) {
+            throw new IOException("no segments or history in " + mDirectory);
+        }
+        RandomAccessFile file = new RandomAccessFile(history, "r");
+        try {
+            long size = file.length();
+            transfer(file.getChannel(), 0, size, out, size);
+        } finally {
+            file.close();
+        }
+        // Unknown without decoding the history.
+        mSamples = -1;
+    }
+
+    /**
+     * Moves {@code length} bytes from {@code position} in {@code in} to the end of {@code out},
+     * in chunks so progress is reported along the way.
+     */
+    private void transfer(FileChannel in, long position, long length, FileChannel out, long total)
+            throws IOException {
+        long end = position + length;
+        while (position < end) {
+            long moved = in.transferTo(position, Math.min(CHUNK_SIZE, end - position), out);
+            if (moved <= 0) {
+                throw new IOException("transfer stalled at " + position + " of " + end);
+            }
+            position += moved;
+            mBytesWritten += moved;
+            if (mProgress != null) {
+                mProgress.onProgress(mBytesWritten, total);
+            }
+        }
+    }
+
+    /**
+     * Writes every reading of the session to {@code output}, one {@link #CSV_HEADER} line per
+     * reading, in recording order.
+     *
+     * @return the number of bytes written
+     */
+    public long exportCsv(File output) throws IOException {
+        long start = System.nanoTime();
+        mBytesWritten = 0;
+        mSamples = 0;
+        final Writer writer = new BufferedWriter(
+                new OutputStreamWriter(new FileOutputStream(output), "US-ASCII"), CSV_BUFFER_SIZE);
+        try {
+            final StringBuilder line = new StringBuilder();
+            final IOException[] failure = new IOException[1];
+            SampleSink sink = new SampleSink() {
+                @Override
+                public void onSample(int channel, long timestampMillis, float value) {
+                    if (!SensorChannels.isValid(channel)) {
+                        return;
+                    }
+                    line.setLength(0);
+                    line.append(timestampMillis).append(',')
+                            .append(channel).append(',')
+                            .append(SensorChannels.getName(channel)).append(',')
+                            .append(value).append('\n');
+                    try {
+                        writer.append(line);
+                    } catch (IOException e) {
+                        failure[0] = e;
+                    }
+                    mBytesWritten += line.length();
+                    mSamples++;
+                }
+            };
+            writer.write(CSV_HEADER);
+            mBytesWritten += CSV_HEADER.length();
+            SessionReplaySource source = new SessionReplaySource(mDirectory, false);
+            while (source.next(sink)) {
+                if (failure[0] != null) {
+                    throw failure[0];
+                }
+                if (mProgress != null && mSamples % CSV_CHUNK_SAMPLES == 0) {
+                    mProgress.onProgress(mBytesWritten, -1);
+                }
+            }
+            writer.flush();
+        } finally {
+            writer.close();
+        }
+        mElapsedNanos = System.nanoTime() - start;
+        if (mProgress != null) {
+            mProgress.onProgress(mBytesWritten, mBytesWritten);
+        }
+        return mBytesWritten;
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, buffer.position()) < 0) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Bytes written by the last export.
+     */
+    public long getBytesWritten() {
+        return mBytesWritten;
+    }
+
+    /**
+     * Readings written by the last export, or -1 for a binary export of the history.
+     */
+    public long getSampleCount() {
+        return mSamples;
+    }
+
+    public long getElapsedNanos() {
+        return mElapsedNanos;
+    }
+
+    /**
+     * Bytes per second of the last export.
+     */
+    public double getThroughput() {
+        return mElapsedNanos == 0 ? 0 : mBytesWritten * 1e9 / mElapsedNanos;
+    }
+}
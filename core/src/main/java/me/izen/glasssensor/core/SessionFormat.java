@@ -0,0 +1,63 @@
+package me.izen.glasssensor.core;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * On-disk layout of recorded session segments.
+ *
+ * A session is a directory of segment files named {@code segment-NNNNN.gsr}. Each segment is:
+ * <pre>
+ *   header  magic:s32  version:u16  recordSize:u16  recordCount:s64
+ *   record  channel:u8  timestampMillis:s64  value:f32   (repeated recordCount times)
+ * </pre>
+ * All fields are big endian. The record count is rewritten as records are flushed, so a segment
+ * cut short by a crash still reads back up to its last flush.
+ */
+public final class SessionFormat {
+
+    public static final int MAGIC = 0x47535231; // "GSR1"
+    public static final int VERSION = 1;
+    public static final int HEADER_SIZE = 16;
+    public static final int RECORD_SIZE = 13;
+    public static final int COUNT_OFFSET = 8;
+
+    public static final String SEGMENT_PREFIX = "segment-";
+    public static final String SEGMENT_SUFFIX = ".gsr";
+
+    private SessionFormat() {
+    }
+
+    public static String segmentName(int index) {
+        StringBuilder name = new StringBuilder(SEGMENT_PREFIX);
+        String number = Integer.toString(index);
+        for (int i = number.length(); i < 5; i++) {
+            name.append('0');
+        }
+        return name.append(number).append(SEGMENT_SUFFIX).toString();
+    }
+
+    public static void writeHeader(ByteBuffer buffer, long recordCount) {
+        buffer.order(ByteOrder.BIG_ENDIAN);
+        buffer.putInt(0, MAGIC);
+        buffer.putShort(4, (short) VERSION);
+        buffer.putShort(6, (short) RECORD_SIZE);
+        buffer.putLong(COUNT_OFFSET, recordCount);
+    }
+
+    /**
+     * Validates the header at the start of {@code buffer}.
+     *
+     * @return the number of records in the segment, or -1 if the header is not recognized
+     */
+    public static long readHeader(ByteBuffer buffer) {
+        buffer.order(ByteOrder.BIG_ENDIAN);
+        if (buffer.limit() < HEADER_SIZE
+                || buffer.getInt(0) != MAGIC
+                || buffer.getShort(4) != VERSION
+                || buffer.getShort(6) != RECORD_SIZE) {
+            return -1;
+        }
+        return buffer.getLong(COUNT_OFFSET);
+    }
+}
@@ -0,0 +1,131 @@
+package me.izen.glasssensor.core;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * Plays back a session recorded in the {@link SessionFormat} layout, segment by segment, optionally
+ * looping forever. Sessions whose segments were compacted away are played back from their
+ * {@link HistoryFormat} file instead.
+ */
+public class SessionReplaySource implements SampleSource {
+
+    private final File[] mSegments;
+    private final File mHistoryFile;
+    private final boolean mLoop;
+
+    private HistoryReader mHistory;
+
+    private int mSegmentIndex = -1;
+    private MappedByteBuffer mBuffer;
+    private long mRemaining;
+
+    public SessionReplaySource(File sessionDirectory, boolean loop) throws IOException {
+        mSegments = listSegments(sessionDirectory);
+        if (mSegments.length == 0) {
+            mHistoryFile = new File(sessionDirectory, HistoryFormat.FILE_NAME);
+            if (!mHistoryFile.isFile()) {
+                throw new IOException("no segments or history in " + sessionDirectory);
+            }
+            mHistory = new HistoryReader(mHistoryFile);
+        } else {
+            mHistoryFile = null;
+        }
+        mLoop = loop;
+    }
+
+    /**
+     * Segment files of a session, in recording order.
+     */
+    public static File[] listSegments(File sessionDirectory) {
+        File[] segments = sessionDirectory.listFiles(new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String name) {
+                return name.startsWith(SessionFormat.SEGMENT_PREFIX)
+                        && name.endsWith(SessionFormat.SEGMENT_SUFFIX);
+            }
+        });
+        if (segments == null) {
+            return new File[0];
+        }
+        // Names are zero padded, so lexical order is recording order.
+        Arrays.sort(segments);
+        return segments;
+    }
+
+    @Override
+    public boolean next(SampleSink sink) {
+        if (mHistoryFile != null) {
+            return nextFromHistory(sink);
+        }
+        // Bounded so a looping replay of empty segments gives up instead of spinning.
+        int opened = 0;
+        while (mRemaining == 0) {
+            if (opened++ > mSegments.length || !openNextSegment()) {
+                return false;
+            }
+        }
+        int channel = mBuffer.get() & 0xff;
+        long timestampMillis = mBuffer.getLong();
+        float value = mBuffer.getFloat();
+        mRemaining--;
+        sink.onSample(channel, timestampMillis, value);
+        return true;
+    }
+
+    private boolean nextFromHistory(SampleSink sink) {
+        if (mHistory.next(sink)) {
+            return true;
+        }
+        if (!mLoop) {
+            return false;
+        }
+        try {
+            mHistory.close();
+            mHistory = new HistoryReader(mHistoryFile);
+        } catch (IOException e) {
+            return false;
+        }
+        return mHistory.next(sink);
+    }
+
+    /**
+     * Moves to the next segment. An unreadable segment is treated as empty.
+     *
+     * @return false once the last segment was played and the replay does not loop
+     */
+    private boolean openNextSegment() {
+        mBuffer = null;
+        mRemaining = 0;
+        mSegmentIndex++;
+        if (mSegmentIndex == mSegments.length) {
+            if (!mLoop) {
+                return false;
+            }
+            mSegmentIndex = 0;
+        }
+        try {
+            RandomAccessFile file = new RandomAccessFile(mSegments[mSegmentIndex], "r");
+            try {
+                // The mapping stays valid after the file is closed.
+                mBuffer = file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, file.length());
+            } finally {
+                file.close();
+            }
+        } catch (IOException e) {
+            return true;
+        }
+        long count = SessionFormat.readHeader(mBuffer);
+        long stored = (mBuffer.limit() - SessionFormat.HEADER_SIZE) / SessionFormat.RECORD_SIZE;
+        mRemaining = Math.max(0, Math.min(count, stored));
+        if (mRemaining > 0) {
+            mBuffer.position(SessionFormat.HEADER_SIZE);
+        }
+        return true;
+    }
+}
@@ -0,0 +1,261 @@
+package me.izen.glasssensor.core;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Streams {@link SensorFrame}s over a TCP socket, straight into the ingestion sink without going
+ * through broadcasts.
+ *
+ * Wire format: the client sends commands, each a command byte and its arguments:
+ * {@link #CMD_START} to start streaming, and {@link #CMD_RATES}, followed by a u8 channel count
+ * and a big endian s32 rate in millihertz per channel, to change the sampling rates. The server
+ * sends frames, each preceded by its length as a big endian s32. One reader thread per
+ * transport connects, reads into a buffer reused across frames and connections and decodes every
+ * complete frame in it in place. Connections are handled one after the other on that thread, so
+ * readings always come from a single thread even across reconnects. Commands are written from a
+ * second thread, as Android does not allow socket I/O on the main thread the control calls come
+ * from.
+ */
+public final class SocketTransport implements SensorTransport {
+
+    public static final int DEFAULT_PORT = 48120;
+    public static final byte CMD_START = 1;
+    public static final byte CMD_RATES = 2;
+    /** Size of a {@link #CMD_RATES} command for every raw channel. */
+    public static final int RATES_SIZE = 2 + SensorChannels.RAW_COUNT * 4;
+    public static final int LENGTH_SIZE = 4;
+    public static final int MAX_FRAME_SIZE =
+            SensorFrame.HEADER_SIZE + SensorFrame.MAX_RECORDS * SensorFrame.RECORD_SIZE;
+
+    private static final int INITIAL_BUFFER_SIZE = 64 * 1024;
+
+    private final InetSocketAddress mAddress;
+    private final ByteBuffer mCommand = ByteBuffer.allocate(RATES_SIZE);
+    private ExecutorService mReader;
+    private ExecutorService mWriter;
+    private SampleSink mSink;
+    private Callback mCallback;
+
+    // Bumped by every connect and disconnect, so a connection that was dropped stays quiet.
+    private volatile int mGeneration;
+    private volatile SocketChannel mChannel;
+
+    // Owned by the reader thread.
+    private ByteBuffer mBuffer = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+
+    private volatile long mFrames;
+    private volatile long mMalformedFrames;
+
+    public SocketTransport(String host, int port) {
+        mAddress = new InetSocketAddress(host, port);
+    }
+
+    @Override
+    public synchronized void open(SampleSink sink, Callback callback) {
+        mSink = sink;
+        mCallback = callback;
+        mReader = Executors.newSingleThreadExecutor(new NamedThreadFactory("SensorSocket"));
+        mWriter = Executors.newSingleThreadExecutor(new NamedThreadFactory("SensorSocketControl"));
+    }
+
+    @Override
+    public synchronized boolean connect() {
+        if (mReader == null) {
+            return false;
+        }
+        disconnect();
+        final int generation = mGeneration;
+        mReader.execute(new Runnable() {
+            @Override
+            public void run() {
+                read(generation);
+            }
+        });
+        return true;
+    }
+
+    @Override
+    public synchronized boolean requestStream() {
+        final SocketChannel channel = mChannel;
+        if (mWriter == null || channel == null || !channel.isConnected()) {
+            return false;
+        }
+        mWriter.execute(new Runnable() {
+            @Override
+            public void run() {
+                mCommand.clear();
+                mCommand.put(CMD_START);
+                writeCommand(channel);
+            }
+        });
+        return true;
+    }
+
+    @Override
+    public synchronized boolean requestRates(float[] hz) {
+        final SocketChannel channel = mChannel;
+        if (mWriter == null || channel == null || !channel.isConnected()) {
+            return false;
+        }
+        final int[] milliHertz = new int[SensorChannels.RAW_COUNT];
+        for (int i = 0; i < milliHertz.length; i++) {
+            milliHertz[i] = Math.round(hz[i] * 1000);
+        }
+        mWriter.execute(new Runnable() {
+            @Override
+            public void run() {
+                mCommand.clear();
+                mCommand.put(CMD_RATES);
+                mCommand.put((byte) milliHertz.length);
+                for (int rate : milliHertz) {
+                    mCommand.putInt(rate);
+                }
+                writeCommand(channel);
+            }
+        });
+        return true;
+    }
+
+    /**
+     * Sends the command put in {@link #mCommand}. Writer thread only.
+     */
+    private void writeCommand(SocketChannel channel) {
+        mCommand.flip();
+        try {
+            while (mCommand.hasRemaining()) {
+                channel.write(mCommand);
+            }
+        } catch (IOException e) {
+            // The reader sees the broken connection and reports it.
+        }
+    }
+
+    @Override
+    public synchronized void disconnect() {
+        mGeneration++;
+        SocketChannel channel = mChannel;
+        mChannel = null;
+        closeQuietly(channel);
+    }
+
+    @Override
+    public synchronized void close() {
+        disconnect();
+        if (mReader != null) {
+            mReader.shutdown();
+            mWriter.shutdown();
+            mReader = null;
+            mWriter = null;
+        }
+    }
+
+    /**
+     * Number of frames received and decoded.
+     */
+    public long getFrameCount() {
+        return mFrames;
+    }
+
+    public long getMalformedFrameCount() {
+        return mMalformedFrames;
+    }
+
+    /**
+     * Connects and reads frames until the connection drops or is superseded. Reader thread only.
+     */
+    private void read(int generation) {
+        SocketChannel channel = null;
+        try {
+            channel = SocketChannel.open();
+            synchronized (this) {
+                if (generation != mGeneration) {
+                    return;
+                }
+                mChannel = channel;
+            }
+            channel.connect(mAddress);
+            channel.socket().setTcpNoDelay(true);
+            if (generation != mGeneration) {
+                return;
+            }
+            mCallback.onConnected();
+
+            mBuffer.clear();
+            while (generation == mGeneration && channel.read(mBuffer) >= 0) {
+                mBuffer.flip();
+                if (!decodeFrames()) {
+                    mMalformedFrames++;
+                    break;
+                }
+                mBuffer.compact();
+            }
+        } catch (IOException e) {
+            // Refused, reset or closed by disconnect(); all end the connection the same way.
+        } finally {
+            closeQuietly(channel);
+        }
+        if (generation == mGeneration) {
+            mCallback.onDisconnected();
+        }
+    }
+
+    /**
+     * Decodes every complete frame in the buffer, leaving a partial one in place and growing the
+     * buffer if it cannot hold it.
+     *
+     * @return false if the stream is corrupt
+     */
+    private boolean decodeFrames() {
+        while (mBuffer.remaining() >= LENGTH_SIZE) {
+            int position = mBuffer.position();
+            int length = mBuffer.getInt(position);
+            if (length < 0 || length > MAX_FRAME_SIZE) {
+                return false;
+            }
+            if (mBuffer.remaining() < LENGTH_SIZE + length) {
+                if (mBuffer.capacity() < LENGTH_SIZE + length) {
+                    ByteBuffer buffer = ByteBuffer.allocate(LENGTH_SIZE + MAX_FRAME_SIZE);
+                    buffer.put(mBuffer);
+                    buffer.flip();
+                    mBuffer = buffer;
+                }
+                return true;
+            }
+            if (SensorFrame.decode(mBuffer.array(), position + LENGTH_SIZE, length, mSink) < 0) {
+                return false;
+            }
+            mFrames++;
+            mBuffer.position(position + LENGTH_SIZE + length);
+        }
+        return true;
+    }
+
+    private static void closeQuietly(SocketChannel channel) {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // Nothing left to release.
+            }
+        }
+    }
+
+    private static final class NamedThreadFactory implements ThreadFactory {
+        private final String mName;
+
+        NamedThreadFactory(String name) {
+            mName = name;
+        }
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            return new Thread(runnable, mName);
+        }
+    }
+}
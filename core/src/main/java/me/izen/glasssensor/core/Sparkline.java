@@ -0,0 +1,278 @@
+package me.izen.glasssensor.core;
+
+/**
+ * Decimated history of one channel for drawing a trend line a few dozen pixels wide.
+ *
+ * Points are chosen with Largest-Triangle-Three-Buckets, streamed: samples are grouped into
+ * buckets of a fixed size and, once the bucket after it is complete, each bucket contributes the
+ * sample forming the largest triangle with the previously chosen point and the average of the
+ * next bucket. When twice {@code maxPoints} points have been chosen they are decimated again down
+ * to {@code maxPoints} and the bucket size doubles, so the number of points stays bounded however
+ * long the session runs while each sample is only looked at once. The newest sample, not yet part
+ * of a complete bucket, is available separately as the tail of the line.
+ *
+ * Samples must come from a single ingestion thread; points may be read from any thread.
+ */
+public final class Sparkline implements SampleSink {
+
+    /** About the width in pixels of a sparkline on the card. */
+    public static final int DEFAULT_MAX_POINTS = 64;
+
+    private static final int INITIAL_BUCKET_SIZE = 1;
+
+    private final int mMaxPoints;
+
+    // Chosen points, oldest first. Between mMaxPoints and twice that once history is long.
+    private final long[] mPointTimestamps;
+    private final float[] mPointValues;
+    private int mPointCount;
+    // Incremented whenever chosen points are replaced rather than appended to.
+    private int mGeneration;
+
+    private int mBucketSize = INITIAL_BUCKET_SIZE;
+
+    // Complete bucket waiting for the next one before it can choose its point.
+    private long[] mPendingTimestamps;
+    private float[] mPendingValues;
+    private int mPendingCount;
+
+    // Bucket being filled, with running sums for its average. Timestamps are summed relative to
+    // the first point to keep the sums precise.
+    private long[] mFillingTimestamps;
+    private float[] mFillingValues;
+    private int mFillingCount;
+    private double mFillingTimeSum;
+    private double mFillingValueSum;
+
+    private long mLastTimestamp;
+    private float mLastValue = Float.NaN;
+    private long mSampleCount;
+
+    public Sparkline() {
+        this(DEFAULT_MAX_POINTS);
+    }
+
+    /**
+     * @param maxPoints number of points the line is decimated down to, at least 3
+     */
+    public Sparkline(int maxPoints) {
+        if (maxPoints < 3) {
+            throw new IllegalArgumentException("maxPoints must be at least 3: " + maxPoints);
+        }
+        mMaxPoints = maxPoints;
+        mPointTimestamps = new long[maxPoints * 2];
+        mPointValues = new float[maxPoints * 2];
+        mPendingTimestamps = new long[INITIAL_BUCKET_SIZE];
+        mPendingValues = new float[INITIAL_BUCKET_SIZE];
+        mFillingTimestamps = new long[INITIAL_BUCKET_SIZE];
+        mFillingValues = new float[INITIAL_BUCKET_SIZE];
+    }
+
+    public int getMaxPoints() {
+        return mMaxPoints;
+    }
+
+    @Override
+    public void onSample(int channel, long timestampMillis, float value) {
+        append(timestampMillis, value);
+    }
+
+    /**
+     * Adds a sample. Ingestion thread only.
+     */
+    public synchronized void append(long timestampMillis, float value) {
+        if (Float.isNaN(value)) {
+            return;
+        }
+        mLastTimestamp = timestampMillis;
+        mLastValue = value;
+        mSampleCount++;
+        if (mPointCount == 0) {
+            // The first sample always starts the line.
+            addPoint(timestampMillis, value);
+            return;
+        }
+
+        mFillingTimestamps[mFillingCount] = timestampMillis;
+        mFillingValues[mFillingCount] = value;
+        mFillingCount++;
+        mFillingTimeSum += timestampMillis - mPointTimestamps[0];
+        mFillingValueSum += value;
+        if (mFillingCount < mBucketSize) {
+            return;
+        }
+
+        if (mPendingCount > 0) {
+            choosePendingPoint(mFillingTimeSum / mFillingCount, mFillingValueSum / mFillingCount);
+        }
+        long[] timestamps = mPendingTimestamps;
+        float[] values = mPendingValues;
+        mPendingTimestamps = mFillingTimestamps;
+        mPendingValues = mFillingValues;
+        mPendingCount = mFillingCount;
+        mFillingTimestamps = timestamps;
+        mFillingValues = values;
+        mFillingCount = 0;
+        mFillingTimeSum = 0;
+        mFillingValueSum = 0;
+
+        if (mPointCount == mPointTimestamps.length) {
+            compact();
+        }
+    }
+
+    /**
+     * Adds the point of the pending bucket that forms the largest triangle with the last point
+     * and the average of the next bucket.
+     */
+    private void choosePendingPoint(double nextTime, double nextValue) {
+        long origin = mPointTimestamps[0];
+        int last = mPointCount - 1;
+        double lastTime = mPointTimestamps[last] - origin;
+        double lastValue = mPointValues[last];
+
+        int best = 0;
+        double bestArea = -1;
+        for (int i = 0; i < mPendingCount; i++) {
+            double area = Math.abs((lastTime - nextTime) * (mPendingValues[i] - lastValue)
+                    - (lastTime - (mPendingTimestamps[i] - origin)) * (nextValue - lastValue));
+            if (area > bestArea) {
+                bestArea = area;
+                best = i;
+            }
+        }
+        addPoint(mPendingTimestamps[best], mPendingValues[best]);
+        mPendingCount = 0;
+    }
+
+    private void addPoint(long timestampMillis, float value) {
+        mPointTimestamps[mPointCount] = timestampMillis;
+        mPointValues[mPointCount] = value;
+        mPointCount++;
+    }
+
+    /**
+     * Halves the chosen points and doubles the bucket size so new points keep the same density.
+     */
+    private void compact() {
+        mPointCount = decimate(mPointTimestamps, mPointValues, mPointCount, mMaxPoints,
+                mPointTimestamps, mPointValues);
+        mGeneration++;
+
+        mBucketSize *= 2;
+        long[] timestamps = new long[mBucketSize];
+        float[] values = new float[mBucketSize];
+        System.arraycopy(mPendingTimestamps, 0, timestamps, 0, mPendingCount);
+        System.arraycopy(mPendingValues, 0, values, 0, mPendingCount);
+        mPendingTimestamps = timestamps;
+        mPendingValues = values;
+        mFillingTimestamps = new long[mBucketSize];
+        mFillingValues = new float[mBucketSize];
+    }
+
+    /**
+     * Number of times the chosen points were replaced rather than appended to. A reader holding
+     * points from an older generation must read them all again.
+     */
+    public synchronized int getGeneration() {
+        return mGeneration;
+    }
+
+    /**
+     * Number of samples appended since creation.
+     */
+    public synchronized long getSampleCount() {
+        return mSampleCount;
+    }
+
+    /**
+     * Timestamp of the newest sample, or 0 when empty.
+     */
+    public synchronized long getLastTimestamp() {
+        return mLastTimestamp;
+    }
+
+    /**
+     * Value of the newest sample, or {@link Float#NaN} when empty.
+     */
+    public synchronized float getLastValue() {
+        return mLastValue;
+    }
+
+    /**
+     * Copies the chosen points from index {@code from} on, oldest first. The arrays must hold
+     * twice {@link #getMaxPoints()} entries.
+     *
+     * @param generation the generation the caller's earlier points belong to
+     * @return number of points copied, or -1 if the points were replaced since {@code generation}
+     */
+    public synchronized int readPoints(int generation, int from, long[] timestamps,
+                                       float[] values) {
+        if (generation != mGeneration) {
+            return -1;
+        }
+        int count = Math.max(mPointCount - from, 0);
+        System.arraycopy(mPointTimestamps, from, timestamps, 0, count);
+        System.arraycopy(mPointValues, from, values, 0, count);
+        return count;
+    }
+
+    /**
+     * Largest-Triangle-Three-Buckets over a whole series, keeping its first and last samples.
+     * The output may be the input arrays themselves.
+     *
+     * @param threshold number of samples to keep, at least 3
+     * @return number of samples written to the output arrays
+     */
+    public static int decimate(long[] timestamps, float[] values, int count, int threshold,
+                               long[] outTimestamps, float[] outValues) {
+        if (count <= threshold) {
+            if (outTimestamps != timestamps) {
+                System.arraycopy(timestamps, 0, outTimestamps, 0, count);
+                System.arraycopy(values, 0, outValues, 0, count);
+            }
+            return count;
+        }
+        long origin = timestamps[0];
+        double every = (double) (count - 2) / (threshold - 2);
+
+        // Writes never overtake reads: output i + 1 is at or before the start of bucket i.
+        double lastTime = 0;
+        double lastValue = values[0];
+        outTimestamps[0] = timestamps[0];
+        outValues[0] = values[0];
+        for (int i = 0; i < threshold - 2; i++) {
+            int start = (int) (i * every) + 1;
+            int end = (int) ((i + 1) * every) + 1;
+            int nextEnd = Math.min((int) ((i + 2) * every) + 1, count);
+
+            double nextTime = 0;
+            double nextValue = 0;
+            for (int j = end; j < nextEnd; j++) {
+                nextTime += timestamps[j] - origin;
+                nextValue += values[j];
+            }
+            int nextCount = nextEnd - end;
+            nextTime /= nextCount;
+            nextValue /= nextCount;
+
+            int best = start;
+            double bestArea = -1;
+            for (int j = start; j < end; j++) {
+                double area = Math.abs((lastTime - nextTime) * (values[j] - lastValue)
+                        - (lastTime - (timestamps[j] - origin)) * (nextValue - lastValue));
+                if (area > bestArea) {
+                    bestArea = area;
+                    best = j;
+                }
+            }
+            lastTime = timestamps[best] - origin;
+            lastValue = values[best];
+            outTimestamps[i + 1] = timestamps[best];
+            outValues[i + 1] = values[best];
+        }
+        outTimestamps[threshold - 1] = timestamps[count - 1];
+        outValues[threshold - 1] = values[count - 1];
+        return threshold;
+    }
+}
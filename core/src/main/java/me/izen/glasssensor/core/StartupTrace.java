@@ -0,0 +1,117 @@
+package me.izen.glasssensor.core;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Timestamps of the milestones between the start request and the first reading on screen, each
+ * kept the first time it is reached, from whichever thread reaches it.
+ *
+ * The two numbers to watch are {@link #getFirstFrameMillis()}, from the start request to the
+ * first frame of the card, and {@link #getFirstSampleMillis()}, from the start request to the
+ * first reading received. {@link #isOverBudget()} tells whether either regressed past its budget.
+ */
+public final class StartupTrace {
+
+    /** The service received the start request, e.g. from the voice trigger. */
+    public static final int TRIGGER = 0;
+    /** The card was published, showing its placeholder. */
+    public static final int PUBLISHED = 1;
+    /** The first frame was posted, placeholder or not. */
+    public static final int FIRST_FRAME = 2;
+    /** The card's views were inflated and laid out off the main thread. */
+    public static final int VIEW_READY = 3;
+    /** The first frame of the full card was posted. */
+    public static final int CARD_FRAME = 4;
+    /** The transports were opened. */
+    public static final int TRANSPORT_OPEN = 5;
+    /** The first reading was received. */
+    public static final int FIRST_SAMPLE = 6;
+
+    public static final int MILESTONES = 7;
+
+    /** Budget from the start request to the first frame. */
+    public static final long FIRST_FRAME_BUDGET_MILLIS = 300;
+    /** Budget from the start request to the first reading, including the drone's own start. */
+    public static final long FIRST_SAMPLE_BUDGET_MILLIS = 3000;
+
+    private static final String[] NAMES = {
+            "trigger",
+            "published",
+            "first_frame",
+            "view_ready",
+            "card_frame",
+            "transport_open",
+            "first_sample"
+    };
+
+    private final AtomicLongArray mNanos = new AtomicLongArray(MILESTONES);
+
+    /**
+     * Records {@code milestone} now, unless it was already reached.
+     *
+     * @return true if this call reached it
+     */
+    public boolean mark(int milestone) {
+        // 0 means not reached, so the rare nanoTime of exactly 0 is nudged.
+        long now = System.nanoTime();
+        return mNanos.compareAndSet(milestone, 0, now == 0 ? 1 : now);
+    }
+
+    public boolean isReached(int milestone) {
+        return mNanos.get(milestone) != 0;
+    }
+
+    /**
+     * Milliseconds from {@link #TRIGGER} to {@code milestone}, or -1 if either was not reached.
+     */
+    public long getMillis(int milestone) {
+        long trigger = mNanos.get(TRIGGER);
+        long reached = mNanos.get(milestone);
+        if (trigger == 0 || reached == 0) {
+            return -1;
+        }
+        return (reached - trigger) / 1000000;
+    }
+
+    /**
+     * Start request to first frame, or -1 until the frame is posted.
+     */
+    public long getFirstFrameMillis() {
+        return getMillis(FIRST_FRAME);
+    }
+
+    /**
+     * Start request to first reading, or -1 until it arrives.
+     */
+    public long getFirstSampleMillis() {
+        return getMillis(FIRST_SAMPLE);
+    }
+
+    /**
+     * Whether the first frame or the first reading came later than its budget.
+     */
+    public boolean isOverBudget() {
+        return getFirstFrameMillis() > FIRST_FRAME_BUDGET_MILLIS
+                || getFirstSampleMillis() > FIRST_SAMPLE_BUDGET_MILLIS;
+    }
+
+    public static String getName(int milestone) {
+        return NAMES[milestone];
+    }
+
+    /**
+     * Every milestone reached, in milliseconds since the start request, e.g.
+     * {@code startup published=41ms first_frame=58ms ... first_sample=930ms}.
+     */
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder("startup");
+        for (int i = 1; i < MILESTONES; i++) {
+            long millis = getMillis(i);
+            if (millis >= 0) {
+                text.append(' ').append(NAMES[i]).append('=').append(millis).append("ms");
+            }
+        }
+        return text.toString();
+    }
+}
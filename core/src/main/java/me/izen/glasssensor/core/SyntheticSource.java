@@ -0,0 +1,43 @@
+package me.izen.glasssensor.core;
+
+import java.util.Random;
+
+/**
+ * Endless source of plausible readings for every channel the drone sends: a slow sine around a
+ * typical value plus gaussian noise. Channels are emitted round robin.
+ */
+public class SyntheticSource implements SampleSource {
+
+    private static final float[] BASES = {22f, 45f, 1013f, 24f, 300f, 5f, 10f, 3.3f, 120f, 3.9f};
+    private static final float[] AMPLITUDES = {2f, 5f, 3f, 4f, 100f, 3f, 8f, 0.1f, 2f, 0.2f};
+    private static final float[] NOISE = {0.05f, 0.2f, 0.1f, 0.3f, 5f, 0.5f, 2f, 0.01f, 0.5f, 0.01f};
+
+    private final long mPeriodSamples;
+    private final Random mRandom;
+    private long mSample;
+
+    /**
+     * @param periodSamples number of samples of each channel per sine period
+     * @param seed seed of the noise, so runs can be repeated
+     */
+    public SyntheticSource(long periodSamples, long seed) {
+        if (periodSamples <= 0) {
+            throw new IllegalArgumentException("period must be positive: " + periodSamples);
+        }
+        mPeriodSamples = periodSamples;
+        mRandom = new Random(seed);
+    }
+
+    @Override
+    public boolean next(SampleSink sink) {
+        int channel = (int) (mSample % SensorChannels.RAW_COUNT);
+        long index = mSample / SensorChannels.RAW_COUNT;
+        double phase = 2 * Math.PI * (index % mPeriodSamples) / mPeriodSamples;
+        float value = (float) (BASES[channel]
+                + AMPLITUDES[channel] * Math.sin(phase + channel)
+                + NOISE[channel] * mRandom.nextGaussian());
+        sink.onSample(channel, index, value);
+        mSample++;
+        return true;
+    }
+}
@@ -0,0 +1,134 @@
+package me.izen.glasssensor.core;
+
+/**
+ * Formats readings into caller-owned char buffers without allocating, so values can be pushed to
+ * the card every frame without feeding the garbage collector.
+ *
+ * Each channel has a fixed number of decimals and a unit suffix.
+ */
+public final class ValueFormatter {
+
+    /** Large enough for any formatted value, sign and unit. */
+    public static final int BUFFER_SIZE = 32;
+
+    private static final int MAX_PRECISION = 6;
+    private static final long[] POWERS_OF_TEN = {
+            1L, 10L, 100L, 1000L, 10000L, 100000L, 1000000L
+    };
+    // Largest magnitude that still fits in a long once scaled by the highest precision.
+    private static final double MAX_MAGNITUDE = 1e12;
+
+    private static final char[] PLACEHOLDER = {'-', '-'};
+
+    private final int[] mPrecisions;
+    private final char[][] mUnits;
+
+    /**
+     * @param precisions number of decimals of each channel, indexed like {@link SensorChannels}
+     * @param units unit suffix of each channel, including any leading space
+     */
+    public ValueFormatter(int[] precisions, String[] units) {
+        if (precisions.length != units.length) {
+            throw new IllegalArgumentException("precisions and units differ in length");
+        }
+        mPrecisions = new int[precisions.length];
+        mUnits = new char[units.length][];
+        for (int i = 0; i < precisions.length; i++) {
+            if (precisions[i] < 0 || precisions[i] > MAX_PRECISION) {
+                throw new IllegalArgumentException("precision out of range: " + precisions[i]);
+            }
+            mPrecisions[i] = precisions[i];
+            mUnits[i] = units[i].toCharArray();
+        }
+    }
+
+    /**
+     * Precision and units of the Sensordrone channels and those derived from them.
+     */
+    public static ValueFormatter createDefault() {
+        return new ValueFormatter(
+                new int[]{1, 1, 1, 1, 0, 1, 0, 2, 0, 2, 1, 1, 0},
+                new String[]{
+                        "\u00b0C",
+                        "%",
+                        " hPa",
+                        "\u00b0C",
+                        " lx",
+                        " ppm",
+                        "",
+                        " V",
+                        " m",
+                        " V",
+                        "\u00b0C",
+                        "\u00b0C",
+                        " m"
+                });
+    }
+
+    public int getPrecision(int channel) {
+        return mPrecisions[channel];
+    }
+
+    /**
+     * Rounds {@code value} to the displayed precision of {@code channel}, in units of the last
+     * displayed digit. Two values with the same result format identically.
+     */
+    public long toDisplayUnits(int channel, float value) {
+        return Math.round(value * (double) POWERS_OF_TEN[mPrecisions[channel]]);
+    }
+
+    /**
+     * Writes {@code value} with the precision and unit of {@code channel}, or a placeholder when
+     * the value is not a number.
+     *
+     * @param out buffer of at least {@link #BUFFER_SIZE} chars
+     * @return number of chars written to the start of {@code out}
+     */
+    public int format(int channel, float value, char[] out) {
+        if (Float.isNaN(value) || Float.isInfinite(value)) {
+            System.arraycopy(PLACEHOLDER, 0, out, 0, PLACEHOLDER.length);
+            return PLACEHOLDER.length;
+        }
+        int precision = mPrecisions[channel];
+        double magnitude = Math.min(Math.abs((double) value), MAX_MAGNITUDE);
+        long scaled = Math.round(magnitude * POWERS_OF_TEN[precision]);
+
+        int length = 0;
+        if (value < 0 && scaled != 0) {
+            out[length++] = '-';
+        }
+        length = writeLong(scaled / POWERS_OF_TEN[precision], out, length);
+        if (precision > 0) {
+            out[length++] = '.';
+            length = writePadded(scaled % POWERS_OF_TEN[precision], precision, out, length);
+        }
+        char[] unit = mUnits[channel];
+        System.arraycopy(unit, 0, out, length, unit.length);
+        return length + unit.length;
+    }
+
+    /**
+     * Writes a non-negative {@code value} as exactly two digits, as the chronometer shows them.
+     *
+     * @return number of chars written, always 2
+     */
+    public static int formatTwoDigits(long value, char[] out) {
+        return writePadded(value % 100, 2, out, 0);
+    }
+
+    private static int writeLong(long value, char[] out, int offset) {
+        int digits = 1;
+        for (long v = value / 10; v != 0; v /= 10) {
+            digits++;
+        }
+        return writePadded(value, digits, out, offset);
+    }
+
+    private static int writePadded(long value, int digits, char[] out, int offset) {
+        for (int i = offset + digits - 1; i >= offset; i--) {
+            out[i] = (char) ('0' + (value % 10));
+            value /= 10;
+        }
+        return offset + digits;
+    }
+}
@@ -0,0 +1,29 @@
+package me.izen.glasssensor.core;
+
+/**
+ * Aggregates of one channel over one time window, filled in by {@link RollingStats#read}.
+ * Reused by callers to avoid allocating per read.
+ */
+public final class WindowStats {
+    /** Number of samples in the window. */
+    public int count;
+    /** Time between the oldest and newest sample in the window. */
+    public long spanMillis;
+    public float min;
+    public float max;
+    public double mean;
+    /** Sample standard deviation, 0 with fewer than two samples. */
+    public double stddev;
+    /** Change between the oldest and newest sample, per second. */
+    public double ratePerSecond;
+
+    void clear() {
+        count = 0;
+        spanMillis = 0;
+        min = Float.NaN;
+        max = Float.NaN;
+        mean = Double.NaN;
+        stddev = 0;
+        ratePerSecond = 0;
+    }
+}
@@ -0,0 +1,95 @@
+package me.izen.glasssensor.core;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class AlertEngineTest {
+
+    private final List<String> mEvents = new ArrayList<String>();
+    private AlertEngine mEngine;
+
+    @Before
+    public void setUp() {
+        mEngine = new AlertEngine(Collections.singletonList(
+                AlertRule.parse("Gas > 300 for 5s hysteresis 20")));
+        mEngine.setListener(new AlertEngine.Listener() {
+            @Override
+            public void onAlert(AlertRule rule, long timestampMillis, float value) {
+                mEvents.add("alert " + timestampMillis);
+            }
+
+            @Override
+            public void onCleared(AlertRule rule, long timestampMillis, float value) {
+                mEvents.add("cleared " + timestampMillis);
+            }
+        });
+    }
+
+    private void gas(long timestampMillis, float value) {
+        mEngine.onSample(SensorChannels.GAS, timestampMillis, value);
+    }
+
+    @Test
+    public void holdsOnlyWhilePastTheLevel() {
+        // One reading above, then readings inside the hysteresis band: never past the level for
+        // the whole duration.
+        gas(0, 310);
+        for (long t = 1000; t <= 10000; t += 1000) {
+            gas(t, 290);
+        }
+        assertTrue(mEvents.isEmpty());
+
+        // The hold starts over at the next crossing.
+        for (long t = 11000; t <= 16000; t += 1000) {
+            gas(t, 310);
+        }
+        assertEquals(Collections.singletonList("alert 16000"), mEvents);
+        assertEquals(1, mEngine.getActiveRules().size());
+    }
+
+    @Test
+    public void hysteresisClearsAFiringRule() {
+        for (long t = 0; t <= 5000; t += 1000) {
+            gas(t, 320);
+        }
+        // Back under the level but inside the band keeps it firing.
+        gas(6000, 290);
+        gas(7000, 281);
+        assertEquals(Collections.singletonList("alert 5000"), mEvents);
+        gas(8000, 280);
+        assertEquals("cleared 8000", mEvents.get(1));
+        assertTrue(mEngine.getActiveRules().isEmpty());
+
+        // Firing again takes a full duration past the level.
+        gas(9000, 310);
+        gas(13000, 310);
+        assertEquals(2, mEvents.size());
+        gas(14000, 310);
+        assertEquals("alert 14000", mEvents.get(2));
+        assertEquals(2, mEngine.getAlertCount());
+    }
+
+    @Test
+    public void evaluatesRatesAndRulesWithoutDuration() {
+        AlertEngine engine = new AlertEngine(Arrays.asList(
+                AlertRule.parse("Temperature rate > 0.5/s"),
+                AlertRule.parse("Battery < 15")));
+        engine.onSample(SensorChannels.TEMPERATURE, 0, 20);
+        engine.onSample(SensorChannels.TEMPERATURE, 1000, 20.4f);
+        engine.onSample(SensorChannels.BATTERY, 1000, 50);
+        assertTrue(engine.getActiveRules().isEmpty());
+
+        engine.onSample(SensorChannels.TEMPERATURE, 2000, 21f);
+        engine.onSample(SensorChannels.BATTERY, 2000, 14);
+        assertEquals(2, engine.getActiveRules().size());
+        assertEquals(1, engine.getRuleCount(SensorChannels.BATTERY));
+    }
+}
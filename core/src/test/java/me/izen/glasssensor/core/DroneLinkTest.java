@@ -0,0 +1,204 @@
+package me.izen.glasssensor.core;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class DroneLinkTest {
+
+    private static final long BASE = 250;
+    private static final long MAX = 30000;
+    private static final long BIND_TIMEOUT = 5000;
+    private static final long LAUNCH_TIMEOUT = 15000;
+    private static final long STALL_TIMEOUT = 3000;
+
+    /** Draws {@link #mValue} every time, so each delay is known. */
+    private static final class FixedRandom extends Random {
+        double mValue;
+
+        @Override
+        public double nextDouble() {
+            return mValue;
+        }
+    }
+
+    private final FixedRandom mRandom = new FixedRandom();
+    private int mBinds;
+    private int mLaunches;
+    private boolean mBindFails;
+    private DroneLink mLink;
+
+    @Before
+    public void setUp() {
+        DroneLink.Driver driver = new DroneLink.Driver() {
+            @Override
+            public boolean bind() {
+                mBinds++;
+                return !mBindFails;
+            }
+
+            @Override
+            public boolean launch() {
+                mLaunches++;
+                return true;
+            }
+
+            @Override
+            public void unbind() {
+            }
+        };
+        mLink = new DroneLink(driver, new Backoff(BASE, MAX, mRandom), BIND_TIMEOUT,
+                LAUNCH_TIMEOUT, STALL_TIMEOUT);
+    }
+
+    /** Starts at 0 and streams from {@code firstSampleMillis}. */
+    private void stream(long firstSampleMillis) {
+        mLink.start(0);
+        mLink.onBound(10);
+        mLink.onSample(firstSampleMillis);
+        assertEquals(DroneLink.STREAMING, mLink.getState());
+    }
+
+    @Test
+    public void bindTimesOut() {
+        assertEquals(BIND_TIMEOUT, mLink.start(0));
+        assertEquals(DroneLink.BINDING, mLink.getState());
+        assertEquals(1, mLink.poll(BIND_TIMEOUT - 1));
+        assertEquals(DroneLink.BINDING, mLink.getState());
+
+        // The first retry waits half the base delay with the lowest draw.
+        assertEquals(BASE / 2, mLink.poll(BIND_TIMEOUT));
+        assertEquals(DroneLink.SEARCHING, mLink.getState());
+        mLink.poll(BIND_TIMEOUT + BASE / 2);
+        assertEquals(DroneLink.BINDING, mLink.getState());
+        assertEquals(2, mBinds);
+    }
+
+    @Test
+    public void launchTimesOut() {
+        mLink.start(0);
+        mLink.onBound(10);
+        assertEquals(DroneLink.LAUNCHING, mLink.getState());
+        assertEquals(1, mLaunches);
+        assertEquals(LAUNCH_TIMEOUT, mLink.poll(10));
+
+        mLink.poll(10 + LAUNCH_TIMEOUT - 1);
+        assertEquals(DroneLink.LAUNCHING, mLink.getState());
+        mLink.poll(10 + LAUNCH_TIMEOUT);
+        assertEquals(DroneLink.SEARCHING, mLink.getState());
+        assertEquals(-1, mLink.getFirstSampleLatencyMillis());
+    }
+
+    @Test
+    public void recordsTimeToFirstSample() {
+        stream(1200);
+        assertEquals(1200, mLink.getFirstSampleLatencyMillis());
+        assertEquals(0, mLink.getReconnectCount());
+    }
+
+    @Test
+    public void stallIsADropoutRetriedAtOnceOnTheLiveBinding() {
+        stream(100);
+        assertEquals(STALL_TIMEOUT - 1, mLink.poll(101));
+        mLink.onSample(2000);
+        mLink.poll(2000 + STALL_TIMEOUT - 1);
+        assertEquals(DroneLink.STREAMING, mLink.getState());
+        assertEquals(0, mLink.getDropoutCount());
+
+        // Immediate retry, relaunching without binding again.
+        assertEquals(0, mLink.poll(2000 + STALL_TIMEOUT));
+        assertEquals(DroneLink.RECONNECTING, mLink.getState());
+        assertEquals(1, mLink.getDropoutCount());
+        mLink.poll(2000 + STALL_TIMEOUT);
+        assertEquals(DroneLink.LAUNCHING, mLink.getState());
+        assertEquals(1, mBinds);
+        assertEquals(2, mLaunches);
+
+        // The gap runs from the last reading before the dropout to the first one after it.
+        mLink.onSample(6500);
+        assertEquals(DroneLink.STREAMING, mLink.getState());
+        assertEquals(1, mLink.getReconnectCount());
+        assertEquals(4500, mLink.getLastReconnectMillis());
+        assertEquals(4500, mLink.getMaxReconnectMillis());
+        assertEquals(4500.0, mLink.getMeanReconnectMillis(), 0);
+    }
+
+    @Test
+    public void lostBindingIsBoundAgain() {
+        stream(100);
+        mLink.onUnbound(500);
+        assertEquals(DroneLink.RECONNECTING, mLink.getState());
+        assertEquals(1, mLink.getDropoutCount());
+        mLink.poll(500);
+        assertEquals(DroneLink.BINDING, mLink.getState());
+        assertEquals(2, mBinds);
+
+        mLink.onBound(600);
+        mLink.onSample(900);
+        mLink.onSample(1000);
+        mLink.onUnbound(1100);
+        mLink.poll(1100);
+        mLink.onBound(1200);
+        mLink.onSample(1400);
+        assertEquals(2, mLink.getReconnectCount());
+        assertEquals(400, mLink.getLastReconnectMillis());
+        assertEquals(800, mLink.getMaxReconnectMillis());
+        assertEquals(600.0, mLink.getMeanReconnectMillis(), 0);
+    }
+
+    @Test
+    public void backoffGrowsWithJitterUpToTheCap() {
+        Backoff backoff = new Backoff(BASE, MAX, mRandom);
+        for (int attempt = 0; attempt < 20; attempt++) {
+            long ceiling = Math.min(BASE << attempt, MAX);
+            // Alternate the lowest and highest draws; either stays in the upper half.
+            mRandom.mValue = attempt % 2 == 0 ? 0 : 0.999999;
+            long delay = backoff.nextDelayMillis();
+            if (attempt % 2 == 0) {
+                assertEquals(ceiling / 2, delay);
+            } else {
+                assertTrue(delay > ceiling / 2 && delay <= ceiling);
+            }
+        }
+        mRandom.mValue = 0.999999;
+        assertEquals(MAX, backoff.nextDelayMillis(), 1);
+
+        backoff.reset();
+        mRandom.mValue = 0;
+        assertEquals(BASE / 2, backoff.nextDelayMillis());
+    }
+
+    @Test
+    public void failedAttemptsBackOffAndResetOnceReadingsResume() {
+        mBindFails = true;
+        long now = 0;
+        long delay = mLink.start(now);
+        long previous = 0;
+        for (int attempt = 0; attempt < 12; attempt++) {
+            assertEquals(DroneLink.SEARCHING, mLink.getState());
+            assertEquals(Math.min(BASE << attempt, MAX) / 2, delay);
+            assertTrue(delay >= previous);
+            previous = delay;
+            now += delay;
+            delay = mLink.poll(now);
+        }
+        assertEquals(MAX / 2, delay);
+
+        mBindFails = false;
+        now += delay;
+        mLink.poll(now);
+        mLink.onBound(now);
+        mLink.onSample(now + 100);
+        assertEquals(DroneLink.STREAMING, mLink.getState());
+
+        // Readings flowed, so a failure after the next dropout starts from the base delay.
+        mLink.onUnbound(now + 200);
+        mBindFails = true;
+        assertEquals(BASE / 2, mLink.poll(now + 200));
+        assertEquals(DroneLink.RECONNECTING, mLink.getState());
+    }
+}
@@ -0,0 +1,293 @@
+package me.izen.glasssensor.core;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Round trips of {@link HistoryWriter} and {@link HistoryReader}.
+ */
+public class HistoryTest {
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    /**
+     * Readings of one channel, in the order written.
+     */
+    private static final class Series {
+        final List<Long> mTimestamps = new ArrayList<Long>();
+        final List<Integer> mBits = new ArrayList<Integer>();
+
+        void add(long timestampMillis, float value) {
+            mTimestamps.add(timestampMillis);
+            mBits.add(Float.floatToRawIntBits(value));
+        }
+
+        int size() {
+            return mTimestamps.size();
+        }
+    }
+
+    private static Series[] newSeries() {
+        Series[] series = new Series[SensorChannels.COUNT];
+        for (int channel = 0; channel < series.length; channel++) {
+            series[channel] = new Series();
+        }
+        return series;
+    }
+
+    private static Series[] readAll(HistoryReader reader) {
+        final Series[] series = newSeries();
+        final long[] previous = {Long.MIN_VALUE};
+        SampleSink sink = new SampleSink() {
+            @Override
+            public void onSample(int channel, long timestampMillis, float value) {
+                assertTrue("readings out of order", timestampMillis >= previous[0]);
+                previous[0] = timestampMillis;
+                series[channel].add(timestampMillis, value);
+            }
+        };
+        while (reader.next(sink)) {
+        }
+        return series;
+    }
+
+    private File write(Series[] written, int blockSamples, boolean close, Random random,
+                       int samples) throws IOException {
+        File file = mFolder.newFile();
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            HistoryWriter writer = new HistoryWriter(out.getChannel(), blockSamples);
+            long now = 1000000;
+            for (int n = 0; n < samples; n++) {
+                now += random.nextInt(40);
+                int channel = random.nextInt(SensorChannels.COUNT);
+                float value = random.nextInt(4) == 0
+                        ? Float.intBitsToFloat(random.nextInt()) : random.nextInt(100) * 0.25f;
+                writer.append(channel, now, value);
+                written[channel].add(now, value);
+                if (random.nextInt(500) == 0) {
+                    writer.flush();
+                }
+            }
+            assertEquals(samples, writer.getSampleCount());
+            if (close) {
+                writer.close();
+            } else {
+                writer.flush();
+            }
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+
+    private static void assertSeries(String where, Series expected, Series actual) {
+        assertEquals(where + " count", expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(where + " timestamp " + i, expected.mTimestamps.get(i),
+                    actual.mTimestamps.get(i));
+            assertEquals(where + " value bits " + i, expected.mBits.get(i), actual.mBits.get(i));
+        }
+    }
+
+    @Test
+    public void roundTripsEveryDeltaOfDeltaWidth() throws IOException {
+        // Intervals whose changes need each encoding, in both directions.
+        long[] deltasOfDeltas = {0, 1, -1, 64, -63, 65, -64, 256, -255, 257, -256, 2048, -2047,
+                2049, -2048, Integer.MAX_VALUE, Integer.MIN_VALUE, 1L << 40, -(1L << 40),
+                Long.MAX_VALUE / 4, 0, 0};
+        Series written = new Series();
+        File file = mFolder.newFile();
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            HistoryWriter writer = new HistoryWriter(out.getChannel(), 64);
+            long timestamp = 0;
+            long delta = 0;
+            for (int i = 0; i < deltasOfDeltas.length; i++) {
+                delta += deltasOfDeltas[i];
+                timestamp += delta;
+                writer.append(SensorChannels.GAS, timestamp, i);
+                written.add(timestamp, i);
+            }
+            writer.close();
+        } finally {
+            out.close();
+        }
+
+        // Timestamps go backwards here, so read the channel on its own rather than merged.
+        HistoryReader reader = new HistoryReader(file);
+        try {
+            final Series read = new Series();
+            SampleSink sink = new SampleSink() {
+                @Override
+                public void onSample(int channel, long timestampMillis, float value) {
+                    assertEquals(SensorChannels.GAS, channel);
+                    read.add(timestampMillis, value);
+                }
+            };
+            while (reader.next(sink)) {
+            }
+            assertTrue(reader.isComplete());
+            assertSeries("gas", written, read);
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test
+    public void roundTripsSpecialValues() throws IOException {
+        float[] values = {0f, -0f, 0f, Float.NaN, Float.intBitsToFloat(0x7fc00001),
+                Float.POSITIVE_INFINITY, Float.NEGATIVE_INFINITY, Float.MIN_VALUE, -Float.MAX_VALUE,
+                1f, 1f, 1.0000001f, -1f, 0f};
+        Series written = new Series();
+        File file = mFolder.newFile();
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            HistoryWriter writer = new HistoryWriter(out.getChannel(), 8);
+            for (int i = 0; i < values.length; i++) {
+                writer.append(SensorChannels.TEMPERATURE, i * 100, values[i]);
+                written.add(i * 100, values[i]);
+            }
+            writer.close();
+        } finally {
+            out.close();
+        }
+        HistoryReader reader = new HistoryReader(file);
+        try {
+            assertSeries("temperature", written, readAll(reader)[SensorChannels.TEMPERATURE]);
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test
+    public void roundTripsMergedChannels() throws IOException {
+        for (int blockSamples : new int[]{2, 7, HistoryFormat.DEFAULT_BLOCK_SAMPLES}) {
+            Series[] written = newSeries();
+            File file = write(written, blockSamples, true, new Random(blockSamples), 20000);
+            HistoryReader reader = new HistoryReader(file);
+            try {
+                assertTrue(reader.isComplete());
+                Series[] read = readAll(reader);
+                for (int channel = 0; channel < SensorChannels.COUNT; channel++) {
+                    assertSeries("block " + blockSamples + " channel " + channel,
+                            written[channel], read[channel]);
+                }
+            } finally {
+                reader.close();
+            }
+        }
+    }
+
+    @Test
+    public void scansRanges() throws IOException {
+        Series[] written = newSeries();
+        File file = write(written, 32, true, new Random(3), 5000);
+        Random random = new Random(4);
+        for (int scan = 0; scan < 100; scan++) {
+            long from = 1000000 + random.nextInt(120000);
+            long to = from + random.nextInt(scan % 2 == 0 ? 100 : 50000);
+            HistoryReader reader = new HistoryReader(file, from, to);
+            try {
+                Series[] read = readAll(reader);
+                for (int channel = 0; channel < SensorChannels.COUNT; channel++) {
+                    Series expected = new Series();
+                    Series all = written[channel];
+                    for (int i = 0; i < all.size(); i++) {
+                        long timestamp = all.mTimestamps.get(i);
+                        if (timestamp >= from && timestamp < to) {
+                            expected.add(timestamp, Float.intBitsToFloat(all.mBits.get(i)));
+                        }
+                    }
+                    assertSeries("[" + from + ", " + to + ") channel " + channel, expected,
+                            read[channel]);
+                }
+            } finally {
+                reader.close();
+            }
+        }
+    }
+
+    @Test
+    public void readsTruncatedFileUpToItsLastCompleteBlock() throws IOException {
+        Series[] written = newSeries();
+        File file = write(written, 16, false, new Random(5), 500);
+        HistoryReader whole = new HistoryReader(file);
+        try {
+            assertFalse(whole.isComplete());
+            Series[] read = readAll(whole);
+            for (int channel = 0; channel < SensorChannels.COUNT; channel++) {
+                assertSeries("unclosed channel " + channel, written[channel], read[channel]);
+            }
+        } finally {
+            whole.close();
+        }
+
+        byte[] bytes = new byte[(int) file.length()];
+        RandomAccessFile in = new RandomAccessFile(file, "r");
+        try {
+            in.readFully(bytes);
+        } finally {
+            in.close();
+        }
+        int previousTotal = 0;
+        for (int cut = HistoryFormat.HEADER_SIZE; cut <= bytes.length; cut++) {
+            File truncated = mFolder.newFile();
+            FileOutputStream out = new FileOutputStream(truncated);
+            try {
+                out.write(bytes, 0, cut);
+            } finally {
+                out.close();
+            }
+            HistoryReader reader = new HistoryReader(truncated);
+            try {
+                assertFalse(reader.isComplete());
+                Series[] read = readAll(reader);
+                int total = 0;
+                for (int channel = 0; channel < SensorChannels.COUNT; channel++) {
+                    // What is left of each channel is a prefix of what was written.
+                    Series expected = written[channel];
+                    Series actual = read[channel];
+                    assertTrue(actual.size() <= expected.size());
+                    for (int i = 0; i < actual.size(); i++) {
+                        assertEquals(expected.mTimestamps.get(i), actual.mTimestamps.get(i));
+                        assertEquals(expected.mBits.get(i), actual.mBits.get(i));
+                    }
+                    total += actual.size();
+                }
+                assertTrue("cut at " + cut, total >= previousTotal);
+                previousTotal = total;
+            } finally {
+                reader.close();
+            }
+            truncated.delete();
+        }
+        assertEquals(500, previousTotal);
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsOtherFiles() throws IOException {
+        File file = mFolder.newFile();
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write("not a history".getBytes("US-ASCII"));
+        } finally {
+            out.close();
+        }
+        new HistoryReader(file);
+    }
+}
@@ -0,0 +1,60 @@
+package me.izen.glasssensor.core;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void bucketsAreContiguousAndWithinOneThirtySecond() {
+        assertEquals(0, LatencyHistogram.lowestOf(0));
+        for (int bucket = 1; bucket < LatencyHistogram.getBuckets(); bucket++) {
+            long lowest = LatencyHistogram.lowestOf(bucket);
+            long highest = LatencyHistogram.highestOf(bucket);
+            assertEquals("bucket " + bucket, LatencyHistogram.highestOf(bucket - 1) + 1, lowest);
+            assertTrue("bucket " + bucket, (highest - lowest) * 32 <= lowest);
+        }
+        assertEquals(LatencyHistogram.MAX_MICROS,
+                LatencyHistogram.highestOf(LatencyHistogram.getBuckets() - 1));
+    }
+
+    @Test
+    public void percentilesMatchSortedValues() {
+        Random random = new Random(1);
+        LatencyHistogram histogram = new LatencyHistogram();
+        long[] values = new long[10000];
+        for (int i = 0; i < values.length; i++) {
+            // Log-uniform from 1 us to about a minute.
+            values[i] = (long) Math.exp(random.nextDouble() * Math.log(LatencyHistogram.MAX_MICROS));
+            histogram.record(values[i]);
+        }
+        Arrays.sort(values);
+        for (double percentile : new double[]{1, 10, 50, 90, 95, 99, 99.9, 100}) {
+            long exact = values[(int) Math.ceil(values.length * percentile / 100) - 1];
+            long reported = histogram.getValueAtPercentile(percentile);
+            assertTrue("p" + percentile, reported >= exact);
+            assertTrue("p" + percentile, reported - exact <= exact / 32);
+        }
+        assertEquals(values[values.length - 1], histogram.getMax());
+
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getValueAtPercentile(50));
+    }
+
+    @Test
+    public void clampsOutOfRangeValues() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(-5);
+        histogram.record(LatencyHistogram.MAX_MICROS * 4);
+        assertEquals(0, histogram.getValueAtPercentile(50));
+        assertEquals(LatencyHistogram.MAX_MICROS * 4, histogram.getMax());
+        // Beyond the top bucket only the maximum is exact.
+        assertEquals(LatencyHistogram.MAX_MICROS, histogram.getValueAtPercentile(100));
+    }
+}
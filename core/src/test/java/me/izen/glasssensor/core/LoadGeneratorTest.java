@@ -0,0 +1,139 @@
+package me.izen.glasssensor.core;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs a {@link LoadGenerator} into a counting {@link FrameSink} on the JVM, standing in for the
+ * ingestion path the card would feed.
+ */
+public class LoadGeneratorTest {
+
+    private static final long TIMEOUT_MILLIS = 10000;
+
+    /** The first {@code limit} readings of a {@link SyntheticSource}. */
+    private static final class LimitedSource implements SampleSource {
+        private final SampleSource mSource = new SyntheticSource(100, 1);
+        private int mRemaining;
+
+        LimitedSource(int limit) {
+            mRemaining = limit;
+        }
+
+        @Override
+        public boolean next(SampleSink sink) {
+            if (mRemaining == 0) {
+                return false;
+            }
+            mRemaining--;
+            return mSource.next(sink);
+        }
+    }
+
+    /**
+     * Decodes every frame, reports each reading as ingested and the newest one of each frame as
+     * displayed, and notes when each frame arrived.
+     */
+    private static final class CountingSink implements FrameSink {
+        volatile LoadReport mReport;
+        final List<Long> mArrivalNanos = new ArrayList<Long>();
+        long mSamples;
+        long mOldestMillis = Long.MAX_VALUE;
+        long mNewestMillis = Long.MIN_VALUE;
+        private long mFrameNewestMillis;
+
+        private final SampleSink mDecoder = new SampleSink() {
+            @Override
+            public void onSample(int channel, long timestampMillis, float value) {
+                mSamples++;
+                mOldestMillis = Math.min(mOldestMillis, timestampMillis);
+                mNewestMillis = Math.max(mNewestMillis, timestampMillis);
+                mFrameNewestMillis = timestampMillis;
+                mReport.onIngested();
+            }
+        };
+
+        @Override
+        public synchronized void onFrame(byte[] frame) {
+            mArrivalNanos.add(System.nanoTime());
+            assertTrue(SensorFrame.decode(frame, mDecoder) > 0);
+            mReport.onDisplayed(mFrameNewestMillis);
+        }
+    }
+
+    private static long run(LoadGenerator generator) throws InterruptedException {
+        long start = System.nanoTime();
+        generator.start();
+        long deadline = start + TimeUnit.MILLISECONDS.toNanos(TIMEOUT_MILLIS);
+        while (generator.isRunning() && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        assertFalse("generator did not run out of samples", generator.isRunning());
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    }
+
+    @Test
+    public void holdsTheRateAndAccountsForEverySample() throws Exception {
+        CountingSink sink = new CountingSink();
+        LoadGenerator generator = new LoadGenerator(new LimitedSource(1000), sink, 2000, 20, 1);
+        sink.mReport = generator.getReport();
+        long before = LoadReport.nowMillis();
+        long elapsed = run(generator);
+        long after = LoadReport.nowMillis();
+
+        // 1000 samples at 2000/s: the last frame is due 490 ms in, so never sooner.
+        assertTrue("too fast: " + elapsed + "ms", elapsed >= 490);
+        assertTrue("too slow: " + elapsed + "ms", elapsed < 5000);
+
+        LoadReport report = generator.getReport();
+        assertEquals(1000, sink.mSamples);
+        assertEquals(50, sink.mArrivalNanos.size());
+        assertEquals(1000, report.getEmitted());
+        assertEquals(1000, report.getIngested());
+        assertEquals(50, report.getDisplayed());
+        // All but the newest reading of each frame were superseded before display.
+        assertEquals(950, report.getDropped());
+        assertTrue(report.getMaxLatencyMillis() < 1000);
+        assertTrue(report.getMeanLatencyMillis() <= report.getMaxLatencyMillis());
+
+        // Re-stamped with the report's clock as emitted, not the source's sample index.
+        assertTrue(sink.mOldestMillis >= before);
+        assertTrue(sink.mNewestMillis <= after);
+        assertTrue(sink.mNewestMillis - sink.mOldestMillis >= 450);
+    }
+
+    @Test
+    public void sendsBurstsBackToBack() throws Exception {
+        CountingSink sink = new CountingSink();
+        // 12 bursts of 5 frames of 10 samples, 50 ms apart at 1000 samples/s.
+        LoadGenerator generator = new LoadGenerator(new LimitedSource(600), sink, 1000, 10, 5);
+        sink.mReport = generator.getReport();
+        long elapsed = run(generator);
+        assertTrue("too fast: " + elapsed + "ms", elapsed >= 550);
+
+        assertEquals(60, sink.mArrivalNanos.size());
+        assertEquals(600, generator.getReport().getEmitted());
+        int pauses = 0;
+        for (int i = 1; i < sink.mArrivalNanos.size(); i++) {
+            long gap = sink.mArrivalNanos.get(i) - sink.mArrivalNanos.get(i - 1);
+            if (gap >= TimeUnit.MILLISECONDS.toNanos(20)) {
+                pauses++;
+            }
+        }
+        // Frames within a burst are not paced; a loaded machine may still stall between two.
+        assertTrue("pauses: " + pauses, pauses >= 11 && pauses <= 13);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsRatesOutOfRange() {
+        new LoadGenerator(new LimitedSource(1), new CountingSink(), LoadGenerator.MAX_RATE + 1,
+                10, 1);
+    }
+}
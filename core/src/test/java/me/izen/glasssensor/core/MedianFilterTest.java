@@ -0,0 +1,64 @@
+package me.izen.glasssensor.core;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class MedianFilterTest {
+
+    @Test
+    public void matchesSortingTheWindow() {
+        Random random = new Random(1);
+        for (int window = 1; window <= 64; window++) {
+            MedianFilter filter = new MedianFilter(window);
+            float[] readings = new float[2000];
+            for (int n = 0; n < readings.length; n++) {
+                // Few distinct values so ties are common, with the odd spike.
+                readings[n] = random.nextInt(20) == 0
+                        ? random.nextFloat() * 1e4f - 5e3f : random.nextInt(8);
+                float median = filter.filter(readings[n]);
+                int from = Math.max(0, n + 1 - window);
+                assertEquals("window " + window + " reading " + n,
+                        sortedMedian(readings, from, n + 1), median, 0f);
+            }
+        }
+    }
+
+    private static float sortedMedian(float[] readings, int from, int to) {
+        float[] sorted = Arrays.copyOfRange(readings, from, to);
+        Arrays.sort(sorted);
+        int middle = sorted.length / 2;
+        return sorted.length % 2 == 1 ? sorted[middle] : (sorted[middle - 1] + sorted[middle]) / 2;
+    }
+
+    @Test
+    public void passesNaNThroughWithoutKeepingIt() {
+        MedianFilter filter = new MedianFilter(3);
+        assertTrue(Float.isNaN(filter.getMedian()));
+        filter.filter(1);
+        filter.filter(5);
+        assertTrue(Float.isNaN(filter.filter(Float.NaN)));
+        assertEquals(3f, filter.getMedian(), 0f);
+        assertEquals(5f, filter.filter(9), 0f);
+    }
+
+    @Test
+    public void dropsASpikeAndStartsOverOnReset() {
+        MedianFilter filter = new MedianFilter(5);
+        for (int i = 0; i < 5; i++) {
+            filter.filter(10);
+        }
+        assertEquals(10f, filter.filter(1000), 0f);
+        filter.reset();
+        assertEquals(1000f, filter.filter(1000), 0f);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsAnEmptyWindow() {
+        new MedianFilter(0);
+    }
+}
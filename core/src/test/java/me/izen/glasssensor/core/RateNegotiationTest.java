@@ -0,0 +1,187 @@
+package me.izen.glasssensor.core;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Rate requests from a {@link SocketTransport} to an in-process {@link FrameServer} standing in
+ * for the drone control side.
+ */
+public class RateNegotiationTest {
+
+    private static final long TIMEOUT_SECONDS = 5;
+
+    private FrameServer mServer;
+    // Millihertz of each valid request the server received.
+    private final BlockingQueue<int[]> mReceived = new LinkedBlockingQueue<int[]>();
+
+    @Before
+    public void setUp() throws IOException {
+        mServer = new FrameServer(0);
+        mServer.setRateListener(new FrameServer.RateListener() {
+            @Override
+            public void onRates(float[] hz) {
+                int[] milliHertz = new int[hz.length];
+                for (int i = 0; i < hz.length; i++) {
+                    milliHertz[i] = Math.round(hz[i] * 1000);
+                }
+                mReceived.add(milliHertz);
+            }
+        });
+        mServer.start();
+    }
+
+    @After
+    public void tearDown() {
+        mServer.stop();
+    }
+
+    @Test
+    public void serverReceivesRequestedRates() throws Exception {
+        final CountDownLatch connected = new CountDownLatch(1);
+        final BlockingQueue<Float> samples = new LinkedBlockingQueue<Float>();
+        SocketTransport transport = new SocketTransport("127.0.0.1", mServer.getPort());
+        transport.open(new SampleSink() {
+            @Override
+            public void onSample(int channel, long timestampMillis, float value) {
+                samples.add(value);
+            }
+        }, new SensorTransport.Callback() {
+            @Override
+            public void onConnected() {
+                connected.countDown();
+            }
+
+            @Override
+            public void onDisconnected() {
+            }
+        });
+        try {
+            assertTrue(transport.connect());
+            assertTrue(connected.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+
+            SamplingPlan plan = SamplingPlan.createDefault();
+            plan.setAllDisplayed(true);
+            float[] rates = new float[SensorChannels.RAW_COUNT];
+            plan.getRates(rates);
+            assertTrue(transport.requestRates(rates));
+            int[] expected = new int[SensorChannels.RAW_COUNT];
+            for (int i = 0; i < expected.length; i++) {
+                expected[i] = Math.round(rates[i] * 1000);
+            }
+            assertArrayEquals(expected, mReceived.poll(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+
+            // Nothing shown or recorded: only the keepalive rate is left.
+            plan.setAllDisplayed(false);
+            plan.getRates(rates);
+            assertTrue(transport.requestRates(rates));
+            int[] keepalive = mReceived.poll(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            assertNotNull(keepalive);
+            int total = 0;
+            for (int milliHertz : keepalive) {
+                total += milliHertz;
+            }
+            assertEquals(Math.round(SamplingPlan.KEEPALIVE_HZ * 1000), total);
+            assertEquals(2, mServer.getRateRequestCount());
+            assertEquals(0, mServer.getInvalidRateRequestCount());
+
+            // Rate commands leave streaming to work as before.
+            assertTrue(transport.requestStream());
+            SensorFrame.Encoder encoder = new SensorFrame.Encoder(1);
+            encoder.add(SensorChannels.GAS, 1000, 42f);
+            Float value = null;
+            for (int attempt = 0; attempt < 100 && value == null; attempt++) {
+                mServer.onFrame(encoder.toByteArray());
+                value = samples.poll(50, TimeUnit.MILLISECONDS);
+            }
+            assertEquals(42f, value, 0f);
+        } finally {
+            transport.close();
+        }
+    }
+
+    @Test
+    public void acceptsARequestSplitAcrossWrites() throws Exception {
+        Socket client = connect();
+        try {
+            DataOutputStream out = new DataOutputStream(client.getOutputStream());
+            out.writeByte(SocketTransport.CMD_RATES);
+            out.writeByte(SensorChannels.RAW_COUNT);
+            out.writeInt(500);
+            out.flush();
+            Thread.sleep(50);
+            for (int i = 1; i < SensorChannels.RAW_COUNT; i++) {
+                out.writeInt(i * 1000);
+            }
+            out.flush();
+            int[] received = mReceived.poll(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            assertNotNull(received);
+            assertEquals(500, received[0]);
+            assertEquals((SensorChannels.RAW_COUNT - 1) * 1000,
+                    received[SensorChannels.RAW_COUNT - 1]);
+        } finally {
+            client.close();
+        }
+    }
+
+    @Test
+    public void rejectsAWrongChannelCount() throws Exception {
+        assertRejected(SensorChannels.RAW_COUNT - 1, 1000);
+    }
+
+    @Test
+    public void rejectsAnOutOfRangeRate() throws Exception {
+        assertRejected(SensorChannels.RAW_COUNT, Math.round(SamplingPlan.MAX_HZ * 1000) + 1);
+    }
+
+    @Test
+    public void rejectsANegativeRate() throws Exception {
+        assertRejected(SensorChannels.RAW_COUNT, -1);
+    }
+
+    /**
+     * Sends a rate request for {@code count} channels, the last at {@code lastMilliHertz} and
+     * the others at 1 Hz, and expects the server to drop the client without taking it.
+     */
+    private void assertRejected(int count, int lastMilliHertz) throws Exception {
+        float[] before = mServer.getRequestedRates();
+        Socket client = connect();
+        try {
+            DataOutputStream out = new DataOutputStream(client.getOutputStream());
+            out.writeByte(SocketTransport.CMD_RATES);
+            out.writeByte(count);
+            for (int i = 0; i < count; i++) {
+                out.writeInt(i == count - 1 ? lastMilliHertz : 1000);
+            }
+            out.flush();
+            // The server hangs up on a malformed request.
+            assertEquals(-1, client.getInputStream().read());
+        } finally {
+            client.close();
+        }
+        assertEquals(1, mServer.getInvalidRateRequestCount());
+        assertEquals(0, mServer.getRateRequestCount());
+        assertArrayEquals(before, mServer.getRequestedRates(), 0f);
+        assertTrue(mReceived.isEmpty());
+    }
+
+    private Socket connect() throws IOException {
+        Socket client = new Socket("127.0.0.1", mServer.getPort());
+        client.setSoTimeout((int) TimeUnit.SECONDS.toMillis(TIMEOUT_SECONDS));
+        return client;
+    }
+}
@@ -0,0 +1,117 @@
+package me.izen.glasssensor.core;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compares {@link RollingStats} with the aggregates recomputed from scratch over the samples each
+ * window should hold.
+ */
+public class RollingStatsTest {
+
+    private static final int CHANNEL = SensorChannels.GAS;
+    private static final long[] WINDOWS_MILLIS = {50, 400, 5000};
+
+    @Test
+    public void matchesNaiveRecompute() {
+        // A ring of 64 evicts before the longest window is full; 4096 never does.
+        for (int capacity : new int[]{64, 4096}) {
+            for (long seed = 0; seed < 10; seed++) {
+                check(capacity, seed);
+            }
+        }
+    }
+
+    private void check(int capacity, long seed) {
+        Random random = new Random(seed);
+        RollingStats stats = new RollingStats(new int[]{CHANNEL}, WINDOWS_MILLIS, capacity);
+        int samples = 3000;
+        long[] timestamps = new long[samples];
+        float[] values = new float[samples];
+        WindowStats actual = new WindowStats();
+        long now = 1000;
+        int evicted = 0;
+        for (int n = 0; n < samples; n++) {
+            // Bursts of equal timestamps, steady ticks and long gaps.
+            int kind = random.nextInt(100);
+            now += kind < 10 ? 0 : kind == 10 ? 200 + random.nextInt(2000) : random.nextInt(20);
+            timestamps[n] = now;
+            values[n] = (random.nextFloat() - 0.5f) * 200;
+            stats.onSample(CHANNEL, now, values[n]);
+
+            for (int window = 0; window < WINDOWS_MILLIS.length; window++) {
+                // Newest samples still in the ring and within the window of the newest timestamp.
+                int start = Math.max(0, n + 1 - capacity);
+                if (start > 0 && now - timestamps[start - 1] <= WINDOWS_MILLIS[window]) {
+                    evicted++;
+                }
+                while (now - timestamps[start] > WINDOWS_MILLIS[window]) {
+                    start++;
+                }
+                String where = "capacity " + capacity + " seed " + seed + " sample " + n
+                        + " window " + window;
+                assertTrue(where, stats.read(CHANNEL, window, actual));
+                assertNaive(where, timestamps, values, start, n + 1, actual);
+            }
+        }
+        assertEquals(capacity < samples, evicted > 0);
+    }
+
+    private static void assertNaive(String where, long[] timestamps, float[] values, int start,
+                                    int end, WindowStats actual) {
+        int count = end - start;
+        float min = Float.POSITIVE_INFINITY;
+        float max = Float.NEGATIVE_INFINITY;
+        double sum = 0;
+        for (int i = start; i < end; i++) {
+            min = Math.min(min, values[i]);
+            max = Math.max(max, values[i]);
+            sum += values[i];
+        }
+        double mean = sum / count;
+        double squares = 0;
+        for (int i = start; i < end; i++) {
+            squares += (values[i] - mean) * (values[i] - mean);
+        }
+        double stddev = count > 1 ? Math.sqrt(squares / (count - 1)) : 0;
+        long span = timestamps[end - 1] - timestamps[start];
+        double rate = span > 0 ? (values[end - 1] - values[start]) * 1000.0 / span : 0;
+
+        assertEquals(where, count, actual.count);
+        assertEquals(where, min, actual.min, 0f);
+        assertEquals(where, max, actual.max, 0f);
+        assertEquals(where, mean, actual.mean, 1e-6 * 100);
+        assertEquals(where, stddev, actual.stddev, 1e-4 * 100);
+        assertEquals(where, span, actual.spanMillis);
+        assertEquals(where, rate, actual.ratePerSecond, 1e-9 * Math.max(1, Math.abs(rate)));
+    }
+
+    @Test
+    public void ignoresNaNAndUntrackedChannels() {
+        RollingStats stats = new RollingStats(new int[]{CHANNEL}, WINDOWS_MILLIS, 16);
+        WindowStats out = new WindowStats();
+        stats.onSample(CHANNEL, 0, Float.NaN);
+        assertFalse(stats.read(CHANNEL, 0, out));
+        assertTrue(Float.isNaN(out.min));
+
+        stats.onSample(SensorChannels.TEMPERATURE, 0, 1f);
+        assertFalse(stats.isTracked(SensorChannels.TEMPERATURE));
+        assertFalse(stats.read(SensorChannels.TEMPERATURE, 0, out));
+
+        stats.onSample(CHANNEL, 10, 3f);
+        assertTrue(stats.read(CHANNEL, 0, out));
+        assertEquals(1, out.count);
+        assertEquals(3.0, out.mean, 0);
+        assertEquals(0.0, out.stddev, 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsUnsortedWindows() {
+        new RollingStats(new int[]{CHANNEL}, new long[]{1000, 10}, 16);
+    }
+}
@@ -0,0 +1,59 @@
+package me.izen.glasssensor.core;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SensorSessionTest {
+
+    // Sessions are process-wide; keep clear of the devices other tests may use.
+    private static final int DEVICE = 200;
+
+    @After
+    public void tearDown() {
+        SensorSession.setDeviceListener(null);
+    }
+
+    @Test
+    public void sinksAddedForANewDeviceSeeItsFirstReading() {
+        final List<String> events = new ArrayList<String>();
+        final SampleSink sink = new SampleSink() {
+            @Override
+            public void onSample(int channel, long timestampMillis, float value) {
+                events.add("sample " + timestampMillis);
+            }
+        };
+        SensorSession.setDeviceListener(new SensorSession.DeviceListener() {
+            @Override
+            public void onDeviceAdded(SensorSession session) {
+                events.add("added " + session.getDevice());
+                session.addSink(sink);
+            }
+        });
+
+        SensorSession session = SensorSession.get(DEVICE);
+        session.onSample(SensorChannels.GAS, 1, 100);
+        session.onSample(SensorChannels.GAS, 2, 101);
+        SensorSession.get(DEVICE + 1).onSample(SensorChannels.GAS, 3, 100);
+
+        assertEquals("added " + DEVICE, events.get(0));
+        assertEquals("sample 1", events.get(1));
+        assertEquals("sample 2", events.get(2));
+        assertEquals("added " + (DEVICE + 1), events.get(3));
+        assertEquals("sample 3", events.get(4));
+        assertEquals(5, events.size());
+
+        boolean listed = false;
+        for (int device : SensorSession.getDevices()) {
+            listed |= device == DEVICE;
+        }
+        assertTrue(listed);
+        session.removeSink(sink);
+        SensorSession.get(DEVICE + 1).removeSink(sink);
+    }
+}
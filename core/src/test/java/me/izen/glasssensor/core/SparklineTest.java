@@ -0,0 +1,161 @@
+package me.izen.glasssensor.core;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SparklineTest {
+
+    @Test
+    public void decimateInPlaceMatchesCopy() {
+        Random random = new Random(1);
+        for (int run = 0; run < 500; run++) {
+            int count = 1 + random.nextInt(300);
+            int threshold = 3 + random.nextInt(80);
+            long[] timestamps = new long[count];
+            float[] values = new float[count];
+            long now = random.nextInt(1000);
+            for (int i = 0; i < count; i++) {
+                now += random.nextInt(50);
+                timestamps[i] = now;
+                values[i] = random.nextFloat() * 100;
+            }
+            long[] outTimestamps = new long[count];
+            float[] outValues = new float[count];
+            int kept = Sparkline.decimate(timestamps, values, count, threshold,
+                    outTimestamps, outValues);
+            assertEquals(Math.min(count, threshold), kept);
+            assertLttb(timestamps, values, count, threshold, outTimestamps, outValues);
+
+            long[] inPlaceTimestamps = timestamps.clone();
+            float[] inPlaceValues = values.clone();
+            assertEquals(kept, Sparkline.decimate(inPlaceTimestamps, inPlaceValues, count,
+                    threshold, inPlaceTimestamps, inPlaceValues));
+            assertArrayEquals(Arrays.copyOf(outTimestamps, kept),
+                    Arrays.copyOf(inPlaceTimestamps, kept));
+            assertArrayEquals(Arrays.copyOf(outValues, kept),
+                    Arrays.copyOf(inPlaceValues, kept), 0f);
+        }
+    }
+
+    /**
+     * Checks every kept point against a brute force search of its bucket for the largest
+     * triangle with the previous kept point and the average of the next bucket.
+     */
+    private static void assertLttb(long[] timestamps, float[] values, int count, int threshold,
+                                   long[] outTimestamps, float[] outValues) {
+        if (count <= threshold) {
+            for (int i = 0; i < count; i++) {
+                assertEquals(timestamps[i], outTimestamps[i]);
+                assertEquals(values[i], outValues[i], 0f);
+            }
+            return;
+        }
+        assertEquals(timestamps[0], outTimestamps[0]);
+        assertEquals(timestamps[count - 1], outTimestamps[threshold - 1]);
+        double every = (double) (count - 2) / (threshold - 2);
+        for (int i = 0; i < threshold - 2; i++) {
+            int start = (int) Math.floor(i * every) + 1;
+            int end = (int) Math.floor((i + 1) * every) + 1;
+            int nextEnd = Math.min((int) Math.floor((i + 2) * every) + 1, count);
+            double nextTime = 0;
+            double nextValue = 0;
+            for (int j = end; j < nextEnd; j++) {
+                nextTime += timestamps[j];
+                nextValue += values[j];
+            }
+            nextTime /= nextEnd - end;
+            nextValue /= nextEnd - end;
+
+            double lastTime = outTimestamps[i];
+            double lastValue = outValues[i];
+            double bestArea = -1;
+            int chosen = -1;
+            for (int j = start; j < end; j++) {
+                double area = triangle(lastTime, lastValue, timestamps[j], values[j],
+                        nextTime, nextValue);
+                bestArea = Math.max(bestArea, area);
+                if (timestamps[j] == outTimestamps[i + 1] && values[j] == outValues[i + 1]) {
+                    chosen = j;
+                }
+            }
+            assertTrue("point " + (i + 1) + " not from its bucket", chosen >= 0);
+            double area = triangle(lastTime, lastValue, timestamps[chosen], values[chosen],
+                    nextTime, nextValue);
+            assertEquals("point " + (i + 1), bestArea, area, 1e-6 * Math.max(1, bestArea));
+        }
+    }
+
+    private static double triangle(double ax, double ay, double bx, double by, double cx,
+                                   double cy) {
+        return Math.abs((ax - cx) * (by - ay) - (ax - bx) * (cy - ay));
+    }
+
+    @Test
+    public void streamingStaysBoundedAndKeepsSamples() {
+        int maxPoints = 16;
+        Sparkline line = new Sparkline(maxPoints);
+        long[] timestamps = new long[maxPoints * 2];
+        float[] values = new float[maxPoints * 2];
+        // Samples by timestamp, to check every point is one of them.
+        int samples = 20000;
+        float[] sampled = new float[samples];
+        Random random = new Random(2);
+
+        int generation = line.getGeneration();
+        int read = 0;
+        long[] kept = new long[maxPoints * 2];
+        for (int n = 0; n < samples; n++) {
+            sampled[n] = random.nextFloat();
+            line.append(n, sampled[n]);
+            line.append(n, Float.NaN);
+            assertEquals(n + 1, line.getSampleCount());
+            assertEquals(n, line.getLastTimestamp());
+            assertEquals(sampled[n], line.getLastValue(), 0f);
+
+            // Read incrementally as the card does, starting over after each compaction.
+            int count = line.readPoints(generation, read, timestamps, values);
+            if (count < 0) {
+                assertTrue(line.getGeneration() > generation);
+                generation = line.getGeneration();
+                read = 0;
+                count = line.readPoints(generation, 0, timestamps, values);
+                assertTrue(count >= maxPoints);
+            }
+            System.arraycopy(timestamps, 0, kept, read, count);
+            for (int i = 0; i < count; i++) {
+                assertEquals(sampled[(int) timestamps[i]], values[i], 0f);
+            }
+            read += count;
+            assertTrue(read <= maxPoints * 2);
+            assertEquals(0, kept[0]);
+            for (int i = 1; i < read; i++) {
+                assertTrue("points out of order", kept[i] > kept[i - 1]);
+            }
+        }
+        // About log2(samples / maxPoints) compactions.
+        assertTrue(generation >= 8);
+    }
+
+    @Test
+    public void keepsAnIsolatedSpike() {
+        Sparkline line = new Sparkline(16);
+        int spike = 4321;
+        for (int n = 0; n < 10000; n++) {
+            line.append(n, n == spike ? 100f : 0f);
+        }
+        long[] timestamps = new long[32];
+        float[] values = new float[32];
+        int count = line.readPoints(line.getGeneration(), 0, timestamps, values);
+        boolean found = false;
+        for (int i = 0; i < count; i++) {
+            found |= timestamps[i] == spike && values[i] == 100f;
+        }
+        assertTrue(found);
+    }
+}
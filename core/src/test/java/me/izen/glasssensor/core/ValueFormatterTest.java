@@ -0,0 +1,84 @@
+package me.izen.glasssensor.core;
+
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+
+import static org.junit.Assert.assertEquals;
+
+public class ValueFormatterTest {
+
+    private static final int WARMUP_FRAMES = 20000;
+    private static final int FRAMES = 1000;
+
+    private ValueFormatter mFormatter;
+    private final char[] mBuffer = new char[ValueFormatter.BUFFER_SIZE];
+
+    @Before
+    public void setUp() {
+        mFormatter = ValueFormatter.createDefault();
+    }
+
+    private String format(int channel, float value) {
+        return new String(mBuffer, 0, mFormatter.format(channel, value, mBuffer));
+    }
+
+    @Test
+    public void formatsWithChannelPrecisionAndUnit() {
+        int precision = mFormatter.getPrecision(SensorChannels.TEMPERATURE);
+        String text = format(SensorChannels.TEMPERATURE, -1.5f);
+        assertEquals('-', text.charAt(0));
+        assertEquals(precision == 0 ? -1 : 2, text.indexOf('.'));
+        assertEquals("--", format(SensorChannels.TEMPERATURE, Float.NaN));
+        assertEquals("--", format(SensorChannels.TEMPERATURE, Float.POSITIVE_INFINITY));
+    }
+
+    @Test
+    public void formatsTwoDigits() {
+        assertEquals(2, ValueFormatter.formatTwoDigits(7, mBuffer));
+        assertEquals("07", new String(mBuffer, 0, 2));
+        ValueFormatter.formatTwoDigits(159, mBuffer);
+        assertEquals("59", new String(mBuffer, 0, 2));
+    }
+
+    /**
+     * A frame formats every channel and the three chronometer fields; once warm, none of it may
+     * allocate.
+     */
+    @Test
+    public void frameAllocatesNothingOnceWarm() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+        Assume.assumeTrue(threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+        long thread = Thread.currentThread().getId();
+
+        int sum = drawFrames(0, WARMUP_FRAMES);
+        // What reading the counter costs by itself.
+        long overhead = threads.getThreadAllocatedBytes(thread);
+        overhead = threads.getThreadAllocatedBytes(thread) - overhead;
+
+        long before = threads.getThreadAllocatedBytes(thread);
+        sum += drawFrames(WARMUP_FRAMES, FRAMES);
+        long allocated = threads.getThreadAllocatedBytes(thread) - before - overhead;
+
+        assertEquals("bytes allocated over " + FRAMES + " frames (" + sum + ")", 0, allocated);
+    }
+
+    private int drawFrames(int first, int frames) {
+        int sum = 0;
+        for (int frame = first; frame < first + frames; frame++) {
+            for (int channel = 0; channel < SensorChannels.COUNT; channel++) {
+                float value = channel % 3 == 0 ? Float.NaN : (frame - 500) * 0.37f + channel;
+                sum += mFormatter.format(channel, value, mBuffer);
+            }
+            sum += ValueFormatter.formatTwoDigits(frame / 6000, mBuffer);
+            sum += ValueFormatter.formatTwoDigits(frame / 100 % 60, mBuffer);
+            sum += ValueFormatter.formatTwoDigits(frame % 100, mBuffer);
+        }
+        return sum;
+    }
+}